@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.rounding;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Rounds a year of dates like a date histogram does, with the rounding of the time zone and with the rounding that is
+ * prepared for the range of the dates, in UTC, in a fixed offset time zone and in a time zone with daylight saving time.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class RoundingBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({"UTC", "+05:30", "Europe/Paris"})
+    public String timeZone = "UTC";
+
+    @Param({"hour", "day", "month", "90m"})
+    public String interval = "day";
+
+    @Param({"false", "true"})
+    public boolean prepared = true;
+
+    @Param({"100000"})
+    public int numDates = 100000;
+
+    private long[] dates;
+
+    private LongUnaryOperator roundKey;
+
+    @Setup
+    public void setUp() {
+        // 2016-01-01T00:00:00Z
+        long min = 1451606400000L;
+        long max = min + TimeUnit.DAYS.toMillis(365);
+        Random random = new Random(42);
+        dates = new long[numDates];
+        for (int i = 0; i < numDates; i++) {
+            dates[i] = min + (long) (random.nextDouble() * (max - min));
+        }
+        TimeZoneRounding.Builder builder;
+        switch (interval) {
+            case "hour":
+                builder = TimeZoneRounding.builder(DateTimeUnit.HOUR_OF_DAY);
+                break;
+            case "day":
+                builder = TimeZoneRounding.builder(DateTimeUnit.DAY_OF_MONTH);
+                break;
+            case "month":
+                builder = TimeZoneRounding.builder(DateTimeUnit.MONTH_OF_YEAR);
+                break;
+            default:
+                builder = TimeZoneRounding.builder(TimeValue.parseTimeValue(interval, null, "interval"));
+                break;
+        }
+        Rounding rounding = builder.timeZone(DateTimeZone.forID(timeZone)).build();
+        roundKey = prepared ? rounding.prepare(min, max)::roundKey : rounding::roundKey;
+    }
+
+    @Benchmark
+    public long round() {
+        long sum = 0;
+        for (long date : dates) {
+            sum += roundKey.applyAsLong(date);
+        }
+        return sum;
+    }
+}
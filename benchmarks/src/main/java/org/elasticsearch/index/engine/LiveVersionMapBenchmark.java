@@ -0,0 +1,103 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.translog.Translog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the on-heap and the paged {@link LiveVersionMap} for a refresh cycle: <tt>numUids</tt> puts, followed by a lookup of
+ * every uid and a refresh that swaps out the current map. This benchmark lives in the engine package since the version map is not
+ * part of the public API.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class LiveVersionMapBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({"heap", "paged"})
+    public String type = "heap";
+
+    @Param({"1000", "100000"})
+    public int numUids = 1000;
+
+    private BytesRef[] uids;
+
+    private VersionValue[] versions;
+
+    private LiveVersionMap versionMap;
+
+    @Setup
+    public void setUp() {
+        uids = new BytesRef[numUids];
+        versions = new VersionValue[numUids];
+        for (int i = 0; i < numUids; i++) {
+            // uids that look like auto-generated ids
+            uids[i] = new BytesRef("type#" + Long.toString(31L * i + 7, Character.MAX_RADIX) + "AVbcDeFgHiJkLmN");
+            versions[i] = new VersionValue(i + 1, new Translog.Location(1, 64L * i, 64));
+        }
+        if ("paged".equals(type)) {
+            versionMap = new LiveVersionMap(new BigArrays(Settings.EMPTY, null));
+        } else {
+            versionMap = new LiveVersionMap();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        versionMap.clear();
+    }
+
+    @Benchmark
+    public long measurePutGetRefresh() throws IOException {
+        long sum = 0;
+        for (int i = 0; i < numUids; i++) {
+            versionMap.putUnderLock(uids[i], versions[i]);
+        }
+        for (int i = 0; i < numUids; i++) {
+            sum += versionMap.getUnderLock(uids[i]).version();
+        }
+        versionMap.beforeRefresh();
+        versionMap.afterRefresh(true);
+        return sum;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.fetch;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.index.shard.ShardId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading the stored fields of <tt>numHits</tt> hits one by one in the requested order with the way the {@link FetchPhase}
+ * loads them: in doc id order and, for dense hits, through the sequential stored fields reader of each segment. Hits are either a
+ * contiguous run of documents, like the pages of a scroll sorted by <tt>_doc</tt>, or spread randomly over the index. This benchmark
+ * lives in the fetch package since the stored fields loading is not part of the public API.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class FetchStoredFieldsBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({"1000", "10000"})
+    public int numHits = 1000;
+
+    @Param({"dense", "random"})
+    public String hits = "dense";
+
+    public int numDocs = 100000;
+
+    private RAMDirectory directory;
+
+    private DirectoryReader reader;
+
+    private int[] docIds;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(null))) {
+            char[] source = new char[512];
+            for (int i = 0; i < numDocs; i++) {
+                for (int j = 0; j < source.length; j++) {
+                    source[j] = (char) ('a' + random.nextInt(26));
+                }
+                Document doc = new Document();
+                doc.add(new StoredField("_uid", "type#" + i));
+                doc.add(new StoredField("_source", new String(source)));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        reader = ElasticsearchDirectoryReader.wrap(DirectoryReader.open(directory), new ShardId("index", "_na_", 0));
+        docIds = new int[numHits];
+        if ("dense".equals(hits)) {
+            int from = random.nextInt(numDocs - numHits);
+            for (int i = 0; i < numHits; i++) {
+                docIds[i] = from + i;
+            }
+        } else {
+            for (int i = 0; i < numHits; i++) {
+                docIds[i] = random.nextInt(numDocs);
+            }
+        }
+        // hits come in score order, which is unrelated to the doc id order
+        for (int i = numHits - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = docIds[i];
+            docIds[i] = docIds[j];
+            docIds[j] = tmp;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        IOUtils.close(reader, directory);
+    }
+
+    @Benchmark
+    public int measureRequestedOrder() throws IOException {
+        int sum = 0;
+        for (int docId : docIds) {
+            DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor();
+            reader.document(docId, visitor);
+            sum += visitor.getDocument().getFields().size();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int measureDocIdOrder() throws IOException {
+        FetchPhase.DocIdToIndex[] docs = new FetchPhase.DocIdToIndex[docIds.length];
+        for (int i = 0; i < docIds.length; i++) {
+            docs[i] = new FetchPhase.DocIdToIndex(docIds[i], i);
+        }
+        Arrays.sort(docs);
+        List<LeafReaderContext> leaves = reader.leaves();
+        Document[] documents = new Document[docs.length];
+        int currentReaderIndex = -1;
+        LeafReaderContext context = null;
+        FetchPhase.StoredFieldsLoader loader = null;
+        for (int i = 0; i < docs.length; i++) {
+            int readerIndex = ReaderUtil.subIndex(docs[i].docId, leaves);
+            if (readerIndex != currentReaderIndex) {
+                currentReaderIndex = readerIndex;
+                context = leaves.get(readerIndex);
+                loader = FetchPhase.storedFieldsLoader(context, docs, i);
+            }
+            DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor();
+            loader.visitDocument(docs[i].docId - context.docBase, visitor);
+            documents[docs[i].index] = visitor.getDocument();
+        }
+        int sum = 0;
+        for (Document document : documents) {
+            sum += document.getFields().size();
+        }
+        return sum;
+    }
+}
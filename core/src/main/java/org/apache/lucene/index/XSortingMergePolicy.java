@@ -0,0 +1,396 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.lucene.index;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forked from Lucene's {@link SortingMergePolicy}, which can't merge more than one segment with points because it combines
+ * the segments of a merge with a {@link SlowCompositeReaderWrapper}. This fork hides the points from the composite reader
+ * and exposes the points of the merged segments itself, so that they are sorted along with the other data structures.
+ * Segments are only sorted when they are merged, flushed segments keep the order in which documents were indexed.
+ * This fork can be removed once we upgrade to Lucene 6.2, where {@link IndexWriterConfig} can sort the index itself.
+ */
+public final class XSortingMergePolicy extends MergePolicyWrapper {
+
+    private final Sorter sorter;
+    private final Sort sort;
+
+    public XSortingMergePolicy(MergePolicy in, Sort sort) {
+        super(in);
+        this.sorter = new Sorter(sort);
+        this.sort = sort;
+    }
+
+    /**
+     * Returns the sort of the merged segments.
+     */
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * Returns <code>true</code> iff the segment of the given reader was sorted by the given sort when it was merged. Unlike
+     * {@link SortingMergePolicy#isSorted(LeafReader, Sort)} this unwraps {@link FilterLeafReader}s.
+     */
+    public static boolean isSorted(LeafReader reader, Sort sort) {
+        reader = FilterLeafReader.unwrap(reader);
+        if (reader instanceof SegmentReader) {
+            final SegmentReader segReader = (SegmentReader) reader;
+            final Map<String, String> diagnostics = segReader.getSegmentInfo().info.getDiagnostics();
+            return sort.toString().equals(diagnostics.get(SortingMergePolicy.SORTER_ID_PROP));
+        }
+        return false;
+    }
+
+    private MergeSpecification sortedMergeSpecification(MergeSpecification specification) {
+        if (specification == null) {
+            return null;
+        }
+        final MergeSpecification sortingSpec = new MergeSpecification();
+        for (OneMerge merge : specification.merges) {
+            sortingSpec.add(new SortingOneMerge(merge.segments));
+        }
+        return sortingSpec;
+    }
+
+    @Override
+    public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos segmentInfos, IndexWriter writer) throws IOException {
+        return sortedMergeSpecification(in.findMerges(mergeTrigger, segmentInfos, writer));
+    }
+
+    @Override
+    public MergeSpecification findForcedMerges(SegmentInfos segmentInfos, int maxSegmentCount,
+                                               Map<SegmentCommitInfo, Boolean> segmentsToMerge, IndexWriter writer) throws IOException {
+        return sortedMergeSpecification(in.findForcedMerges(segmentInfos, maxSegmentCount, segmentsToMerge, writer));
+    }
+
+    @Override
+    public MergeSpecification findForcedDeletesMerges(SegmentInfos segmentInfos, IndexWriter writer) throws IOException {
+        return sortedMergeSpecification(in.findForcedDeletesMerges(segmentInfos, writer));
+    }
+
+    @Override
+    public String toString() {
+        return "XSortingMergePolicy(" + in + ", sorter=" + sorter + ")";
+    }
+
+    private final class SortingOneMerge extends OneMerge {
+
+        private List<CodecReader> unsortedReaders;
+        private Sorter.DocMap docMap;
+        private LeafReader sortedView;
+
+        SortingOneMerge(List<SegmentCommitInfo> segments) {
+            super(segments);
+        }
+
+        @Override
+        public List<CodecReader> getMergeReaders() throws IOException {
+            if (unsortedReaders == null) {
+                unsortedReaders = super.getMergeReaders();
+                final LeafReader atomicView;
+                if (unsortedReaders.size() == 1) {
+                    atomicView = unsortedReaders.get(0);
+                } else {
+                    atomicView = compositeReader(unsortedReaders);
+                }
+                docMap = sorter.sort(atomicView);
+                sortedView = SortingLeafReader.wrap(atomicView, docMap);
+            }
+            // a null doc map means that the readers are already sorted
+            if (docMap == null) {
+                return unsortedReaders;
+            }
+            return Collections.singletonList(SlowCodecReaderWrapper.wrap(sortedView));
+        }
+
+        @Override
+        public void setMergeInfo(SegmentCommitInfo info) {
+            info.info.getDiagnostics().put(SortingMergePolicy.SORTER_ID_PROP, sorter.getID());
+            super.setMergeInfo(info);
+        }
+
+        @Override
+        public MergePolicy.DocMap getDocMap(final MergeState mergeState) {
+            if (unsortedReaders == null) {
+                throw new IllegalStateException();
+            }
+            if (docMap == null) {
+                return super.getDocMap(mergeState);
+            }
+            assert mergeState.docMaps.length == 1; // we returned a singleton reader
+            final PackedLongValues deletes = getDeletes(unsortedReaders);
+            return new MergePolicy.DocMap() {
+                @Override
+                public int map(int old) {
+                    final int oldWithDeletes = old + (int) deletes.get(old);
+                    final int newWithDeletes = docMap.oldToNew(oldWithDeletes);
+                    return mergeState.docMaps[0].get(newWithDeletes);
+                }
+            };
+        }
+
+        private PackedLongValues getDeletes(List<CodecReader> readers) {
+            final PackedLongValues.Builder deletes = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+            int deleteCount = 0;
+            for (LeafReader reader : readers) {
+                final int maxDoc = reader.maxDoc();
+                final Bits liveDocs = reader.getLiveDocs();
+                for (int i = 0; i < maxDoc; ++i) {
+                    if (liveDocs != null && liveDocs.get(i) == false) {
+                        ++deleteCount;
+                    } else {
+                        deletes.add(deleteCount);
+                    }
+                }
+            }
+            return deletes.build();
+        }
+
+        @Override
+        public String toString() {
+            return "XSortingMergePolicy.SortingOneMerge(" + segString() + ")";
+        }
+    }
+
+    /**
+     * Combines the given readers into a single {@link LeafReader}. The points are hidden from the
+     * {@link SlowCompositeReaderWrapper} and read from the given readers directly.
+     */
+    @SuppressWarnings("deprecation") // the sorter needs a single reader over all merged segments, like SortingMergePolicy
+    private static LeafReader compositeReader(List<CodecReader> readers) throws IOException {
+        final LeafReader[] subs = new LeafReader[readers.size()];
+        final int[] docBases = new int[readers.size()];
+        boolean hasPoints = false;
+        int docBase = 0;
+        for (int i = 0; i < subs.length; i++) {
+            final CodecReader reader = readers.get(i);
+            final LeafReader sub = reader instanceof SegmentReader ? new MergeReaderWrapper((SegmentReader) reader) : reader;
+            subs[i] = new NoPointsLeafReader(sub);
+            docBases[i] = docBase;
+            docBase += reader.maxDoc();
+            hasPoints |= reader.getFieldInfos().hasPointValues();
+        }
+        final LeafReader composite = new SlowCompositeReaderWrapper(new MultiReader(subs), true);
+        return hasPoints ? new CompositePointsLeafReader(composite, readers, docBases) : composite;
+    }
+
+    /**
+     * A {@link FilterLeafReader} that hides the points of the wrapped reader.
+     */
+    private static final class NoPointsLeafReader extends FilterLeafReader {
+
+        private final FieldInfos fieldInfos;
+
+        NoPointsLeafReader(LeafReader in) {
+            super(in);
+            final FieldInfo[] infos = new FieldInfo[in.getFieldInfos().size()];
+            int i = 0;
+            for (FieldInfo fi : in.getFieldInfos()) {
+                infos[i++] = new FieldInfo(fi.name, fi.number, fi.hasVectors(), fi.omitsNorms(), fi.hasPayloads(),
+                    fi.getIndexOptions(), fi.getDocValuesType(), fi.getDocValuesGen(), fi.attributes(), 0, 0);
+            }
+            this.fieldInfos = new FieldInfos(infos);
+        }
+
+        @Override
+        public FieldInfos getFieldInfos() {
+            return fieldInfos;
+        }
+
+        @Override
+        public PointValues getPointValues() {
+            return null;
+        }
+    }
+
+    /**
+     * A {@link FilterLeafReader} over a composite of the given readers that exposes their points with the doc ids of the
+     * composite reader.
+     */
+    private static final class CompositePointsLeafReader extends FilterLeafReader {
+
+        private final List<CodecReader> readers;
+        private final int[] docBases;
+        private final FieldInfos fieldInfos;
+
+        CompositePointsLeafReader(LeafReader composite, List<CodecReader> readers, int[] docBases) {
+            super(composite);
+            this.readers = readers;
+            this.docBases = docBases;
+            final FieldInfo[] infos = new FieldInfo[composite.getFieldInfos().size()];
+            int i = 0;
+            for (FieldInfo fi : composite.getFieldInfos()) {
+                int pointDimensionCount = 0;
+                int pointNumBytes = 0;
+                for (CodecReader reader : readers) {
+                    final FieldInfo readerInfo = reader.getFieldInfos().fieldInfo(fi.name);
+                    if (readerInfo != null && readerInfo.getPointDimensionCount() > 0) {
+                        pointDimensionCount = readerInfo.getPointDimensionCount();
+                        pointNumBytes = readerInfo.getPointNumBytes();
+                        break;
+                    }
+                }
+                infos[i++] = new FieldInfo(fi.name, fi.number, fi.hasVectors(), fi.omitsNorms(), fi.hasPayloads(),
+                    fi.getIndexOptions(), fi.getDocValuesType(), fi.getDocValuesGen(), fi.attributes(), pointDimensionCount, pointNumBytes);
+            }
+            this.fieldInfos = new FieldInfos(infos);
+        }
+
+        @Override
+        public FieldInfos getFieldInfos() {
+            return fieldInfos;
+        }
+
+        @Override
+        public PointValues getPointValues() {
+            return new CompositePointValues();
+        }
+
+        private final class CompositePointValues extends PointValues {
+
+            private PointValues pointValues(int i, String field) {
+                final CodecReader reader = readers.get(i);
+                final FieldInfo fi = reader.getFieldInfos().fieldInfo(field);
+                if (fi == null || fi.getPointDimensionCount() == 0) {
+                    return null;
+                }
+                return reader.getPointValues();
+            }
+
+            @Override
+            public void intersect(String field, IntersectVisitor visitor) throws IOException {
+                for (int i = 0; i < readers.size(); i++) {
+                    final PointValues values = pointValues(i, field);
+                    if (values == null) {
+                        continue;
+                    }
+                    final int docBase = docBases[i];
+                    values.intersect(field, new IntersectVisitor() {
+                        @Override
+                        public void visit(int docID) throws IOException {
+                            visitor.visit(docBase + docID);
+                        }
+
+                        @Override
+                        public void visit(int docID, byte[] packedValue) throws IOException {
+                            visitor.visit(docBase + docID, packedValue);
+                        }
+
+                        @Override
+                        public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+                            return visitor.compare(minPackedValue, maxPackedValue);
+                        }
+
+                        @Override
+                        public void grow(int count) {
+                            visitor.grow(count);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public byte[] getMinPackedValue(String field) throws IOException {
+                return packedValue(field, true);
+            }
+
+            @Override
+            public byte[] getMaxPackedValue(String field) throws IOException {
+                return packedValue(field, false);
+            }
+
+            private byte[] packedValue(String field, boolean min) throws IOException {
+                final FieldInfo fi = fieldInfos.fieldInfo(field);
+                if (fi == null || fi.getPointDimensionCount() == 0) {
+                    return null;
+                }
+                final int numDims = fi.getPointDimensionCount();
+                final int bytesPerDim = fi.getPointNumBytes();
+                byte[] result = null;
+                for (int i = 0; i < readers.size(); i++) {
+                    final PointValues values = pointValues(i, field);
+                    if (values == null) {
+                        continue;
+                    }
+                    final byte[] packedValue = min ? values.getMinPackedValue(field) : values.getMaxPackedValue(field);
+                    if (result == null) {
+                        result = packedValue.clone();
+                        continue;
+                    }
+                    for (int dim = 0; dim < numDims; dim++) {
+                        final int offset = dim * bytesPerDim;
+                        final int cmp = StringHelper.compare(bytesPerDim, packedValue, offset, result, offset);
+                        if (min ? cmp < 0 : cmp > 0) {
+                            System.arraycopy(packedValue, offset, result, offset, bytesPerDim);
+                        }
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            public int getNumDimensions(String field) throws IOException {
+                final FieldInfo fi = fieldInfos.fieldInfo(field);
+                return fi == null ? 0 : fi.getPointDimensionCount();
+            }
+
+            @Override
+            public int getBytesPerDimension(String field) throws IOException {
+                final FieldInfo fi = fieldInfos.fieldInfo(field);
+                return fi == null ? 0 : fi.getPointNumBytes();
+            }
+
+            @Override
+            public long size(String field) {
+                long size = 0;
+                for (int i = 0; i < readers.size(); i++) {
+                    final PointValues values = pointValues(i, field);
+                    if (values != null) {
+                        size += values.size(field);
+                    }
+                }
+                return size;
+            }
+
+            @Override
+            public int getDocCount(String field) {
+                int docCount = 0;
+                for (int i = 0; i < readers.size(); i++) {
+                    final PointValues values = pointValues(i, field);
+                    if (values != null) {
+                        docCount += values.getDocCount(field);
+                    }
+                }
+                return docCount;
+            }
+        }
+    }
+}
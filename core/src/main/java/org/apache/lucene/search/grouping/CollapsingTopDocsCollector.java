@@ -0,0 +1,262 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.lucene.search.grouping;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.CollapseTopFieldDocs;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+
+import static org.apache.lucene.search.SortField.Type.SCORE;
+
+/**
+ * A collector that groups documents based on field values and returns {@link CollapseTopFieldDocs}
+ * output. The collapsing is done in a single pass by selecting only the top sorted document per collapse key.
+ * The value used for the collapse key of each group can be found in {@link CollapseTopFieldDocs#collapseValues}.
+ * <p>
+ * This collector lives in the grouping package since it needs the document id of the top document of each group,
+ * which the first pass grouping collector only exposes to its own package.
+ */
+public abstract class CollapsingTopDocsCollector<T> extends AbstractFirstPassGroupingCollector<T> {
+    protected final String collapseField;
+
+    protected final Sort sort;
+    protected Scorer scorer;
+
+    private int totalHitCount;
+    private float maxScore;
+    private final boolean trackMaxScore;
+
+    private CollapsingTopDocsCollector(String collapseField, Sort sort, int topN, boolean trackMaxScore) throws IOException {
+        super(sort, topN);
+        this.collapseField = collapseField;
+        this.trackMaxScore = trackMaxScore;
+        if (trackMaxScore) {
+            maxScore = Float.NEGATIVE_INFINITY;
+        } else {
+            maxScore = Float.NaN;
+        }
+        this.sort = sort;
+    }
+
+    /**
+     * Transform {@link AbstractFirstPassGroupingCollector#getTopGroups(int, boolean)} output in
+     * {@link CollapseTopFieldDocs}. The collapsing needs only one pass so we can create the final top docs at the end
+     * of the first pass.
+     */
+    public CollapseTopFieldDocs getTopDocs() {
+        Collection<SearchGroup<T>> groups = super.getTopGroups(0, true);
+        if (groups == null) {
+            return new CollapseTopFieldDocs(collapseField, totalHitCount, new ScoreDoc[0],
+                sort.getSort(), new Object[0], Float.NaN);
+        }
+        FieldDoc[] docs = new FieldDoc[groups.size()];
+        Object[] collapseValues = new Object[groups.size()];
+        int scorePos = -1;
+        for (int index = 0; index < sort.getSort().length; index++) {
+            SortField sortField = sort.getSort()[index];
+            if (sortField.getType() == SCORE) {
+                scorePos = index;
+                break;
+            }
+        }
+        int pos = 0;
+        // the top groups are returned in the order of the collected groups, which know the id of their top document
+        Iterator<CollectedSearchGroup<T>> it = orderedGroups.iterator();
+        for (SearchGroup<T> group : groups) {
+            assert it.hasNext();
+            CollectedSearchGroup<T> col = it.next();
+            float score = Float.NaN;
+            if (scorePos != -1) {
+                score = (float) group.sortValues[scorePos];
+            }
+            docs[pos] = new FieldDoc(col.topDoc, score, group.sortValues);
+            collapseValues[pos] = group.groupValue;
+            pos++;
+        }
+        return new CollapseTopFieldDocs(collapseField, totalHitCount, docs, sort.getSort(),
+            collapseValues, maxScore);
+    }
+
+    @Override
+    public boolean needsScores() {
+        return super.needsScores() || trackMaxScore;
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        super.setScorer(scorer);
+        this.scorer = scorer;
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        super.collect(doc);
+        if (trackMaxScore) {
+            maxScore = Math.max(maxScore, scorer.score());
+        }
+        totalHitCount++;
+    }
+
+    /**
+     * Create a collapsing top docs collector on a {@link org.apache.lucene.index.NumericDocValues} field.
+     * It accepts also {@link org.apache.lucene.index.SortedNumericDocValues} field but
+     * the collect will fail with an {@link IllegalStateException} if a document contains more than one value for the
+     * field.
+     *
+     * @param collapseField The sort field used to group
+     *                      documents.
+     * @param sort          The {@link Sort} used to sort the collapsed hits.
+     *                      The collapsing keeps only the top sorted document per collapsed key.
+     *                      This must be non-null, ie, if you want to groupSort by relevance
+     *                      use Sort.RELEVANCE.
+     * @param topN          How many top groups to keep.
+     * @param trackMaxScore True if the max score should be tracked.
+     * @throws IOException When I/O related errors occur
+     */
+    public static CollapsingTopDocsCollector<?> createNumeric(String collapseField, Sort sort,
+                                                              int topN, boolean trackMaxScore) throws IOException {
+        return new Numeric(collapseField, sort, topN, trackMaxScore);
+    }
+
+    /**
+     * Create a collapsing top docs collector on a {@link org.apache.lucene.index.SortedDocValues} field.
+     * It accepts also {@link org.apache.lucene.index.SortedSetDocValues} field but
+     * the collect will fail with an {@link IllegalStateException} if a document contains more than one value for the
+     * field.
+     *
+     * @param collapseField The sort field used to group
+     *                      documents.
+     * @param sort          The {@link Sort} used to sort the collapsed hits. The collapsing keeps only the top sorted
+     *                      document per collapsed key.
+     *                      This must be non-null, ie, if you want to groupSort by relevance use Sort.RELEVANCE.
+     * @param topN          How many top groups to keep.
+     * @param trackMaxScore True if the max score should be tracked.
+     * @throws IOException When I/O related errors occur
+     */
+    public static CollapsingTopDocsCollector<?> createKeyword(String collapseField, Sort sort,
+                                                              int topN, boolean trackMaxScore) throws IOException {
+        return new Keyword(collapseField, sort, topN, trackMaxScore);
+    }
+
+    private static final class Numeric extends CollapsingTopDocsCollector<Long> {
+        private NumericDocValues values;
+        private Bits docsWithField;
+        private SortedNumericDocValues multiValues;
+
+        Numeric(String collapseField, Sort sort, int topN, boolean trackMaxScore) throws IOException {
+            super(collapseField, sort, topN, trackMaxScore);
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext readerContext) throws IOException {
+            super.doSetNextReader(readerContext);
+            multiValues = DocValues.getSortedNumeric(readerContext.reader(), collapseField);
+            values = DocValues.unwrapSingleton(multiValues);
+            docsWithField = values == null ? null : DocValues.unwrapSingletonBits(multiValues);
+        }
+
+        @Override
+        protected Long getDocGroupValue(int doc) {
+            if (values != null) {
+                final long value = values.get(doc);
+                if (value == 0 && docsWithField != null && docsWithField.get(doc) == false) {
+                    return null;
+                }
+                return value;
+            }
+            multiValues.setDocument(doc);
+            final int count = multiValues.count();
+            if (count == 0) {
+                return null;
+            } else if (count > 1) {
+                throw new IllegalStateException("failed to collapse " + doc + ", the collapse field must be single valued");
+            }
+            return multiValues.valueAt(0);
+        }
+
+        @Override
+        protected Long copyDocGroupValue(Long groupValue, Long reuse) {
+            return groupValue;
+        }
+    }
+
+    private static final class Keyword extends CollapsingTopDocsCollector<BytesRef> {
+        private SortedDocValues values;
+        private SortedSetDocValues multiValues;
+
+        Keyword(String collapseField, Sort sort, int topN, boolean trackMaxScore) throws IOException {
+            super(collapseField, sort, topN, trackMaxScore);
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext readerContext) throws IOException {
+            super.doSetNextReader(readerContext);
+            multiValues = DocValues.getSortedSet(readerContext.reader(), collapseField);
+            values = DocValues.unwrapSingleton(multiValues);
+        }
+
+        @Override
+        protected BytesRef getDocGroupValue(int doc) {
+            if (values != null) {
+                final int ord = values.getOrd(doc);
+                return ord == -1 ? null : values.lookupOrd(ord);
+            }
+            multiValues.setDocument(doc);
+            final long ord = multiValues.nextOrd();
+            if (ord == SortedSetDocValues.NO_MORE_ORDS) {
+                return null;
+            } else if (multiValues.nextOrd() != SortedSetDocValues.NO_MORE_ORDS) {
+                throw new IllegalStateException("failed to collapse " + doc + ", the collapse field must be single valued");
+            }
+            return multiValues.lookupOrd(ord);
+        }
+
+        @Override
+        protected BytesRef copyDocGroupValue(BytesRef groupValue, BytesRef reuse) {
+            if (groupValue == null) {
+                return null;
+            }
+            if (reuse != null) {
+                reuse.bytes = ArrayUtil.grow(reuse.bytes, groupValue.length);
+                reuse.offset = 0;
+                reuse.length = groupValue.length;
+                System.arraycopy(groupValue.bytes, groupValue.offset, reuse.bytes, 0, groupValue.length);
+                return reuse;
+            }
+            return BytesRef.deepCopyOf(groupValue);
+        }
+    }
+}
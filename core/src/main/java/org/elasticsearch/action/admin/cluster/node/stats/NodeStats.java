@@ -19,6 +19,8 @@
 
 package org.elasticsearch.action.admin.cluster.node.stats;
 
+import org.elasticsearch.Version;
+import org.elasticsearch.action.search.SearchResponseCacheStats;
 import org.elasticsearch.action.support.nodes.BaseNodeResponse;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.Nullable;
@@ -35,6 +37,7 @@ import org.elasticsearch.monitor.fs.FsInfo;
 import org.elasticsearch.monitor.jvm.JvmStats;
 import org.elasticsearch.monitor.os.OsStats;
 import org.elasticsearch.monitor.process.ProcessStats;
+import org.elasticsearch.node.AdaptiveSelectionStats;
 import org.elasticsearch.script.ScriptStats;
 import org.elasticsearch.threadpool.ThreadPoolStats;
 import org.elasticsearch.transport.TransportStats;
@@ -85,6 +88,12 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
     @Nullable
     private IngestStats ingestStats;
 
+    @Nullable
+    private AdaptiveSelectionStats adaptiveSelectionStats;
+
+    @Nullable
+    private SearchResponseCacheStats searchResponseCacheStats;
+
     NodeStats() {
     }
 
@@ -94,7 +103,9 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
                      @Nullable AllCircuitBreakerStats breaker,
                      @Nullable ScriptStats scriptStats,
                      @Nullable DiscoveryStats discoveryStats,
-                     @Nullable IngestStats ingestStats) {
+                     @Nullable IngestStats ingestStats,
+                     @Nullable AdaptiveSelectionStats adaptiveSelectionStats,
+                     @Nullable SearchResponseCacheStats searchResponseCacheStats) {
         super(node);
         this.timestamp = timestamp;
         this.indices = indices;
@@ -109,6 +120,8 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         this.scriptStats = scriptStats;
         this.discoveryStats = discoveryStats;
         this.ingestStats = ingestStats;
+        this.adaptiveSelectionStats = adaptiveSelectionStats;
+        this.searchResponseCacheStats = searchResponseCacheStats;
     }
 
     public long getTimestamp() {
@@ -198,6 +211,16 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         return ingestStats;
     }
 
+    @Nullable
+    public AdaptiveSelectionStats getAdaptiveSelectionStats() {
+        return adaptiveSelectionStats;
+    }
+
+    @Nullable
+    public SearchResponseCacheStats getSearchResponseCacheStats() {
+        return searchResponseCacheStats;
+    }
+
     public static NodeStats readNodeStats(StreamInput in) throws IOException {
         NodeStats nodeInfo = new NodeStats();
         nodeInfo.readFrom(in);
@@ -236,6 +259,10 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         scriptStats = in.readOptionalStreamable(ScriptStats::new);
         discoveryStats = in.readOptionalStreamable(() -> new DiscoveryStats(null));
         ingestStats = in.readOptionalWriteable(IngestStats::new);
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            adaptiveSelectionStats = in.readOptionalWriteable(AdaptiveSelectionStats::new);
+            searchResponseCacheStats = in.readOptionalWriteable(SearchResponseCacheStats::new);
+        }
     }
 
     @Override
@@ -294,6 +321,10 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         out.writeOptionalStreamable(scriptStats);
         out.writeOptionalStreamable(discoveryStats);
         out.writeOptionalWriteable(ingestStats);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeOptionalWriteable(adaptiveSelectionStats);
+            out.writeOptionalWriteable(searchResponseCacheStats);
+        }
     }
 
     @Override
@@ -358,6 +389,12 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         if (getIngestStats() != null) {
             getIngestStats().toXContent(builder, params);
         }
+        if (getAdaptiveSelectionStats() != null) {
+            getAdaptiveSelectionStats().toXContent(builder, params);
+        }
+        if (getSearchResponseCacheStats() != null) {
+            getSearchResponseCacheStats().toXContent(builder, params);
+        }
 
         return builder;
     }
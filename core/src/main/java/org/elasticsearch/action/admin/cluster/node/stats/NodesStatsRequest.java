@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.admin.cluster.node.stats;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.admin.indices.stats.CommonStatsFlags;
 import org.elasticsearch.action.support.nodes.BaseNodesRequest;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -43,6 +44,8 @@ public class NodesStatsRequest extends BaseNodesRequest<NodesStatsRequest> {
     private boolean script;
     private boolean discovery;
     private boolean ingest;
+    private boolean adaptiveSelection;
+    private boolean searchResponseCache;
 
     public NodesStatsRequest() {
     }
@@ -71,6 +74,8 @@ public class NodesStatsRequest extends BaseNodesRequest<NodesStatsRequest> {
         this.script = true;
         this.discovery = true;
         this.ingest = true;
+        this.adaptiveSelection = true;
+        this.searchResponseCache = true;
         return this;
     }
 
@@ -90,6 +95,8 @@ public class NodesStatsRequest extends BaseNodesRequest<NodesStatsRequest> {
         this.script = false;
         this.discovery = false;
         this.ingest = false;
+        this.adaptiveSelection = false;
+        this.searchResponseCache = false;
         return this;
     }
 
@@ -265,6 +272,30 @@ public class NodesStatsRequest extends BaseNodesRequest<NodesStatsRequest> {
         return this;
     }
 
+    public boolean adaptiveSelection() {
+        return adaptiveSelection;
+    }
+
+    /**
+     * Should adaptive replica selection statistics be returned.
+     */
+    public NodesStatsRequest adaptiveSelection(boolean adaptiveSelection) {
+        this.adaptiveSelection = adaptiveSelection;
+        return this;
+    }
+
+    public boolean searchResponseCache() {
+        return searchResponseCache;
+    }
+
+    /**
+     * Should the search response cache statistics be returned.
+     */
+    public NodesStatsRequest searchResponseCache(boolean searchResponseCache) {
+        this.searchResponseCache = searchResponseCache;
+        return this;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
@@ -280,6 +311,10 @@ public class NodesStatsRequest extends BaseNodesRequest<NodesStatsRequest> {
         script = in.readBoolean();
         discovery = in.readBoolean();
         ingest = in.readBoolean();
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            adaptiveSelection = in.readBoolean();
+            searchResponseCache = in.readBoolean();
+        }
     }
 
     @Override
@@ -297,6 +332,10 @@ public class NodesStatsRequest extends BaseNodesRequest<NodesStatsRequest> {
         out.writeBoolean(script);
         out.writeBoolean(discovery);
         out.writeBoolean(ingest);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeBoolean(adaptiveSelection);
+            out.writeBoolean(searchResponseCache);
+        }
     }
 
 }
@@ -145,4 +145,20 @@ public class NodesStatsRequestBuilder extends NodesOperationRequestBuilder<Nodes
         request.ingest(ingest);
         return this;
     }
+
+    /**
+     * Should adaptive replica selection statistics be returned.
+     */
+    public NodesStatsRequestBuilder setAdaptiveSelection(boolean adaptiveSelection) {
+        request.adaptiveSelection(adaptiveSelection);
+        return this;
+    }
+
+    /**
+     * Should the search response cache statistics be returned.
+     */
+    public NodesStatsRequestBuilder setSearchResponseCache(boolean searchResponseCache) {
+        request.searchResponseCache(searchResponseCache);
+        return this;
+    }
 }
@@ -20,6 +20,7 @@
 package org.elasticsearch.action.bulk;
 
 import org.elasticsearch.action.support.replication.ReplicatedWriteRequest;
+import org.elasticsearch.action.support.replication.ReplicationRequest;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.index.shard.ShardId;
@@ -59,6 +60,16 @@ public class BulkShardRequest extends ReplicatedWriteRequest<BulkShardRequest> {
         return indices.toArray(new String[indices.size()]);
     }
 
+    @Override
+    public void onRetry() {
+        for (BulkItemRequest item : items) {
+            if (item != null && item.request() instanceof ReplicationRequest) {
+                // the items need to know about the retry as well, see IndexRequest#isRetry()
+                ((ReplicationRequest<?>) item.request()).onRetry();
+            }
+        }
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
@@ -51,6 +51,7 @@ import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.DocumentMapperForType;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
@@ -61,6 +62,9 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportRequestOptions;
 import org.elasticsearch.transport.TransportService;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.elasticsearch.action.support.replication.ReplicationOperation.ignoreReplicaException;
@@ -113,6 +117,10 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         final IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
         final IndexMetaData metaData = indexService.getIndexSettings().getIndexMetaData();
 
+        if (canExecuteAsBatch(request)) {
+            return executeBatchOnPrimary(request, indexShard);
+        }
+
         long[] preVersions = new long[request.items().length];
         VersionType[] preVersionTypes = new VersionType[request.items().length];
         Translog.Location location = null;
@@ -130,6 +138,154 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         return new WriteResult<>(response, location);
     }
 
+    /**
+     * Returns <code>true</code> if the request only holds index and delete items, which can be executed as one batch. Updates have to
+     * read the current document before they are executed and are therefore executed item by item.
+     */
+    private static boolean canExecuteAsBatch(BulkShardRequest request) {
+        if (request.items().length < 2) {
+            return false;
+        }
+        for (BulkItemRequest item : request.items()) {
+            if (item == null || (item.request() instanceof IndexRequest == false && item.request() instanceof DeleteRequest == false)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prepares all items of the request, resolving the document mapper of each type only once, and executes them as a single batch
+     * on the shard, see {@link IndexShard#executeBatch(List)}.
+     */
+    private WriteResult<BulkShardResponse> executeBatchOnPrimary(BulkShardRequest request, IndexShard indexShard) throws Exception {
+        final BulkItemRequest[] items = request.items();
+        final List<Engine.Operation> operations = new ArrayList<>(items.length);
+        final List<Integer> slots = new ArrayList<>(items.length);
+        final Map<String, DocumentMapperForType> docMappers = new HashMap<>();
+        for (int requestIndex = 0; requestIndex < items.length; requestIndex++) {
+            final BulkItemRequest item = items[requestIndex];
+            try {
+                if (item.request() instanceof IndexRequest) {
+                    final IndexRequest indexRequest = (IndexRequest) item.request();
+                    DocumentMapperForType docMapper = docMappers.get(indexRequest.type());
+                    if (docMapper == null) {
+                        docMapper = indexShard.mapperService().documentMapperWithAutoCreate(indexRequest.type());
+                    }
+                    final Engine.Index operation = TransportIndexAction.prepareIndexOperationOnPrimary(indexRequest, indexShard,
+                        mappingUpdatedAction, docMapper);
+                    if (docMapper.getMapping() == null && operation.parsedDoc().dynamicMappingsUpdate() == null) {
+                        docMappers.put(indexRequest.type(), docMapper);
+                    } else {
+                        // the mapping of the type was created or updated, resolve it again for the next document
+                        docMappers.remove(indexRequest.type());
+                    }
+                    operations.add(operation);
+                } else {
+                    final DeleteRequest deleteRequest = (DeleteRequest) item.request();
+                    operations.add(indexShard.prepareDeleteOnPrimary(deleteRequest.type(), deleteRequest.id(), deleteRequest.version(),
+                        deleteRequest.versionType()));
+                }
+                slots.add(requestIndex);
+            } catch (Throwable e) {
+                // nothing was executed yet, so there are no versions to restore if we retry on the primary
+                if (retryPrimaryException(e)) {
+                    throw (ElasticsearchException) e;
+                }
+                setBatchItemFailure(request, item, e);
+            }
+        }
+
+        final long[] preVersions = new long[items.length];
+        final VersionType[] preVersionTypes = new VersionType[items.length];
+        for (int requestIndex = 0; requestIndex < items.length; requestIndex++) {
+            if (items[requestIndex].request() instanceof IndexRequest) {
+                final IndexRequest indexRequest = (IndexRequest) items[requestIndex].request();
+                preVersions[requestIndex] = indexRequest.version();
+                preVersionTypes[requestIndex] = indexRequest.versionType();
+            } else {
+                final DeleteRequest deleteRequest = (DeleteRequest) items[requestIndex].request();
+                preVersions[requestIndex] = deleteRequest.version();
+                preVersionTypes[requestIndex] = deleteRequest.versionType();
+            }
+        }
+        final Throwable[] failures = indexShard.executeBatch(operations);
+        Throwable retryFailure = null;
+        Translog.Location location = null;
+        for (int i = 0; i < failures.length; i++) {
+            final BulkItemRequest item = items[slots.get(i)];
+            final Engine.Operation operation = operations.get(i);
+            if (failures[i] != null && retryPrimaryException(failures[i])) {
+                // the whole request is retried on the primary, but we still record the responses of the operations that were
+                // executed so that their version conflicts on the retry resolve to these responses like in the per item path
+                if (retryFailure == null) {
+                    retryFailure = failures[i];
+                }
+            } else if (failures[i] != null) {
+                setBatchItemFailure(request, item, failures[i]);
+            } else if (item.request() instanceof IndexRequest) {
+                final IndexRequest indexRequest = (IndexRequest) item.request();
+                final Engine.Index index = (Engine.Index) operation;
+                final WriteResult<IndexResponse> result = TransportIndexAction.finishIndexOnPrimary(indexRequest, indexShard, index,
+                    index.isCreated());
+                location = maxLocation(location, result.getLocation());
+                setResponse(item, new BulkItemResponse(item.id(), indexRequest.opType().lowercase(), result.getResponse()));
+            } else {
+                final DeleteRequest deleteRequest = (DeleteRequest) item.request();
+                final WriteResult<DeleteResponse> result = TransportDeleteAction.finishDeleteOnPrimary(deleteRequest, indexShard,
+                    (Engine.Delete) operation);
+                location = maxLocation(location, result.getLocation());
+                setResponse(item, new BulkItemResponse(item.id(), OP_TYPE_DELETE, result.getResponse()));
+            }
+        }
+        if (retryFailure != null) {
+            // restore the versions that finishing the executed operations updated for the replicas
+            for (int requestIndex = 0; requestIndex < items.length; requestIndex++) {
+                if (items[requestIndex].request() instanceof IndexRequest) {
+                    ((IndexRequest) items[requestIndex].request()).version(preVersions[requestIndex])
+                        .versionType(preVersionTypes[requestIndex]);
+                } else {
+                    ((DeleteRequest) items[requestIndex].request()).version(preVersions[requestIndex])
+                        .versionType(preVersionTypes[requestIndex]);
+                }
+            }
+            throw (ElasticsearchException) retryFailure;
+        }
+
+        BulkItemResponse[] responses = new BulkItemResponse[items.length];
+        for (int i = 0; i < items.length; i++) {
+            responses[i] = items[i].getPrimaryResponse();
+        }
+        return new WriteResult<>(new BulkShardResponse(request.shardId(), responses), location);
+    }
+
+    private void setBatchItemFailure(BulkShardRequest request, BulkItemRequest item, Throwable e) {
+        final String opType;
+        final String type;
+        final String id;
+        if (item.request() instanceof IndexRequest) {
+            final IndexRequest indexRequest = (IndexRequest) item.request();
+            logFailure(e, "index", request.shardId(), indexRequest);
+            opType = indexRequest.opType().lowercase();
+            type = indexRequest.type();
+            id = indexRequest.id();
+        } else {
+            final DeleteRequest deleteRequest = (DeleteRequest) item.request();
+            logFailure(e, "delete", request.shardId(), deleteRequest);
+            opType = OP_TYPE_DELETE;
+            type = deleteRequest.type();
+            id = deleteRequest.id();
+        }
+        // if its a conflict failure, and we already executed the request on a primary (and we execute it
+        // again, due to primary relocation and only processing up to N bulk items when the shard gets closed)
+        // then just use the response we got from the successful execution
+        if (item.getPrimaryResponse() != null && isConflictException(e)) {
+            setResponse(item, item.getPrimaryResponse());
+        } else {
+            setResponse(item, new BulkItemResponse(item.id(), opType, new BulkItemResponse.Failure(request.index(), type, id, e)));
+        }
+    }
+
     private Translog.Location handleItem(IndexMetaData metaData, BulkShardRequest request, IndexShard indexShard, long[] preVersions, VersionType[] preVersionTypes, Translog.Location location, int requestIndex, BulkItemRequest item) {
         if (item.request() instanceof IndexRequest) {
             location = index(metaData, request, indexShard, preVersions, preVersionTypes, location, requestIndex, item);
@@ -438,6 +594,9 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
 
     @Override
     protected Location onReplicaShard(BulkShardRequest request, IndexShard indexShard) {
+        if (canExecuteAsBatch(request)) {
+            return executeBatchOnReplica(request, indexShard);
+        }
         Translog.Location location = null;
         for (int i = 0; i < request.items().length; i++) {
             BulkItemRequest item = request.items()[i];
@@ -476,6 +635,42 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         return location;
     }
 
+    private Location executeBatchOnReplica(BulkShardRequest request, IndexShard indexShard) {
+        final List<Engine.Operation> operations = new ArrayList<>(request.items().length);
+        for (BulkItemRequest item : request.items()) {
+            if (item.isIgnoreOnReplica()) {
+                continue;
+            }
+            try {
+                if (item.request() instanceof IndexRequest) {
+                    operations.add(TransportIndexAction.prepareIndexOperationOnReplica((IndexRequest) item.request(), indexShard));
+                } else {
+                    final DeleteRequest deleteRequest = (DeleteRequest) item.request();
+                    operations.add(indexShard.prepareDeleteOnReplica(deleteRequest.type(), deleteRequest.id(), deleteRequest.version(),
+                        deleteRequest.versionType()));
+                }
+            } catch (Throwable e) {
+                // if its not an ignore replica failure, we need to make sure to bubble up the failure
+                // so we will fail the shard
+                if (!ignoreReplicaException(e)) {
+                    throw e;
+                }
+            }
+        }
+        final Throwable[] failures = indexShard.executeBatch(operations);
+        Translog.Location location = null;
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] == null) {
+                location = maxLocation(location, operations.get(i).getTranslogLocation());
+            } else if (!ignoreReplicaException(failures[i])) {
+                // if its not an ignore replica failure, we need to make sure to bubble up the failure
+                // so we will fail the shard
+                throw ExceptionsHelper.convertToRuntime(failures[i]);
+            }
+        }
+        return location;
+    }
+
     private void applyVersion(BulkItemRequest item, long version, VersionType versionType) {
         if (item.request() instanceof IndexRequest) {
             ((IndexRequest) item.request()).version(version).versionType(versionType);
@@ -498,4 +693,10 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         assert current == null || current.compareTo(next) < 0 : "translog locations are not increasing";
         return next;
     }
+
+    /** batches are executed in uid order so the translog locations of their items are not increasing in item order */
+    private static Translog.Location maxLocation(Translog.Location current, Translog.Location next) {
+        assert next != null : "next operation can't be null";
+        return current == null || current.compareTo(next) < 0 ? next : current;
+    }
 }
@@ -130,6 +130,13 @@ public class TransportDeleteAction extends TransportWriteAction<DeleteRequest, D
     public static WriteResult<DeleteResponse> executeDeleteRequestOnPrimary(DeleteRequest request, IndexShard indexShard) {
         Engine.Delete delete = indexShard.prepareDeleteOnPrimary(request.type(), request.id(), request.version(), request.versionType());
         indexShard.delete(delete);
+        return finishDeleteOnPrimary(request, indexShard, delete);
+    }
+
+    /**
+     * Updates the request with the version of a delete operation that was executed on the primary and builds its response.
+     */
+    public static WriteResult<DeleteResponse> finishDeleteOnPrimary(DeleteRequest request, IndexShard indexShard, Engine.Delete delete) {
         // update the request with the version so it will go to the replicas
         request.versionType(delete.versionType().versionTypeForReplicationAndRecovery());
         request.version(delete.version());
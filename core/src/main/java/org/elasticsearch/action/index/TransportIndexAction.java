@@ -36,9 +36,11 @@ import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.DocumentMapperForType;
 import org.elasticsearch.index.mapper.Mapping;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.shard.IndexShard;
@@ -153,16 +155,26 @@ public class TransportIndexAction extends TransportWriteAction<IndexRequest, Ind
      * {@link RetryOnReplicaException} if the operation needs to be re-tried.
      */
     public static Engine.Index executeIndexRequestOnReplica(IndexRequest request, IndexShard indexShard) {
+        final Engine.Index operation = prepareIndexOperationOnReplica(request, indexShard);
+        indexShard.index(operation);
+        return operation;
+    }
+
+    /**
+     * Prepares the given {@link IndexRequest} for execution on a replica shard, throwing a
+     * {@link RetryOnReplicaException} if the operation needs to be re-tried.
+     */
+    public static Engine.Index prepareIndexOperationOnReplica(IndexRequest request, IndexShard indexShard) {
         final ShardId shardId = indexShard.shardId();
         SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.REPLICA, shardId.getIndexName(), request.type(), request.id(), request.source())
                 .routing(request.routing()).parent(request.parent()).timestamp(request.timestamp()).ttl(request.ttl());
 
-        final Engine.Index operation = indexShard.prepareIndexOnReplica(sourceToParse, request.version(), request.versionType());
+        final Engine.Index operation = indexShard.prepareIndexOnReplica(sourceToParse, request.version(), request.versionType(),
+            request.getAutoGeneratedTimestamp(), request.isRetry());
         Mapping update = operation.parsedDoc().dynamicMappingsUpdate();
         if (update != null) {
             throw new RetryOnReplicaException(shardId, "Mappings are not available on the replica yet, triggered update: " + update);
         }
-        indexShard.index(operation);
         return operation;
     }
 
@@ -170,12 +182,34 @@ public class TransportIndexAction extends TransportWriteAction<IndexRequest, Ind
     public static Engine.Index prepareIndexOperationOnPrimary(IndexRequest request, IndexShard indexShard) {
         SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.PRIMARY, request.index(), request.type(), request.id(), request.source())
             .routing(request.routing()).parent(request.parent()).timestamp(request.timestamp()).ttl(request.ttl());
-        return indexShard.prepareIndexOnPrimary(sourceToParse, request.version(), request.versionType());
+        return indexShard.prepareIndexOnPrimary(sourceToParse, request.version(), request.versionType(),
+            request.getAutoGeneratedTimestamp(), request.isRetry());
+    }
+
+    /** Utility method to prepare an index operation on primary shards with an already resolved document mapper */
+    public static Engine.Index prepareIndexOperationOnPrimary(IndexRequest request, IndexShard indexShard, DocumentMapperForType docMapper) {
+        SourceToParse sourceToParse = SourceToParse.source(SourceToParse.Origin.PRIMARY, request.index(), request.type(), request.id(), request.source())
+            .routing(request.routing()).parent(request.parent()).timestamp(request.timestamp()).ttl(request.ttl());
+        return indexShard.prepareIndexOnPrimary(docMapper, sourceToParse, request.version(), request.versionType(),
+            request.getAutoGeneratedTimestamp(), request.isRetry());
     }
 
     public static WriteResult<IndexResponse> executeIndexRequestOnPrimary(IndexRequest request, IndexShard indexShard,
             MappingUpdatedAction mappingUpdatedAction) throws Exception {
-        Engine.Index operation = prepareIndexOperationOnPrimary(request, indexShard);
+        Engine.Index operation = prepareIndexOperationOnPrimary(request, indexShard, mappingUpdatedAction, null);
+        final boolean created = indexShard.index(operation);
+        return finishIndexOnPrimary(request, indexShard, operation, created);
+    }
+
+    /**
+     * Prepares an index operation on primary shards and updates the mappings on the master first if the document introduces new
+     * fields. The given document mapper is used for the first attempt if it is not <code>null</code>, otherwise the mapper is
+     * resolved from the shard's mapper service.
+     */
+    public static Engine.Index prepareIndexOperationOnPrimary(IndexRequest request, IndexShard indexShard,
+            MappingUpdatedAction mappingUpdatedAction, @Nullable DocumentMapperForType docMapper) throws Exception {
+        Engine.Index operation = docMapper == null ? prepareIndexOperationOnPrimary(request, indexShard) :
+            prepareIndexOperationOnPrimary(request, indexShard, docMapper);
         Mapping update = operation.parsedDoc().dynamicMappingsUpdate();
         final ShardId shardId = indexShard.shardId();
         if (update != null) {
@@ -187,8 +221,15 @@ public class TransportIndexAction extends TransportWriteAction<IndexRequest, Ind
                     "Dynamic mappings are not available on the node that holds the primary yet");
             }
         }
-        final boolean created = indexShard.index(operation);
+        return operation;
+    }
 
+    /**
+     * Updates the request with the version of an index operation that was executed on the primary and builds its response.
+     */
+    public static WriteResult<IndexResponse> finishIndexOnPrimary(IndexRequest request, IndexShard indexShard, Engine.Index operation,
+                                                                  boolean created) {
+        final ShardId shardId = indexShard.shardId();
         // update the version on request so it will happen on the replicas
         final long version = operation.version();
         request.version(version);
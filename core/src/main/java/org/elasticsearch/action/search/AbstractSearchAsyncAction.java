@@ -22,6 +22,7 @@ package org.elasticsearch.action.search;
 import com.carrotsearch.hppc.IntArrayList;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.NoShardAvailableActionException;
 import org.elasticsearch.action.support.TransportActions;
@@ -38,6 +39,7 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.search.SearchPhaseResult;
+import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.action.SearchTransportService;
 import org.elasticsearch.search.controller.SearchPhaseController;
@@ -48,6 +50,7 @@ import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.query.QuerySearchResultProvider;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -70,6 +73,7 @@ abstract class AbstractSearchAsyncAction<FirstResult extends SearchPhaseResult>
     protected final int expectedSuccessfulOps;
     private final int expectedTotalOps;
     protected final AtomicInteger successfulOps = new AtomicInteger();
+    protected final AtomicInteger skippedOps = new AtomicInteger();
     private final AtomicInteger totalOps = new AtomicInteger();
     protected final AtomicArray<FirstResult> firstResults;
     private volatile AtomicArray<ShardSearchFailure> shardFailures;
@@ -106,7 +110,8 @@ abstract class AbstractSearchAsyncAction<FirstResult extends SearchPhaseResult>
         Map<String, Set<String>> routingMap = indexNameExpressionResolver.resolveSearchRouting(clusterState, request.routing(),
             request.indices());
 
-        shardsIts = clusterService.operationRouting().searchShards(clusterState, concreteIndices, routingMap, request.preference());
+        shardsIts = clusterService.operationRouting().searchShards(clusterState, concreteIndices, routingMap, request.preference(),
+            searchTransportService.getResponseCollectorService(), new HashMap<>());
         final int shardCount = shardsIts.size();
         final long shardCountLimit = clusterService.getClusterSettings().get(TransportSearchAction.SHARD_COUNT_LIMIT_SETTING);
         if (shardCount > shardCountLimit) {
@@ -131,9 +136,119 @@ abstract class AbstractSearchAsyncAction<FirstResult extends SearchPhaseResult>
                 ShardSearchFailure.EMPTY_ARRAY));
             return;
         }
+        if (shouldPreFilterShards() || shouldCollectReaderVersions()) {
+            preFilterShards();
+        } else {
+            executeFirstPhase(null);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the shards should be asked whether they can match the request before the first phase is
+     * executed, which only pays off if the request targets many shards and its query might be rewritten to match no documents.
+     */
+    private boolean shouldPreFilterShards() {
+        return request.searchType() == SearchType.QUERY_THEN_FETCH && request.scroll() == null
+            && shardsIts.size() > request.getPreFilterShardSize() && SearchService.canRewriteToMatchNone(request.source());
+    }
+
+    /**
+     * Returns <code>true</code> if the shards should report the versions of their readers with a can_match round trip before the
+     * first phase is executed, see {@link #onReaderVersions(ShardRouting[], long[])}.
+     */
+    protected boolean shouldCollectReaderVersions() {
+        return false;
+    }
+
+    /**
+     * Called with the shard copies that were asked whether they can match the request and the versions of their readers, or
+     * <code>-1</code> for copies that couldn't tell, before the first phase is executed. Returns <code>true</code> if the request
+     * was answered without executing the first phase.
+     */
+    protected boolean onReaderVersions(ShardRouting[] shards, long[] readerVersions) {
+        return false;
+    }
+
+    /**
+     * Sends a can_match request to the first copy of every shard and executes the first phase on the shards that might match.
+     * Failures are ignored, the first phase is executed on these shards and takes care of them.
+     */
+    private void preFilterShards() {
+        final FixedBitSet possibleMatches = new FixedBitSet(shardsIts.size());
+        final ShardRouting[] shards = new ShardRouting[shardsIts.size()];
+        final long[] readerVersions = new long[shardsIts.size()];
+        final AtomicInteger counter = new AtomicInteger(shardsIts.size());
         int shardIndex = -1;
         for (final ShardIterator shardIt : shardsIts) {
             shardIndex++;
+            final int index = shardIndex;
+            final ShardRouting shard = shardIt.nextOrNull();
+            // the first phase starts over with the first copy
+            shardIt.reset();
+            shards[index] = shard;
+            final DiscoveryNode node = shard == null ? null : nodes.get(shard.currentNodeId());
+            if (node == null) {
+                onCanMatchResponse(possibleMatches, readerVersions, shards, index, true, -1, counter);
+                continue;
+            }
+            try {
+                String[] filteringAliases = indexNameExpressionResolver.filteringAliases(clusterState,
+                    shard.index().getName(), request.indices());
+                searchTransportService.sendCanMatch(node, internalSearchRequest(shard, shardsIts.size(), request, filteringAliases,
+                    startTime()), new ActionListener<SearchTransportService.CanMatchResponse>() {
+                        @Override
+                        public void onResponse(SearchTransportService.CanMatchResponse response) {
+                            onCanMatchResponse(possibleMatches, readerVersions, shards, index, response.canMatch(),
+                                response.readerVersion(), counter);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            if (logger.isTraceEnabled()) {
+                                logger.trace("{}: can_match failed for [{}]", t, shard.shortSummary(), request);
+                            }
+                            onCanMatchResponse(possibleMatches, readerVersions, shards, index, true, -1, counter);
+                        }
+                    });
+            } catch (Throwable t) {
+                onCanMatchResponse(possibleMatches, readerVersions, shards, index, true, -1, counter);
+            }
+        }
+    }
+
+    private void onCanMatchResponse(FixedBitSet possibleMatches, long[] readerVersions, ShardRouting[] shards, int shardIndex,
+                                    boolean canMatch, long readerVersion, AtomicInteger counter) {
+        synchronized (possibleMatches) {
+            if (canMatch) {
+                possibleMatches.set(shardIndex);
+            }
+            readerVersions[shardIndex] = readerVersion;
+        }
+        if (counter.decrementAndGet() == 0) {
+            synchronized (possibleMatches) {
+                if (possibleMatches.cardinality() == 0) {
+                    // we need at least one shard to build a response with the right shape, ie. empty aggregations
+                    possibleMatches.set(0);
+                }
+            }
+            if (shouldCollectReaderVersions() && onReaderVersions(shards, readerVersions)) {
+                return;
+            }
+            executeFirstPhase(possibleMatches);
+        }
+    }
+
+    /**
+     * Executes the first phase on all shards or, if given, on the shards that might match and skips the others.
+     */
+    private void executeFirstPhase(@Nullable FixedBitSet possibleMatches) {
+        int shardIndex = -1;
+        for (final ShardIterator shardIt : shardsIts) {
+            shardIndex++;
+            if (possibleMatches != null && possibleMatches.get(shardIndex) == false) {
+                onShardSkipped(shardIt);
+                continue;
+            }
             final ShardRouting shard = shardIt.nextOrNull();
             if (shard != null) {
                 performFirstPhase(shardIndex, shardIt, shard);
@@ -174,13 +289,25 @@ abstract class AbstractSearchAsyncAction<FirstResult extends SearchPhaseResult>
     void onFirstPhaseResult(int shardIndex, ShardRouting shard, FirstResult result, ShardIterator shardIt) {
         result.shardTarget(new SearchShardTarget(shard.currentNodeId(), shard.index(), shard.id()));
         processFirstPhaseResult(shardIndex, result);
+        onShardSuccess(shardIt, shardIt.remaining() + 1);
+    }
+
+    /**
+     * A shard that can't match any documents is counted as a successful shard without executing the first phase on it.
+     */
+    private void onShardSkipped(ShardIterator shardIt) {
+        skippedOps.incrementAndGet();
+        onShardSuccess(shardIt, shardIt.remaining());
+    }
+
+    private void onShardSuccess(ShardIterator shardIt, int numOps) {
         // we need to increment successful ops first before we compare the exit condition otherwise if we
         // are fast we could concurrently update totalOps but then preempt one of the threads which can
         // cause the successor to read a wrong value from successfulOps if second phase is very fast ie. count etc.
         successfulOps.incrementAndGet();
         // increment all the "future" shards to update the total ops since we some may work and some may not...
         // and when that happens, we break on total ops, so we must maintain them
-        final int xTotalOps = totalOps.addAndGet(shardIt.remaining() + 1);
+        final int xTotalOps = totalOps.addAndGet(numOps);
         if (xTotalOps == expectedTotalOps) {
             try {
                 innerMoveToSecondPhase();
@@ -360,6 +487,7 @@ abstract class AbstractSearchAsyncAction<FirstResult extends SearchPhaseResult>
 
     protected final void processFirstPhaseResult(int shardIndex, FirstResult result) {
         firstResults.set(shardIndex, result);
+        consumeFirstPhaseResult(shardIndex, result);
 
         if (logger.isTraceEnabled()) {
             logger.trace("got first-phase result from {}", result != null ? result.shardTarget() : null);
@@ -374,6 +502,13 @@ abstract class AbstractSearchAsyncAction<FirstResult extends SearchPhaseResult>
         }
     }
 
+    /**
+     * Called with every successful first phase result before the phase is checked for completion, a hook for actions that
+     * reduce results as they arrive.
+     */
+    protected void consumeFirstPhaseResult(int shardIndex, FirstResult result) {
+    }
+
     final void innerMoveToSecondPhase() throws Exception {
         if (logger.isTraceEnabled()) {
             StringBuilder sb = new StringBuilder();
@@ -0,0 +1,187 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.collapse.CollapseBuilder;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.sort.SortBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Expands the collapsed hits of a search response to the top hits of their groups. Once the collapsed hits are known, a multi
+ * search with one search per hit retrieves the inner hits of every group in a single batch, each search filters the original
+ * query with the collapse value of its hit.
+ */
+final class ExpandCollapseSearchResponseListener implements ActionListener<SearchResponse> {
+
+    private final SearchRequest searchRequest;
+    private final ActionListener<SearchResponse> listener;
+    private final BiConsumer<MultiSearchRequest, ActionListener<MultiSearchResponse>> multiSearch;
+
+    /**
+     * @param multiSearch executes the multi search that retrieves the inner hits of all groups
+     */
+    ExpandCollapseSearchResponseListener(SearchRequest searchRequest, ActionListener<SearchResponse> listener,
+                                         BiConsumer<MultiSearchRequest, ActionListener<MultiSearchResponse>> multiSearch) {
+        assert isCollapseRequest(searchRequest);
+        this.searchRequest = searchRequest;
+        this.listener = listener;
+        this.multiSearch = multiSearch;
+    }
+
+    /**
+     * Returns <code>true</code> iff the request collapses its hits and asks for the inner hits of every group.
+     */
+    static boolean isCollapseRequest(SearchRequest searchRequest) {
+        return searchRequest.source() != null &&
+            searchRequest.source().collapse() != null &&
+            searchRequest.source().collapse().getInnerHit() != null;
+    }
+
+    @Override
+    public void onResponse(SearchResponse searchResponse) {
+        final InternalSearchHits hits = (InternalSearchHits) searchResponse.getHits();
+        if (hits.internalHits().length == 0) {
+            listener.onResponse(searchResponse);
+            return;
+        }
+        final CollapseBuilder collapseBuilder = searchRequest.source().collapse();
+        final MultiSearchRequest multiRequest = new MultiSearchRequest();
+        if (collapseBuilder.getMaxConcurrentGroupRequests() > 0) {
+            multiRequest.maxConcurrentSearchRequests(collapseBuilder.getMaxConcurrentGroupRequests());
+        }
+        for (InternalSearchHit hit : hits.internalHits()) {
+            multiRequest.add(buildGroupRequest(collapseBuilder, collapseValue(hit, collapseBuilder.getField())));
+        }
+        multiSearch.accept(multiRequest, new ActionListener<MultiSearchResponse>() {
+            @Override
+            public void onResponse(MultiSearchResponse response) {
+                final MultiSearchResponse.Item[] items = response.getResponses();
+                final String innerHitName = innerHitName(collapseBuilder);
+                for (int i = 0; i < items.length; i++) {
+                    final MultiSearchResponse.Item item = items[i];
+                    if (item.isFailure()) {
+                        listener.onFailure(item.getFailure());
+                        return;
+                    }
+                    final InternalSearchHit hit = hits.internalHits()[i];
+                    final Map<String, InternalSearchHits> innerHits = new HashMap<>();
+                    if (hit.getInnerHits() != null) {
+                        hit.getInnerHits().forEach((name, innerHit) -> innerHits.put(name, (InternalSearchHits) innerHit));
+                    }
+                    innerHits.put(innerHitName, (InternalSearchHits) item.getResponse().getHits());
+                    hit.setInnerHits(innerHits);
+                }
+                listener.onResponse(searchResponse);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    @Override
+    public void onFailure(Throwable e) {
+        listener.onFailure(e);
+    }
+
+    private static Object collapseValue(InternalSearchHit hit, String collapseField) {
+        // the shards return the collapse value of every hit, see SearchService#parseSource
+        final SearchHitField field = hit.field(collapseField);
+        return field == null ? null : field.getValue();
+    }
+
+    private static String innerHitName(CollapseBuilder collapseBuilder) {
+        final String name = collapseBuilder.getInnerHit().getName();
+        return name == null ? collapseBuilder.getField() : name;
+    }
+
+    private SearchRequest buildGroupRequest(CollapseBuilder collapseBuilder, Object collapseValue) {
+        final SearchSourceBuilder source = searchRequest.source();
+        final BoolQueryBuilder groupQuery = QueryBuilders.boolQuery();
+        if (collapseValue != null) {
+            groupQuery.filter(QueryBuilders.termQuery(collapseBuilder.getField(), collapseValue));
+        } else {
+            // hits without a value are collapsed into the same group
+            groupQuery.mustNot(QueryBuilders.existsQuery(collapseBuilder.getField()));
+        }
+        final QueryBuilder origQuery = source.query();
+        if (origQuery != null) {
+            groupQuery.must(origQuery);
+        }
+        final SearchSourceBuilder groupSource = buildGroupSource(collapseBuilder.getInnerHit())
+            .query(groupQuery)
+            .postFilter(source.postFilter());
+        final SearchRequest groupRequest = new SearchRequest(searchRequest.indices())
+            .types(searchRequest.types())
+            .source(groupSource)
+            .routing(searchRequest.routing())
+            .preference(searchRequest.preference())
+            .indicesOptions(searchRequest.indicesOptions());
+        return groupRequest;
+    }
+
+    private static SearchSourceBuilder buildGroupSource(InnerHitBuilder options) {
+        final SearchSourceBuilder groupSource = new SearchSourceBuilder()
+            .from(options.getFrom())
+            .size(options.getSize())
+            .explain(options.isExplain())
+            .version(options.isVersion())
+            .trackScores(options.isTrackScores());
+        if (options.getSorts() != null) {
+            for (SortBuilder<?> sort : options.getSorts()) {
+                groupSource.sort(sort);
+            }
+        }
+        if (options.getFetchSourceContext() != null) {
+            groupSource.fetchSource(options.getFetchSourceContext());
+        }
+        if (options.getFieldNames() != null) {
+            groupSource.fields(options.getFieldNames());
+        }
+        if (options.getFieldDataFields() != null) {
+            for (String field : options.getFieldDataFields()) {
+                groupSource.fieldDataField(field);
+            }
+        }
+        if (options.getScriptFields() != null) {
+            for (SearchSourceBuilder.ScriptField field : options.getScriptFields()) {
+                groupSource.scriptField(field.fieldName(), field.script(), field.ignoreFailure());
+            }
+        }
+        if (options.getHighlightBuilder() != null) {
+            groupSource.highlighter(options.getHighlightBuilder());
+        }
+        return groupSource;
+    }
+}
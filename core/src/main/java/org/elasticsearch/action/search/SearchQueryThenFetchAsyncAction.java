@@ -20,39 +20,101 @@
 package org.elasticsearch.action.search;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectHashMap;
 import org.apache.lucene.search.ScoreDoc;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRunnable;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.action.SearchTransportService;
 import org.elasticsearch.search.controller.SearchPhaseController;
 import org.elasticsearch.search.fetch.FetchSearchResult;
+import org.elasticsearch.search.fetch.QueryFetchSearchResult;
 import org.elasticsearch.search.fetch.ShardFetchSearchRequest;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
 import org.elasticsearch.search.internal.InternalSearchResponse;
 import org.elasticsearch.search.internal.ShardSearchTransportRequest;
+import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.query.QuerySearchResultProvider;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySearchResultProvider> {
 
     final AtomicArray<FetchSearchResult> fetchResults;
     final AtomicArray<IntArrayList> docIdsToLoad;
+    @Nullable
+    final SearchPhaseController.QueryPhaseResultConsumer queryResultConsumer;
+    /**
+     * Whether the shards fetch their top hits along with the query phase, see
+     * {@link TransportSearchAction#SINGLE_ROUND_TRIP_MAX_SIZE_SETTING}.
+     */
+    final boolean singleRoundTrip;
+    /**
+     * The top hits that the shards fetched along with the query phase, only set for shards that fetched all of their top hits.
+     */
+    final AtomicArray<ShardTopHits> topHits;
+    final SearchResponseCache responseCache;
+    final boolean useResponseCache;
+    /**
+     * The key to cache the response under and the shard copies and reader versions it was built from, only set if all shards
+     * reported the version of their reader and the response wasn't cached yet.
+     */
+    private volatile SearchResponseCache.Key responseCacheKey;
+    private volatile ShardRouting[] responseCacheShards;
+    private volatile long[] responseCacheReaderVersions;
 
     SearchQueryThenFetchAsyncAction(ESLogger logger, SearchTransportService searchService,
                                             ClusterService clusterService, IndexNameExpressionResolver indexNameExpressionResolver,
                                             SearchPhaseController searchPhaseController, ThreadPool threadPool,
-                                            SearchRequest request, ActionListener<SearchResponse> listener) {
+                                            SearchRequest request, boolean singleRoundTrip, SearchResponseCache responseCache,
+                                            ActionListener<SearchResponse> listener) {
         super(logger, searchService, clusterService, indexNameExpressionResolver, searchPhaseController, threadPool, request, listener);
         fetchResults = new AtomicArray<>(firstResults.length());
         docIdsToLoad = new AtomicArray<>(firstResults.length());
+        queryResultConsumer = searchPhaseController.newQueryPhaseResultConsumer(request, firstResults.length());
+        this.singleRoundTrip = singleRoundTrip;
+        topHits = new AtomicArray<>(singleRoundTrip ? firstResults.length() : 0);
+        this.responseCache = responseCache;
+        useResponseCache = SearchResponseCache.canCache(request);
+    }
+
+    @Override
+    protected boolean shouldCollectReaderVersions() {
+        return useResponseCache;
+    }
+
+    @Override
+    protected boolean onReaderVersions(ShardRouting[] shards, long[] readerVersions) {
+        final SearchResponseCache.Key key;
+        final SearchResponseCache.CachedResponse cached;
+        try {
+            key = SearchResponseCache.buildKey(request, clusterState, shards, readerVersions);
+            cached = key == null ? null : responseCache.get(key);
+        } catch (IOException e) {
+            logger.debug("failed to look up the cached response of [{}]", e, request);
+            return false;
+        }
+        if (cached == null) {
+            responseCacheShards = shards;
+            responseCacheReaderVersions = readerVersions;
+            responseCacheKey = key;
+            return false;
+        }
+        listener.onResponse(new SearchResponse(cached.response, null, expectedSuccessfulOps, expectedSuccessfulOps,
+            cached.skippedShards, buildTookInMillis(), ShardSearchFailure.EMPTY_ARRAY));
+        return true;
     }
 
     @Override
@@ -63,7 +125,30 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySea
     @Override
     protected void sendExecuteFirstPhase(DiscoveryNode node, ShardSearchTransportRequest request,
                                          ActionListener<QuerySearchResultProvider> listener) {
-        searchTransportService.sendExecuteQuery(node, request, listener);
+        if (singleRoundTrip) {
+            searchTransportService.sendExecuteQueryWithTopHits(node, request, listener);
+        } else {
+            searchTransportService.sendExecuteQuery(node, request, listener);
+        }
+    }
+
+    @Override
+    protected void consumeFirstPhaseResult(int shardIndex, QuerySearchResultProvider result) {
+        if (result.includeFetch()) {
+            // keep the top hits aside and only hold on to the query result, the docs need to be sorted like for any other
+            // query then fetch request rather than like a query and fetch request that returns the top hits of all shards
+            QuerySearchResult queryResult = result.queryResult();
+            FetchSearchResult fetchResult = ((QueryFetchSearchResult) result).fetchResult();
+            // the shard drops the hits if they exceed its byte budget, they are fetched in a separate round trip then
+            if (fetchResult.hits().internalHits().length == queryResult.topDocs().scoreDocs.length) {
+                // the consumer might trim the top docs of the shard, the hits are in the order of the untrimmed top docs
+                topHits.set(shardIndex, new ShardTopHits(queryResult.topDocs().scoreDocs, fetchResult));
+            }
+            firstResults.set(shardIndex, queryResult);
+        }
+        if (queryResultConsumer != null) {
+            queryResultConsumer.consume(shardIndex, result.queryResult());
+        }
     }
 
     @Override
@@ -80,8 +165,22 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySea
         final ScoreDoc[] lastEmittedDocPerShard = searchPhaseController.getLastEmittedDocPerShard(
             request, sortedShardList, firstResults.length()
         );
-        final AtomicInteger counter = new AtomicInteger(docIdsToLoad.asList().size());
+        final List<AtomicArray.Entry<IntArrayList>> toFetch = new ArrayList<>();
         for (AtomicArray.Entry<IntArrayList> entry : docIdsToLoad.asList()) {
+            ShardTopHits shardTopHits = singleRoundTrip ? topHits.get(entry.index) : null;
+            if (shardTopHits != null) {
+                fetchResults.set(entry.index, selectHits(shardTopHits.hits, shardTopHits.topDocs, entry.value));
+            } else {
+                toFetch.add(entry);
+            }
+        }
+        if (toFetch.isEmpty()) {
+            finishHim();
+            return;
+        }
+
+        final AtomicInteger counter = new AtomicInteger(toFetch.size());
+        for (AtomicArray.Entry<IntArrayList> entry : toFetch) {
             QuerySearchResultProvider queryResult = firstResults.get(entry.index);
             DiscoveryNode node = nodes.get(queryResult.shardTarget().nodeId());
             ShardFetchSearchRequest fetchSearchRequest = createFetchRequest(queryResult.queryResult(), entry, lastEmittedDocPerShard);
@@ -89,6 +188,57 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySea
         }
     }
 
+    /**
+     * Reduces the top hits that a shard fetched along with the query phase to the hits that made it into the global top hits,
+     * in the order of the given doc ids. The shard fetched the hits in the order of its top docs.
+     */
+    static FetchSearchResult selectHits(FetchSearchResult shardTopHits, ScoreDoc[] shardTopDocs, IntArrayList docIds) {
+        InternalSearchHit[] shardHits = shardTopHits.hits().internalHits();
+        assert shardHits.length == shardTopDocs.length;
+        IntObjectHashMap<InternalSearchHit> hitsByDocId = new IntObjectHashMap<>(shardHits.length);
+        for (int i = 0; i < shardHits.length; i++) {
+            hitsByDocId.put(shardTopDocs[i].doc, shardHits[i]);
+        }
+        InternalSearchHit[] hits = new InternalSearchHit[docIds.size()];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = hitsByDocId.get(docIds.get(i));
+            assert hits[i] != null : "doc [" + docIds.get(i) + "] is not part of the top hits of the shard";
+        }
+        InternalSearchHits searchHits = shardTopHits.hits();
+        shardTopHits.hits(new InternalSearchHits(hits, searchHits.totalHits(), searchHits.maxScore()));
+        return shardTopHits;
+    }
+
+    /**
+     * The top hits that a shard fetched along with the query phase and the top docs they were fetched for.
+     */
+    static final class ShardTopHits {
+        final ScoreDoc[] topDocs;
+        final FetchSearchResult hits;
+
+        ShardTopHits(ScoreDoc[] topDocs, FetchSearchResult hits) {
+            this.topDocs = topDocs;
+            this.hits = hits;
+        }
+    }
+
+    /**
+     * Returns the first phase results of the shards that still hold a search context. Shards that fetched their top hits
+     * along with the query phase freed their context already.
+     */
+    private AtomicArray<QuerySearchResultProvider> resultsWithOpenContext() {
+        if (singleRoundTrip == false) {
+            return firstResults;
+        }
+        AtomicArray<QuerySearchResultProvider> results = new AtomicArray<>(firstResults.length());
+        for (AtomicArray.Entry<QuerySearchResultProvider> entry : firstResults.asList()) {
+            if (topHits.get(entry.index) == null) {
+                results.set(entry.index, entry.value);
+            }
+        }
+        return results;
+    }
+
     void executeFetch(final int shardIndex, final SearchShardTarget shardTarget, final AtomicInteger counter,
                       final ShardFetchSearchRequest fetchSearchRequest, DiscoveryNode node) {
         searchTransportService.sendExecuteFetch(node, fetchSearchRequest, new ActionListener<FetchSearchResult>() {
@@ -130,14 +280,18 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySea
             @Override
             public void doRun() throws IOException {
                 final InternalSearchResponse internalResponse = searchPhaseController.merge(sortedShardList, firstResults,
-                    fetchResults);
+                    fetchResults, queryResultConsumer);
                 String scrollId = null;
                 if (request.scroll() != null) {
                     scrollId = TransportSearchHelper.buildScrollId(request.searchType(), firstResults);
                 }
+                if (responseCacheKey != null) {
+                    // before responding so that the response is reused by searches that are sent right after this one
+                    cacheResponse(internalResponse);
+                }
                 listener.onResponse(new SearchResponse(internalResponse, scrollId, expectedSuccessfulOps,
-                    successfulOps.get(), buildTookInMillis(), buildShardFailures()));
-                releaseIrrelevantSearchContexts(firstResults, docIdsToLoad);
+                    successfulOps.get(), skippedOps.get(), buildTookInMillis(), buildShardFailures()));
+                releaseIrrelevantSearchContexts(resultsWithOpenContext(), docIdsToLoad);
             }
 
             @Override
@@ -149,9 +303,33 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<QuerySea
                     }
                     super.onFailure(failure);
                 } finally {
-                    releaseIrrelevantSearchContexts(firstResults, docIdsToLoad);
+                    releaseIrrelevantSearchContexts(resultsWithOpenContext(), docIdsToLoad);
                 }
             }
         });
     }
+
+    /**
+     * Caches the response if all shards executed the request successfully on the copies and readers that the response cache key
+     * was built from. The first phase moves on to another copy if a copy fails, and a shard might have been refreshed since it
+     * reported its reader version.
+     */
+    private void cacheResponse(InternalSearchResponse response) {
+        if (response.timedOut() || successfulOps.get() != expectedSuccessfulOps) {
+            return;
+        }
+        for (AtomicArray.Entry<QuerySearchResultProvider> entry : firstResults.asList()) {
+            final QuerySearchResult result = entry.value.queryResult();
+            final ShardRouting shard = responseCacheShards[entry.index];
+            if (result.readerVersion() != responseCacheReaderVersions[entry.index]
+                    || shard.currentNodeId().equals(result.shardTarget().nodeId()) == false) {
+                return;
+            }
+        }
+        try {
+            responseCache.put(responseCacheKey, response, skippedOps.get());
+        } catch (IOException e) {
+            logger.debug("failed to cache the response of [{}]", e, request);
+        }
+    }
 }
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.search;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.action.IndicesRequest;
@@ -35,6 +36,7 @@ import org.elasticsearch.search.builder.SearchSourceBuilder;
 
 import java.io.IOException;
 
+import static org.elasticsearch.action.ValidateActions.addValidationError;
 import static org.elasticsearch.search.Scroll.readScroll;
 
 /**
@@ -63,6 +65,8 @@ public class SearchRequest extends ActionRequest<SearchRequest> implements Indic
 
     private Boolean requestCache;
 
+    private Boolean responseCache;
+
     private Scroll scroll;
 
     private String[] types = Strings.EMPTY_ARRAY;
@@ -73,6 +77,10 @@ public class SearchRequest extends ActionRequest<SearchRequest> implements Indic
 
     private Template template;
 
+    private int batchedReduceSize = 512;
+
+    private int preFilterShardSize = 128;
+
     public SearchRequest() {
     }
 
@@ -102,6 +110,22 @@ public class SearchRequest extends ActionRequest<SearchRequest> implements Indic
 //        if (source == null && extraSource == null) {
 //            validationException = addValidationError("search source is missing", validationException);
 //        }
+        if (batchedReduceSize < 2) {
+            validationException = addValidationError("batchedReduceSize must be >= 2", validationException);
+        }
+        if (preFilterShardSize < 1) {
+            validationException = addValidationError("preFilterShardSize must be >= 1", validationException);
+        }
+        if (source != null && source.collapse() != null) {
+            if (scroll != null) {
+                validationException = addValidationError("cannot use `collapse` in a scroll context", validationException);
+            }
+            if (searchType == SearchType.QUERY_AND_FETCH || searchType == SearchType.DFS_QUERY_AND_FETCH) {
+                // the shards fetch their collapsed hits before the groups are deduplicated across shards
+                validationException = addValidationError("cannot use `collapse` with search type [" + searchType + "]",
+                    validationException);
+            }
+        }
         return validationException;
     }
 
@@ -295,6 +319,63 @@ public class SearchRequest extends ActionRequest<SearchRequest> implements Indic
         return this.requestCache;
     }
 
+    /**
+     * Sets if the reduced response of this request should be cached on the coordinating node, see {@link SearchResponseCache}.
+     * Defaults to not caching the response.
+     */
+    public SearchRequest responseCache(Boolean responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    public Boolean responseCache() {
+        return this.responseCache;
+    }
+
+    /**
+     * Sets the number of shard results that should be reduced at once on the coordinating node. This value should be used as a
+     * protection mechanism to reduce the memory overhead per search request if the potential number of shards in the request can
+     * be large.
+     */
+    public SearchRequest setBatchedReduceSize(int batchedReduceSize) {
+        if (batchedReduceSize <= 1) {
+            throw new IllegalArgumentException("batchedReduceSize must be >= 2");
+        }
+        this.batchedReduceSize = batchedReduceSize;
+        return this;
+    }
+
+    /**
+     * Returns the number of shard results that should be reduced at once on the coordinating node. This value should be used as a
+     * protection mechanism to reduce the memory overhead per search request if the potential number of shards in the request can
+     * be large.
+     */
+    public int getBatchedReduceSize() {
+        return batchedReduceSize;
+    }
+
+    /**
+     * Sets a threshold that enforces a pre-filter roundtrip to pre-filter search shards based on query rewriting if the number of
+     * shards the search request expands to exceeds the threshold. This filter roundtrip can limit the number of shards significantly
+     * if for instance a shard can not match any documents based on its rewrite method, ie. if date filters are mandatory to match
+     * but the shard bounds and the query are disjoint. Defaults to <code>128</code>
+     */
+    public SearchRequest setPreFilterShardSize(int preFilterShardSize) {
+        if (preFilterShardSize < 1) {
+            throw new IllegalArgumentException("preFilterShardSize must be >= 1");
+        }
+        this.preFilterShardSize = preFilterShardSize;
+        return this;
+    }
+
+    /**
+     * Returns the threshold of the number of shards above which the search request is pre-filtered with a roundtrip that skips
+     * shards that can't match any documents.
+     */
+    public int getPreFilterShardSize() {
+        return preFilterShardSize;
+    }
+
     /**
      * @return true if the request only has suggest
      */
@@ -327,6 +408,11 @@ public class SearchRequest extends ActionRequest<SearchRequest> implements Indic
 
         requestCache = in.readOptionalBoolean();
         template = in.readOptionalWriteable(Template::new);
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            batchedReduceSize = in.readVInt();
+            preFilterShardSize = in.readVInt();
+            responseCache = in.readOptionalBoolean();
+        }
     }
 
     @Override
@@ -358,5 +444,10 @@ public class SearchRequest extends ActionRequest<SearchRequest> implements Indic
         indicesOptions.writeIndicesOptions(out);
         out.writeOptionalBoolean(requestCache);
         out.writeOptionalWriteable(template);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeVInt(batchedReduceSize);
+            out.writeVInt(preFilterShardSize);
+            out.writeOptionalBoolean(responseCache);
+        }
     }
 }
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.search;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
@@ -29,8 +30,10 @@ import org.elasticsearch.common.xcontent.StatusToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.rest.action.support.RestActions;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.internal.InternalSearchHits;
 import org.elasticsearch.search.internal.InternalSearchResponse;
 import org.elasticsearch.search.profile.ProfileShardResult;
 import org.elasticsearch.search.suggest.Suggest;
@@ -54,6 +57,8 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
 
     private int successfulShards;
 
+    private int skippedShards;
+
     private ShardSearchFailure[] shardFailures;
 
     private long tookInMillis;
@@ -62,10 +67,16 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
     }
 
     public SearchResponse(InternalSearchResponse internalResponse, String scrollId, int totalShards, int successfulShards, long tookInMillis, ShardSearchFailure[] shardFailures) {
+        this(internalResponse, scrollId, totalShards, successfulShards, 0, tookInMillis, shardFailures);
+    }
+
+    public SearchResponse(InternalSearchResponse internalResponse, String scrollId, int totalShards, int successfulShards,
+                          int skippedShards, long tookInMillis, ShardSearchFailure[] shardFailures) {
         this.internalResponse = internalResponse;
         this.scrollId = scrollId;
         this.totalShards = totalShards;
         this.successfulShards = successfulShards;
+        this.skippedShards = skippedShards;
         this.tookInMillis = tookInMillis;
         this.shardFailures = shardFailures;
     }
@@ -106,6 +117,13 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         return internalResponse.terminatedEarly();
     }
 
+    /**
+     * Returns the number of reduce phases applied to obtain this search response
+     */
+    public int getNumReducePhases() {
+        return internalResponse.getNumReducePhases();
+    }
+
     /**
      * How long the search took.
      */
@@ -134,6 +152,14 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         return successfulShards;
     }
 
+    /**
+     * The number of shards that were skipped because the pre-filter phase found that they can't match any document. Skipped
+     * shards are also counted as successful shards.
+     */
+    public int getSkippedShards() {
+        return skippedShards;
+    }
+
     /**
      * The failed number of shards the search was executed on.
      */
@@ -177,10 +203,22 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         static final String TOOK = "took";
         static final String TIMED_OUT = "timed_out";
         static final String TERMINATED_EARLY = "terminated_early";
+        static final String NUM_REDUCE_PHASES = "num_reduce_phases";
     }
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        toXContentBeforeHits(builder, params);
+        for (SearchHit hit : getHits().getHits()) {
+            hit.toXContent(builder, params);
+        }
+        return toXContentAfterHits(builder, params);
+    }
+
+    /**
+     * Renders this response up to the start of the array of hits, so that callers can render the hits one by one.
+     */
+    public XContentBuilder toXContentBeforeHits(XContentBuilder builder, Params params) throws IOException {
         if (scrollId != null) {
             builder.field(Fields._SCROLL_ID, scrollId);
         }
@@ -189,9 +227,27 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         if (isTerminatedEarly() != null) {
             builder.field(Fields.TERMINATED_EARLY, isTerminatedEarly());
         }
-        RestActions.buildBroadcastShardsHeader(builder, params, getTotalShards(), getSuccessfulShards(), getFailedShards(), getShardFailures());
-        internalResponse.toXContent(builder, params);
-        return builder;
+        if (getNumReducePhases() != 1) {
+            builder.field(Fields.NUM_REDUCE_PHASES, getNumReducePhases());
+        }
+        RestActions.buildBroadcastShardsHeader(builder, params, getTotalShards(), getSuccessfulShards(), getSkippedShards(),
+            getFailedShards(), getShardFailures());
+        return internalResponse.toXContentBeforeHits(builder, params);
+    }
+
+    /**
+     * Renders the rest of this response once the hits were rendered.
+     */
+    public XContentBuilder toXContentAfterHits(XContentBuilder builder, Params params) throws IOException {
+        return internalResponse.toXContentAfterHits(builder, params);
+    }
+
+    /**
+     * Returns a copy of this response with the given hits.
+     */
+    public SearchResponse withHits(InternalSearchHits hits) {
+        return new SearchResponse(internalResponse.withHits(hits), scrollId, totalShards, successfulShards, skippedShards,
+            tookInMillis, shardFailures);
     }
 
     @Override
@@ -200,6 +256,9 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         internalResponse = readInternalSearchResponse(in);
         totalShards = in.readVInt();
         successfulShards = in.readVInt();
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            skippedShards = in.readVInt();
+        }
         int size = in.readVInt();
         if (size == 0) {
             shardFailures = ShardSearchFailure.EMPTY_ARRAY;
@@ -219,6 +278,9 @@ public class SearchResponse extends ActionResponse implements StatusToXContent {
         internalResponse.writeTo(out);
         out.writeVInt(totalShards);
         out.writeVInt(successfulShards);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeVInt(skippedShards);
+        }
 
         out.writeVInt(shardFailures.length);
         for (ShardSearchFailure shardSearchFailure : shardFailures) {
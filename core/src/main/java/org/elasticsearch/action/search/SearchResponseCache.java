@@ -0,0 +1,195 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the reduced responses of search requests on the coordinating node, so that repeating a search over many shards, like a
+ * dashboard that refreshes its aggregations, doesn't pay for the fan out and the reduce again as long as none of the shards changed.
+ * <p>
+ * The cache key consists of the request and, for every shard, the copy that executes the request, the version of the index metadata
+ * and the version of the reader of the shard. The shards report their reader version with a can_match round trip before the query
+ * phase, which is looked up in the cache, and again with the query results. A response is only cached if the query phase was executed
+ * on the same readers and doesn't depend on the current time. Since a refresh changes the reader version, entries of stale readers are
+ * never hit again and are evicted based on size and, optionally, on time.
+ * <p>
+ * The cache is opt-in per request, see {@link SearchRequest#responseCache(Boolean)}.
+ */
+public final class SearchResponseCache extends AbstractComponent {
+
+    public static final Setting<ByteSizeValue> SEARCH_RESPONSE_CACHE_SIZE =
+        Setting.byteSizeSetting("search.response_cache.size", "1%", Property.NodeScope);
+    public static final Setting<TimeValue> SEARCH_RESPONSE_CACHE_EXPIRE =
+        Setting.positiveTimeSetting("search.response_cache.expire", new TimeValue(0), Property.NodeScope);
+
+    private final NamedWriteableRegistry namedWriteableRegistry;
+    private final Cache<Key, BytesReference> cache;
+
+    @Inject
+    public SearchResponseCache(Settings settings, NamedWriteableRegistry namedWriteableRegistry) {
+        super(settings);
+        this.namedWriteableRegistry = namedWriteableRegistry;
+        final ByteSizeValue size = SEARCH_RESPONSE_CACHE_SIZE.get(settings);
+        final TimeValue expire = SEARCH_RESPONSE_CACHE_EXPIRE.exists(settings) ? SEARCH_RESPONSE_CACHE_EXPIRE.get(settings) : null;
+        CacheBuilder<Key, BytesReference> cacheBuilder = CacheBuilder.<Key, BytesReference>builder()
+            .setMaximumWeight(size.bytes()).weigher((k, v) -> k.value.length() + v.length());
+        if (expire != null) {
+            cacheBuilder.setExpireAfterAccess(TimeUnit.MILLISECONDS.toNanos(expire.millis()));
+        }
+        cache = cacheBuilder.build();
+    }
+
+    /**
+     * Returns <code>true</code> if the request opted into the cache and its reduced response may be cached. Only query then fetch
+     * requests are cached, scroll requests are excluded since their contexts are bound to the shards, template requests since they
+     * are only rendered on the shards and profiled requests since their response holds the timings of the shards.
+     */
+    static boolean canCache(SearchRequest request) {
+        if (Boolean.TRUE.equals(request.responseCache()) == false) {
+            return false;
+        }
+        if (request.searchType() != SearchType.QUERY_THEN_FETCH || request.scroll() != null || request.template() != null) {
+            return false;
+        }
+        return request.source() == null || request.source().profile() == false;
+    }
+
+    /**
+     * Builds the cache key of a request from the copies of the shards the request is executed on and the reader versions they
+     * reported. Returns <code>null</code> if a copy is unknown or couldn't report its reader version, the response can't be
+     * cached then.
+     */
+    static Key buildKey(SearchRequest request, ClusterState clusterState, ShardRouting[] shards, long[] readerVersions)
+            throws IOException {
+        assert shards.length == readerVersions.length;
+        try (BytesStreamOutput out = new BytesStreamOutput(512)) {
+            out.writeByte(request.searchType().id());
+            out.writeStringArray(request.indices());
+            out.writeStringArray(request.types());
+            out.writeOptionalWriteable(request.source());
+            request.indicesOptions().writeIndicesOptions(out);
+            out.writeVInt(shards.length);
+            for (int i = 0; i < shards.length; i++) {
+                final ShardRouting shard = shards[i];
+                if (shard == null || shard.allocationId() == null || readerVersions[i] < 0) {
+                    return null;
+                }
+                final IndexMetaData indexMetaData = clusterState.metaData().index(shard.index());
+                if (indexMetaData == null) {
+                    return null;
+                }
+                // the allocation id identifies the shard copy, the index metadata version covers changes of the aliases
+                out.writeString(shard.allocationId().getId());
+                out.writeVLong(indexMetaData.getVersion());
+                out.writeVLong(readerVersions[i]);
+            }
+            return new Key(out.bytes());
+        }
+    }
+
+    /**
+     * Returns the cached response for the given key, or <code>null</code> if there is none.
+     */
+    CachedResponse get(Key key) throws IOException {
+        final BytesReference value = cache.get(key);
+        if (value == null) {
+            return null;
+        }
+        try (StreamInput in = new NamedWriteableAwareStreamInput(value.streamInput(), namedWriteableRegistry)) {
+            final int skippedShards = in.readVInt();
+            return new CachedResponse(InternalSearchResponse.readInternalSearchResponse(in), skippedShards);
+        }
+    }
+
+    /**
+     * Caches the reduced response of a request whose shards all executed successfully.
+     */
+    void put(Key key, InternalSearchResponse response, int skippedShards) throws IOException {
+        // small responses like a few aggregation buckets would waste most of a full page, see AbstractIndexShardCacheEntity
+        try (BytesStreamOutput out = new BytesStreamOutput(512)) {
+            out.writeVInt(skippedShards);
+            response.writeTo(out);
+            cache.put(key, out.bytes());
+        }
+    }
+
+    /**
+     * Drops all cached responses.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public SearchResponseCacheStats stats() {
+        final Cache.CacheStats stats = cache.stats();
+        return new SearchResponseCacheStats(cache.count(), cache.weight(), stats.getEvictions(), stats.getHits(), stats.getMisses());
+    }
+
+    static final class Key {
+        final BytesReference value;
+
+        Key(BytesReference value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return value.equals(((Key) o).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+    }
+
+    static final class CachedResponse {
+        final InternalSearchResponse response;
+        final int skippedShards;
+
+        CachedResponse(InternalSearchResponse response, int skippedShards) {
+            this.response = response;
+            this.skippedShards = skippedShards;
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.elasticsearch.action.search;
 
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionListenerResponseHandler;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.HandledTransportAction;
 import org.elasticsearch.cluster.ClusterState;
@@ -31,7 +32,9 @@ import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.indices.IndexClosedException;
+import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.action.SearchTransportService;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.controller.SearchPhaseController;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
@@ -51,23 +54,38 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
     public static final Setting<Long> SHARD_COUNT_LIMIT_SETTING = Setting.longSetting(
             "action.search.shard_count.limit", 1000L, 1L, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * The maximum <code>from + size</code> of a query then fetch request on a single index for which the shards fetch their top
+     * hits along with the query phase, which saves the fetch round trip. <code>0</code> disables single round trips.
+     */
+    public static final Setting<Integer> SINGLE_ROUND_TRIP_MAX_SIZE_SETTING = Setting.intSetting(
+            "action.search.single_round_trip.max_size", 0, 0, Property.Dynamic, Property.NodeScope);
+
     private final ClusterService clusterService;
+    private final TransportService transportService;
     private final SearchTransportService searchTransportService;
     private final SearchPhaseController searchPhaseController;
+    private final SearchResponseCache responseCache;
 
     @Inject
     public TransportSearchAction(Settings settings, ThreadPool threadPool, SearchPhaseController searchPhaseController,
                                  TransportService transportService, SearchTransportService searchTransportService,
                                  ClusterService clusterService, ActionFilters actionFilters, IndexNameExpressionResolver
-                                             indexNameExpressionResolver) {
+                                             indexNameExpressionResolver, SearchResponseCache responseCache) {
         super(settings, SearchAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver, SearchRequest::new);
         this.searchPhaseController = searchPhaseController;
+        this.responseCache = responseCache;
+        this.transportService = transportService;
         this.searchTransportService = searchTransportService;
         this.clusterService = clusterService;
     }
 
     @Override
     protected void doExecute(SearchRequest searchRequest, ActionListener<SearchResponse> listener) {
+        if (ExpandCollapseSearchResponseListener.isCollapseRequest(searchRequest)) {
+            listener = new ExpandCollapseSearchResponseListener(searchRequest, listener, this::executeGroupSearches);
+        }
+        boolean singleRoundTrip = false;
         // optimize search type for cases where there is only one shard group to search on
         try {
             ClusterState clusterState = clusterService.state();
@@ -79,6 +97,10 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
                 // if we only have one group, then we always want Q_A_F, no need for DFS, and no need to do THEN since we hit one shard
                 searchRequest.searchType(QUERY_AND_FETCH);
             }
+            if (searchRequest.searchType() == QUERY_THEN_FETCH && concreteIndices.length == 1) {
+                singleRoundTrip = canFetchWithQuery(searchRequest,
+                    clusterService.getClusterSettings().get(SINGLE_ROUND_TRIP_MAX_SIZE_SETTING));
+            }
             if (searchRequest.isSuggestOnly()) {
                 // disable request cache if we have only suggest
                 searchRequest.requestCache(false);
@@ -104,7 +126,8 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
                 break;
             case QUERY_THEN_FETCH:
                 searchAsyncAction = new SearchQueryThenFetchAsyncAction(logger, searchTransportService, clusterService,
-                        indexNameExpressionResolver, searchPhaseController, threadPool, searchRequest, listener);
+                        indexNameExpressionResolver, searchPhaseController, threadPool, searchRequest, singleRoundTrip,
+                        responseCache, listener);
                 break;
             case DFS_QUERY_AND_FETCH:
                 searchAsyncAction = new SearchDfsQueryAndFetchAsyncAction(logger, searchTransportService, clusterService,
@@ -119,4 +142,27 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
         }
         searchAsyncAction.start();
     }
+
+    /**
+     * Executes the searches that expand collapsed hits to the top hits of their groups on the local node.
+     */
+    private void executeGroupSearches(MultiSearchRequest request, ActionListener<MultiSearchResponse> listener) {
+        transportService.sendRequest(clusterService.localNode(), MultiSearchAction.NAME, request,
+            new ActionListenerResponseHandler<>(listener, MultiSearchResponse::new));
+    }
+
+    /**
+     * Returns whether the shards can fetch their top hits along with the query phase because the request asks for at most
+     * <code>maxSize</code> hits. Scroll requests are excluded since their hits are fetched page by page, and so are template
+     * requests since their size is only known once the template is rendered on the shards.
+     */
+    static boolean canFetchWithQuery(SearchRequest searchRequest, int maxSize) {
+        if (searchRequest.scroll() != null || searchRequest.template() != null) {
+            return false;
+        }
+        final SearchSourceBuilder source = searchRequest.source();
+        final int from = source == null || source.from() == -1 ? SearchService.DEFAULT_FROM : source.from();
+        final int size = source == null || source.size() == -1 ? SearchService.DEFAULT_SIZE : source.size();
+        return size > 0 && from + size <= maxSize;
+    }
 }
@@ -163,6 +163,14 @@ public abstract class ReplicationRequest<Request extends ReplicationRequest<Requ
         primaryTerm = term;
     }
 
+    /**
+     * This method is called before this replication request is retried
+     * the first time.
+     */
+    public void onRetry() {
+        // nothing by default
+    }
+
     @Override
     public ActionRequestValidationException validate() {
         ActionRequestValidationException validationException = null;
@@ -321,6 +321,12 @@ public class MetaDataCreateIndexService extends AbstractComponent {
                                 removalReason = "failed on parsing default mapping/mappings on index creation";
                                 throw mpe;
                             }
+                            try {
+                                mapperService.validateIndexSort();
+                            } catch (IllegalArgumentException e) {
+                                removalReason = "failed to validate the index sort on index creation";
+                                throw e;
+                            }
 
                             final QueryShardContext queryShardContext = indexService.newQueryShardContext();
                             for (Alias alias : request.aliases()) {
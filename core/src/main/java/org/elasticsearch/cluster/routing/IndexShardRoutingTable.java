@@ -29,11 +29,13 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.util.set.Sets;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.node.ResponseCollectorService;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -246,6 +248,80 @@ public class IndexShardRoutingTable implements Iterable<ShardRouting> {
         return new PlainShardIterator(shardId, ordered);
     }
 
+    /**
+     * Returns an iterator over active and initializing shards, ordered by the adaptive replica selection rank of the
+     * node holding each copy. Copies on nodes without any statistics come first so that they get a chance to be ranked,
+     * ties are broken randomly and initializing shards are the last to iterate through.
+     *
+     * @param collector  the service holding the response statistics of the nodes
+     * @param nodeSearchCounts the number of searches sent to each node by the current request, used to account for the
+     *                         requests that haven't been sent yet
+     */
+    public ShardIterator activeInitializingShardsRankedIt(ResponseCollectorService collector, Map<String, Long> nodeSearchCounts) {
+        final int seed = shuffler.nextSeed();
+        if (allInitializingShards.isEmpty()) {
+            return new PlainShardIterator(shardId, rankShardsAndUpdateStats(shuffler.shuffle(activeShards, seed), collector,
+                nodeSearchCounts));
+        }
+        ArrayList<ShardRouting> ordered = new ArrayList<>(activeShards.size() + allInitializingShards.size());
+        ordered.addAll(rankShardsAndUpdateStats(shuffler.shuffle(activeShards, seed), collector, nodeSearchCounts));
+        ordered.addAll(allInitializingShards);
+        return new PlainShardIterator(shardId, ordered);
+    }
+
+    private static List<ShardRouting> rankShardsAndUpdateStats(List<ShardRouting> shards, ResponseCollectorService collector,
+                                                               Map<String, Long> nodeSearchCounts) {
+        if (collector == null || nodeSearchCounts == null || shards.isEmpty()) {
+            return shards;
+        }
+        if (shards.size() == 1) {
+            nodeSearchCounts.merge(shards.get(0).currentNodeId(), 1L, (a, b) -> a + b);
+            return shards;
+        }
+        final Map<String, Long> outgoingSearches = collector.getOutgoingSearchRequests();
+        final Map<String, ResponseCollectorService.ComputedNodeStats> nodeStats = new HashMap<>(shards.size());
+        final Map<String, Double> nodeRanks = new HashMap<>(shards.size());
+        for (ShardRouting shard : shards) {
+            final String nodeId = shard.currentNodeId();
+            if (nodeRanks.containsKey(nodeId) == false) {
+                collector.getNodeStatistics(nodeId).ifPresent(stats -> {
+                    final long outstanding = outgoingSearches.getOrDefault(nodeId, 0L) + nodeSearchCounts.getOrDefault(nodeId, 0L);
+                    nodeStats.put(nodeId, stats);
+                    nodeRanks.put(nodeId, stats.rank(outstanding));
+                });
+            }
+        }
+        // sorting is stable so copies with equal ranks keep their random order, nodes without statistics come first
+        final List<ShardRouting> sorted = new ArrayList<>(shards);
+        sorted.sort((a, b) -> {
+            final Double rankA = nodeRanks.get(a.currentNodeId());
+            final Double rankB = nodeRanks.get(b.currentNodeId());
+            if (rankA == null || rankB == null) {
+                return rankA == null ? (rankB == null ? 0 : -1) : 1;
+            }
+            return Double.compare(rankA, rankB);
+        });
+
+        final ShardRouting winner = sorted.get(0);
+        final String winnerNodeId = winner.currentNodeId();
+        nodeSearchCounts.merge(winnerNodeId, 1L, (a, b) -> a + b);
+        final ResponseCollectorService.ComputedNodeStats winnerStats = nodeStats.get(winnerNodeId);
+        if (winnerStats != null) {
+            // nodes that were not picked would never receive requests and hence never update their statistics, so we move
+            // their statistics towards the ones of the winner to make sure they are eventually retried
+            for (int i = 1; i < sorted.size(); i++) {
+                final String nodeId = sorted.get(i).currentNodeId();
+                final ResponseCollectorService.ComputedNodeStats stats = nodeStats.get(nodeId);
+                if (stats != null && nodeId.equals(winnerNodeId) == false) {
+                    collector.addNodeStatistics(nodeId, (stats.queueSize + winnerStats.queueSize) / 2,
+                        (long) ((stats.responseTime + winnerStats.responseTime) / 2),
+                        (long) ((stats.serviceTime + winnerStats.serviceTime) / 2));
+                }
+            }
+        }
+        return sorted;
+    }
+
     /**
      * Returns true if no primaries are active or initializing for this shard
      */
@@ -0,0 +1,83 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.search;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.XSortingMergePolicy;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Sort;
+
+import java.io.IOException;
+
+/**
+ * A {@link Collector} that stops collecting a segment once <code>numDocsToCollect</code> documents have been collected
+ * if the segment was sorted by the index sort when it was merged, see {@link XSortingMergePolicy}. Unlike Lucene's
+ * {@link org.apache.lucene.search.EarlyTerminatingSortingCollector} this unwraps the leaf readers of the searcher in order to
+ * check the sort of the segment.
+ * <p>
+ * The wrapped collector must sort documents by the index sort or a prefix of it, segments that are not sorted
+ * (e.g. freshly flushed segments) are collected entirely.
+ */
+public class IndexSortEarlyTerminatingCollector extends FilterCollector {
+
+    private final Sort indexSort;
+    private final int numDocsToCollect;
+    private boolean terminatedEarly = false;
+
+    public IndexSortEarlyTerminatingCollector(Collector in, Sort indexSort, int numDocsToCollect) {
+        super(in);
+        if (numDocsToCollect <= 0) {
+            throw new IllegalArgumentException("numDocsToCollect must always be > 0, got " + numDocsToCollect);
+        }
+        this.indexSort = indexSort;
+        this.numDocsToCollect = numDocsToCollect;
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+        final LeafCollector leafCollector = super.getLeafCollector(context);
+        if (XSortingMergePolicy.isSorted(context.reader(), indexSort) == false) {
+            return leafCollector;
+        }
+        return new FilterLeafCollector(leafCollector) {
+            private int numCollected;
+
+            @Override
+            public void collect(int doc) throws IOException {
+                super.collect(doc);
+                if (++numCollected >= numDocsToCollect) {
+                    terminatedEarly = true;
+                    throw new CollectionTerminatedException();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns <code>true</code> iff the collection of at least one segment was terminated early.
+     */
+    public boolean terminatedEarly() {
+        return terminatedEarly;
+    }
+}
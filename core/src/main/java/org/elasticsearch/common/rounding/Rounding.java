@@ -63,6 +63,71 @@ public abstract class Rounding implements Streamable {
      */
     public abstract long nextRoundingValue(long value);
 
+    /**
+     * Returns a rounding that computes the same keys as this rounding but is tuned for values between <code>minUtcMillis</code>
+     * and <code>maxUtcMillis</code>, for instance the values of a field on a shard. Values outside of this range are still
+     * rounded correctly, though maybe slower.
+     */
+    public Prepared prepare(long minUtcMillis, long maxUtcMillis) {
+        return Prepared.of(this);
+    }
+
+    /**
+     * A rounding that was tuned by {@link #prepare(long, long)}. It is only used where it was built, so it isn't serializable:
+     * the rounding it was prepared from is sent over the wire instead.
+     */
+    public abstract static class Prepared {
+
+        /**
+         * Returns a prepared rounding that rounds with the given rounding as is.
+         */
+        static Prepared of(Rounding rounding) {
+            return new Prepared() {
+                @Override
+                public long roundKey(long value) {
+                    return rounding.roundKey(value);
+                }
+
+                @Override
+                public long valueForKey(long key) {
+                    return rounding.valueForKey(key);
+                }
+
+                @Override
+                public long nextRoundingValue(long value) {
+                    return rounding.nextRoundingValue(value);
+                }
+
+                @Override
+                public String toString() {
+                    return rounding.toString();
+                }
+            };
+        }
+
+        /**
+         * See {@link Rounding#roundKey(long)}.
+         */
+        public abstract long roundKey(long value);
+
+        /**
+         * See {@link Rounding#valueForKey(long)}.
+         */
+        public abstract long valueForKey(long key);
+
+        /**
+         * See {@link Rounding#round(long)}.
+         */
+        public final long round(long value) {
+            return valueForKey(roundKey(value));
+        }
+
+        /**
+         * See {@link Rounding#nextRoundingValue(long)}.
+         */
+        public abstract long nextRoundingValue(long value);
+    }
+
     @Override
     public abstract boolean equals(Object obj);
 
@@ -262,6 +327,32 @@ public abstract class Rounding implements Streamable {
             return rounding.nextRoundingValue(value - offset) + offset;
         }
 
+        @Override
+        public Prepared prepare(long minUtcMillis, long maxUtcMillis) {
+            final Prepared prepared = rounding.prepare(minUtcMillis - offset, maxUtcMillis - offset);
+            return new Prepared() {
+                @Override
+                public long roundKey(long value) {
+                    return prepared.roundKey(value - offset);
+                }
+
+                @Override
+                public long valueForKey(long key) {
+                    return offset + prepared.valueForKey(key);
+                }
+
+                @Override
+                public long nextRoundingValue(long value) {
+                    return prepared.nextRoundingValue(value - offset) + offset;
+                }
+
+                @Override
+                public String toString() {
+                    return OffsetRounding.this.toString();
+                }
+            };
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             rounding = Rounding.Streams.read(in);
@@ -28,6 +28,7 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.IllegalInstantException;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -36,6 +37,12 @@ public abstract class TimeZoneRounding extends Rounding {
     public static final ParseField INTERVAL_FIELD = new ParseField("interval");
     public static final ParseField TIME_ZONE_FIELD = new ParseField("time_zone");
 
+    /**
+     * The maximum number of time zone transitions that {@link #prepare(long, long)} puts in a lookup table, about two
+     * thousand years of daylight saving time.
+     */
+    static final int MAX_TRANSITIONS = 4096;
+
     public static Builder builder(DateTimeUnit unit) {
         return new Builder(unit);
     }
@@ -102,6 +109,112 @@ public abstract class TimeZoneRounding extends Rounding {
         }
     }
 
+    /**
+     * Rounds a local time, the time zone has already been applied.
+     */
+    abstract long roundLocal(long localMillis);
+
+    /**
+     * Rounds dates with a lookup table of the offsets of a time zone between two dates: a date is rounded by finding its offset
+     * with a binary search and by rounding the local time with plain arithmetic. The slower rounding of the time zone is only
+     * used for dates outside of the table and when the rounded date falls before the transition that precedes the date.
+     */
+    static final class TransitionTableRounding extends Prepared {
+        private final TimeZoneRounding delegate;
+        // the first date of every offset, sorted
+        private final long[] transitions;
+        private final int[] offsets;
+        // the last date of the last offset
+        private final long maxUtcMillis;
+
+        private TransitionTableRounding(TimeZoneRounding delegate, long[] transitions, int[] offsets, long maxUtcMillis) {
+            this.delegate = delegate;
+            this.transitions = transitions;
+            this.offsets = offsets;
+            this.maxUtcMillis = maxUtcMillis;
+        }
+
+        static Prepared build(TimeZoneRounding delegate, DateTimeZone timeZone, long minUtcMillis, long maxUtcMillis) {
+            if (timeZone == DateTimeZone.UTC) {
+                // the rounding is already plain arithmetic
+                return Prepared.of(delegate);
+            }
+            if (timeZone.isFixed()) {
+                return new TransitionTableRounding(delegate, new long[] { Long.MIN_VALUE }, new int[] { timeZone.getOffset(0L) },
+                        Long.MAX_VALUE);
+            }
+            if (minUtcMillis > maxUtcMillis || minUtcMillis == Long.MIN_VALUE || maxUtcMillis == Long.MAX_VALUE) {
+                // the transitions of an unbounded range do not fit in a table
+                return Prepared.of(delegate);
+            }
+            long[] transitions = new long[16];
+            int[] offsets = new int[16];
+            // the first offset starts with the transition before the first date
+            long start = timeZone.previousTransition(minUtcMillis + 1);
+            transitions[0] = start == minUtcMillis + 1 ? Long.MIN_VALUE : start;
+            offsets[0] = timeZone.getOffset(minUtcMillis);
+            int count = 1;
+            long current = minUtcMillis;
+            long end = Long.MAX_VALUE;
+            while (true) {
+                long next = timeZone.nextTransition(current);
+                if (next == current) {
+                    // no more transitions
+                    break;
+                }
+                if (next > maxUtcMillis) {
+                    end = next - 1;
+                    break;
+                }
+                if (count == MAX_TRANSITIONS) {
+                    return Prepared.of(delegate);
+                }
+                if (count == transitions.length) {
+                    transitions = Arrays.copyOf(transitions, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                transitions[count] = next;
+                offsets[count] = timeZone.getOffset(next);
+                count++;
+                current = next;
+            }
+            return new TransitionTableRounding(delegate, Arrays.copyOf(transitions, count), Arrays.copyOf(offsets, count), end);
+        }
+
+        @Override
+        public long roundKey(long utcMillis) {
+            if (utcMillis < transitions[0] || utcMillis > maxUtcMillis) {
+                return delegate.roundKey(utcMillis);
+            }
+            int index = Arrays.binarySearch(transitions, utcMillis);
+            if (index < 0) {
+                index = -2 - index;
+            }
+            final int offset = offsets[index];
+            final long rounded = delegate.roundLocal(utcMillis + offset) - offset;
+            if (rounded >= transitions[index]) {
+                return rounded;
+            }
+            // the rounded date has another offset
+            return delegate.roundKey(utcMillis);
+        }
+
+        @Override
+        public long valueForKey(long key) {
+            return delegate.valueForKey(key);
+        }
+
+        @Override
+        public long nextRoundingValue(long value) {
+            return delegate.nextRoundingValue(value);
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+
     static class TimeUnitRounding extends TimeZoneRounding {
 
         static final byte ID = 1;
@@ -109,6 +222,8 @@ public abstract class TimeZoneRounding extends Rounding {
         private DateTimeUnit unit;
         private DateTimeField field;
         private DateTimeZone timeZone;
+        // the field in local time, which rounds without looking up the offsets of the time zone
+        private DateTimeField localField;
 
         TimeUnitRounding() { // for serialization
         }
@@ -116,6 +231,7 @@ public abstract class TimeZoneRounding extends Rounding {
         TimeUnitRounding(DateTimeUnit unit, DateTimeZone timeZone) {
             this.unit = unit;
             this.field = unit.field(timeZone);
+            this.localField = unit.field(DateTimeZone.UTC);
             this.timeZone = timeZone;
         }
 
@@ -138,6 +254,16 @@ public abstract class TimeZoneRounding extends Rounding {
             return rounded;
         }
 
+        @Override
+        long roundLocal(long localMillis) {
+            return localField.roundFloor(localMillis);
+        }
+
+        @Override
+        public Prepared prepare(long minUtcMillis, long maxUtcMillis) {
+            return TransitionTableRounding.build(this, timeZone, minUtcMillis, maxUtcMillis);
+        }
+
         @Override
         public long valueForKey(long time) {
             assert roundKey(time) == time;
@@ -161,6 +287,7 @@ public abstract class TimeZoneRounding extends Rounding {
             unit = DateTimeUnit.resolve(in.readByte());
             timeZone = DateTimeZone.forID(in.readString());
             field = unit.field(timeZone);
+            localField = unit.field(DateTimeZone.UTC);
         }
 
         @Override
@@ -271,6 +398,16 @@ public abstract class TimeZoneRounding extends Rounding {
             return false;
         }
 
+        @Override
+        long roundLocal(long localMillis) {
+            return Rounding.Interval.roundValue(Rounding.Interval.roundKey(localMillis, interval), interval);
+        }
+
+        @Override
+        public Prepared prepare(long minUtcMillis, long maxUtcMillis) {
+            return TransitionTableRounding.build(this, timeZone, minUtcMillis, maxUtcMillis);
+        }
+
         @Override
         public long valueForKey(long time) {
             assert roundKey(time) == time;
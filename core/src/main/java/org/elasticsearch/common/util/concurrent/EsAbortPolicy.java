@@ -34,6 +34,10 @@ public class EsAbortPolicy implements XRejectedExecutionHandler {
         if (r instanceof AbstractRunnable) {
             if (((AbstractRunnable) r).isForceExecution()) {
                 BlockingQueue<Runnable> queue = executor.getQueue();
+                if (queue instanceof FairQueuingBlockingQueue) {
+                    ((FairQueuingBlockingQueue<Runnable>) queue).forcePut(r);
+                    return;
+                }
                 if (!(queue instanceof SizeBlockingQueue)) {
                     throw new IllegalStateException("forced execution, but expected a size queue");
                 }
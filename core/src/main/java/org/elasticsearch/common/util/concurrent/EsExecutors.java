@@ -22,8 +22,10 @@ package org.elasticsearch.common.util.concurrent;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 
 import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.ThreadFactory;
@@ -73,6 +75,61 @@ public class EsExecutors {
         return new EsThreadPoolExecutor(name, size, size, 0, TimeUnit.MILLISECONDS, queue, threadFactory, new EsAbortPolicy(), contextHolder);
     }
 
+    /**
+     * Return a new executor that will automatically adjust the queue size based on queue throughput.
+     *
+     * @param size number of fixed threads to use for executing tasks
+     * @param initialQueueCapacity initial size of the executor queue
+     * @param minQueueSize minimum queue size that the queue can be adjusted to
+     * @param maxQueueSize maximum queue size that the queue can be adjusted to
+     * @param frameSize number of tasks during which stats are collected before adjusting queue size
+     * @param targetedResponseTime the time the tasks should spend in the queue and executing
+     */
+    public static EsThreadPoolExecutor newAutoQueueFixed(String name, int size, int initialQueueCapacity, int minQueueSize,
+                                                         int maxQueueSize, int frameSize, TimeValue targetedResponseTime,
+                                                         ThreadFactory threadFactory, ThreadContext contextHolder) {
+        ResizableSizeBlockingQueue<Runnable> queue =
+            new ResizableSizeBlockingQueue<>(ConcurrentCollections.<Runnable>newBlockingQueue(), initialQueueCapacity);
+        return newAutoQueueFixed(name, size, queue, minQueueSize, maxQueueSize, frameSize, targetedResponseTime, threadFactory,
+            contextHolder);
+    }
+
+    /**
+     * Return a new executor that will automatically adjust the queue size based on queue throughput and whose queue hands out tasks
+     * by weighted round-robin between the tenants that submitted them. The tenant of a task is the value of the given request header
+     * in the thread context of the submitting thread.
+     *
+     * @param tenantQueueCapacity the maximum number of queued tasks of a single tenant, -1 for no limit besides the queue capacity
+     * @param tenantHeader the request header that identifies the tenant of a task
+     * @param tenantWeights the number of tasks a tenant may take in a row, tenants that are not listed have a weight of 1
+     * @see #newAutoQueueFixed(String, int, int, int, int, int, TimeValue, ThreadFactory, ThreadContext)
+     */
+    public static EsThreadPoolExecutor newAutoQueueFixedFairQueuing(String name, int size, int initialQueueCapacity, int minQueueSize,
+                                                                    int maxQueueSize, int frameSize, TimeValue targetedResponseTime,
+                                                                    int tenantQueueCapacity, String tenantHeader,
+                                                                    Map<String, Integer> tenantWeights, ThreadFactory threadFactory,
+                                                                    ThreadContext contextHolder) {
+        FairQueuingBlockingQueue<Runnable> queue = new FairQueuingBlockingQueue<>(() -> contextHolder.getHeader(tenantHeader),
+            initialQueueCapacity, tenantQueueCapacity, tenantWeights);
+        return newAutoQueueFixed(name, size, queue, minQueueSize, maxQueueSize, frameSize, targetedResponseTime, threadFactory,
+            contextHolder);
+    }
+
+    private static EsThreadPoolExecutor newAutoQueueFixed(String name, int size, ResizableBlockingQueue<Runnable> queue,
+                                                          int minQueueSize, int maxQueueSize, int frameSize,
+                                                          TimeValue targetedResponseTime, ThreadFactory threadFactory,
+                                                          ThreadContext contextHolder) {
+        if (frameSize < 1) {
+            throw new IllegalArgumentException("frame size must be at least 1, got [" + frameSize + "]");
+        }
+        if (minQueueSize > maxQueueSize) {
+            throw new IllegalArgumentException("min queue size [" + minQueueSize + "] must not be greater than max queue size [" +
+                maxQueueSize + "]");
+        }
+        return new QueueResizingEsThreadPoolExecutor(name, size, size, 0, TimeUnit.MILLISECONDS, queue, minQueueSize, maxQueueSize,
+            frameSize, targetedResponseTime, threadFactory, new EsAbortPolicy(), contextHolder);
+    }
+
     public static String threadName(Settings settings, String ... names) {
         String namePrefix =
                 Arrays
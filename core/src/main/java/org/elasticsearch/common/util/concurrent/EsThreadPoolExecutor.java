@@ -126,7 +126,13 @@ public class EsThreadPoolExecutor extends ThreadPoolExecutor {
             @SuppressWarnings("rawtypes")
             SizeBlockingQueue queue = (SizeBlockingQueue) getQueue();
             b.append("queue capacity = ").append(queue.capacity()).append(", ");
+        } else if (getQueue() instanceof FairQueuingBlockingQueue) {
+            @SuppressWarnings("rawtypes")
+            FairQueuingBlockingQueue queue = (FairQueuingBlockingQueue) getQueue();
+            b.append("queue capacity = ").append(queue.capacity()).append(", ");
+            b.append("tenant queue capacity = ").append(queue.tenantCapacity()).append(", ");
         }
+        appendThreadPoolExecutorDetails(b);
         /*
          * ThreadPoolExecutor has some nice information in its toString but we
          * can't get at it easily without just getting the toString.
@@ -135,6 +141,16 @@ public class EsThreadPoolExecutor extends ThreadPoolExecutor {
         return b.toString();
     }
 
+    /**
+     * Append details about this thread pool to the specified {@link StringBuilder}. All details should be appended as key/value pairs in
+     * the form "%s = %s, "
+     *
+     * @param sb the {@link StringBuilder} to append to
+     */
+    protected void appendThreadPoolExecutorDetails(final StringBuilder sb) {
+
+    }
+
     protected Runnable wrapRunnable(Runnable command) {
         return contextHolder.preserveContext(command);
     }
@@ -0,0 +1,433 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A bounded blocking queue that keeps a sub-queue per tenant and hands out elements by weighted round-robin
+ * between the tenants that have queued elements, so that a single tenant filling the queue does not delay the
+ * elements of all other tenants. The tenant of an element is resolved on the thread that offers it, which for
+ * thread pools means the thread that submits the task.
+ * <p>
+ * Each tenant may take up to its weight elements in a row before the next tenant gets its turn (deficit round-robin
+ * with a quantum of one element). Offers are refused if either the queue as a whole or the sub-queue of the tenant
+ * is full.
+ * <p>
+ * Tenants come from client supplied values, so only the default tenant and the tenants that have a configured weight are
+ * tracked permanently. The sub-queue of any other tenant is dropped as soon as it is empty, and the refused offers of these
+ * tenants are counted together under {@link #OTHER_TENANTS}.
+ */
+public class FairQueuingBlockingQueue<E> extends AbstractQueue<E> implements ResizableBlockingQueue<E> {
+
+    /**
+     * The tenant of elements that are offered without a tenant.
+     */
+    public static final String DEFAULT_TENANT = "_default";
+
+    /**
+     * The name under which the refused offers of all tenants without a configured weight are counted.
+     */
+    public static final String OTHER_TENANTS = "_other";
+
+    private final Supplier<String> tenantSupplier;
+    private volatile int capacity;
+    private final int tenantCapacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Map<String, TenantQueue<E>> tenants = new HashMap<>();
+    // tenants that have queued elements, excluding the tenant whose turn it currently is
+    private final ArrayDeque<TenantQueue<E>> active = new ArrayDeque<>();
+    private TenantQueue<E> current;
+    private int credit;
+    private int size;
+    private long otherRejected;
+
+    /**
+     * @param tenantSupplier resolves the tenant of the element that is being offered, may return <code>null</code>
+     * @param capacity       the maximum number of elements in the queue, -1 for unbounded
+     * @param tenantCapacity the maximum number of elements of a single tenant, -1 for unbounded
+     * @param weights        the number of elements a tenant may take in a row, tenants that are not listed have a weight of 1
+     */
+    public FairQueuingBlockingQueue(Supplier<String> tenantSupplier, int capacity, int tenantCapacity, Map<String, Integer> weights) {
+        this.tenantSupplier = tenantSupplier;
+        this.capacity = capacity < 0 ? Integer.MAX_VALUE : capacity;
+        this.tenantCapacity = tenantCapacity < 0 ? Integer.MAX_VALUE : tenantCapacity;
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            if (entry.getValue() < 1) {
+                throw new IllegalArgumentException("weight of tenant [" + entry.getKey() + "] must be >= 1 but was ["
+                    + entry.getValue() + "]");
+            }
+            tenants.put(entry.getKey(), new TenantQueue<>(entry.getKey(), entry.getValue(), true));
+        }
+        tenants.putIfAbsent(DEFAULT_TENANT, new TenantQueue<>(DEFAULT_TENANT, 1, true));
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int adjustCapacity(int optimalCapacity, int adjustmentAmount, int minCapacity, int maxCapacity) {
+        lock.lock();
+        try {
+            capacity = ResizableBlockingQueue.adjustedCapacity(capacity, optimalCapacity, adjustmentAmount, minCapacity, maxCapacity);
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int tenantCapacity() {
+        return tenantCapacity;
+    }
+
+    private String currentTenant() {
+        final String tenant = tenantSupplier.get();
+        return tenant == null || tenant.isEmpty() ? DEFAULT_TENANT : tenant;
+    }
+
+    private TenantQueue<E> tenantQueue(String tenant) {
+        return tenants.computeIfAbsent(tenant, t -> new TenantQueue<>(t, 1, false));
+    }
+
+    /**
+     * Called once the sub-queue of a tenant is empty, drops it unless the tenant is configured.
+     */
+    private void onEmpty(TenantQueue<E> tenantQueue) {
+        if (tenantQueue.configured == false) {
+            tenants.remove(tenantQueue.tenant);
+        }
+    }
+
+    private void enqueue(TenantQueue<E> tenantQueue, E e) {
+        if (tenantQueue.elements.isEmpty()) {
+            // an empty tenant is never the current one
+            active.addLast(tenantQueue);
+        }
+        tenantQueue.elements.addLast(e);
+        size++;
+        notEmpty.signal();
+    }
+
+    private E dequeue() {
+        assert size > 0;
+        if (current == null || credit == 0) {
+            if (current != null) {
+                active.addLast(current);
+            }
+            current = active.pollFirst();
+            credit = current.weight;
+        }
+        final E e = current.elements.pollFirst();
+        credit--;
+        size--;
+        if (current.elements.isEmpty()) {
+            onEmpty(current);
+            current = null;
+        }
+        return e;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        final String tenant = currentTenant();
+        lock.lock();
+        try {
+            final TenantQueue<E> tenantQueue = tenants.get(tenant);
+            final int queued = tenantQueue == null ? 0 : tenantQueue.elements.size();
+            if (size >= capacity || queued >= tenantCapacity) {
+                if (tenantQueue != null && tenantQueue.configured) {
+                    tenantQueue.rejected++;
+                } else {
+                    otherRejected++;
+                }
+                return false;
+            }
+            enqueue(tenantQueue == null ? tenantQueue(tenant) : tenantQueue, e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces adding an element to the queue, without doing size checks.
+     */
+    public void forcePut(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        final String tenant = currentTenant();
+        lock.lock();
+        try {
+            enqueue(tenantQueue(tenant), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        // note, not used in ThreadPoolExecutor
+        throw new IllegalStateException("offer with timeout not allowed on fair queuing queue");
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        // note, not used in ThreadPoolExecutor
+        throw new IllegalStateException("put not allowed on fair queuing queue");
+    }
+
+    @Override
+    public E poll() {
+        lock.lock();
+        try {
+            return size == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return null;
+            }
+            if (current != null && (credit > 0 || active.isEmpty())) {
+                return current.elements.peekFirst();
+            }
+            return active.peekFirst().elements.peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            for (TenantQueue<E> tenantQueue : tenants.values()) {
+                if (tenantQueue.elements.remove(o)) {
+                    size--;
+                    if (tenantQueue.elements.isEmpty()) {
+                        if (tenantQueue == current) {
+                            current = null;
+                        } else {
+                            active.remove(tenantQueue);
+                        }
+                        onEmpty(tenantQueue);
+                    }
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (size > 0 && drained < maxElements) {
+                c.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<E> snapshot() {
+        lock.lock();
+        try {
+            final List<E> elements = new ArrayList<>(size);
+            for (TenantQueue<E> tenantQueue : tenants.values()) {
+                elements.addAll(tenantQueue.elements);
+            }
+            return elements;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the queued elements, in no particular order.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final Iterator<E> it = snapshot().iterator();
+        return new Iterator<E>() {
+            E current;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                current = it.next();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                FairQueuingBlockingQueue.this.remove(current);
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return snapshot().toArray(a);
+    }
+
+    /**
+     * Returns the number of queued elements per tenant, for the configured tenants and all other tenants that have queued elements.
+     */
+    public Map<String, Integer> tenantQueueSizes() {
+        lock.lock();
+        try {
+            final Map<String, Integer> sizes = new HashMap<>(tenants.size());
+            tenants.forEach((tenant, tenantQueue) -> sizes.put(tenant, tenantQueue.elements.size()));
+            return sizes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of refused offers per configured tenant, the refused offers of all other tenants are summed up
+     * under {@link #OTHER_TENANTS}.
+     */
+    public Map<String, Long> tenantRejections() {
+        lock.lock();
+        try {
+            final Map<String, Long> rejections = new HashMap<>();
+            tenants.forEach((tenant, tenantQueue) -> {
+                if (tenantQueue.configured) {
+                    rejections.put(tenant, tenantQueue.rejected);
+                }
+            });
+            rejections.put(OTHER_TENANTS, otherRejected);
+            return rejections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class TenantQueue<E> {
+        final String tenant;
+        final int weight;
+        final boolean configured;
+        final ArrayDeque<E> elements = new ArrayDeque<>();
+        long rejected;
+
+        TenantQueue(String tenant, int weight, boolean configured) {
+            this.tenant = tenant;
+            this.weight = weight;
+            this.configured = configured;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util.concurrent;
+
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.elasticsearch.common.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a fixed number of tasks concurrently on an executor and on the calling thread.
+ */
+public final class ParallelTasks {
+
+    /**
+     * A task that is run once for each index.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run(int index) throws IOException;
+    }
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * Runs the given task for each index from <code>0</code> to <code>numTasks - 1</code> and returns once all of them completed.
+     * Tasks are forked to the given executor, but the calling thread runs tasks as well and takes over all tasks that the executor
+     * didn't start yet or rejected, so that a busy executor never makes the caller wait for forks that are still queued. Once a task
+     * fails, tasks that didn't start yet are skipped and the failure is rethrown after all running tasks completed.
+     */
+    public static void run(int numTasks, @Nullable Executor executor, Task task) throws IOException {
+        final AtomicInteger nextTask = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch tasksDone = new CountDownLatch(numTasks);
+        final Runnable worker = () -> {
+            // forks that start after all tasks were taken return immediately
+            for (int i = nextTask.getAndIncrement(); i < numTasks; i = nextTask.getAndIncrement()) {
+                try {
+                    if (failure.get() == null) {
+                        task.run(i);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    tasksDone.countDown();
+                }
+            }
+        };
+        if (executor != null) {
+            for (int i = 1; i < numTasks; i++) {
+                try {
+                    executor.execute(worker);
+                } catch (EsRejectedExecutionException e) {
+                    // the calling thread runs the tasks that could not be forked
+                    break;
+                }
+            }
+        }
+        worker.run();
+        try {
+            tasksDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ThreadInterruptedException(e);
+        }
+        final Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util.concurrent;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.ExponentiallyWeightedMovingAverage;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An extension to thread pool executor, which automatically adjusts the queue size of the
+ * {@code ResizableBlockingQueue} according to Little's Law.
+ * <p>
+ * Every {@code tasksPerFrame} completed tasks, the rate at which tasks were completed during that frame is taken as the
+ * arrival rate λ and the queue capacity is moved towards L = λ * W, where W is the targeted response time. This is the
+ * number of tasks that can be queued while still being picked up within the targeted response time.
+ */
+public final class QueueResizingEsThreadPoolExecutor extends EsThreadPoolExecutor {
+
+    /**
+     * The weight of new data points in the moving average of the task execution time.
+     */
+    public static final double EWMA_ALPHA = 0.3;
+
+    private static final ESLogger logger = Loggers.getLogger(QueueResizingEsThreadPoolExecutor.class);
+
+    private final String name;
+    private final ResizableBlockingQueue<Runnable> workQueue;
+    private final int tasksPerFrame;
+    private final int minQueueSize;
+    private final int maxQueueSize;
+    private final int queueAdjustmentAmount;
+    private final long targetedResponseTimeNanos;
+    private final ExponentiallyWeightedMovingAverage executionEWMA;
+
+    private final AtomicLong totalTaskNanos = new AtomicLong(0);
+    private final AtomicInteger taskCount = new AtomicInteger(0);
+
+    private long startNs;
+
+    QueueResizingEsThreadPoolExecutor(String name, int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                      ResizableBlockingQueue<Runnable> workQueue, int minQueueSize, int maxQueueSize,
+                                      int tasksPerFrame, TimeValue targetedResponseTime, ThreadFactory threadFactory,
+                                      XRejectedExecutionHandler handler, ThreadContext contextHolder) {
+        super(name, corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler, contextHolder);
+        this.name = name;
+        this.workQueue = workQueue;
+        this.tasksPerFrame = tasksPerFrame;
+        this.minQueueSize = minQueueSize;
+        this.maxQueueSize = maxQueueSize;
+        // move by at most a tenth of the range per frame so that a single unusual frame does not swing the capacity
+        this.queueAdjustmentAmount = Math.max(1, (maxQueueSize - minQueueSize) / 10);
+        this.targetedResponseTimeNanos = targetedResponseTime.getNanos();
+        this.executionEWMA = new ExponentiallyWeightedMovingAverage(EWMA_ALPHA, 0);
+        this.startNs = System.nanoTime();
+        logger.debug("thread pool [{}] will adjust queue by [{}] when determining automatic queue size",
+            name, queueAdjustmentAmount);
+    }
+
+    @Override
+    protected void doExecute(final Runnable command) {
+        // the task enters the queue now, the clock starts ticking when the timed runnable is created
+        super.doExecute(new TimedRunnable(command));
+    }
+
+    @Override
+    protected Runnable unwrap(Runnable runnable) {
+        if (runnable instanceof TimedRunnable) {
+            runnable = ((TimedRunnable) runnable).unwrap();
+        }
+        return super.unwrap(runnable);
+    }
+
+    /**
+     * Calculate task rate (λ), for a fixed number of tasks and time it took those tasks to be measured
+     *
+     * @param totalNumberOfTasks total number of tasks that were measured
+     * @param totalFrameTaskNanos nanoseconds during which the tasks were received
+     * @return the rate of tasks in the system
+     */
+    static double calculateLambda(final int totalNumberOfTasks, final long totalFrameTaskNanos) {
+        assert totalFrameTaskNanos > 0 : "cannot calculate for instantaneous tasks, got: " + totalFrameTaskNanos;
+        assert totalNumberOfTasks > 0 : "cannot calculate for no tasks, got: " + totalNumberOfTasks;
+        // λ = total tasks divided by measurement time
+        return (double) totalNumberOfTasks / totalFrameTaskNanos;
+    }
+
+    /**
+     * Calculate Little's Law (L), which is the "optimal" queue size for a particular task rate (lambda) and targeted
+     * response time.
+     *
+     * @param lambda the arrival rate of tasks in nanoseconds
+     * @param targetedResponseTimeNanos nanoseconds for the average targeted response rate
+     * @return the optimal queue size for the give task rate and targeted response time
+     */
+    static int calculateL(final double lambda, final long targetedResponseTimeNanos) {
+        assert targetedResponseTimeNanos > 0 : "cannot calculate for instantaneous requests";
+        // L = λ * W
+        return Math.toIntExact((long) (lambda * targetedResponseTimeNanos));
+    }
+
+    /**
+     * Returns the current queue capacity
+     */
+    public int getCurrentCapacity() {
+        return workQueue.capacity();
+    }
+
+    /**
+     * Returns the exponentially weighted moving average of the task execution time
+     */
+    public double getTaskExecutionEWMA() {
+        return executionEWMA.getAverage();
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        // a task has been completed, which gives us the total time as a combination of the time in the queue and the
+        // time spent running the task
+        assert r instanceof TimedRunnable : "expected only TimedRunnables in queue";
+        final TimedRunnable timedRunnable = (TimedRunnable) r;
+        final long taskNanos = timedRunnable.getTotalNanos();
+        final long taskExecutionNanos = timedRunnable.getTotalExecutionNanos();
+        if (taskNanos < 0 || taskExecutionNanos < 0) {
+            // the task did not complete normally, its timings would throw off the measurements
+            return;
+        }
+        final long totalNanos = totalTaskNanos.addAndGet(taskNanos);
+        executionEWMA.addValue(taskExecutionNanos);
+
+        if (taskCount.incrementAndGet() == this.tasksPerFrame) {
+            final long endTimeNs = System.nanoTime();
+            final long totalRuntime = endTimeNs - this.startNs;
+            // reset the start time for all tasks, this is protected by the taskCount memory barrier
+            startNs = endTimeNs;
+
+            try {
+                final double lambda = calculateLambda(tasksPerFrame, Math.max(totalRuntime, 1L));
+                final int desiredQueueSize = calculateL(lambda, targetedResponseTimeNanos);
+                final int oldCapacity = workQueue.capacity();
+
+                if (logger.isDebugEnabled()) {
+                    final long avgTaskTime = totalNanos / tasksPerFrame;
+                    logger.debug("[{}]: there were [{}] tasks in [{}], avg task time [{}], EWMA task execution [{}], " +
+                            "[{} tasks/s], optimal queue is [{}], current capacity [{}]",
+                        name,
+                        tasksPerFrame,
+                        TimeValue.timeValueNanos(totalRuntime),
+                        TimeValue.timeValueNanos(avgTaskTime),
+                        TimeValue.timeValueNanos((long) executionEWMA.getAverage()),
+                        String.format(Locale.ROOT, "%.2f", lambda * TimeValue.timeValueSeconds(1).nanos()),
+                        desiredQueueSize,
+                        oldCapacity);
+                }
+
+                // adjust the queue size towards the desired capacity, keeping in mind the min and max values the
+                // queue size can have
+                final int newCapacity = workQueue.adjustCapacity(desiredQueueSize, queueAdjustmentAmount, minQueueSize, maxQueueSize);
+                if (oldCapacity != newCapacity && logger.isDebugEnabled()) {
+                    logger.debug("adjusted [{}] queue size by [{}], old capacity: [{}], new capacity: [{}]", name,
+                        newCapacity > oldCapacity ? queueAdjustmentAmount : -queueAdjustmentAmount,
+                        oldCapacity, newCapacity);
+                }
+            } catch (ArithmeticException e) {
+                // there was an integer overflow, so just log about it rather than adjust the queue size
+                logger.warn("failed to calculate optimal queue size for [{}] thread pool, total frame time [{}ns], tasks [{}], " +
+                        "task execution time [{}ns]", e, name, totalRuntime, tasksPerFrame, totalNanos);
+            } finally {
+                // decrement the task count and time back instead of resetting them to zero so that tasks which completed
+                // during the adjustment are still accounted for
+                int tasks = taskCount.addAndGet(-this.tasksPerFrame);
+                assert tasks >= 0 : "tasks should never be negative, got: " + tasks;
+
+                if (tasks >= this.tasksPerFrame) {
+                    // too many tasks completed during the adjustment for the count to ever hit the frame size again,
+                    // so start over
+                    logger.debug("[{}]: too many incoming tasks while queue size adjustment occurs, resetting measurements to 0",
+                        name);
+                    totalTaskNanos.getAndSet(0);
+                    taskCount.getAndSet(0);
+                    startNs = System.nanoTime();
+                } else {
+                    totalTaskNanos.addAndGet(-totalNanos);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void appendThreadPoolExecutorDetails(StringBuilder sb) {
+        sb.append("min queue capacity = ").append(minQueueSize).append(", ");
+        sb.append("max queue capacity = ").append(maxQueueSize).append(", ");
+        sb.append("frame size = ").append(tasksPerFrame).append(", ");
+        sb.append("targeted response rate = ").append(TimeValue.timeValueNanos(targetedResponseTimeNanos)).append(", ");
+        sb.append("task execution EWMA = ").append(TimeValue.timeValueNanos((long) executionEWMA.getAverage())).append(", ");
+        sb.append("adjustment amount = ").append(queueAdjustmentAmount).append(", ");
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util.concurrent;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded blocking queue whose capacity can be changed while it is in use.
+ */
+public interface ResizableBlockingQueue<E> extends BlockingQueue<E> {
+
+    /**
+     * The current capacity of the queue.
+     */
+    int capacity();
+
+    /**
+     * Moves the capacity of the queue by {@code adjustmentAmount} towards {@code optimalCapacity}, without going below
+     * {@code minCapacity} or above {@code maxCapacity}. Elements that are already queued are kept if the capacity shrinks
+     * below the number of queued elements.
+     *
+     * @return the new capacity of the queue
+     */
+    int adjustCapacity(int optimalCapacity, int adjustmentAmount, int minCapacity, int maxCapacity);
+
+    /**
+     * Computes the capacity that {@link #adjustCapacity(int, int, int, int)} moves a queue with the given capacity to.
+     */
+    static int adjustedCapacity(int capacity, int optimalCapacity, int adjustmentAmount, int minCapacity, int maxCapacity) {
+        assert adjustmentAmount > 0 : "adjustment amount should be a positive value";
+        assert minCapacity <= maxCapacity :
+            "min capacity [" + minCapacity + "] must not be greater than max capacity [" + maxCapacity + "]";
+        if (optimalCapacity == capacity) {
+            return capacity;
+        }
+        final int newCapacity;
+        if (optimalCapacity > capacity) {
+            newCapacity = (int) Math.min((long) capacity + adjustmentAmount, optimalCapacity);
+        } else {
+            newCapacity = Math.max(capacity - adjustmentAmount, optimalCapacity);
+        }
+        return Math.max(minCapacity, Math.min(maxCapacity, newCapacity));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util.concurrent;
+
+/**
+ * A class used to wrap a {@code Runnable} that allows capturing the time the task spent in the queue and the time
+ * it took to execute.
+ */
+class TimedRunnable extends AbstractRunnable {
+    private final Runnable original;
+    private final long creationTimeNanos;
+    private long startTimeNanos = -1;
+    private long finishTimeNanos = -1;
+
+    TimedRunnable(Runnable original) {
+        this.original = original;
+        this.creationTimeNanos = System.nanoTime();
+    }
+
+    @Override
+    protected void doRun() {
+        try {
+            startTimeNanos = System.nanoTime();
+            original.run();
+        } finally {
+            finishTimeNanos = System.nanoTime();
+        }
+    }
+
+    @Override
+    public boolean isForceExecution() {
+        return original instanceof AbstractRunnable && ((AbstractRunnable) original).isForceExecution();
+    }
+
+    @Override
+    public void onRejection(Throwable t) {
+        if (original instanceof AbstractRunnable) {
+            ((AbstractRunnable) original).onRejection(t);
+        } else {
+            super.onRejection(t);
+        }
+    }
+
+    @Override
+    public void onAfter() {
+        if (original instanceof AbstractRunnable) {
+            ((AbstractRunnable) original).onAfter();
+        }
+    }
+
+    @Override
+    public void onFailure(Throwable t) {
+        if (original instanceof AbstractRunnable) {
+            ((AbstractRunnable) original).onFailure(t);
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else {
+            throw new UncategorizedExecutionException("failed to run " + original, t);
+        }
+    }
+
+    /**
+     * Return the time since this task was created until it finished running.
+     * If the task is still running or has not yet been run, returns -1.
+     */
+    long getTotalNanos() {
+        if (finishTimeNanos == -1) {
+            // There must have been an exception thrown, the total time is unknown (-1)
+            return -1;
+        }
+        return Math.max(finishTimeNanos - creationTimeNanos, 1);
+    }
+
+    /**
+     * Return the time this task spent being run.
+     * If the task is still running or has not yet been run, returns -1.
+     */
+    long getTotalExecutionNanos() {
+        if (startTimeNanos == -1 || finishTimeNanos == -1) {
+            // There must have been an exception thrown, the total time is unknown (-1)
+            return -1;
+        }
+        return Math.max(finishTimeNanos - startTimeNanos, 1);
+    }
+
+    Runnable unwrap() {
+        return original;
+    }
+
+    @Override
+    public String toString() {
+        return original.toString();
+    }
+}
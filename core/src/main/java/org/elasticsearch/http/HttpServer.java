@@ -33,6 +33,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.node.service.NodeService;
 import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.ChunkedRestResponse;
 import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
@@ -42,6 +43,7 @@ import org.elasticsearch.rest.RestStatus;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.elasticsearch.rest.RestStatus.FORBIDDEN;
@@ -165,6 +167,11 @@ public class HttpServer extends AbstractLifecycleComponent<HttpServer> implement
             return delegate.newBuilder(autoDetectSource, useFiltering);
         }
 
+        @Override
+        public XContentBuilder newBuilder(OutputStream out) throws IOException {
+            return delegate.newBuilder(out);
+        }
+
         @Override
         public BytesStreamOutput bytesOutput() {
             return delegate.bytesOutput();
@@ -183,6 +190,10 @@ public class HttpServer extends AbstractLifecycleComponent<HttpServer> implement
         @Override
         public void sendResponse(RestResponse response) {
             close();
+            if (response instanceof ChunkedRestResponse) {
+                // the chunks of the response that are buffered but not yet written to the network count towards in-flight requests
+                ((ChunkedRestResponse) response).inFlightRequestsBreaker(inFlightRequestsBreaker(circuitBreakerService));
+            }
             delegate.sendResponse(response);
         }
 
@@ -20,35 +20,45 @@
 package org.elasticsearch.http.netty;
 
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.netty.ReleaseChannelFutureListener;
 import org.elasticsearch.http.netty.cors.CorsHandler;
 import org.elasticsearch.http.netty.pipelining.OrderedDownstreamChannelEvent;
 import org.elasticsearch.http.netty.pipelining.OrderedUpstreamMessageEvent;
 import org.elasticsearch.rest.AbstractRestChannel;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.ChunkedRestResponse;
 import org.elasticsearch.rest.RestResponse;
 import org.elasticsearch.rest.RestStatus;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.handler.codec.http.Cookie;
 import org.jboss.netty.handler.codec.http.CookieDecoder;
 import org.jboss.netty.handler.codec.http.CookieEncoder;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunk;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Values.CLOSE;
@@ -56,6 +66,19 @@ import static org.jboss.netty.handler.codec.http.HttpHeaders.Values.KEEP_ALIVE;
 
 public final class NettyHttpChannel extends AbstractRestChannel {
 
+    /**
+     * The size of the chunks that {@link ChunkedRestResponse}s are sent in.
+     */
+    static final int RESPONSE_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of chunks of a {@link ChunkedRestResponse} that are handed over to netty but not written to the
+     * network yet. Only one chunk is sent at a time while the channel is not writable.
+     */
+    static final int MAX_CHUNKS_IN_FLIGHT = 4;
+
+    private static final ESLogger logger = Loggers.getLogger(NettyHttpChannel.class);
+
     private final NettyHttpServerTransport transport;
     private final Channel channel;
     private final org.jboss.netty.handler.codec.http.HttpRequest nettyRequest;
@@ -86,20 +109,11 @@ public final class NettyHttpChannel extends AbstractRestChannel {
 
     @Override
     public void sendResponse(RestResponse response) {
-        // if the response object was created upstream, then use it;
-        // otherwise, create a new one
-        HttpResponse resp = newResponse();
-        resp.setStatus(getStatus(response.status()));
-
-        CorsHandler.setCorsResponseHeaders(nettyRequest, resp, transport.getCorsConfig());
-
-        String opaque = nettyRequest.headers().get("X-Opaque-Id");
-        if (opaque != null) {
-            setHeaderField(resp, "X-Opaque-Id", opaque);
+        if (response instanceof ChunkedRestResponse) {
+            sendChunkedResponse((ChunkedRestResponse) response);
+            return;
         }
-
-        // Add all custom headers
-        addCustomHeaders(response, resp);
+        HttpResponse resp = prepareResponse(response);
 
         BytesReference content = response.content();
         ChannelBuffer buffer;
@@ -115,16 +129,7 @@ public final class NettyHttpChannel extends AbstractRestChannel {
 
             addCookies(resp);
 
-            ChannelFuture future;
-
-            if (orderedUpstreamMessageEvent != null) {
-                OrderedDownstreamChannelEvent downstreamChannelEvent =
-                    new OrderedDownstreamChannelEvent(orderedUpstreamMessageEvent, 0, true, resp);
-                future = downstreamChannelEvent.getFuture();
-                channel.getPipeline().sendDownstream(downstreamChannelEvent);
-            } else {
-                future = channel.write(resp);
-            }
+            ChannelFuture future = write(resp, 0, true);
 
             if (content instanceof Releasable) {
                 future.addListener(new ReleaseChannelFutureListener((Releasable) content));
@@ -142,6 +147,152 @@ public final class NettyHttpChannel extends AbstractRestChannel {
         }
     }
 
+    private void sendChunkedResponse(ChunkedRestResponse response) {
+        new ChunkedResponseWriter(response).writeChunks();
+    }
+
+    // Creates the response and sets the status and the headers that are common to regular and chunked responses.
+    private HttpResponse prepareResponse(RestResponse response) {
+        // if the response object was created upstream, then use it;
+        // otherwise, create a new one
+        HttpResponse resp = newResponse();
+        resp.setStatus(getStatus(response.status()));
+
+        CorsHandler.setCorsResponseHeaders(nettyRequest, resp, transport.getCorsConfig());
+
+        String opaque = nettyRequest.headers().get("X-Opaque-Id");
+        if (opaque != null) {
+            setHeaderField(resp, "X-Opaque-Id", opaque);
+        }
+
+        // Add all custom headers
+        addCustomHeaders(response, resp);
+        return resp;
+    }
+
+    private ChannelFuture write(Object message, int subsequence, boolean last) {
+        if (orderedUpstreamMessageEvent != null) {
+            OrderedDownstreamChannelEvent downstreamChannelEvent =
+                new OrderedDownstreamChannelEvent(orderedUpstreamMessageEvent, subsequence, last, message);
+            channel.getPipeline().sendDownstream(downstreamChannelEvent);
+            return downstreamChannelEvent.getFuture();
+        } else {
+            return channel.write(message);
+        }
+    }
+
+    /**
+     * Serializes a {@link ChunkedRestResponse} lazily and sends it as http chunks of about {@link #RESPONSE_CHUNK_SIZE} bytes.
+     * A chunk is only serialized when the channel is writable or when no other chunk is in flight, and writing resumes
+     * once a chunk was written to the network, so that the content is produced as fast as the client reads it instead of
+     * piling up in the buffers of netty. The headers of the response are sent along with the first chunk. Chunks that were
+     * handed over to netty but not written to the network yet are accounted against the in-flight requests breaker of the
+     * response if there is one.
+     */
+    private final class ChunkedResponseWriter {
+
+        private final ChunkedRestResponse response;
+        private final CircuitBreaker breaker;
+        private final BytesStreamOutput buffer = new BytesStreamOutput(RESPONSE_CHUNK_SIZE);
+        private final AtomicInteger chunksInFlight = new AtomicInteger();
+        // the number of requests to resume writing, only the thread that brings it above 0 writes
+        private final AtomicInteger resumeRequests = new AtomicInteger();
+        private int subsequence = 0;
+        private boolean headersSent = false;
+        private boolean contentWritten = false;
+        private volatile boolean done = false;
+
+        ChunkedResponseWriter(ChunkedRestResponse response) {
+            this.response = response;
+            this.breaker = response.inFlightRequestsBreaker();
+        }
+
+        void writeChunks() {
+            if (resumeRequests.getAndIncrement() != 0) {
+                // another thread is writing, it checks again whether it can send more chunks before it stops
+                return;
+            }
+            int requests = 1;
+            do {
+                try {
+                    while (done == false && canSendChunk()) {
+                        sendNextChunk();
+                    }
+                } catch (Throwable t) {
+                    done = true;
+                    onFailure(t);
+                }
+                requests = resumeRequests.addAndGet(-requests);
+            } while (requests != 0);
+        }
+
+        private boolean canSendChunk() {
+            final int inFlight = chunksInFlight.get();
+            // the writability doesn't reflect pipelined responses that are held back until the previous responses were sent
+            return inFlight == 0 || (inFlight < MAX_CHUNKS_IN_FLIGHT && channel.isWritable());
+        }
+
+        private void sendNextChunk() throws IOException {
+            while (contentWritten == false && buffer.size() < RESPONSE_CHUNK_SIZE) {
+                contentWritten = response.writeNextPart(buffer) == false;
+            }
+            final byte[] bytes = buffer.bytes().toBytes();
+            buffer.reset();
+            if (breaker != null && bytes.length > 0) {
+                // account before sending the headers so that a tripped breaker still results in a proper error response
+                breaker.addEstimateBytesAndMaybeBreak(bytes.length, "<http_response_chunk>");
+            }
+            if (headersSent == false) {
+                HttpResponse resp = prepareResponse(response);
+                resp.setChunked(true);
+                HttpHeaders.setTransferEncodingChunked(resp);
+                setHeaderField(resp, HttpHeaders.Names.CONTENT_TYPE, response.contentType(), false);
+                addCookies(resp);
+                write(resp, subsequence++, false);
+                headersSent = true;
+            }
+            if (bytes.length > 0) {
+                chunksInFlight.incrementAndGet();
+                ChannelFuture future = write(new DefaultHttpChunk(ChannelBuffers.wrappedBuffer(bytes)), subsequence++, false);
+                future.addListener(f -> {
+                    if (breaker != null) {
+                        breaker.addWithoutBreaking(-bytes.length);
+                    }
+                    chunksInFlight.decrementAndGet();
+                    if (f.isSuccess()) {
+                        writeChunks();
+                    } else {
+                        // the channel is closed, there is no point in serializing the rest of the response
+                        done = true;
+                    }
+                });
+            }
+            if (contentWritten) {
+                done = true;
+                ChannelFuture future = write(HttpChunk.LAST_CHUNK, subsequence++, true);
+                if (isCloseConnection()) {
+                    future.addListener(ChannelFutureListener.CLOSE);
+                }
+            }
+        }
+
+        private void onFailure(Throwable t) {
+            if (headersSent) {
+                // we can't send an error response anymore once the headers went out
+                logger.warn("failed to send chunked response, closing connection", t);
+                channel.close();
+            } else {
+                try {
+                    sendResponse(new BytesRestResponse(NettyHttpChannel.this, t));
+                } catch (Throwable inner) {
+                    inner.addSuppressed(t);
+                    logger.warn("failed to send failure response, closing connection", inner);
+                    channel.close();
+                }
+            }
+        }
+    }
+
     private void setHeaderField(HttpResponse resp, String headerField, String value) {
         setHeaderField(resp, headerField, value, true);
     }
@@ -716,9 +716,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
                     case STARTED:
                     case RELOCATED:
                         try {
-                            if (shard.isRefreshNeeded()) {
-                                shard.refresh("schedule");
-                            }
+                            shard.scheduledRefresh();
                         } catch (EngineClosedException | AlreadyClosedException ex) {
                             // fine - continue;
                         }
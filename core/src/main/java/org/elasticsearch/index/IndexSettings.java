@@ -66,6 +66,20 @@ public final class IndexSettings {
     public static final Setting<Translog.Durability> INDEX_TRANSLOG_DURABILITY_SETTING =
         new Setting<>("index.translog.durability", Translog.Durability.REQUEST.name(),
             (value) -> Translog.Durability.valueOf(value.toUpperCase(Locale.ROOT)), Property.Dynamic, Property.IndexScope);
+    /**
+     * The time the leader of a translog group commit waits for concurrent writers before it fsyncs, if other requests are
+     * already waiting for a sync. A value of <tt>0</tt> disables the wait such that only requests that queue up while an fsync
+     * is in flight are coalesced.
+     */
+    public static final Setting<TimeValue> INDEX_TRANSLOG_GROUP_COMMIT_DELAY_SETTING =
+        Setting.timeSetting("index.translog.group_commit_delay", TimeValue.timeValueMillis(0), TimeValue.timeValueMillis(0),
+            Property.Dynamic, Property.IndexScope);
+    /**
+     * If enabled, the sources of index operations are compressed before they are written to the translog. This trades CPU for
+     * less translog I/O, both on disk and when operations are replayed during peer recoveries.
+     */
+    public static final Setting<Boolean> INDEX_TRANSLOG_COMPRESS_SETTING =
+        Setting.boolSetting("index.translog.compress", false, Property.Dynamic, Property.IndexScope);
     public static final Setting<Boolean> INDEX_WARMER_ENABLED_SETTING =
         Setting.boolSetting("index.warmer.enabled", true, Property.Dynamic, Property.IndexScope);
     public static final Setting<Boolean> INDEX_TTL_DISABLE_PURGE_SETTING =
@@ -102,6 +116,14 @@ public final class IndexSettings {
     public static final Setting<TimeValue> INDEX_REFRESH_INTERVAL_SETTING =
         Setting.timeSetting("index.refresh_interval", DEFAULT_REFRESH_INTERVAL, new TimeValue(-1, TimeUnit.MILLISECONDS),
             Property.Dynamic, Property.IndexScope);
+    /**
+     * Index setting describing how long a shard may go without receiving a search before it is considered search idle. Search idle
+     * shards skip scheduled refreshes until the next search arrives, which then waits for a refresh before it executes.
+     * A value of <tt>-1</tt> (the default) disables this behaviour such that shards always refresh on {@link #INDEX_REFRESH_INTERVAL_SETTING}.
+     */
+    public static final Setting<TimeValue> INDEX_SEARCH_IDLE_AFTER =
+        Setting.timeSetting("index.search.idle.after", new TimeValue(-1, TimeUnit.MILLISECONDS), new TimeValue(-1, TimeUnit.MILLISECONDS),
+            Property.Dynamic, Property.IndexScope);
     public static final Setting<ByteSizeValue> INDEX_TRANSLOG_FLUSH_THRESHOLD_SIZE_SETTING =
         Setting.byteSizeSetting("index.translog.flush_threshold_size", new ByteSizeValue(512, ByteSizeUnit.MB), Property.Dynamic,
             Property.IndexScope);
@@ -127,6 +149,14 @@ public final class IndexSettings {
     public static final Setting<Integer> MAX_SLICES_PER_SCROLL = Setting.intSetting("index.max_slices_per_scroll",
         1024, 1, Property.Dynamic, Property.IndexScope);
 
+    /**
+     * Index setting describing the maximum number of slices that the query phase of a search request splits the segments
+     * of a shard into in order to search them concurrently. The default of <tt>1</tt> searches segments sequentially on the
+     * search thread. Searches with aggregations or <tt>terminate_after</tt> are always executed sequentially.
+     */
+    public static final Setting<Integer> INDEX_SEARCH_CONCURRENT_SEGMENT_SLICES_SETTING =
+        Setting.intSetting("index.search.concurrent_segment_slices", 1, 1, Property.Dynamic, Property.IndexScope);
+
     private final Index index;
     private final Version version;
     private final ESLogger logger;
@@ -145,10 +175,14 @@ public final class IndexSettings {
     private final boolean defaultAllowUnmappedFields;
     private final Predicate<String> indexNameMatcher;
     private volatile Translog.Durability durability;
+    private volatile boolean translogCompressionEnabled;
+    private volatile TimeValue translogGroupCommitDelay;
     private final TimeValue syncInterval;
     private volatile TimeValue refreshInterval;
+    private volatile TimeValue searchIdleAfter;
     private volatile ByteSizeValue flushThresholdSize;
     private final MergeSchedulerConfig mergeSchedulerConfig;
+    private final IndexSortConfig indexSortConfig;
     private final MergePolicyConfig mergePolicyConfig;
     private final IndexScopedSettings scopedSettings;
     private long gcDeletesInMillis = DEFAULT_GC_DELETES.millis();
@@ -164,6 +198,10 @@ public final class IndexSettings {
      * The maximum number of slices allowed in a scroll request.
      */
     private volatile int maxSlicesPerScroll;
+    /**
+     * The maximum number of slices that the segments of a shard are searched in concurrently.
+     */
+    private volatile int concurrentSegmentSlices;
 
 
     /**
@@ -241,9 +279,13 @@ public final class IndexSettings {
         this.indexNameMatcher = indexNameMatcher;
         this.durability = scopedSettings.get(INDEX_TRANSLOG_DURABILITY_SETTING);
         syncInterval = INDEX_TRANSLOG_SYNC_INTERVAL_SETTING.get(settings);
+        translogGroupCommitDelay = scopedSettings.get(INDEX_TRANSLOG_GROUP_COMMIT_DELAY_SETTING);
+        translogCompressionEnabled = scopedSettings.get(INDEX_TRANSLOG_COMPRESS_SETTING);
         refreshInterval = scopedSettings.get(INDEX_REFRESH_INTERVAL_SETTING);
+        searchIdleAfter = scopedSettings.get(INDEX_SEARCH_IDLE_AFTER);
         flushThresholdSize = scopedSettings.get(INDEX_TRANSLOG_FLUSH_THRESHOLD_SIZE_SETTING);
         mergeSchedulerConfig = new MergeSchedulerConfig(this);
+        indexSortConfig = new IndexSortConfig(this);
         gcDeletesInMillis = scopedSettings.get(INDEX_GC_DELETES_SETTING).getMillis();
         warmerEnabled = scopedSettings.get(INDEX_WARMER_ENABLED_SETTING);
         maxResultWindow = scopedSettings.get(MAX_RESULT_WINDOW_SETTING);
@@ -251,6 +293,7 @@ public final class IndexSettings {
         TTLPurgeDisabled = scopedSettings.get(INDEX_TTL_DISABLE_PURGE_SETTING);
         maxRefreshListeners = scopedSettings.get(MAX_REFRESH_LISTENERS_PER_SHARD);
         maxSlicesPerScroll = scopedSettings.get(MAX_SLICES_PER_SCROLL);
+        concurrentSegmentSlices = scopedSettings.get(INDEX_SEARCH_CONCURRENT_SEGMENT_SLICES_SETTING);
         this.mergePolicyConfig = new MergePolicyConfig(logger, this);
         assert indexNameMatcher.test(indexMetaData.getIndex().getName());
 
@@ -266,6 +309,8 @@ public final class IndexSettings {
         scopedSettings.addSettingsUpdateConsumer(MergeSchedulerConfig.MAX_MERGE_COUNT_SETTING, mergeSchedulerConfig::setMaxMergeCount);
         scopedSettings.addSettingsUpdateConsumer(MergeSchedulerConfig.AUTO_THROTTLE_SETTING, mergeSchedulerConfig::setAutoThrottle);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_DURABILITY_SETTING, this::setTranslogDurability);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_GROUP_COMMIT_DELAY_SETTING, this::setTranslogGroupCommitDelay);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_COMPRESS_SETTING, this::setTranslogCompressionEnabled);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TTL_DISABLE_PURGE_SETTING, this::setTTLPurgeDisabled);
         scopedSettings.addSettingsUpdateConsumer(MAX_RESULT_WINDOW_SETTING, this::setMaxResultWindow);
         scopedSettings.addSettingsUpdateConsumer(MAX_RESCORE_WINDOW_SETTING, this::setMaxRescoreWindow);
@@ -273,8 +318,10 @@ public final class IndexSettings {
         scopedSettings.addSettingsUpdateConsumer(INDEX_GC_DELETES_SETTING, this::setGCDeletes);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_FLUSH_THRESHOLD_SIZE_SETTING, this::setTranslogFlushThresholdSize);
         scopedSettings.addSettingsUpdateConsumer(INDEX_REFRESH_INTERVAL_SETTING, this::setRefreshInterval);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_SEARCH_IDLE_AFTER, this::setSearchIdleAfter);
         scopedSettings.addSettingsUpdateConsumer(MAX_REFRESH_LISTENERS_PER_SHARD, this::setMaxRefreshListeners);
         scopedSettings.addSettingsUpdateConsumer(MAX_SLICES_PER_SCROLL, this::setMaxSlicesPerScroll);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_SEARCH_CONCURRENT_SEGMENT_SLICES_SETTING, this::setConcurrentSegmentSlices);
     }
 
     private void setTranslogFlushThresholdSize(ByteSizeValue byteSizeValue) {
@@ -289,6 +336,10 @@ public final class IndexSettings {
         this.refreshInterval = timeValue;
     }
 
+    private void setSearchIdleAfter(TimeValue searchIdleAfter) {
+        this.searchIdleAfter = searchIdleAfter;
+    }
+
     /**
      * Returns the settings for this index. These settings contain the node and index level settings where
      * settings that are specified on both index and node level are overwritten by the index settings.
@@ -435,6 +486,28 @@ public final class IndexSettings {
         this.durability = durability;
     }
 
+    /**
+     * Returns the time the leader of a translog group commit waits for concurrent writers before it fsyncs.
+     */
+    public TimeValue getTranslogGroupCommitDelay() {
+        return translogGroupCommitDelay;
+    }
+
+    private void setTranslogGroupCommitDelay(TimeValue translogGroupCommitDelay) {
+        this.translogGroupCommitDelay = translogGroupCommitDelay;
+    }
+
+    /**
+     * Returns <code>true</code> if the sources of index operations are compressed before they are written to the translog.
+     */
+    public boolean isTranslogCompressionEnabled() {
+        return translogCompressionEnabled;
+    }
+
+    private void setTranslogCompressionEnabled(boolean translogCompressionEnabled) {
+        this.translogCompressionEnabled = translogCompressionEnabled;
+    }
+
     /**
      * Returns true if index warmers are enabled, otherwise <code>false</code>
      */
@@ -461,6 +534,14 @@ public final class IndexSettings {
         return refreshInterval;
     }
 
+    /**
+     * Returns the time after which a shard without searches is considered search idle and skips scheduled refreshes. <tt>-1</tt>
+     * means shards never become search idle.
+     */
+    public TimeValue getSearchIdleAfter() {
+        return searchIdleAfter;
+    }
+
     /**
      * Returns the transaction log threshold size when to forcefully flush the index and clear the transaction log.
      */
@@ -471,6 +552,11 @@ public final class IndexSettings {
      */
     public MergeSchedulerConfig getMergeSchedulerConfig() { return mergeSchedulerConfig; }
 
+    /**
+     * Returns the {@link IndexSortConfig}
+     */
+    public IndexSortConfig getIndexSortConfig() { return indexSortConfig; }
+
     /**
      * Returns the max result window for search requests, describing the maximum value of from + size on a query.
      */
@@ -545,5 +631,16 @@ public final class IndexSettings {
         this.maxSlicesPerScroll = value;
     }
 
+    /**
+     * The maximum number of slices that the query phase searches the segments of a shard in concurrently.
+     */
+    public int getConcurrentSegmentSlices() {
+        return concurrentSegmentSlices;
+    }
+
+    private void setConcurrentSegmentSlices(int concurrentSegmentSlices) {
+        this.concurrentSegmentSlices = concurrentSegmentSlices;
+    }
+
     IndexScopedSettings getScopedSettings() { return scopedSettings;}
 }
@@ -0,0 +1,197 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSelector;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.SortedSetSelector;
+import org.apache.lucene.search.SortedSetSortField;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Holds the index sort of an index: the fields, and their order, that the documents of merged segments are sorted by.
+ * Queries that sort by a prefix of the index sort can stop collecting documents on a sorted segment once they have
+ * collected enough hits.
+ *
+ * <p>The index sort is defined by the following <b>static</b> settings:
+ *
+ * <ul>
+ * <li><code>index.sort.field</code>:
+ *
+ *     The list of fields to sort the index by. Fields must be <code>keyword</code>, <code>date</code> or
+ *     numeric fields with doc values and must be mapped when the index is created.
+ *
+ * <li><code>index.sort.order</code>:
+ *
+ *     The sort order of each field, <code>asc</code> or <code>desc</code>. Defaults to <code>asc</code> for
+ *     all fields.
+ * </ul>
+ *
+ * Multi-valued fields are sorted by their minimum value in ascending order and by their maximum value in
+ * descending order and documents without a value are sorted last, which are the defaults of the field sort
+ * of a search request.
+ */
+public final class IndexSortConfig {
+
+    public static final Setting<List<String>> INDEX_SORT_FIELD_SETTING =
+        Setting.listSetting("index.sort.field", Collections.emptyList(), Function.identity(), Property.IndexScope);
+    public static final Setting<List<SortOrder>> INDEX_SORT_ORDER_SETTING =
+        Setting.listSetting("index.sort.order", Collections.emptyList(), IndexSortConfig::parseOrder, Property.IndexScope);
+
+    private final String[] fields;
+    private final SortOrder[] orders;
+
+    IndexSortConfig(IndexSettings indexSettings) {
+        final List<String> fields = indexSettings.getValue(INDEX_SORT_FIELD_SETTING);
+        final List<SortOrder> orders = indexSettings.getValue(INDEX_SORT_ORDER_SETTING);
+        if (orders.isEmpty() == false && orders.size() != fields.size()) {
+            throw new IllegalArgumentException("index.sort.field:" + fields + " and index.sort.order:" + orders
+                + " must have the same number of values");
+        }
+        this.fields = fields.toArray(new String[fields.size()]);
+        this.orders = new SortOrder[fields.size()];
+        for (int i = 0; i < this.orders.length; i++) {
+            this.orders[i] = orders.isEmpty() ? SortOrder.ASC : orders.get(i);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> iff the index defines an index sort.
+     */
+    public boolean hasIndexSort() {
+        return fields.length > 0;
+    }
+
+    /**
+     * Returns the number of fields of the index sort.
+     */
+    public int getNumFields() {
+        return fields.length;
+    }
+
+    /**
+     * Returns the name of the field at the given position of the index sort.
+     */
+    public String getField(int i) {
+        return fields[i];
+    }
+
+    /**
+     * Returns the sort order of the field at the given position of the index sort.
+     */
+    public SortOrder getOrder(int i) {
+        return orders[i];
+    }
+
+    /**
+     * Builds the index sort from the given field types or returns <code>null</code> if the index doesn't define an index sort.
+     *
+     * @throws IllegalArgumentException if a field is not mapped or can't be used to sort the index
+     */
+    public Sort buildIndexSort(Function<String, MappedFieldType> fieldTypeLookup) {
+        if (hasIndexSort() == false) {
+            return null;
+        }
+        final SortField[] sortFields = new SortField[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            final MappedFieldType fieldType = fieldTypeLookup.apply(fields[i]);
+            if (fieldType == null) {
+                throw new IllegalArgumentException("unknown index sort field: [" + fields[i] + "]");
+            }
+            sortFields[i] = buildSortField(fieldType, orders[i] == SortOrder.DESC);
+        }
+        return new Sort(sortFields);
+    }
+
+    /**
+     * Validates that the given field can be used to sort the index if it is part of the index sort.
+     *
+     * @throws IllegalArgumentException if the field is part of the index sort but can't be used to sort the index
+     */
+    public void validateField(MappedFieldType fieldType) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(fieldType.name())) {
+                buildSortField(fieldType, orders[i] == SortOrder.DESC);
+            }
+        }
+    }
+
+    private static SortField buildSortField(MappedFieldType fieldType, boolean reverse) {
+        if (fieldType.hasDocValues() == false) {
+            throw new IllegalArgumentException("docvalues not found for index sort field: [" + fieldType.name() + "]");
+        }
+        // missing values are sorted last, like in a field sort of a search request
+        final SortField sortField;
+        switch (fieldType.typeName()) {
+            case "keyword":
+                sortField = new SortedSetSortField(fieldType.name(), reverse,
+                    reverse ? SortedSetSelector.Type.MAX : SortedSetSelector.Type.MIN);
+                sortField.setMissingValue(reverse ? SortField.STRING_FIRST : SortField.STRING_LAST);
+                break;
+            case "long":
+            case "integer":
+            case "short":
+            case "byte":
+            case "half_float":
+            case "date":
+                // all of these are stored as sortable longs
+                sortField = newSortedNumericSortField(fieldType.name(), SortField.Type.LONG, reverse);
+                sortField.setMissingValue(reverse ? Long.MIN_VALUE : Long.MAX_VALUE);
+                break;
+            case "double":
+                sortField = newSortedNumericSortField(fieldType.name(), SortField.Type.DOUBLE, reverse);
+                sortField.setMissingValue(reverse ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+                break;
+            case "float":
+                sortField = newSortedNumericSortField(fieldType.name(), SortField.Type.FLOAT, reverse);
+                sortField.setMissingValue(reverse ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY);
+                break;
+            default:
+                throw new IllegalArgumentException("invalid index sort field: [" + fieldType.name() + "] of type ["
+                    + fieldType.typeName() + "], only keyword, date and numeric fields are supported");
+        }
+        return sortField;
+    }
+
+    private static SortField newSortedNumericSortField(String field, SortField.Type type, boolean reverse) {
+        return new SortedNumericSortField(field, type, reverse, reverse ? SortedNumericSelector.Type.MAX : SortedNumericSelector.Type.MIN);
+    }
+
+    private static SortOrder parseOrder(String order) {
+        switch (order.toLowerCase(Locale.ROOT)) {
+            case "asc":
+                return SortOrder.ASC;
+            case "desc":
+                return SortOrder.DESC;
+            default:
+                throw new IllegalArgumentException("illegal index sort order [" + order + "], must be one of [asc, desc]");
+        }
+    }
+}
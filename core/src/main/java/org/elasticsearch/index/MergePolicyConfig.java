@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index;
 
+import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.TieredMergePolicy;
@@ -29,6 +30,8 @@ import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 
+import java.util.Locale;
+
 /**
  * A shard in elasticsearch is a Lucene index, and a Lucene index is broken
  * down into segments. Segments are internal storage elements in the index
@@ -113,12 +116,49 @@ import org.elasticsearch.common.unit.ByteSizeValue;
  * indices segments API to see the segments that an index has, and
  * possibly either increase the <code>max_merged_segment</code> or issue an optimize
  * call for the index (try and aim to issue it on a low traffic time).
+ *
+ * <p>
+ * The merge policy can be chosen when the index is created with <code>index.merge.policy.type</code>.
+ * The default, <code>tiered</code>, is described above. <code>time_based</code> is meant for
+ * append-only indices whose documents arrive in time order, like logs: it only merges segments that
+ * are adjacent in the index, which are segments that cover adjacent time ranges since segments are
+ * written in the order documents were indexed, and it never selects segments that are larger than
+ * <code>max_merged_segment</code> for a normal merge so that large old segments are not rewritten over
+ * and over again. <code>max_merge_at_once</code> is the number of adjacent segments of the same size
+ * level that are merged at once and segments smaller than <code>floor_segment</code> are all treated as
+ * the lowest level. Settings that only apply to the tiered policy are ignored.
  */
 
 public final class MergePolicyConfig {
     private final TieredMergePolicy mergePolicy = new TieredMergePolicy();
+    private final LogByteSizeMergePolicy timeBasedMergePolicy = new LogByteSizeMergePolicy();
     private final ESLogger logger;
     private final boolean mergesEnabled;
+    private final Type type;
+
+    /**
+     * The type of the merge policy of an index
+     */
+    public enum Type {
+        TIERED,
+        TIME_BASED;
+
+        public static Type fromString(String type) {
+            switch (type) {
+                case "tiered":
+                    return TIERED;
+                case "time_based":
+                    return TIME_BASED;
+                default:
+                    throw new IllegalArgumentException("unknown merge policy type [" + type + "], must be one of [tiered, time_based]");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
 
     public static final double          DEFAULT_EXPUNGE_DELETES_ALLOWED     = 10d;
     public static final ByteSizeValue   DEFAULT_FLOOR_SEGMENT               = new ByteSizeValue(2, ByteSizeUnit.MB);
@@ -152,6 +192,8 @@ public final class MergePolicyConfig {
     public static final Setting<Double> INDEX_MERGE_POLICY_RECLAIM_DELETES_WEIGHT_SETTING =
         Setting.doubleSetting("index.merge.policy.reclaim_deletes_weight", DEFAULT_RECLAIM_DELETES_WEIGHT, 0.0d,
             Property.Dynamic, Property.IndexScope);
+    public static final Setting<Type> INDEX_MERGE_POLICY_TYPE_SETTING =
+        new Setting<>("index.merge.policy.type", Type.TIERED.toString(), Type::fromString, Property.IndexScope);
     public static final String INDEX_MERGE_ENABLED = "index.merge.enabled"; // don't convert to Setting<> and register... we only set this in tests and register via a plugin
 
 
@@ -166,6 +208,7 @@ public final class MergePolicyConfig {
         ByteSizeValue maxMergedSegment = indexSettings.getValue(INDEX_MERGE_POLICY_MAX_MERGED_SEGMENT_SETTING);
         double segmentsPerTier = indexSettings.getValue(INDEX_MERGE_POLICY_SEGMENTS_PER_TIER_SETTING);
         double reclaimDeletesWeight = indexSettings.getValue(INDEX_MERGE_POLICY_RECLAIM_DELETES_WEIGHT_SETTING);
+        this.type = indexSettings.getValue(INDEX_MERGE_POLICY_TYPE_SETTING);
         this.mergesEnabled = indexSettings.getSettings().getAsBoolean(INDEX_MERGE_ENABLED, true);
         if (mergesEnabled == false) {
             logger.warn("[{}] is set to false, this should only be used in tests and can cause serious problems in production environments", INDEX_MERGE_ENABLED);
@@ -179,7 +222,15 @@ public final class MergePolicyConfig {
         mergePolicy.setMaxMergedSegmentMB(maxMergedSegment.mbFrac());
         mergePolicy.setSegmentsPerTier(segmentsPerTier);
         mergePolicy.setReclaimDeletesWeight(reclaimDeletesWeight);
-        if (logger.isTraceEnabled()) {
+        timeBasedMergePolicy.setNoCFSRatio(indexSettings.getValue(INDEX_COMPOUND_FORMAT_SETTING));
+        timeBasedMergePolicy.setMinMergeMB(floorSegment.mbFrac());
+        timeBasedMergePolicy.setMaxMergeMB(maxMergedSegment.mbFrac());
+        // segments_per_tier doesn't apply to the time based policy so it uses the configured max_merge_at_once as is
+        timeBasedMergePolicy.setMergeFactor(indexSettings.getValue(INDEX_MERGE_POLICY_MAX_MERGE_AT_ONCE_SETTING));
+        if (logger.isTraceEnabled() && type == Type.TIME_BASED) {
+            logger.trace("using [time_based] merge mergePolicy with floor_segment[{}], max_merge_at_once[{}], max_merged_segment[{}]",
+                floorSegment, timeBasedMergePolicy.getMergeFactor(), maxMergedSegment);
+        } else if (logger.isTraceEnabled()) {
             logger.trace("using [tiered] merge mergePolicy with expunge_deletes_allowed[{}], floor_segment[{}], max_merge_at_once[{}], max_merge_at_once_explicit[{}], max_merged_segment[{}], segments_per_tier[{}], reclaim_deletes_weight[{}]",
                 forceMergeDeletesPctAllowed, floorSegment, maxMergeAtOnce, maxMergeAtOnceExplicit, maxMergedSegment, segmentsPerTier, reclaimDeletesWeight);
         }
@@ -195,6 +246,7 @@ public final class MergePolicyConfig {
 
     void setMaxMergedSegment(ByteSizeValue maxMergedSegment) {
         mergePolicy.setMaxMergedSegmentMB(maxMergedSegment.mbFrac());
+        timeBasedMergePolicy.setMaxMergeMB(maxMergedSegment.mbFrac());
     }
 
     void setMaxMergesAtOnceExplicit(Integer maxMergeAtOnceExplicit) {
@@ -203,10 +255,12 @@ public final class MergePolicyConfig {
 
     void setMaxMergesAtOnce(Integer maxMergeAtOnce) {
         mergePolicy.setMaxMergeAtOnce(maxMergeAtOnce);
+        timeBasedMergePolicy.setMergeFactor(maxMergeAtOnce);
     }
 
     void setFloorSegmentSetting(ByteSizeValue floorSegementSetting) {
         mergePolicy.setFloorSegmentMB(floorSegementSetting.mbFrac());
+        timeBasedMergePolicy.setMinMergeMB(floorSegementSetting.mbFrac());
     }
 
     void setExpungeDeletesAllowed(Double value) {
@@ -215,6 +269,7 @@ public final class MergePolicyConfig {
 
     void setNoCFSRatio(Double noCFSRatio) {
         mergePolicy.setNoCFSRatio(noCFSRatio);
+        timeBasedMergePolicy.setNoCFSRatio(noCFSRatio);
     }
 
     private int adjustMaxMergeAtOnceIfNeeded(int maxMergeAtOnce, double segmentsPerTier) {
@@ -232,7 +287,10 @@ public final class MergePolicyConfig {
     }
 
     MergePolicy getMergePolicy() {
-        return mergesEnabled ? mergePolicy : NoMergePolicy.INSTANCE;
+        if (mergesEnabled == false) {
+            return NoMergePolicy.INSTANCE;
+        }
+        return type == Type.TIME_BASED ? timeBasedMergePolicy : mergePolicy;
     }
 
     private static double parseNoCFSRatio(String noCFSRatio) {
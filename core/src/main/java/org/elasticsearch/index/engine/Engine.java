@@ -40,6 +40,7 @@ import org.apache.lucene.store.IOContext;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.Accountables;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
@@ -281,6 +282,34 @@ public abstract class Engine implements Closeable {
 
     public abstract void delete(Delete delete) throws EngineException;
 
+    /**
+     * Executes the given index and delete operations as one batch. Failures of individual operations don't fail the batch; instead
+     * the failure of each operation is returned at its position, or <code>null</code> if the operation succeeded. Whether an index
+     * operation created a new document is available via {@link Index#isCreated()} once it succeeded.
+     * <p>
+     * Implementations may execute the operations in a different order than they are given as long as operations on the same uid
+     * keep their relative order. This default implementation executes them one by one.
+     */
+    public Throwable[] executeBatch(List<Operation> operations) {
+        final Throwable[] failures = new Throwable[operations.size()];
+        for (int i = 0; i < failures.length; i++) {
+            final Operation operation = operations.get(i);
+            try {
+                if (operation instanceof Index) {
+                    final Index index = (Index) operation;
+                    index.setCreated(index(index));
+                } else if (operation instanceof Delete) {
+                    delete((Delete) operation);
+                } else {
+                    throw new IllegalArgumentException("unsupported operation [" + operation + "]");
+                }
+            } catch (Throwable t) {
+                failures[i] = t;
+            }
+        }
+        return failures;
+    }
+
     /**
      * Attempts to do a special commit where the given syncID is put into the commit data. The attempt
      * succeeds if there are not pending writes in lucene and the current point is equal to the expected one.
@@ -845,10 +874,21 @@ public abstract class Engine implements Closeable {
     public static class Index extends Operation {
 
         private final ParsedDocument doc;
+        private final long autoGeneratedIdTimestamp;
+        private final boolean isRetry;
+        private boolean appendOnly;
+        private boolean created;
 
-        public Index(Term uid, ParsedDocument doc, long version, VersionType versionType, Origin origin, long startTime) {
+        public Index(Term uid, ParsedDocument doc, long version, VersionType versionType, Origin origin, long startTime,
+                     long autoGeneratedIdTimestamp, boolean isRetry) {
             super(uid, version, versionType, origin, startTime);
             this.doc = doc;
+            this.autoGeneratedIdTimestamp = autoGeneratedIdTimestamp;
+            this.isRetry = isRetry;
+        }
+
+        public Index(Term uid, ParsedDocument doc, long version, VersionType versionType, Origin origin, long startTime) {
+            this(uid, doc, version, versionType, origin, startTime, IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP, false);
         }
 
         public Index(Term uid, ParsedDocument doc) {
@@ -901,6 +941,46 @@ public abstract class Engine implements Closeable {
             return this.doc.source();
         }
 
+        /**
+         * Returns a non-negative timestamp if the ID of this document is auto-generated by elasticsearch, otherwise
+         * {@link IndexRequest#UNSET_AUTO_GENERATED_TIMESTAMP}. The engine might optimize the addition of such documents
+         * due to their append only nature.
+         */
+        public long getAutoGeneratedIdTimestamp() {
+            return autoGeneratedIdTimestamp;
+        }
+
+        /**
+         * Returns <code>true</code> if this index request has been retried on the coordinating node and can therefore be delivered
+         * multiple times.
+         */
+        public boolean isRetry() {
+            return isRetry;
+        }
+
+        /**
+         * Returns <code>true</code> if the engine added this document without looking up its current version, see
+         * {@link EngineConfig#INDEX_OPTIMIZE_AUTO_GENERATED_IDS}.
+         */
+        public boolean isAppendOnly() {
+            return appendOnly;
+        }
+
+        void setAppendOnly(boolean appendOnly) {
+            this.appendOnly = appendOnly;
+        }
+
+        /**
+         * Returns <code>true</code> if executing this operation created a new document, as opposed to updating an existing one.
+         */
+        public boolean isCreated() {
+            return created;
+        }
+
+        void setCreated(boolean created) {
+            this.created = created;
+        }
+
         @Override
         protected int estimatedSizeInBytes() {
             return (id().length() + type().length()) * 2 + source().length() + 12;
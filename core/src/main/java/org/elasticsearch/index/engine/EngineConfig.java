@@ -89,8 +89,35 @@ public final class EngineConfig {
         }
     }, Property.IndexScope, Property.NodeScope);
 
+    /**
+     * Index setting to choose how the engine stores the versions of documents that were indexed or deleted since the last refresh.
+     * <tt>heap</tt> keeps them in a concurrent hash map on the java heap while <tt>paged</tt> stores them as primitives in recycled
+     * pages that are accounted against the request circuit breaker, which reduces garbage collection pressure on update heavy indices
+     * with long refresh intervals.
+     * This setting is <b>not</b> realtime updateable.
+     */
+    public static final Setting<String> INDEX_VERSION_MAP_TYPE_SETTING = new Setting<>("index.version_map.type", "heap", s -> {
+        switch (s) {
+            case "heap":
+            case "paged":
+                return s;
+            default:
+                throw new IllegalArgumentException("unknown value for [index.version_map.type] must be one of [heap, paged] but was: " + s);
+        }
+    }, Property.IndexScope);
+
+    /**
+     * Index setting to add documents with auto generated ids to the index as append only operations, without a version lookup and
+     * without an entry in the version map. Retried requests and requests that might race with a retry still take the safe path.
+     * This setting is <b>not</b> realtime updateable.
+     */
+    public static final Setting<Boolean> INDEX_OPTIMIZE_AUTO_GENERATED_IDS = Setting.boolSetting("index.optimize_auto_generated_id", true,
+        Property.IndexScope);
+
     private TranslogConfig translogConfig;
     private final OpenMode openMode;
+    private final String versionMapType;
+    private final boolean optimizeAutoGeneratedIds;
 
     /**
      * Creates a new {@link org.elasticsearch.index.engine.EngineConfig}
@@ -116,6 +143,8 @@ public final class EngineConfig {
         this.codecService = codecService;
         this.eventListener = eventListener;
         codecName = indexSettings.getValue(INDEX_CODEC_SETTING);
+        versionMapType = indexSettings.getValue(INDEX_VERSION_MAP_TYPE_SETTING);
+        optimizeAutoGeneratedIds = indexSettings.getValue(INDEX_OPTIMIZE_AUTO_GENERATED_IDS);
         // We give IndexWriter a "huge" (256 MB) buffer, so it won't flush on its own unless the ES indexing buffer is also huge and/or
         // there are not too many shards allocated to this node.  Instead, IndexingMemoryController periodically checks
         // and refreshes the most heap-consuming shards when total indexing heap usage across all shards is too high:
@@ -277,6 +306,28 @@ public final class EngineConfig {
         return translogConfig;
     }
 
+    /**
+     * Returns <code>true</code> iff the engine should keep the versions of recently indexed documents in paged, circuit breaker
+     * accounted memory instead of on the java heap.
+     * <p>
+     *     Note: this settings is only read on startup.
+     * </p>
+     */
+    public boolean isPagedVersionMap() {
+        return "paged".equals(versionMapType);
+    }
+
+    /**
+     * Returns <code>true</code> iff documents with auto-generated IDs are added to the index without looking up their current
+     * version and without tracking them in the version map. Otherwise <code>false</code>
+     * <p>
+     *     Note: this settings is only read on startup.
+     * </p>
+     */
+    public boolean isAutoGeneratedIDsOptimizationEnabled() {
+        return optimizeAutoGeneratedIds;
+    }
+
     /**
      * Returns a {@link TimeValue} at what time interval after the last write modification to the engine finished merges
      * should be automatically flushed. This is used to free up transient disk usage of potentially large segments that
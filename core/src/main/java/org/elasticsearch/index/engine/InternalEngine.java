@@ -41,8 +41,10 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.lucene.LoggerInfoStream;
 import org.elasticsearch.common.lucene.Lucene;
@@ -66,6 +68,7 @@ import org.elasticsearch.index.translog.TranslogCorruptedException;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -73,6 +76,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
@@ -115,11 +119,20 @@ public class InternalEngine extends Engine {
     private final AtomicInteger throttleRequestCount = new AtomicInteger();
     private final EngineConfig.OpenMode openMode;
     private final AtomicBoolean allowCommits = new AtomicBoolean(true);
+    // The max auto generated id timestamp of all retried or recovered index operations. Operations with an auto generated id
+    // timestamp below or equal to this value might have been indexed before and therefore have to go through a version lookup:
+    private final AtomicLong maxUnsafeAutoIdTimestamp = new AtomicLong(-1);
+    private final boolean optimizeAutoGeneratedIds;
 
     public InternalEngine(EngineConfig engineConfig) throws EngineException {
         super(engineConfig);
         openMode = engineConfig.getOpenMode();
-        this.versionMap = new LiveVersionMap();
+        optimizeAutoGeneratedIds = engineConfig.isAutoGeneratedIDsOptimizationEnabled();
+        if (engineConfig.isPagedVersionMap()) {
+            this.versionMap = new LiveVersionMap(engineConfig.getTranslogConfig().getBigArrays());
+        } else {
+            this.versionMap = new LiveVersionMap();
+        }
         store.incRef();
         IndexWriter writer = null;
         Translog translog = null;
@@ -314,7 +327,7 @@ public class InternalEngine extends Engine {
         try (ReleasableLock lock = readLock.acquire()) {
             ensureOpen();
             if (get.realtime()) {
-                VersionValue versionValue = versionMap.getUnderLock(get.uid().bytes());
+                VersionValue versionValue = getVersionFromMap(get.uid().bytes());
                 if (versionValue != null) {
                     if (versionValue.delete()) {
                         return GetResult.NOT_EXISTS;
@@ -356,58 +369,165 @@ public class InternalEngine extends Engine {
         return created;
     }
 
-    private boolean innerIndex(Index index) throws IOException {
-        try (Releasable ignored = acquireLock(index.uid())) {
-            lastWriteNanos = index.startTime();
-            final long currentVersion;
-            final boolean deleted;
-            VersionValue versionValue = versionMap.getUnderLock(index.uid().bytes());
-            if (versionValue == null) {
-                currentVersion = loadCurrentVersionFromIndex(index.uid());
-                deleted = currentVersion == Versions.NOT_FOUND;
-            } else {
-                deleted = versionValue.delete();
-                if (engineConfig.isEnableGcDeletes() && versionValue.delete() && (engineConfig.getThreadPool().estimatedTimeInMillis() - versionValue.time()) > getGcDeletesInMillis()) {
-                    currentVersion = Versions.NOT_FOUND; // deleted, and GC
-                } else {
-                    currentVersion = versionValue.version();
-                }
+    private boolean canOptimizeAddDocument(Index index) {
+        if (optimizeAutoGeneratedIds && index.getAutoGeneratedIdTimestamp() != IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP) {
+            assert index.getAutoGeneratedIdTimestamp() >= 0 : "autoGeneratedIdTimestamp must be positive but was: "
+                + index.getAutoGeneratedIdTimestamp();
+            switch (index.origin()) {
+                case PRIMARY:
+                case REPLICA:
+                    return true;
+                case PEER_RECOVERY:
+                case LOCAL_TRANSLOG_RECOVERY:
+                    assert index.isRetry() : "recovered operations must be marked as retries";
+                    return false;
+                default:
+                    throw new IllegalArgumentException("unknown origin " + index.origin());
             }
+        }
+        return false;
+    }
 
-            long expectedVersion = index.version();
-            if (isVersionConflictForWrites(index, currentVersion, deleted, expectedVersion)) {
-                if (!index.origin().isRecovery()) {
-                    throw new VersionConflictEngineException(shardId, index.type(), index.id(),
-                        index.versionType().explainConflictForWrites(currentVersion, expectedVersion, deleted));
-                }
-                return false;
-            }
-            long updatedVersion = index.versionType().updateVersion(currentVersion, expectedVersion);
-
-            final boolean created;
-            index.updateVersion(updatedVersion);
+    /**
+     * Returns <code>true</code> if a document with the auto generated id of the given operation might already be in the index because
+     * the operation is a retry or recovery, or because a retry of an operation with a later auto generated id timestamp was seen.
+     */
+    private boolean mayHaveBeenIndexedBefore(Index index) {
+        if (index.isRetry()) {
+            final long timestamp = index.getAutoGeneratedIdTimestamp();
+            maxUnsafeAutoIdTimestamp.updateAndGet(current -> Math.max(current, timestamp));
+            return true;
+        }
+        return index.getAutoGeneratedIdTimestamp() <= maxUnsafeAutoIdTimestamp.get();
+    }
 
-            if (currentVersion == Versions.NOT_FOUND) {
-                // document does not exists, we can optimize for create
-                created = true;
-                index(index, indexWriter);
-            } else {
-                created = update(index, versionValue, indexWriter);
+    private boolean innerIndex(Index index) throws IOException {
+        try (Releasable ignored = acquireLock(index.uid())) {
+            if (indexIntoLucene(index, null) == false) {
+                return false;
             }
-
             if (index.origin() != Operation.Origin.LOCAL_TRANSLOG_RECOVERY) {
-                final Translog.Location translogLocation = translog.add(new Translog.Index(index));
-                index.setTranslogLocation(translogLocation);
-                versionMap.putUnderLock(index.uid().bytes(), new VersionValue(updatedVersion, index.getTranslogLocation()));
+                putVersion(index, translog.add(new Translog.Index(index)));
             } else {
                 // we do not replay in to the translog, so there is no
                 // translog location; that is okay because real-time
                 // gets are not possible during recovery and we will
                 // flush when the recovery is complete
-                versionMap.putUnderLock(index.uid().bytes(), new VersionValue(updatedVersion, null));
+                putVersion(index, null);
             }
+            return index.isCreated();
+        }
+    }
 
-            return created;
+    /**
+     * Resolves the current version of the document and adds or updates it in the index writer. Must be called under the uid lock.
+     *
+     * @param batchVersions versions of operations earlier in the same batch that are not in the version map yet, or <code>null</code>
+     * @return <code>false</code> iff the operation was skipped because it is a recovered operation that conflicts
+     */
+    private boolean indexIntoLucene(Index index, Map<BytesRef, VersionValue> batchVersions) throws IOException {
+        lastWriteNanos = index.startTime();
+        final long currentVersion;
+        final boolean deleted;
+        // retries and recovered operations must be checked even if they can't be optimized themselves, so that
+        // the original operation falls back to a version lookup if it arrives after them
+        final boolean appendOnly = index.getAutoGeneratedIdTimestamp() != IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP
+            && mayHaveBeenIndexedBefore(index) == false && canOptimizeAddDocument(index);
+        index.setAppendOnly(appendOnly);
+        // the id was generated for this very document, there is nothing to look up if we index it append only
+        final VersionValue versionValue = appendOnly ? null : getVersion(index.uid().bytes(), batchVersions);
+        if (appendOnly) {
+            currentVersion = Versions.NOT_FOUND;
+            deleted = true;
+        } else if (versionValue == null) {
+            currentVersion = loadCurrentVersionFromIndex(index.uid());
+            deleted = currentVersion == Versions.NOT_FOUND;
+        } else {
+            deleted = versionValue.delete();
+            if (engineConfig.isEnableGcDeletes() && versionValue.delete() && (engineConfig.getThreadPool().estimatedTimeInMillis() - versionValue.time()) > getGcDeletesInMillis()) {
+                currentVersion = Versions.NOT_FOUND; // deleted, and GC
+            } else {
+                currentVersion = versionValue.version();
+            }
+        }
+
+        long expectedVersion = index.version();
+        if (isVersionConflictForWrites(index, currentVersion, deleted, expectedVersion)) {
+            if (!index.origin().isRecovery()) {
+                throw new VersionConflictEngineException(shardId, index.type(), index.id(),
+                    index.versionType().explainConflictForWrites(currentVersion, expectedVersion, deleted));
+            }
+            return false;
+        }
+        long updatedVersion = index.versionType().updateVersion(currentVersion, expectedVersion);
+
+        final boolean created;
+        index.updateVersion(updatedVersion);
+
+        if (currentVersion == Versions.NOT_FOUND) {
+            // document does not exists, we can optimize for create
+            created = true;
+            index(index, indexWriter);
+        } else {
+            created = update(index, versionValue, indexWriter);
+        }
+
+        index.setCreated(created);
+        return true;
+    }
+
+    /**
+     * Adds the version of an index operation that was written to the index writer to the version map. Must be called under the uid
+     * lock that was held while the operation was written.
+     */
+    private void putVersion(Index index, Translog.Location location) {
+        index.setTranslogLocation(location);
+        final VersionValue versionValue = new VersionValue(index.version(), location);
+        if (index.isAppendOnly()) {
+            versionMap.maybePutUnderLock(index.uid().bytes(), versionValue);
+        } else {
+            versionMap.putUnderLock(index.uid().bytes(), versionValue);
+        }
+    }
+
+    private VersionValue getVersion(BytesRef uid, Map<BytesRef, VersionValue> batchVersions) {
+        if (batchVersions != null) {
+            final VersionValue versionValue = batchVersions.get(uid);
+            if (versionValue != null) {
+                return versionValue;
+            }
+        }
+        return getVersionFromMap(uid);
+    }
+
+    /**
+     * Returns the version of the given uid from the version map. If documents were added without a version map entry since the
+     * last refresh, we refresh first so that a lookup in the index finds them, and require the version map to be complete until
+     * the next refresh so that mixed workloads don't refresh on every lookup.
+     */
+    private VersionValue getVersionFromMap(BytesRef uid) {
+        if (versionMap.isUnsafe()) {
+            synchronized (versionMap) {
+                // this might happen concurrently but we only need to refresh once
+                versionMap.enforceSafeAccess();
+                if (versionMap.isUnsafe()) {
+                    refreshUnsafeVersionMap();
+                }
+            }
+        }
+        return versionMap.getUnderLock(uid);
+    }
+
+    private void refreshUnsafeVersionMap() {
+        try {
+            searcherManager.maybeRefreshBlocking();
+        } catch (AlreadyClosedException e) {
+            ensureOpen();
+            maybeFailEngine("refresh", e);
+            throw e;
+        } catch (Throwable t) {
+            failEngine("refresh failed", t);
+            throw new RefreshFailedEngineException(shardId, t);
         }
     }
 
@@ -452,6 +572,115 @@ public class InternalEngine extends Engine {
         maybePruneDeletedTombstones();
     }
 
+    /**
+     * Executes the operations in the order of their uids, which visits the terms dictionary in order when versions are loaded from
+     * the index. The sort is stable so that operations on the same uid keep their relative order. The uid locks of the whole batch
+     * are acquired up front, in uid order, and held until the versions of all operations are in the version map so that the batch
+     * can write all its translog entries with a single append.
+     */
+    @Override
+    public Throwable[] executeBatch(List<Operation> operations) {
+        final Throwable[] failures = new Throwable[operations.size()];
+        final Integer[] order = new Integer[operations.size()];
+        boolean recovery = true;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            recovery &= operations.get(i).origin().isRecovery();
+        }
+        Arrays.sort(order, (a, b) -> operations.get(a).uid().bytes().compareTo(operations.get(b).uid().bytes()));
+        final List<Releasable> uidLocks = new ArrayList<>();
+        boolean hasDeletes = false;
+        try (ReleasableLock lock = readLock.acquire()) {
+            ensureOpen();
+            BytesRef previousUid = null;
+            for (int i : order) {
+                final BytesRef uid = operations.get(i).uid().bytes();
+                if (uid.equals(previousUid) == false) {
+                    uidLocks.add(acquireLock(uid));
+                    previousUid = uid;
+                }
+            }
+            final boolean[] applied = new boolean[order.length];
+            try (Releasable r = recovery ? null : throttle.acquireThrottle()) {
+                final Map<BytesRef, VersionValue> batchVersions = new HashMap<>();
+                for (int i : order) {
+                    final Operation operation = operations.get(i);
+                    try {
+                        if (operation instanceof Index) {
+                            final Index index = (Index) operation;
+                            applied[i] = indexIntoLucene(index, batchVersions);
+                            if (applied[i]) {
+                                batchVersions.put(index.uid().bytes(), new VersionValue(index.version(), null));
+                            }
+                        } else if (operation instanceof Delete) {
+                            final Delete delete = (Delete) operation;
+                            hasDeletes = true;
+                            applied[i] = deleteFromLucene(delete, batchVersions);
+                            if (applied[i]) {
+                                batchVersions.put(delete.uid().bytes(),
+                                    new DeleteVersionValue(delete.version(), engineConfig.getThreadPool().estimatedTimeInMillis(), null));
+                            }
+                        } else {
+                            throw new IllegalArgumentException("unsupported operation [" + operation + "]");
+                        }
+                    } catch (OutOfMemoryError | IllegalStateException | IOException t) {
+                        failures[i] = failOperation(operation, t);
+                    } catch (Throwable t) {
+                        failures[i] = t;
+                    }
+                }
+            }
+            final List<Translog.Operation> translogOperations = new ArrayList<>();
+            final List<Integer> translogSlots = new ArrayList<>();
+            for (int i : order) {
+                final Operation operation = operations.get(i);
+                if (applied[i] && failures[i] == null && operation.origin() != Operation.Origin.LOCAL_TRANSLOG_RECOVERY) {
+                    translogOperations.add(operation instanceof Index ?
+                        new Translog.Index((Index) operation) : new Translog.Delete((Delete) operation));
+                    translogSlots.add(i);
+                }
+            }
+            final Translog.Location[] locations = new Translog.Location[order.length];
+            try {
+                final Translog.Location[] added = translog.add(translogOperations);
+                for (int j = 0; j < added.length; j++) {
+                    locations[translogSlots.get(j)] = added[j];
+                }
+            } catch (OutOfMemoryError | IllegalStateException | IOException t) {
+                for (int i : translogSlots) {
+                    failures[i] = failOperation(operations.get(i), t);
+                }
+            }
+            for (int i : order) {
+                if (applied[i] && failures[i] == null) {
+                    final Operation operation = operations.get(i);
+                    if (operation instanceof Index) {
+                        putVersion((Index) operation, locations[i]);
+                    } else {
+                        putVersion((Delete) operation, locations[i]);
+                    }
+                }
+            }
+        } finally {
+            Releasables.close(uidLocks);
+        }
+        if (hasDeletes) {
+            maybePruneDeletedTombstones();
+        }
+        return failures;
+    }
+
+    private EngineException failOperation(Operation operation, Throwable t) {
+        if (operation instanceof Index) {
+            maybeFailEngine("index", t);
+            final Index index = (Index) operation;
+            return new IndexFailedEngineException(shardId, index.type(), index.id(), t);
+        } else {
+            maybeFailEngine("delete", t);
+            return new DeleteFailedEngineException(shardId, (Delete) operation, t);
+        }
+    }
+
     private void maybePruneDeletedTombstones() {
         // It's expensive to prune because we walk the deletes map acquiring dirtyLock for each uid so we only do it
         // every 1/4 of gcDeletesInMillis:
@@ -462,62 +691,82 @@ public class InternalEngine extends Engine {
 
     private void innerDelete(Delete delete) throws IOException {
         try (Releasable ignored = acquireLock(delete.uid())) {
-            lastWriteNanos = delete.startTime();
-            final long currentVersion;
-            final boolean deleted;
-            VersionValue versionValue = versionMap.getUnderLock(delete.uid().bytes());
-            if (versionValue == null) {
-                currentVersion = loadCurrentVersionFromIndex(delete.uid());
-                deleted = currentVersion == Versions.NOT_FOUND;
-            } else {
-                deleted = versionValue.delete();
-                if (engineConfig.isEnableGcDeletes() && versionValue.delete() && (engineConfig.getThreadPool().estimatedTimeInMillis() - versionValue.time()) > getGcDeletesInMillis()) {
-                    currentVersion = Versions.NOT_FOUND; // deleted, and GC
-                } else {
-                    currentVersion = versionValue.version();
-                }
-            }
-
-            long updatedVersion;
-            long expectedVersion = delete.version();
-            if (delete.versionType().isVersionConflictForWrites(currentVersion, expectedVersion, deleted)) {
-                if (delete.origin().isRecovery()) {
-                    return;
-                } else {
-                    throw new VersionConflictEngineException(shardId, delete.type(), delete.id(),
-                            delete.versionType().explainConflictForWrites(currentVersion, expectedVersion, deleted));
-                }
+            if (deleteFromLucene(delete, null) == false) {
+                return;
             }
-            updatedVersion = delete.versionType().updateVersion(currentVersion, expectedVersion);
-            final boolean found;
-            if (currentVersion == Versions.NOT_FOUND) {
-                // doc does not exist and no prior deletes
-                found = false;
-            } else if (versionValue != null && versionValue.delete()) {
-                // a "delete on delete", in this case, we still increment the version, log it, and return that version
-                found = false;
-            } else {
-                // we deleted a currently existing document
-                indexWriter.deleteDocuments(delete.uid());
-                found = true;
-            }
-
-            delete.updateVersion(updatedVersion, found);
-
             if (delete.origin() != Operation.Origin.LOCAL_TRANSLOG_RECOVERY) {
-                final Translog.Location translogLocation = translog.add(new Translog.Delete(delete));
-                delete.setTranslogLocation(translogLocation);
-                versionMap.putUnderLock(delete.uid().bytes(), new DeleteVersionValue(updatedVersion, engineConfig.getThreadPool().estimatedTimeInMillis(), delete.getTranslogLocation()));
+                putVersion(delete, translog.add(new Translog.Delete(delete)));
             } else {
                 // we do not replay in to the translog, so there is no
                 // translog location; that is okay because real-time
                 // gets are not possible during recovery and we will
                 // flush when the recovery is complete
-                versionMap.putUnderLock(delete.uid().bytes(), new DeleteVersionValue(updatedVersion, engineConfig.getThreadPool().estimatedTimeInMillis(), null));
+                putVersion(delete, null);
             }
         }
     }
 
+    /**
+     * Resolves the current version of the document and deletes it from the index writer. Must be called under the uid lock.
+     *
+     * @param batchVersions versions of operations earlier in the same batch that are not in the version map yet, or <code>null</code>
+     * @return <code>false</code> iff the operation was skipped because it is a recovered operation that conflicts
+     */
+    private boolean deleteFromLucene(Delete delete, Map<BytesRef, VersionValue> batchVersions) throws IOException {
+        lastWriteNanos = delete.startTime();
+        final long currentVersion;
+        final boolean deleted;
+        VersionValue versionValue = getVersion(delete.uid().bytes(), batchVersions);
+        if (versionValue == null) {
+            currentVersion = loadCurrentVersionFromIndex(delete.uid());
+            deleted = currentVersion == Versions.NOT_FOUND;
+        } else {
+            deleted = versionValue.delete();
+            if (engineConfig.isEnableGcDeletes() && versionValue.delete() && (engineConfig.getThreadPool().estimatedTimeInMillis() - versionValue.time()) > getGcDeletesInMillis()) {
+                currentVersion = Versions.NOT_FOUND; // deleted, and GC
+            } else {
+                currentVersion = versionValue.version();
+            }
+        }
+
+        long updatedVersion;
+        long expectedVersion = delete.version();
+        if (delete.versionType().isVersionConflictForWrites(currentVersion, expectedVersion, deleted)) {
+            if (delete.origin().isRecovery()) {
+                return false;
+            } else {
+                throw new VersionConflictEngineException(shardId, delete.type(), delete.id(),
+                        delete.versionType().explainConflictForWrites(currentVersion, expectedVersion, deleted));
+            }
+        }
+        updatedVersion = delete.versionType().updateVersion(currentVersion, expectedVersion);
+        final boolean found;
+        if (currentVersion == Versions.NOT_FOUND) {
+            // doc does not exist and no prior deletes
+            found = false;
+        } else if (versionValue != null && versionValue.delete()) {
+            // a "delete on delete", in this case, we still increment the version, log it, and return that version
+            found = false;
+        } else {
+            // we deleted a currently existing document
+            indexWriter.deleteDocuments(delete.uid());
+            found = true;
+        }
+
+        delete.updateVersion(updatedVersion, found);
+        return true;
+    }
+
+    /**
+     * Adds the tombstone of a delete operation that was applied to the index writer to the version map. Must be called under the
+     * uid lock that was held while the operation was applied.
+     */
+    private void putVersion(Delete delete, Translog.Location location) {
+        delete.setTranslogLocation(location);
+        versionMap.putUnderLock(delete.uid().bytes(),
+            new DeleteVersionValue(delete.version(), engineConfig.getThreadPool().estimatedTimeInMillis(), location));
+    }
+
     @Override
     public void refresh(String source) throws EngineException {
         // we obtain a read lock here, since we don't want a flush to happen while we are refreshing
@@ -1146,7 +1395,10 @@ public class InternalEngine extends Engine {
     }
 
     public MergeStats getMergeStats() {
-        return mergeScheduler.stats();
+        final MergeStats mergeStats = mergeScheduler.stats();
+        final ElasticsearchMergePolicy mergePolicy = (ElasticsearchMergePolicy) indexWriter.getConfig().getMergePolicy();
+        mergeStats.addTotalFlushedSize(mergePolicy.getFlushedSizeInBytes());
+        return mergeStats;
     }
 
     @Override
@@ -23,6 +23,8 @@ import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 
 import java.io.IOException;
@@ -30,6 +32,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /** Maps _uid value to its version information. */
 class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
@@ -37,26 +40,44 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     private static class Maps {
 
         // All writes (adds and deletes) go into here:
-        final Map<BytesRef,VersionValue> current;
+        final VersionTable current;
 
         // Used while refresh is running, and to hold adds/deletes until refresh finishes.  We read from both current and old on lookup:
-        final Map<BytesRef,VersionValue> old;
-      
-        public Maps(Map<BytesRef,VersionValue> current, Map<BytesRef,VersionValue> old) {
+        final VersionTable old;
+
+        // Set once a lookup needed all documents indexed since the last refresh to be in the map, see #enforceSafeAccess:
+        volatile boolean needsSafeAccess;
+
+        // True if the maps we replaced on the last refresh needed safe access, so we keep it for at least another refresh cycle:
+        final boolean previousMapsNeededSafeAccess;
+
+        public Maps(VersionTable current, VersionTable old, boolean needsSafeAccess, boolean previousMapsNeededSafeAccess) {
            this.current = current;
            this.old = old;
+           this.needsSafeAccess = needsSafeAccess;
+           this.previousMapsNeededSafeAccess = previousMapsNeededSafeAccess;
         }
 
-        public Maps() {
-            this(ConcurrentCollections.<BytesRef,VersionValue>newConcurrentMapWithAggressiveConcurrency(),
-                 ConcurrentCollections.<BytesRef,VersionValue>newConcurrentMapWithAggressiveConcurrency());
+        boolean isSafeAccessMode() {
+            return needsSafeAccess || previousMapsNeededSafeAccess;
         }
     }
 
     // All deletes also go here, and delete "tombstones" are retained after refresh:
     private final Map<BytesRef,VersionValue> tombstones = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
 
-    private volatile Maps maps = new Maps();
+    private final Supplier<VersionTable> tableSupplier;
+
+    private volatile Maps maps;
+
+    /** Counts the documents that were added to the index without an entry in this map, see {@link #maybePutUnderLock}. */
+    private final AtomicLong unsafeKeysAdded = new AtomicLong();
+
+    /** The value of {@link #unsafeKeysAdded} when the last refresh started, all these documents are visible once it finished. */
+    private volatile long unsafeKeysAddedBeforeRefresh;
+
+    /** The number of documents without an entry in this map that are visible to the searcher. */
+    private volatile long unsafeKeysRefreshed;
 
     private ReferenceManager mgr;
 
@@ -86,6 +107,26 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
     /** Tracks bytes used by tombstones (deletes) */
     final AtomicLong ramBytesUsedTombstones = new AtomicLong();
 
+    /** Creates a version map that keeps all versions on heap. */
+    LiveVersionMap() {
+        this(VersionTable.Heap::new);
+    }
+
+    /** Creates a version map that keeps the versions that are cleared on refresh in pages allocated from the given {@link BigArrays}.
+     *  Tombstones are retained on heap since they are rare and outlive refreshes. */
+    LiveVersionMap(BigArrays bigArrays) {
+        this(() -> new PagedVersionTable(bigArrays));
+    }
+
+    private LiveVersionMap(Supplier<VersionTable> tableSupplier) {
+        this.tableSupplier = tableSupplier;
+        this.maps = newMaps();
+    }
+
+    private Maps newMaps() {
+        return new Maps(tableSupplier.get(), tableSupplier.get(), false, false);
+    }
+
     /** Sync'd because we replace old mgr. */
     synchronized void setManager(ReferenceManager newMgr) {
         if (mgr != null) {
@@ -95,7 +136,10 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
         // In case InternalEngine closes & opens a new IndexWriter/SearcherManager, all deletes are made visible, so we clear old and
         // current here.  This is safe because caller holds writeLock here (so no concurrent adds/deletes can be happeninge):
-        maps = new Maps();
+        Maps oldMaps = maps;
+        maps = newMaps();
+        Releasables.close(oldMaps.current, oldMaps.old);
+        unsafeKeysRefreshed = unsafeKeysAdded.get();
 
         // So we are notified when reopen starts and finishes
         mgr.addListener(this);
@@ -107,7 +151,11 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
         // map.  While reopen is running, any lookup will first
         // try this new map, then fallback to old, then to the
         // current searcher:
-        maps = new Maps(ConcurrentCollections.<BytesRef,VersionValue>newConcurrentMapWithAggressiveConcurrency(), maps.current);
+        Maps oldMaps = maps;
+        unsafeKeysAddedBeforeRefresh = unsafeKeysAdded.get();
+        maps = new Maps(tableSupplier.get(), oldMaps.current, false, oldMaps.needsSafeAccess);
+        // nothing should be left in old since the previous refresh finished, but release it in case the last refresh failed:
+        oldMaps.old.close();
 
         // This is not 100% correct, since concurrent indexing ops can change these counters in between our execution of the previous
         // line and this one, but that should be minor, and the error won't accumulate over time:
@@ -122,7 +170,11 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
         // case.  This is because we assign new maps (in beforeRefresh) slightly before Lucene actually flushes any segments for the
         // reopen, and so any concurrent indexing requests can still sneak in a few additions to that current map that are in fact reflected
         // in the previous reader.   We don't touch tombstones here: they expire on their own index.gc_deletes timeframe:
-        maps = new Maps(maps.current, ConcurrentCollections.<BytesRef,VersionValue>newConcurrentMapWithAggressiveConcurrency());
+        Maps oldMaps = maps;
+        maps = new Maps(oldMaps.current, tableSupplier.get(), oldMaps.needsSafeAccess, oldMaps.previousMapsNeededSafeAccess);
+        oldMaps.old.close();
+        // Documents that were added without an entry in this map before the refresh started are now visible to version lookups:
+        unsafeKeysRefreshed = unsafeKeysAddedBeforeRefresh;
     }
 
     /** Returns the live version (add or delete) for this uid. */
@@ -143,6 +195,39 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
         return tombstones.get(uid);
     }
 
+    /**
+     * Adds this uid/version of an append only operation to the pending adds map if the map is in safe access mode. Otherwise the
+     * uid is not tracked at all and the map is marked as unsafe until the next refresh, see {@link #isUnsafe()}.
+     */
+    void maybePutUnderLock(BytesRef uid, VersionValue version) {
+        if (maps.isSafeAccessMode()) {
+            putUnderLock(uid, version);
+        } else {
+            unsafeKeysAdded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if documents were added to the index without an entry in this map and are not yet visible to the
+     * searcher, in which case version lookups must refresh before they can rely on this map and the searcher.
+     */
+    boolean isUnsafe() {
+        return unsafeKeysAdded.get() != unsafeKeysRefreshed;
+    }
+
+    /**
+     * Requires all subsequent append only operations to be added to this map, at least until the next refresh finished. This is
+     * called by version lookups to prevent them from refreshing over and over again on mixed workloads.
+     */
+    void enforceSafeAccess() {
+        maps.needsSafeAccess = true;
+    }
+
+    /** Returns <code>true</code> if append only operations are currently added to this map. */
+    boolean isSafeAccessRequired() {
+        return maps.isSafeAccessMode();
+    }
+
     /** Adds this uid/version to the pending adds map. */
     void putUnderLock(BytesRef uid, VersionValue version) {
 
@@ -224,7 +309,11 @@ class LiveVersionMap implements ReferenceManager.RefreshListener, Accountable {
 
     /** Called when this index is closed. */
     synchronized void clear() {
-        maps = new Maps();
+        Maps oldMaps = maps;
+        // The index is closed, so we switch to empty on-heap tables that don't need to be released:
+        maps = new Maps(new VersionTable.Heap(), new VersionTable.Heap(), false, false);
+        Releasables.close(oldMaps.current, oldMaps.old);
+        unsafeKeysRefreshed = unsafeKeysAdded.get();
         tombstones.clear();
         ramBytesUsedCurrent.set(0);
 
@@ -0,0 +1,175 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.common.util.IntArray;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.index.translog.Translog;
+
+/**
+ * A {@link VersionTable} that stores uids and their versions in pages allocated from {@link BigArrays} instead of a
+ * {@link java.util.concurrent.ConcurrentHashMap} of objects. Uids are kept in an open addressing {@link BytesRefHash} and the
+ * version, delete time and translog location are stored as primitives in parallel arrays indexed by the uid's id. Pages are
+ * accounted against the request circuit breaker and returned to the page recycler once the table is closed after a refresh, which
+ * keeps the version map out of the young generation on update heavy indices.
+ * <p>
+ * The table is split into a fixed number of segments, each guarded by its own lock, so that concurrent indexing threads
+ * working on different uids rarely contend.
+ */
+final class PagedVersionTable implements VersionTable {
+
+    private static final int NUM_SEGMENTS = 16;
+    private static final int INITIAL_CAPACITY = 16;
+    /** marks a version value without a translog location */
+    private static final long NO_TRANSLOG_GENERATION = -1;
+    /** marks a version value that is not a delete */
+    private static final long NOT_DELETED = -1;
+
+    private final Segment[] segments;
+
+    PagedVersionTable(BigArrays bigArrays) {
+        segments = new Segment[NUM_SEGMENTS];
+        boolean success = false;
+        try {
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new Segment(bigArrays);
+            }
+            success = true;
+        } finally {
+            if (success == false) {
+                Releasables.closeWhileHandlingException(segments);
+            }
+        }
+    }
+
+    private Segment segment(int hash) {
+        return segments[(hash ^ (hash >>> 16)) & (NUM_SEGMENTS - 1)];
+    }
+
+    @Override
+    public VersionValue get(BytesRef uid) {
+        final int hash = uid.hashCode();
+        return segment(hash).get(uid, hash);
+    }
+
+    @Override
+    public VersionValue put(BytesRef uid, VersionValue version) {
+        final int hash = uid.hashCode();
+        return segment(hash).put(uid, hash, version);
+    }
+
+    @Override
+    public void close() {
+        Releasables.close(segments);
+    }
+
+    private static final class Segment implements Releasable {
+        private final BigArrays bigArrays;
+        private BytesRefHash uids;
+        private LongArray versions;
+        private LongArray deleteTimes;
+        private LongArray translogGenerations;
+        private LongArray translogOffsets;
+        private IntArray translogSizes;
+        private boolean closed;
+
+        Segment(BigArrays bigArrays) {
+            this.bigArrays = bigArrays;
+            boolean success = false;
+            try {
+                uids = new BytesRefHash(INITIAL_CAPACITY, bigArrays);
+                versions = bigArrays.newLongArray(INITIAL_CAPACITY, false);
+                deleteTimes = bigArrays.newLongArray(INITIAL_CAPACITY, false);
+                translogGenerations = bigArrays.newLongArray(INITIAL_CAPACITY, false);
+                translogOffsets = bigArrays.newLongArray(INITIAL_CAPACITY, false);
+                translogSizes = bigArrays.newIntArray(INITIAL_CAPACITY, false);
+                success = true;
+            } finally {
+                if (success == false) {
+                    close();
+                }
+            }
+        }
+
+        synchronized VersionValue get(BytesRef uid, int hash) {
+            if (closed) {
+                // the table was released after a refresh made all its entries visible to the searcher
+                return null;
+            }
+            final long id = uids.find(uid, hash);
+            return id < 0 ? null : read(id);
+        }
+
+        synchronized VersionValue put(BytesRef uid, int hash, VersionValue version) {
+            if (closed) {
+                // a concurrent refresh already dropped this table, just like an on-heap map that was swapped out
+                return null;
+            }
+            long id = uids.add(uid, hash);
+            final VersionValue previous;
+            if (id < 0) {
+                id = -1 - id;
+                previous = read(id);
+            } else {
+                previous = null;
+                versions = bigArrays.grow(versions, id + 1);
+                deleteTimes = bigArrays.grow(deleteTimes, id + 1);
+                translogGenerations = bigArrays.grow(translogGenerations, id + 1);
+                translogOffsets = bigArrays.grow(translogOffsets, id + 1);
+                translogSizes = bigArrays.grow(translogSizes, id + 1);
+            }
+            versions.set(id, version.version());
+            deleteTimes.set(id, version.delete() ? version.time() : NOT_DELETED);
+            final Translog.Location location = version.translogLocation();
+            if (location == null) {
+                translogGenerations.set(id, NO_TRANSLOG_GENERATION);
+            } else {
+                translogGenerations.set(id, location.generation);
+                translogOffsets.set(id, location.translogLocation);
+                translogSizes.set(id, location.size);
+            }
+            return previous;
+        }
+
+        private VersionValue read(long id) {
+            final long generation = translogGenerations.get(id);
+            final Translog.Location location = generation == NO_TRANSLOG_GENERATION ? null :
+                new Translog.Location(generation, translogOffsets.get(id), translogSizes.get(id));
+            final long deleteTime = deleteTimes.get(id);
+            if (deleteTime == NOT_DELETED) {
+                return new VersionValue(versions.get(id), location);
+            }
+            return new DeleteVersionValue(versions.get(id), deleteTime, location);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed == false) {
+                closed = true;
+                Releasables.close(uids, versions, deleteTimes, translogGenerations, translogOffsets, translogSizes);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.util.Map;
+
+/**
+ * Storage for the _uid to version mappings that {@link LiveVersionMap} clears on refresh. Implementations must be safe for
+ * concurrent access by different uids; a single uid is never accessed concurrently since callers hold the uid lock.
+ */
+interface VersionTable extends Releasable {
+
+    /** Returns the version stored for the given uid or <code>null</code> if there is none. */
+    VersionValue get(BytesRef uid);
+
+    /** Stores the version for the given uid and returns the previously stored version or <code>null</code> if there was none. */
+    VersionValue put(BytesRef uid, VersionValue version);
+
+    /** The default on-heap version table backed by a {@link java.util.concurrent.ConcurrentHashMap}. */
+    final class Heap implements VersionTable {
+
+        private final Map<BytesRef, VersionValue> map = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
+
+        @Override
+        public VersionValue get(BytesRef uid) {
+            return map.get(uid);
+        }
+
+        @Override
+        public VersionValue put(BytesRef uid, VersionValue version) {
+            return map.put(uid, version);
+        }
+
+        @Override
+        public void close() {
+            // nothing to release, the map is garbage collected
+        }
+    }
+}
@@ -20,11 +20,13 @@
 package org.elasticsearch.index.fielddata;
 
 import com.carrotsearch.hppc.ObjectLongHashMap;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
@@ -36,6 +38,9 @@ public class FieldDataStats implements Streamable, ToXContent {
 
     long memorySize;
     long evictions;
+    long globalOrdinalsBuilds;
+    long globalOrdinalsIncrementalBuilds;
+    long globalOrdinalsBuildTimeInMillis;
     @Nullable
     ObjectLongHashMap<String> fields;
 
@@ -43,15 +48,22 @@ public class FieldDataStats implements Streamable, ToXContent {
 
     }
 
-    public FieldDataStats(long memorySize, long evictions, @Nullable ObjectLongHashMap<String> fields) {
+    public FieldDataStats(long memorySize, long evictions, long globalOrdinalsBuilds, long globalOrdinalsIncrementalBuilds,
+                          long globalOrdinalsBuildTimeInMillis, @Nullable ObjectLongHashMap<String> fields) {
         this.memorySize = memorySize;
         this.evictions = evictions;
+        this.globalOrdinalsBuilds = globalOrdinalsBuilds;
+        this.globalOrdinalsIncrementalBuilds = globalOrdinalsIncrementalBuilds;
+        this.globalOrdinalsBuildTimeInMillis = globalOrdinalsBuildTimeInMillis;
         this.fields = fields;
     }
 
     public void add(FieldDataStats stats) {
         this.memorySize += stats.memorySize;
         this.evictions += stats.evictions;
+        this.globalOrdinalsBuilds += stats.globalOrdinalsBuilds;
+        this.globalOrdinalsIncrementalBuilds += stats.globalOrdinalsIncrementalBuilds;
+        this.globalOrdinalsBuildTimeInMillis += stats.globalOrdinalsBuildTimeInMillis;
         if (stats.fields != null) {
             if (fields == null) {
                 fields = stats.fields.clone();
@@ -80,6 +92,31 @@ public class FieldDataStats implements Streamable, ToXContent {
         return this.evictions;
     }
 
+    /**
+     * Returns the number of times global ordinals have been built.
+     */
+    public long getGlobalOrdinalsBuilds() {
+        return globalOrdinalsBuilds;
+    }
+
+    /**
+     * Returns the number of times global ordinals have been built incrementally from the global ordinals of a previous reader.
+     */
+    public long getGlobalOrdinalsIncrementalBuilds() {
+        return globalOrdinalsIncrementalBuilds;
+    }
+
+    /**
+     * Returns the total time spent building global ordinals.
+     */
+    public TimeValue getGlobalOrdinalsBuildTime() {
+        return new TimeValue(globalOrdinalsBuildTimeInMillis);
+    }
+
+    public long getGlobalOrdinalsBuildTimeInMillis() {
+        return globalOrdinalsBuildTimeInMillis;
+    }
+
     @Nullable
     public ObjectLongHashMap<String> getFields() {
         return fields;
@@ -95,6 +132,11 @@ public class FieldDataStats implements Streamable, ToXContent {
     public void readFrom(StreamInput in) throws IOException {
         memorySize = in.readVLong();
         evictions = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            globalOrdinalsBuilds = in.readVLong();
+            globalOrdinalsIncrementalBuilds = in.readVLong();
+            globalOrdinalsBuildTimeInMillis = in.readVLong();
+        }
         if (in.readBoolean()) {
             int size = in.readVInt();
             fields = new ObjectLongHashMap<>(size);
@@ -108,6 +150,11 @@ public class FieldDataStats implements Streamable, ToXContent {
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVLong(memorySize);
         out.writeVLong(evictions);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeVLong(globalOrdinalsBuilds);
+            out.writeVLong(globalOrdinalsIncrementalBuilds);
+            out.writeVLong(globalOrdinalsBuildTimeInMillis);
+        }
         if (fields == null) {
             out.writeBoolean(false);
         } else {
@@ -130,6 +177,11 @@ public class FieldDataStats implements Streamable, ToXContent {
         builder.startObject(Fields.FIELDDATA);
         builder.byteSizeField(Fields.MEMORY_SIZE_IN_BYTES, Fields.MEMORY_SIZE, memorySize);
         builder.field(Fields.EVICTIONS, getEvictions());
+        builder.startObject(Fields.GLOBAL_ORDINALS);
+        builder.field(Fields.BUILDS, globalOrdinalsBuilds);
+        builder.field(Fields.INCREMENTAL_BUILDS, globalOrdinalsIncrementalBuilds);
+        builder.timeValueField(Fields.BUILD_TIME_IN_MILLIS, Fields.BUILD_TIME, globalOrdinalsBuildTimeInMillis);
+        builder.endObject();
         if (fields != null) {
             builder.startObject(Fields.FIELDS);
             assert !fields.containsKey(null);
@@ -154,5 +206,10 @@ public class FieldDataStats implements Streamable, ToXContent {
         static final String MEMORY_SIZE_IN_BYTES = "memory_size_in_bytes";
         static final String EVICTIONS = "evictions";
         static final String FIELDS = "fields";
+        static final String GLOBAL_ORDINALS = "global_ordinals";
+        static final String BUILDS = "builds";
+        static final String INCREMENTAL_BUILDS = "incremental_builds";
+        static final String BUILD_TIME = "build_time";
+        static final String BUILD_TIME_IN_MILLIS = "build_time_in_millis";
     }
 }
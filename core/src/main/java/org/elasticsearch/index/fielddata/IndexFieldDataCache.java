@@ -22,8 +22,12 @@ package org.elasticsearch.index.fielddata;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.util.Accountable;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalMap;
 import org.elasticsearch.index.shard.ShardId;
 
+import java.util.concurrent.Executor;
+
 /**
  * A simple field data cache abstraction on the *index* level.
  */
@@ -43,6 +47,24 @@ public interface IndexFieldDataCache {
      */
     void clear(String fieldName);
 
+    /**
+     * Returns the global ordinals that were last built for the given shard, which global ordinals of a newer reader of the
+     * same shard can be built from incrementally, or <code>null</code> if there are none.
+     */
+    @Nullable
+    default GlobalOrdinalMap getLastGlobalOrdinalMap(@Nullable ShardId shardId) {
+        return null;
+    }
+
+    /**
+     * Returns the executor that the per-segment work of building global ordinals can be forked to, or <code>null</code>
+     * if global ordinals should be built on the calling thread only.
+     */
+    @Nullable
+    default Executor getGlobalOrdinalsExecutor() {
+        return null;
+    }
+
     interface Listener {
 
         /**
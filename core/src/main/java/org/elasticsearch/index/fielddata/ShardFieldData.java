@@ -24,10 +24,12 @@ import org.apache.lucene.util.Accountable;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
 import org.elasticsearch.index.shard.ShardId;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  */
@@ -35,6 +37,9 @@ public class ShardFieldData implements IndexFieldDataCache.Listener {
 
     final CounterMetric evictionsMetric = new CounterMetric();
     final CounterMetric totalMetric = new CounterMetric();
+    final CounterMetric globalOrdinalsBuildsMetric = new CounterMetric();
+    final CounterMetric globalOrdinalsIncrementalBuildsMetric = new CounterMetric();
+    final CounterMetric globalOrdinalsBuildTimeMetric = new CounterMetric();
     final ConcurrentMap<String, CounterMetric> perFieldTotals = ConcurrentCollections.newConcurrentMap();
 
     public FieldDataStats stats(String... fields) {
@@ -47,11 +52,21 @@ public class ShardFieldData implements IndexFieldDataCache.Listener {
                 }
             }
         }
-        return new FieldDataStats(totalMetric.count(), evictionsMetric.count(), fieldTotals);
+        return new FieldDataStats(totalMetric.count(), evictionsMetric.count(), globalOrdinalsBuildsMetric.count(),
+            globalOrdinalsIncrementalBuildsMetric.count(), TimeUnit.NANOSECONDS.toMillis(globalOrdinalsBuildTimeMetric.count()),
+            fieldTotals);
     }
 
     @Override
     public void onCache(ShardId shardId, String fieldName, Accountable ramUsage) {
+        if (ramUsage instanceof GlobalOrdinalsIndexFieldData) {
+            final GlobalOrdinalsIndexFieldData globalOrdinals = (GlobalOrdinalsIndexFieldData) ramUsage;
+            globalOrdinalsBuildsMetric.inc();
+            if (globalOrdinals.getOrdinalMap().isIncremental()) {
+                globalOrdinalsIncrementalBuildsMetric.inc();
+            }
+            globalOrdinalsBuildTimeMetric.inc(globalOrdinals.getBuildTimeInNanos());
+        }
         totalMetric.inc(ramUsage.ramBytesUsed());
         CounterMetric total = perFieldTotals.get(fieldName);
         if (total != null) {
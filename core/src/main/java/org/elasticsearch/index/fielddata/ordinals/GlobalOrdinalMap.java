@@ -0,0 +1,353 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.index.MultiDocValues.OrdinalMap;
+import org.apache.lucene.index.RandomAccessOrds;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.util.concurrent.ParallelTasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Maps the ordinals of the segments of a reader to global ordinals, like Lucene's {@link OrdinalMap}.
+ * <p>
+ * Unlike the latter it can be built incrementally from the map of a previous reader of the same shard: segments that are
+ * shared with the previous reader, identified by their core cache key, don't need to be merged term by term again. Their
+ * global ordinals are still sorted, so only the terms of the new segments are looked up in them in order to find where
+ * they have to be inserted. The mappings of the segments are then rewritten to the new global ordinals, in parallel on
+ * the given executor if any. An incremental build is only used if the new segments have fewer terms than the shared ones,
+ * otherwise the map is built from scratch.
+ */
+public final class GlobalOrdinalMap implements Accountable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(GlobalOrdinalMap.class);
+
+    private final Object[] segmentKeys;
+    private final long[] segmentValueCounts;
+    private final LongValues[] segmentToGlobalOrds;
+    private final LongValues firstSegments;
+    private final LongValues firstSegmentOrds;
+    private final long valueCount;
+    private final long ramBytesUsed;
+    private final boolean incremental;
+
+    private GlobalOrdinalMap(Object[] segmentKeys, long[] segmentValueCounts, LongValues[] segmentToGlobalOrds,
+                             LongValues firstSegments, LongValues firstSegmentOrds, long valueCount, long ramBytesUsed,
+                             boolean incremental) {
+        this.segmentKeys = segmentKeys;
+        this.segmentValueCounts = segmentValueCounts;
+        this.segmentToGlobalOrds = segmentToGlobalOrds;
+        this.firstSegments = firstSegments;
+        this.firstSegmentOrds = firstSegmentOrds;
+        this.valueCount = valueCount;
+        this.ramBytesUsed = ramBytesUsed;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Returns the number of unique terms across all segments.
+     */
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Returns the mapping of the ordinals of the given segment to global ordinals.
+     */
+    public LongValues getGlobalOrds(int segmentIndex) {
+        return segmentToGlobalOrds[segmentIndex];
+    }
+
+    /**
+     * Returns the index of a segment that contains the term of the given global ordinal.
+     */
+    public int getFirstSegmentNumber(long globalOrd) {
+        return (int) firstSegments.get(globalOrd);
+    }
+
+    /**
+     * Returns the ordinal of the term of the given global ordinal in the segment returned by {@link #getFirstSegmentNumber(long)}.
+     */
+    public long getFirstSegmentOrd(long globalOrd) {
+        return firstSegmentOrds.get(globalOrd);
+    }
+
+    /**
+     * Returns <code>true</code> iff this map was built incrementally from the map of a previous reader.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
+    @Override
+    public Collection<Accountable> getChildResources() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Builds the global ordinal map of the given segments.
+     *
+     * @param segmentKeys the core cache keys of the segments
+     * @param subs        the ordinals of the segments
+     * @param previous    the map of a previous reader of the same shard to build the map incrementally from, or <code>null</code>
+     * @param executor    the executor to rewrite the mappings of the segments on, or <code>null</code> to use the calling thread
+     */
+    public static GlobalOrdinalMap build(Object[] segmentKeys, RandomAccessOrds[] subs, @Nullable GlobalOrdinalMap previous,
+                                         @Nullable Executor executor) throws IOException {
+        assert segmentKeys.length == subs.length;
+        final long[] segmentValueCounts = new long[subs.length];
+        for (int i = 0; i < subs.length; i++) {
+            segmentValueCounts[i] = subs[i].getValueCount();
+        }
+        if (previous != null) {
+            final Map<Object, Integer> previousSegments = new HashMap<>();
+            for (int i = 0; i < previous.segmentKeys.length; i++) {
+                previousSegments.put(previous.segmentKeys[i], i);
+            }
+            final int[] previousIndexes = new int[subs.length];
+            long sharedValueCount = 0;
+            long newValueCount = 0;
+            for (int i = 0; i < subs.length; i++) {
+                final Integer previousIndex = previousSegments.get(segmentKeys[i]);
+                if (previousIndex != null && previous.segmentValueCounts[previousIndex] == segmentValueCounts[i]) {
+                    previousIndexes[i] = previousIndex;
+                    sharedValueCount += segmentValueCounts[i];
+                } else {
+                    previousIndexes[i] = -1;
+                    newValueCount += segmentValueCounts[i];
+                }
+            }
+            if (sharedValueCount > 0 && newValueCount < sharedValueCount && previous.valueCount <= Integer.MAX_VALUE) {
+                return buildIncremental(segmentKeys, segmentValueCounts, subs, previous, previousIndexes, executor);
+            }
+        }
+        final OrdinalMap ordinalMap = OrdinalMap.build(null, subs, PackedInts.DEFAULT);
+        final LongValues[] segmentToGlobalOrds = new LongValues[subs.length];
+        for (int i = 0; i < subs.length; i++) {
+            segmentToGlobalOrds[i] = ordinalMap.getGlobalOrds(i);
+        }
+        final LongValues firstSegments = new LongValues() {
+            @Override
+            public long get(long index) {
+                return ordinalMap.getFirstSegmentNumber(index);
+            }
+        };
+        final LongValues firstSegmentOrds = new LongValues() {
+            @Override
+            public long get(long index) {
+                return ordinalMap.getFirstSegmentOrd(index);
+            }
+        };
+        return new GlobalOrdinalMap(segmentKeys, segmentValueCounts, segmentToGlobalOrds, firstSegments, firstSegmentOrds,
+            ordinalMap.getValueCount(), BASE_RAM_BYTES_USED + ordinalMap.ramBytesUsed(), false);
+    }
+
+    private static GlobalOrdinalMap buildIncremental(Object[] segmentKeys, long[] segmentValueCounts, RandomAccessOrds[] subs,
+                                                     GlobalOrdinalMap previous, int[] previousIndexes,
+                                                     @Nullable Executor executor) throws IOException {
+        // 1. find the previous global ordinals that are still used by a shared segment, and a segment to look them up in
+        final long previousValueCount = previous.valueCount;
+        final PackedInts.Mutable liveSegments = PackedInts.getMutable(Math.toIntExact(previousValueCount),
+            PackedInts.bitsRequired(subs.length), PackedInts.DEFAULT);
+        final PackedInts.Mutable liveSegmentOrds = PackedInts.getMutable(Math.toIntExact(previousValueCount),
+            PackedInts.bitsRequired(maxValue(segmentValueCounts)), PackedInts.DEFAULT);
+        for (int i = 0; i < subs.length; i++) {
+            if (previousIndexes[i] == -1) {
+                continue;
+            }
+            final LongValues previousGlobalOrds = previous.segmentToGlobalOrds[previousIndexes[i]];
+            for (long segmentOrd = 0; segmentOrd < segmentValueCounts[i]; segmentOrd++) {
+                final int previousGlobalOrd = (int) previousGlobalOrds.get(segmentOrd);
+                if (liveSegments.get(previousGlobalOrd) == 0) {
+                    // segments are stored +1 so that 0 marks terms that are gone
+                    liveSegments.set(previousGlobalOrd, i + 1);
+                    liveSegmentOrds.set(previousGlobalOrd, segmentOrd);
+                }
+            }
+        }
+        final PackedLongValues.Builder liveOrdsBuilder = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        for (int previousGlobalOrd = 0; previousGlobalOrd < previousValueCount; previousGlobalOrd++) {
+            if (liveSegments.get(previousGlobalOrd) != 0) {
+                liveOrdsBuilder.add(previousGlobalOrd);
+            }
+        }
+        final PackedLongValues liveOrds = liveOrdsBuilder.build();
+        final long numLiveOrds = liveOrds.size();
+
+        // 2. merge the terms of the new segments
+        final List<Integer> newSegments = new ArrayList<>();
+        final int[] newSegmentIndexes = new int[subs.length];
+        for (int i = 0; i < subs.length; i++) {
+            if (previousIndexes[i] == -1) {
+                newSegmentIndexes[i] = newSegments.size();
+                newSegments.add(i);
+            }
+        }
+        final RandomAccessOrds[] newSubs = new RandomAccessOrds[newSegments.size()];
+        for (int i = 0; i < newSubs.length; i++) {
+            newSubs[i] = subs[newSegments.get(i)];
+        }
+        final OrdinalMap newOrdinalMap = newSubs.length == 0 ? null : OrdinalMap.build(null, newSubs, PackedInts.DEFAULT);
+        final long numNewTerms = newOrdinalMap == null ? 0 : newOrdinalMap.getValueCount();
+
+        // 3. find the position of the new terms among the live previous terms, both are sorted
+        final PackedLongValues.Builder newTermGlobalOrds = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder insertions = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder insertedTerms = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final BytesRefBuilder newTerm = new BytesRefBuilder();
+        long position = 0;
+        for (long newTermOrd = 0; newTermOrd < numNewTerms; newTermOrd++) {
+            final int newSegment = newOrdinalMap.getFirstSegmentNumber(newTermOrd);
+            newTerm.copyBytes(newSubs[newSegment].lookupOrd(newOrdinalMap.getFirstSegmentOrd(newTermOrd)));
+            position = lowerBound(newTerm.get(), position, numLiveOrds, liveOrds, liveSegments, liveSegmentOrds, subs);
+            final long numInserted = insertions.size();
+            if (position < numLiveOrds && compare(position, newTerm.get(), liveOrds, liveSegments, liveSegmentOrds, subs) == 0) {
+                // the term is already known
+                newTermGlobalOrds.add(position + numInserted);
+            } else {
+                newTermGlobalOrds.add(position + numInserted);
+                insertions.add(position);
+                insertedTerms.add(newTermOrd);
+            }
+        }
+        final PackedLongValues newTermToGlobalOrds = newTermGlobalOrds.build();
+        final PackedLongValues insertionPositions = insertions.build();
+        final PackedLongValues insertedNewTermOrds = insertedTerms.build();
+        final long valueCount = numLiveOrds + insertionPositions.size();
+
+        // 4. assign the new global ordinals to the live previous terms and build the reverse mapping
+        final PackedInts.Mutable previousToGlobalOrds = PackedInts.getMutable(Math.toIntExact(previousValueCount),
+            PackedInts.bitsRequired(Math.max(0, valueCount - 1)), PackedInts.DEFAULT);
+        final PackedLongValues.Builder firstSegmentsBuilder = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder firstSegmentOrdsBuilder = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+        long insertion = 0;
+        for (long liveOrd = 0; liveOrd <= numLiveOrds; liveOrd++) {
+            while (insertion < insertionPositions.size() && insertionPositions.get(insertion) == liveOrd) {
+                final long newTermOrd = insertedNewTermOrds.get(insertion);
+                firstSegmentsBuilder.add(newSegments.get(newOrdinalMap.getFirstSegmentNumber(newTermOrd)));
+                firstSegmentOrdsBuilder.add(newOrdinalMap.getFirstSegmentOrd(newTermOrd));
+                insertion++;
+            }
+            if (liveOrd < numLiveOrds) {
+                final int previousGlobalOrd = (int) liveOrds.get(liveOrd);
+                previousToGlobalOrds.set(previousGlobalOrd, liveOrd + insertion);
+                firstSegmentsBuilder.add(liveSegments.get(previousGlobalOrd) - 1);
+                firstSegmentOrdsBuilder.add(liveSegmentOrds.get(previousGlobalOrd));
+            }
+        }
+        assert insertion == insertionPositions.size();
+        final PackedLongValues firstSegments = firstSegmentsBuilder.build();
+        final PackedLongValues firstSegmentOrds = firstSegmentOrdsBuilder.build();
+        assert firstSegments.size() == valueCount;
+
+        // 5. rewrite the mappings of the segments
+        final LongValues[] segmentToGlobalOrds = new LongValues[subs.length];
+        final long[] ramBytesUsed = new long[subs.length];
+        ParallelTasks.run(subs.length, executor, i -> {
+            if (segmentValueCounts[i] == valueCount) {
+                // the segment contains all terms
+                segmentToGlobalOrds[i] = LongValues.IDENTITY;
+                return;
+            }
+            final PackedLongValues.Builder globalOrds = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+            if (previousIndexes[i] != -1) {
+                final LongValues previousGlobalOrds = previous.segmentToGlobalOrds[previousIndexes[i]];
+                for (long segmentOrd = 0; segmentOrd < segmentValueCounts[i]; segmentOrd++) {
+                    globalOrds.add(previousToGlobalOrds.get((int) previousGlobalOrds.get(segmentOrd)));
+                }
+            } else {
+                final LongValues newTermOrds = newOrdinalMap.getGlobalOrds(newSegmentIndexes[i]);
+                for (long segmentOrd = 0; segmentOrd < segmentValueCounts[i]; segmentOrd++) {
+                    globalOrds.add(newTermToGlobalOrds.get(newTermOrds.get(segmentOrd)));
+                }
+            }
+            final PackedLongValues values = globalOrds.build();
+            segmentToGlobalOrds[i] = values;
+            ramBytesUsed[i] = values.ramBytesUsed();
+        });
+        long totalRamBytesUsed = BASE_RAM_BYTES_USED + firstSegments.ramBytesUsed() + firstSegmentOrds.ramBytesUsed();
+        for (long bytes : ramBytesUsed) {
+            totalRamBytesUsed += bytes;
+        }
+        return new GlobalOrdinalMap(segmentKeys, segmentValueCounts, segmentToGlobalOrds, firstSegments, firstSegmentOrds, valueCount,
+            totalRamBytesUsed, true);
+    }
+
+    /**
+     * Returns the index of the first live previous term, starting at <code>from</code>, that is greater than or equal to the
+     * given term. Gallops from <code>from</code> since the terms are looked up in order.
+     */
+    private static long lowerBound(BytesRef term, long from, long to, PackedLongValues liveOrds, PackedInts.Reader liveSegments,
+                                   PackedInts.Reader liveSegmentOrds, RandomAccessOrds[] subs) {
+        long low = from;
+        long high = from;
+        long step = 1;
+        while (high < to && compare(high, term, liveOrds, liveSegments, liveSegmentOrds, subs) < 0) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, to);
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (compare(mid, term, liveOrds, liveSegments, liveSegmentOrds, subs) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int compare(long liveOrd, BytesRef term, PackedLongValues liveOrds, PackedInts.Reader liveSegments,
+                               PackedInts.Reader liveSegmentOrds, RandomAccessOrds[] subs) {
+        final int previousGlobalOrd = (int) liveOrds.get(liveOrd);
+        final int segment = (int) liveSegments.get(previousGlobalOrd) - 1;
+        return subs[segment].lookupOrd(liveSegmentOrds.get(previousGlobalOrd)).compareTo(term);
+    }
+
+    private static long maxValue(long[] values) {
+        long max = 0;
+        for (long value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
@@ -39,12 +39,32 @@ import java.util.Collections;
 public abstract class GlobalOrdinalsIndexFieldData extends AbstractIndexComponent implements IndexOrdinalsFieldData, Accountable {
 
     private final String fieldName;
+    private final GlobalOrdinalMap ordinalMap;
     private final long memorySizeInBytes;
+    private final long buildTimeInNanos;
 
-    protected GlobalOrdinalsIndexFieldData(IndexSettings indexSettings, String fieldName, long memorySizeInBytes) {
+    protected GlobalOrdinalsIndexFieldData(IndexSettings indexSettings, String fieldName, GlobalOrdinalMap ordinalMap,
+                                           long memorySizeInBytes, long buildTimeInNanos) {
         super(indexSettings);
         this.fieldName = fieldName;
+        this.ordinalMap = ordinalMap;
         this.memorySizeInBytes = memorySizeInBytes;
+        this.buildTimeInNanos = buildTimeInNanos;
+    }
+
+    /**
+     * Returns the map of segment ordinals to global ordinals. Global ordinals of the next reader of the same shard are
+     * built incrementally from it.
+     */
+    public GlobalOrdinalMap getOrdinalMap() {
+        return ordinalMap;
+    }
+
+    /**
+     * Returns the time it took to build these global ordinals, in nanoseconds.
+     */
+    public long getBuildTimeInNanos() {
+        return buildTimeInNanos;
     }
 
     @Override
@@ -37,6 +37,7 @@ import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.IndexSortConfig;
 import org.elasticsearch.index.analysis.AnalysisService;
 import org.elasticsearch.index.mapper.Mapper.BuilderContext;
 import org.elasticsearch.index.mapper.object.ObjectMapper;
@@ -317,6 +318,9 @@ public class MapperService extends AbstractIndexComponent {
         MapperUtils.collect(newMapper.mapping().root(), objectMappers, fieldMappers);
         checkFieldUniqueness(newMapper.type(), objectMappers, fieldMappers);
         checkObjectsCompatibility(newMapper.type(), objectMappers, fieldMappers, updateAllTypes);
+        if (reason == MergeReason.MAPPING_UPDATE) {
+            checkIndexSortFields(fieldMappers);
+        }
 
         // 3. update lookup data-structures
         // this will in particular make sure that the merged fields are compatible with other types
@@ -475,6 +479,24 @@ public class MapperService extends AbstractIndexComponent {
         }
     }
 
+    private void checkIndexSortFields(Collection<FieldMapper> fieldMappers) {
+        final IndexSortConfig indexSortConfig = indexSettings.getIndexSortConfig();
+        if (indexSortConfig.hasIndexSort()) {
+            for (FieldMapper fieldMapper : fieldMappers) {
+                indexSortConfig.validateField(fieldMapper.fieldType());
+            }
+        }
+    }
+
+    /**
+     * Checks that all fields of the index sort are mapped and can be used to sort the index, see {@link IndexSortConfig}.
+     *
+     * @throws IllegalArgumentException if a field of the index sort isn't mapped or can't be used to sort the index
+     */
+    public void validateIndexSort() {
+        indexSettings.getIndexSortConfig().buildIndexSort(this::fullName);
+    }
+
     private void checkTotalFieldsLimit(long totalMappers) {
         long allowedTotalFields = indexSettings.getValue(INDEX_MAPPING_TOTAL_FIELDS_LIMIT_SETTING);
         if (allowedTotalFields < totalMappers) {
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.merge;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -50,6 +51,9 @@ public class MergeStats implements Streamable, ToXContent {
 
     private long totalBytesPerSecAutoThrottle;
 
+    /** Total size of the segments that were written by flushes, the amount of data that merges re-write. */
+    private long totalFlushedSizeInBytes;
+
     public MergeStats() {
 
     }
@@ -73,6 +77,10 @@ public class MergeStats implements Streamable, ToXContent {
         }
     }
 
+    public void addTotalFlushedSize(long flushedSizeInBytes) {
+        this.totalFlushedSizeInBytes += flushedSizeInBytes;
+    }
+
     public void add(MergeStats mergeStats) {
         if (mergeStats == null) {
             return;
@@ -94,6 +102,7 @@ public class MergeStats implements Streamable, ToXContent {
         this.totalSizeInBytes += mergeStats.totalSizeInBytes;
         this.totalStoppedTimeInMillis += mergeStats.totalStoppedTimeInMillis;
         this.totalThrottledTimeInMillis += mergeStats.totalThrottledTimeInMillis;
+        this.totalFlushedSizeInBytes += mergeStats.totalFlushedSizeInBytes;
         if (this.totalBytesPerSecAutoThrottle == Long.MAX_VALUE || mergeStats.totalBytesPerSecAutoThrottle == Long.MAX_VALUE) {
             this.totalBytesPerSecAutoThrottle = Long.MAX_VALUE;
         } else {
@@ -162,6 +171,27 @@ public class MergeStats implements Streamable, ToXContent {
         return new ByteSizeValue(totalSizeInBytes);
     }
 
+    /**
+     * The total size of the segments that were written by flushes.
+     */
+    public long getTotalFlushedSizeInBytes() {
+        return this.totalFlushedSizeInBytes;
+    }
+
+    public ByteSizeValue getTotalFlushedSize() {
+        return new ByteSizeValue(totalFlushedSizeInBytes);
+    }
+
+    /**
+     * The number of bytes that merges re-wrote for every byte that was flushed, or <code>0</code> if nothing was flushed yet.
+     */
+    public double getWriteAmplification() {
+        if (totalFlushedSizeInBytes == 0) {
+            return 0;
+        }
+        return (double) totalSizeInBytes / totalFlushedSizeInBytes;
+    }
+
     public long getTotalBytesPerSecAutoThrottle() {
         return totalBytesPerSecAutoThrottle;
     }
@@ -204,6 +234,8 @@ public class MergeStats implements Streamable, ToXContent {
         builder.timeValueField(Fields.TOTAL_STOPPED_TIME_IN_MILLIS, Fields.TOTAL_STOPPED_TIME, totalStoppedTimeInMillis);
         builder.timeValueField(Fields.TOTAL_THROTTLED_TIME_IN_MILLIS, Fields.TOTAL_THROTTLED_TIME, totalThrottledTimeInMillis);
         builder.byteSizeField(Fields.TOTAL_THROTTLE_BYTES_PER_SEC_IN_BYTES, Fields.TOTAL_THROTTLE_BYTES_PER_SEC, totalBytesPerSecAutoThrottle);
+        builder.byteSizeField(Fields.TOTAL_FLUSHED_SIZE_IN_BYTES, Fields.TOTAL_FLUSHED_SIZE, totalFlushedSizeInBytes);
+        builder.field(Fields.WRITE_AMPLIFICATION, Math.round(getWriteAmplification() * 100.0) / 100.0);
         builder.endObject();
         return builder;
     }
@@ -226,6 +258,9 @@ public class MergeStats implements Streamable, ToXContent {
         static final String TOTAL_SIZE_IN_BYTES = "total_size_in_bytes";
         static final String TOTAL_THROTTLE_BYTES_PER_SEC_IN_BYTES = "total_auto_throttle_in_bytes";
         static final String TOTAL_THROTTLE_BYTES_PER_SEC = "total_auto_throttle";
+        static final String TOTAL_FLUSHED_SIZE = "total_flushed_size";
+        static final String TOTAL_FLUSHED_SIZE_IN_BYTES = "total_flushed_size_in_bytes";
+        static final String WRITE_AMPLIFICATION = "write_amplification";
     }
 
     @Override
@@ -241,6 +276,9 @@ public class MergeStats implements Streamable, ToXContent {
         totalStoppedTimeInMillis = in.readVLong();
         totalThrottledTimeInMillis = in.readVLong();
         totalBytesPerSecAutoThrottle = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            totalFlushedSizeInBytes = in.readVLong();
+        }
     }
 
     @Override
@@ -256,5 +294,8 @@ public class MergeStats implements Streamable, ToXContent {
         out.writeVLong(totalStoppedTimeInMillis);
         out.writeVLong(totalThrottledTimeInMillis);
         out.writeVLong(totalBytesPerSecAutoThrottle);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeVLong(totalFlushedSizeInBytes);
+        }
     }
 }
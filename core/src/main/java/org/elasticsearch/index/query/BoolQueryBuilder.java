@@ -475,6 +475,18 @@ public class BoolQueryBuilder extends AbstractQueryBuilder<BoolQueryBuilder> {
         changed |= rewriteClauses(queryRewriteContext, filterClauses, newBuilder::filter);
         changed |= rewriteClauses(queryRewriteContext, shouldClauses, newBuilder::should);
 
+        // a required clause that matches no documents makes the whole query match no documents
+        for (QueryBuilder clause : newBuilder.must()) {
+            if (clause instanceof MatchNoneQueryBuilder) {
+                return new MatchNoneQueryBuilder();
+            }
+        }
+        for (QueryBuilder clause : newBuilder.filter()) {
+            if (clause instanceof MatchNoneQueryBuilder) {
+                return new MatchNoneQueryBuilder();
+            }
+        }
+
         if (changed) {
             newBuilder.adjustPureNegative = adjustPureNegative;
             newBuilder.disableCoord = disableCoord;
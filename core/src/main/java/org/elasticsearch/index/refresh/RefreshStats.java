@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.refresh;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -34,13 +35,23 @@ public class RefreshStats implements Streamable, ToXContent {
 
     private long totalTimeInMillis;
 
+    private long skippedScheduled;
+
+    private long searchIdleShards;
+
     public RefreshStats() {
 
     }
 
     public RefreshStats(long total, long totalTimeInMillis) {
+        this(total, totalTimeInMillis, 0, 0);
+    }
+
+    public RefreshStats(long total, long totalTimeInMillis, long skippedScheduled, long searchIdleShards) {
         this.total = total;
         this.totalTimeInMillis = totalTimeInMillis;
+        this.skippedScheduled = skippedScheduled;
+        this.searchIdleShards = searchIdleShards;
     }
 
     public void add(long total, long totalTimeInMillis) {
@@ -58,6 +69,8 @@ public class RefreshStats implements Streamable, ToXContent {
         }
         this.total += refreshStats.total;
         this.totalTimeInMillis += refreshStats.totalTimeInMillis;
+        this.skippedScheduled += refreshStats.skippedScheduled;
+        this.searchIdleShards += refreshStats.searchIdleShards;
     }
 
     /**
@@ -81,6 +94,20 @@ public class RefreshStats implements Streamable, ToXContent {
         return new TimeValue(totalTimeInMillis);
     }
 
+    /**
+     * The number of scheduled refreshes that were skipped because the shard was search idle.
+     */
+    public long getSkippedScheduled() {
+        return this.skippedScheduled;
+    }
+
+    /**
+     * The number of shards that are search idle and therefore skip scheduled refreshes.
+     */
+    public long getSearchIdleShards() {
+        return this.searchIdleShards;
+    }
+
     public static RefreshStats readRefreshStats(StreamInput in) throws IOException {
         RefreshStats refreshStats = new RefreshStats();
         refreshStats.readFrom(in);
@@ -92,6 +119,8 @@ public class RefreshStats implements Streamable, ToXContent {
         builder.startObject(Fields.REFRESH);
         builder.field(Fields.TOTAL, total);
         builder.timeValueField(Fields.TOTAL_TIME_IN_MILLIS, Fields.TOTAL_TIME, totalTimeInMillis);
+        builder.field(Fields.SKIPPED_SCHEDULED_TOTAL, skippedScheduled);
+        builder.field(Fields.SEARCH_IDLE_SHARDS, searchIdleShards);
         builder.endObject();
         return builder;
     }
@@ -101,17 +130,27 @@ public class RefreshStats implements Streamable, ToXContent {
         static final String TOTAL = "total";
         static final String TOTAL_TIME = "total_time";
         static final String TOTAL_TIME_IN_MILLIS = "total_time_in_millis";
+        static final String SKIPPED_SCHEDULED_TOTAL = "skipped_scheduled_total";
+        static final String SEARCH_IDLE_SHARDS = "search_idle_shards";
     }
 
     @Override
     public void readFrom(StreamInput in) throws IOException {
         total = in.readVLong();
         totalTimeInMillis = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            skippedScheduled = in.readVLong();
+            searchIdleShards = in.readVLong();
+        }
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVLong(total);
         out.writeVLong(totalTimeInMillis);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeVLong(skippedScheduled);
+            out.writeVLong(searchIdleShards);
+        }
     }
 }
@@ -27,10 +27,13 @@ import org.apache.lucene.index.SegmentInfos;
 import org.elasticsearch.Version;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.metrics.CounterMetric;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A {@link MergePolicy} that upgrades segments and can upgrade merges.
@@ -43,6 +46,10 @@ import java.util.Map;
  * <p>
  * For now, this {@link MergePolicy} takes care of moving versions that used to
  * be stored as payloads to numeric doc values.
+ * <p>
+ * It also keeps track of the size of the segments that are written by flushes, which
+ * is the amount of data that was indexed and compared to the size of merged segments
+ * gives the write amplification of the merge policy.
  */
 public final class ElasticsearchMergePolicy extends MergePolicy {
 
@@ -58,6 +65,11 @@ public final class ElasticsearchMergePolicy extends MergePolicy {
 
     private static final int MAX_CONCURRENT_UPGRADE_MERGES = 5;
 
+    private final CounterMetric flushedSizeInBytes = new CounterMetric();
+
+    // the names of the flushed segments that are already accounted for in flushedSizeInBytes
+    private Set<String> flushedSegments = new HashSet<>();
+
     /** @param delegate the merge policy to wrap */
     public ElasticsearchMergePolicy(MergePolicy delegate) {
         this.delegate = delegate;
@@ -66,9 +78,36 @@ public final class ElasticsearchMergePolicy extends MergePolicy {
     @Override
     public MergeSpecification findMerges(MergeTrigger mergeTrigger,
         SegmentInfos segmentInfos, IndexWriter writer) throws IOException {
+        trackFlushedSegments(segmentInfos);
         return delegate.findMerges(mergeTrigger, segmentInfos, writer);
     }
 
+    /**
+     * Accounts for the size of segments that were written by a flush and weren't seen before. Every entry point
+     * that selects merges calls this so new segments are seen before they can be merged away, including forced
+     * merges that run before the writer asked for regular merges.
+     */
+    private synchronized void trackFlushedSegments(SegmentInfos segmentInfos) throws IOException {
+        final Set<String> current = new HashSet<>();
+        for (SegmentCommitInfo info : segmentInfos) {
+            if (IndexWriter.SOURCE_FLUSH.equals(info.info.getDiagnostics().get(IndexWriter.SOURCE))) {
+                current.add(info.info.name);
+                if (flushedSegments.contains(info.info.name) == false) {
+                    flushedSizeInBytes.inc(info.sizeInBytes());
+                }
+            }
+        }
+        // segment names are never reused, so we only need to remember the ones that still exist
+        flushedSegments = current;
+    }
+
+    /**
+     * Returns the total size of all segments that were written by flushes, in bytes.
+     */
+    public long getFlushedSizeInBytes() {
+        return flushedSizeInBytes.count();
+    }
+
     private boolean shouldUpgrade(SegmentCommitInfo info) {
         org.apache.lucene.util.Version old = info.info.getVersion();
         org.apache.lucene.util.Version cur = Version.CURRENT.luceneVersion;
@@ -93,6 +132,7 @@ public final class ElasticsearchMergePolicy extends MergePolicy {
     public MergeSpecification findForcedMerges(SegmentInfos segmentInfos,
         int maxSegmentCount, Map<SegmentCommitInfo,Boolean> segmentsToMerge, IndexWriter writer)
         throws IOException {
+        trackFlushedSegments(segmentInfos);
 
         if (upgradeInProgress) {
             MergeSpecification spec = new MergeSpecification();
@@ -136,6 +176,7 @@ public final class ElasticsearchMergePolicy extends MergePolicy {
     @Override
     public MergeSpecification findForcedDeletesMerges(SegmentInfos segmentInfos, IndexWriter writer)
         throws IOException {
+        trackFlushedSegments(segmentInfos);
         return delegate.findForcedDeletesMerges(segmentInfos, writer);
     }
 
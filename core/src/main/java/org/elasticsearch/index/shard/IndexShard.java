@@ -23,10 +23,13 @@ import org.apache.lucene.codecs.PostingsFormat;
 import org.apache.lucene.index.CheckIndex;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.index.SnapshotDeletionPolicy;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.XSortingMergePolicy;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.util.IOUtils;
@@ -47,6 +50,7 @@ import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.LoggerMessageFormat;
 import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
@@ -121,6 +125,7 @@ import java.io.PrintStream;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
@@ -211,6 +216,19 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      */
     @Nullable
     private final RefreshListeners refreshListeners;
+    // the sort of merged segments, set once the engine config is created
+    private volatile Sort indexSort;
+
+    /**
+     * The time (in millis) a searcher was last acquired for this shard, used to detect search idle shards.
+     */
+    private volatile long lastSearcherAccess;
+    /**
+     * The translog location that was not made visible because a scheduled refresh was skipped while this shard was search idle, or
+     * <code>null</code> if no refresh is pending.
+     */
+    private final AtomicReference<Translog.Location> pendingRefreshLocation = new AtomicReference<>();
+    private final CounterMetric skippedScheduledRefreshes = new CounterMetric();
 
     public IndexShard(ShardRouting shardRouting, IndexSettings indexSettings, ShardPath path, Store store, IndexCache indexCache,
                       MapperService mapperService, SimilarityService similarityService, IndexFieldDataService indexFieldDataService,
@@ -264,6 +282,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         searcherWrapper = indexSearcherWrapper;
         primaryTerm = indexSettings.getIndexMetaData().primaryTerm(shardId.id());
         refreshListeners = buildRefreshListeners();
+        lastSearcherAccess = threadPool.estimatedTimeInMillis();
         persistMetadata(shardRouting, null);
     }
 
@@ -469,27 +488,48 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return previousState;
     }
 
-    public Engine.Index prepareIndexOnPrimary(SourceToParse source, long version, VersionType versionType) {
+    public Engine.Index prepareIndexOnPrimary(SourceToParse source, long version, VersionType versionType, long autoGeneratedIdTimestamp,
+                                              boolean isRetry) {
+        try {
+            verifyPrimary();
+            return prepareIndex(docMapper(source.type()), source, version, versionType, Engine.Operation.Origin.PRIMARY,
+                autoGeneratedIdTimestamp, isRetry);
+        } catch (Throwable t) {
+            verifyNotClosed(t);
+            throw t;
+        }
+    }
+
+    /**
+     * Prepares an index operation on the primary with an already resolved document mapper, which allows to resolve the mapper
+     * of a type once for many documents.
+     */
+    public Engine.Index prepareIndexOnPrimary(DocumentMapperForType docMapper, SourceToParse source, long version, VersionType versionType,
+                                              long autoGeneratedIdTimestamp, boolean isRetry) {
         try {
             verifyPrimary();
-            return prepareIndex(docMapper(source.type()), source, version, versionType, Engine.Operation.Origin.PRIMARY);
+            return prepareIndex(docMapper, source, version, versionType, Engine.Operation.Origin.PRIMARY,
+                autoGeneratedIdTimestamp, isRetry);
         } catch (Throwable t) {
             verifyNotClosed(t);
             throw t;
         }
     }
 
-    public Engine.Index prepareIndexOnReplica(SourceToParse source, long version, VersionType versionType) {
+    public Engine.Index prepareIndexOnReplica(SourceToParse source, long version, VersionType versionType, long autoGeneratedIdTimestamp,
+                                              boolean isRetry) {
         try {
             verifyReplicationTarget();
-            return prepareIndex(docMapper(source.type()), source, version, versionType, Engine.Operation.Origin.REPLICA);
+            return prepareIndex(docMapper(source.type()), source, version, versionType, Engine.Operation.Origin.REPLICA,
+                autoGeneratedIdTimestamp, isRetry);
         } catch (Throwable t) {
             verifyNotClosed(t);
             throw t;
         }
     }
 
-    static Engine.Index prepareIndex(DocumentMapperForType docMapper, SourceToParse source, long version, VersionType versionType, Engine.Operation.Origin origin) {
+    static Engine.Index prepareIndex(DocumentMapperForType docMapper, SourceToParse source, long version, VersionType versionType,
+                                     Engine.Operation.Origin origin, long autoGeneratedIdTimestamp, boolean isRetry) {
         long startTime = System.nanoTime();
         ParsedDocument doc = docMapper.getDocumentMapper().parse(source);
         if (docMapper.getMapping() != null) {
@@ -498,7 +538,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         MappedFieldType uidFieldType = docMapper.getDocumentMapper().uidMapper().fieldType();
         Query uidQuery = uidFieldType.termQuery(doc.uid(), null);
         Term uid = MappedFieldType.extractTerm(uidQuery);
-        return new Engine.Index(uid, doc, version, versionType, origin, startTime);
+        return new Engine.Index(uid, doc, version, versionType, origin, startTime, autoGeneratedIdTimestamp, isRetry);
     }
 
     /**
@@ -531,6 +571,73 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return created;
     }
 
+    /**
+     * Executes the given index and delete operations as one batch, see {@link Engine#executeBatch(List)}. Returns the failure of
+     * each operation at its position, or <code>null</code> if the operation succeeded. Operations that indexing operation
+     * listeners replace are replaced in the given list.
+     */
+    public Throwable[] executeBatch(List<Engine.Operation> operations) {
+        final long startTime = System.nanoTime();
+        final Throwable[] failures = new Throwable[operations.size()];
+        final Engine engine = getEngine();
+        active.set(true);
+        final List<Engine.Operation> allowed = new ArrayList<>(operations.size());
+        final List<Integer> slots = new ArrayList<>(operations.size());
+        for (int i = 0; i < failures.length; i++) {
+            Engine.Operation operation = operations.get(i);
+            try {
+                ensureWriteAllowed(operation);
+            } catch (Throwable t) {
+                failures[i] = t;
+                continue;
+            }
+            if (operation instanceof Engine.Index) {
+                operation = indexingOperationListeners.preIndex((Engine.Index) operation);
+            } else {
+                operation = indexingOperationListeners.preDelete((Engine.Delete) operation);
+            }
+            operations.set(i, operation);
+            allowed.add(operation);
+            slots.add(i);
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("execute batch of [{}] operations", allowed.size());
+        }
+        Throwable[] engineFailures;
+        try {
+            engineFailures = engine.executeBatch(allowed);
+        } catch (Throwable t) {
+            engineFailures = new Throwable[allowed.size()];
+            Arrays.fill(engineFailures, t);
+        }
+        final long endTime = System.nanoTime();
+        for (int j = 0; j < engineFailures.length; j++) {
+            final Engine.Operation operation = allowed.get(j);
+            final Throwable failure = engineFailures[j];
+            failures[slots.get(j)] = failure;
+            if (failure == null) {
+                operation.endTime(endTime);
+            }
+            if (operation instanceof Engine.Index) {
+                final Engine.Index index = (Engine.Index) operation;
+                if (failure == null) {
+                    indexingOperationListeners.postIndex(index, index.isCreated());
+                } else {
+                    indexingOperationListeners.postIndex(index, failure);
+                }
+            } else {
+                final Engine.Delete delete = (Engine.Delete) operation;
+                if (failure == null) {
+                    indexingOperationListeners.postDelete(delete);
+                } else {
+                    indexingOperationListeners.postDelete(delete, failure);
+                }
+            }
+        }
+        internalIndexingStats.bulkBatch(operations.size(), endTime - startTime);
+        return failures;
+    }
+
     public Engine.Delete prepareDeleteOnPrimary(String type, String id, long version, VersionType versionType) {
         verifyPrimary();
         final DocumentMapper documentMapper = docMapper(type).getDocumentMapper();
@@ -621,7 +728,103 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     }
 
     public RefreshStats refreshStats() {
-        return new RefreshStats(refreshMetric.count(), TimeUnit.NANOSECONDS.toMillis(refreshMetric.sum()));
+        return new RefreshStats(refreshMetric.count(), TimeUnit.NANOSECONDS.toMillis(refreshMetric.sum()),
+            skippedScheduledRefreshes.count(), isSearchIdle() ? 1 : 0);
+    }
+
+    /**
+     * Executes a scheduled refresh if there are changes that are not visible to searches yet or refresh listeners are waiting. Shards
+     * that are search idle skip the refresh unless listeners are waiting; instead the next search waits for a refresh, see
+     * {@link #awaitShardSearchActive(Consumer)}.
+     *
+     * @return <code>true</code> iff this shard was refreshed
+     */
+    public boolean scheduledRefresh() {
+        final boolean listenerNeedsRefresh = refreshListeners != null && refreshListeners.refreshNeeded();
+        final Engine engine = getEngine();
+        if (listenerNeedsRefresh || engine.refreshNeeded()) {
+            if (listenerNeedsRefresh == false && refreshListeners != null && isSearchIdle()) {
+                // nobody is searching this shard so we don't need to make the changes visible yet. The next search waits for them.
+                skippedScheduledRefreshes.inc();
+                pendingRefreshLocation.set(engine.getTranslog().getLastWriteLocation());
+                return false;
+            }
+            refresh("schedule");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if this shard hasn't been searched for longer than {@link IndexSettings#getSearchIdleAfter()}.
+     * Only searches wait for the refreshes that were skipped while the shard was search idle: other reads of the searcher, like
+     * non realtime gets or reads that don't go through the search service, see the changes only after the next refresh.
+     */
+    public boolean isSearchIdle() {
+        final long searchIdleAfter = indexSettings.getSearchIdleAfter().millis();
+        return searchIdleAfter >= 0 && (threadPool.estimatedTimeInMillis() - lastSearcherAccess) >= searchIdleAfter;
+    }
+
+    /**
+     * Returns <code>true</code> if scheduled refreshes were skipped while this shard was search idle and the skipped changes are
+     * not yet visible to searches.
+     */
+    public boolean hasPendingRefresh() {
+        return pendingRefreshLocation.get() != null;
+    }
+
+    /**
+     * Returns the time (in millis) this shard was last searched.
+     */
+    public long getLastSearcherAccess() {
+        return lastSearcherAccess;
+    }
+
+    /**
+     * Marks this shard as searched so that it doesn't become search idle. Only searches should call this, other operations that
+     * acquire a searcher like realtime gets must not keep the shard search active.
+     */
+    public void markSearcherAccessed() {
+        lastSearcherAccess = threadPool.estimatedTimeInMillis();
+    }
+
+    /**
+     * Marks this shard as search active and calls the given listener once all changes that were indexed before scheduled refreshes
+     * were skipped are visible to searches. If a refresh is pending, it is triggered right away and the listener is called with
+     * <code>true</code> on the listener thread pool once it finished. Otherwise the listener is called with <code>false</code> on the
+     * calling thread.
+     */
+    public void awaitShardSearchActive(Consumer<Boolean> listener) {
+        markSearcherAccessed();
+        final Translog.Location location = pendingRefreshLocation.get();
+        if (location == null) {
+            listener.accept(false);
+            return;
+        }
+        final boolean notified = refreshListeners.addOrNotify(location, forcedRefresh -> {
+            pendingRefreshLocation.compareAndSet(location, null);
+            listener.accept(true);
+        });
+        if (notified == false) {
+            // we don't want the search to wait for the next scheduled refresh
+            threadPool.executor(ThreadPool.Names.REFRESH).execute(new AbstractRunnable() {
+                @Override
+                public void onFailure(Throwable t) {
+                    if (t instanceof Exception) {
+                        handleRefreshException((Exception) t);
+                    } else {
+                        logger.warn("failed to refresh search idle shard", t);
+                    }
+                }
+
+                @Override
+                protected void doRun() throws Exception {
+                    if (isRefreshNeeded()) {
+                        refresh("search_active");
+                    }
+                }
+            });
+        }
     }
 
     public FlushStats flushStats() {
@@ -1526,10 +1729,25 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return mapperService.documentMapperWithAutoCreate(type);
     }
 
+    /**
+     * Returns the sort of the documents of merged segments or <code>null</code> if the index has no index sort,
+     * see {@link org.elasticsearch.index.IndexSortConfig}.
+     */
+    @Nullable
+    public Sort getIndexSort() {
+        return indexSort;
+    }
+
     private final EngineConfig newEngineConfig(EngineConfig.OpenMode openMode) {
         final IndexShardRecoveryPerformer translogRecoveryPerformer = new IndexShardRecoveryPerformer(shardId, mapperService, logger);
+        // the sort fields are validated against the mappings when the index is created so they are all mapped by now
+        indexSort = indexSettings.getIndexSortConfig().buildIndexSort(mapperService::fullName);
+        MergePolicy mergePolicy = indexSettings.getMergePolicy();
+        if (indexSort != null) {
+            mergePolicy = new XSortingMergePolicy(mergePolicy, indexSort);
+        }
         return new EngineConfig(openMode, shardId,
-            threadPool, indexSettings, warmer, store, deletionPolicy, indexSettings.getMergePolicy(),
+            threadPool, indexSettings, warmer, store, deletionPolicy, mergePolicy,
             mapperService.indexAnalyzer(), similarityService.similarity(mapperService), codecService, shardEventListener, translogRecoveryPerformer, indexCache.query(), cachingPolicy, translogConfig,
             IndexingMemoryController.SHARD_INACTIVE_TIME_SETTING.get(indexSettings.getSettings()), refreshListeners);
     }
@@ -1631,11 +1849,21 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      * Build {@linkplain RefreshListeners} for this shard. Protected so {@linkplain ShadowIndexShard} can override it to return null.
      */
     protected RefreshListeners buildRefreshListeners() {
-        return new RefreshListeners(
+        final RefreshListeners listeners = new RefreshListeners(
                 indexSettings::getMaxRefreshListeners,
                 () -> refresh("too_many_listeners"),
                 threadPool.executor(ThreadPool.Names.LISTENER)::execute,
                 logger);
+        // explicit and flush refreshes make skipped changes visible too, the next search shouldn't wait for them
+        listeners.setRefreshedLocationListener(this::clearPendingRefresh);
+        return listeners;
+    }
+
+    private void clearPendingRefresh(Translog.Location refreshedLocation) {
+        final Translog.Location location = pendingRefreshLocation.get();
+        if (location != null && location.compareTo(refreshedLocation) <= 0) {
+            pendingRefreshLocation.compareAndSet(location, null);
+        }
     }
 
     /**
@@ -38,28 +38,52 @@ public class IndexingStats implements Streamable, ToXContent {
 
     public static class Stats implements Streamable, ToXContent {
 
+        /**
+         * The upper bounds (in millis, exclusive) of the buckets of the bulk batch latency distribution. Batches that take longer
+         * than the last bound are counted in an additional last bucket.
+         */
+        static final long[] BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS = new long[] { 1, 10, 100, 1000 };
+
         private long indexCount;
         private long indexTimeInMillis;
         private long indexCurrent;
         private long indexFailedCount;
+        private long indexAppendOnlyCount;
         private long deleteCount;
         private long deleteTimeInMillis;
         private long deleteCurrent;
         private long noopUpdateCount;
+        private long bulkBatchCount;
+        private long bulkBatchTimeInMillis;
+        private long bulkBatchOperationsCount;
+        private long[] bulkBatchLatency = new long[BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS.length + 1];
         private long throttleTimeInMillis;
         private boolean isThrottled;
 
         Stats() {}
 
-        public Stats(long indexCount, long indexTimeInMillis, long indexCurrent, long indexFailedCount, long deleteCount, long deleteTimeInMillis, long deleteCurrent, long noopUpdateCount, boolean isThrottled, long throttleTimeInMillis) {
+        public Stats(long indexCount, long indexTimeInMillis, long indexCurrent, long indexFailedCount, long indexAppendOnlyCount, long deleteCount, long deleteTimeInMillis, long deleteCurrent, long noopUpdateCount, boolean isThrottled, long throttleTimeInMillis) {
+            this(indexCount, indexTimeInMillis, indexCurrent, indexFailedCount, indexAppendOnlyCount, deleteCount, deleteTimeInMillis,
+                deleteCurrent, noopUpdateCount, 0, 0, 0, new long[BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS.length + 1], isThrottled,
+                throttleTimeInMillis);
+        }
+
+        public Stats(long indexCount, long indexTimeInMillis, long indexCurrent, long indexFailedCount, long indexAppendOnlyCount, long deleteCount, long deleteTimeInMillis, long deleteCurrent, long noopUpdateCount,
+                     long bulkBatchCount, long bulkBatchTimeInMillis, long bulkBatchOperationsCount, long[] bulkBatchLatency, boolean isThrottled, long throttleTimeInMillis) {
+            assert bulkBatchLatency.length == BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS.length + 1;
             this.indexCount = indexCount;
             this.indexTimeInMillis = indexTimeInMillis;
             this.indexCurrent = indexCurrent;
             this.indexFailedCount = indexFailedCount;
+            this.indexAppendOnlyCount = indexAppendOnlyCount;
             this.deleteCount = deleteCount;
             this.deleteTimeInMillis = deleteTimeInMillis;
             this.deleteCurrent = deleteCurrent;
             this.noopUpdateCount = noopUpdateCount;
+            this.bulkBatchCount = bulkBatchCount;
+            this.bulkBatchTimeInMillis = bulkBatchTimeInMillis;
+            this.bulkBatchOperationsCount = bulkBatchOperationsCount;
+            this.bulkBatchLatency = bulkBatchLatency;
             this.isThrottled = isThrottled;
             this.throttleTimeInMillis = throttleTimeInMillis;
         }
@@ -69,12 +93,21 @@ public class IndexingStats implements Streamable, ToXContent {
             indexTimeInMillis += stats.indexTimeInMillis;
             indexCurrent += stats.indexCurrent;
             indexFailedCount += stats.indexFailedCount;
+            indexAppendOnlyCount += stats.indexAppendOnlyCount;
 
             deleteCount += stats.deleteCount;
             deleteTimeInMillis += stats.deleteTimeInMillis;
             deleteCurrent += stats.deleteCurrent;
 
             noopUpdateCount += stats.noopUpdateCount;
+
+            bulkBatchCount += stats.bulkBatchCount;
+            bulkBatchTimeInMillis += stats.bulkBatchTimeInMillis;
+            bulkBatchOperationsCount += stats.bulkBatchOperationsCount;
+            for (int i = 0; i < bulkBatchLatency.length; i++) {
+                bulkBatchLatency[i] += stats.bulkBatchLatency[i];
+            }
+
             throttleTimeInMillis += stats.throttleTimeInMillis;
             if (isThrottled != stats.isThrottled) {
                 isThrottled = true; //When combining if one is throttled set result to throttled.
@@ -91,6 +124,12 @@ public class IndexingStats implements Streamable, ToXContent {
          */
         public long getIndexFailedCount() { return indexFailedCount; }
 
+        /**
+         * The number of indexing operations with an auto generated id that were added without looking up the current version
+         * of the document. All other indexing operations required a version lookup.
+         */
+        public long getIndexAppendOnlyCount() { return indexAppendOnlyCount; }
+
         /**
          * The total amount of time spend on executing index operations.
          */
@@ -134,6 +173,36 @@ public class IndexingStats implements Streamable, ToXContent {
             return noopUpdateCount;
         }
 
+        /**
+         * Returns the number of bulk shard requests that were executed as a single batch
+         */
+        public long getBulkBatchCount() {
+            return bulkBatchCount;
+        }
+
+        /**
+         * The total amount of time spend on executing bulk batches.
+         */
+        public TimeValue getBulkBatchTime() {
+            return new TimeValue(bulkBatchTimeInMillis);
+        }
+
+        /**
+         * Returns the number of index and delete operations that were executed as part of a bulk batch
+         */
+        public long getBulkBatchOperationsCount() {
+            return bulkBatchOperationsCount;
+        }
+
+        /**
+         * Returns the number of bulk batches per latency bucket. The bucket at position <code>i</code> counts the batches that took
+         * less than {@link #BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS}<code>[i]</code> but at least the previous bound, the last bucket
+         * counts the batches that took longer than all bounds.
+         */
+        public long[] getBulkBatchLatency() {
+            return bulkBatchLatency;
+        }
+
         public static Stats readStats(StreamInput in) throws IOException {
             Stats stats = new Stats();
             stats.readFrom(in);
@@ -149,11 +218,20 @@ public class IndexingStats implements Streamable, ToXContent {
             if(in.getVersion().onOrAfter(Version.V_2_1_0)){
                 indexFailedCount = in.readVLong();
             }
+            if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+                indexAppendOnlyCount = in.readVLong();
+            }
 
             deleteCount = in.readVLong();
             deleteTimeInMillis = in.readVLong();
             deleteCurrent = in.readVLong();
             noopUpdateCount = in.readVLong();
+            if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+                bulkBatchCount = in.readVLong();
+                bulkBatchTimeInMillis = in.readVLong();
+                bulkBatchOperationsCount = in.readVLong();
+                bulkBatchLatency = in.readVLongArray();
+            }
             isThrottled = in.readBoolean();
             throttleTimeInMillis = in.readLong();
         }
@@ -167,11 +245,20 @@ public class IndexingStats implements Streamable, ToXContent {
             if(out.getVersion().onOrAfter(Version.V_2_1_0)) {
                 out.writeVLong(indexFailedCount);
             }
+            if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+                out.writeVLong(indexAppendOnlyCount);
+            }
 
             out.writeVLong(deleteCount);
             out.writeVLong(deleteTimeInMillis);
             out.writeVLong(deleteCurrent);
             out.writeVLong(noopUpdateCount);
+            if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+                out.writeVLong(bulkBatchCount);
+                out.writeVLong(bulkBatchTimeInMillis);
+                out.writeVLong(bulkBatchOperationsCount);
+                out.writeVLongArray(bulkBatchLatency);
+            }
             out.writeBoolean(isThrottled);
             out.writeLong(throttleTimeInMillis);
 
@@ -183,6 +270,7 @@ public class IndexingStats implements Streamable, ToXContent {
             builder.timeValueField(Fields.INDEX_TIME_IN_MILLIS, Fields.INDEX_TIME, indexTimeInMillis);
             builder.field(Fields.INDEX_CURRENT, indexCurrent);
             builder.field(Fields.INDEX_FAILED, indexFailedCount);
+            builder.field(Fields.INDEX_APPEND_ONLY_TOTAL, indexAppendOnlyCount);
 
             builder.field(Fields.DELETE_TOTAL, deleteCount);
             builder.timeValueField(Fields.DELETE_TIME_IN_MILLIS, Fields.DELETE_TIME, deleteTimeInMillis);
@@ -190,6 +278,17 @@ public class IndexingStats implements Streamable, ToXContent {
 
             builder.field(Fields.NOOP_UPDATE_TOTAL, noopUpdateCount);
 
+            builder.field(Fields.BULK_BATCH_TOTAL, bulkBatchCount);
+            builder.timeValueField(Fields.BULK_BATCH_TIME_IN_MILLIS, Fields.BULK_BATCH_TIME, bulkBatchTimeInMillis);
+            builder.field(Fields.BULK_BATCH_OPERATIONS_TOTAL, bulkBatchOperationsCount);
+            builder.startObject(Fields.BULK_BATCH_LATENCY);
+            for (int i = 0; i < BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS.length; i++) {
+                builder.field("under_" + TimeValue.timeValueMillis(BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS[i]), bulkBatchLatency[i]);
+            }
+            builder.field("over_" + TimeValue.timeValueMillis(BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS[BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS.length - 1]),
+                bulkBatchLatency[BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS.length]);
+            builder.endObject();
+
             builder.field(Fields.IS_THROTTLED, isThrottled);
             builder.timeValueField(Fields.THROTTLED_TIME_IN_MILLIS, Fields.THROTTLED_TIME, throttleTimeInMillis);
             return builder;
@@ -275,11 +374,17 @@ public class IndexingStats implements Streamable, ToXContent {
         static final String INDEX_TIME_IN_MILLIS = "index_time_in_millis";
         static final String INDEX_CURRENT = "index_current";
         static final String INDEX_FAILED = "index_failed";
+        static final String INDEX_APPEND_ONLY_TOTAL = "index_append_only_total";
         static final String DELETE_TOTAL = "delete_total";
         static final String DELETE_TIME = "delete_time";
         static final String DELETE_TIME_IN_MILLIS = "delete_time_in_millis";
         static final String DELETE_CURRENT = "delete_current";
         static final String NOOP_UPDATE_TOTAL = "noop_update_total";
+        static final String BULK_BATCH_TOTAL = "bulk_batch_total";
+        static final String BULK_BATCH_TIME = "bulk_batch_time";
+        static final String BULK_BATCH_TIME_IN_MILLIS = "bulk_batch_time_in_millis";
+        static final String BULK_BATCH_OPERATIONS_TOTAL = "bulk_batch_operations_total";
+        static final String BULK_BATCH_LATENCY = "bulk_batch_latency";
         static final String IS_THROTTLED = "is_throttled";
         static final String THROTTLED_TIME_IN_MILLIS = "throttle_time_in_millis";
         static final String THROTTLED_TIME = "throttle_time";
@@ -82,6 +82,10 @@ final class InternalIndexingStats implements IndexingOperationListener {
             StatsHolder typeStats = typeStats(index.type());
             typeStats.indexMetric.inc(took);
             typeStats.indexCurrent.dec();
+            if (index.isAppendOnly()) {
+                totalStats.indexAppendOnly.inc();
+                typeStats.indexAppendOnly.inc();
+            }
         }
     }
 
@@ -125,6 +129,22 @@ final class InternalIndexingStats implements IndexingOperationListener {
         }
     }
 
+    /**
+     * Records a batch of index and delete operations that was executed at once. Batches can span types so they are only tracked in
+     * the total stats.
+     */
+    void bulkBatch(int numOperations, long tookInNanos) {
+        totalStats.bulkBatchMetric.inc(tookInNanos);
+        totalStats.bulkBatchOperations.inc(numOperations);
+        final long tookInMillis = TimeUnit.NANOSECONDS.toMillis(tookInNanos);
+        final long[] bounds = IndexingStats.Stats.BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS;
+        int bucket = 0;
+        while (bucket < bounds.length && tookInMillis >= bounds[bucket]) {
+            bucket++;
+        }
+        totalStats.bulkBatchLatency[bucket].inc();
+    }
+
     public void noopUpdate(String type) {
         totalStats.noopUpdates.inc();
         typeStats(type).noopUpdates.inc();
@@ -149,14 +169,30 @@ final class InternalIndexingStats implements IndexingOperationListener {
         private final MeanMetric deleteMetric = new MeanMetric();
         private final CounterMetric indexCurrent = new CounterMetric();
         private final CounterMetric indexFailed = new CounterMetric();
+        private final CounterMetric indexAppendOnly = new CounterMetric();
         private final CounterMetric deleteCurrent = new CounterMetric();
         private final CounterMetric noopUpdates = new CounterMetric();
+        private final MeanMetric bulkBatchMetric = new MeanMetric();
+        private final CounterMetric bulkBatchOperations = new CounterMetric();
+        private final CounterMetric[] bulkBatchLatency =
+            new CounterMetric[IndexingStats.Stats.BULK_BATCH_LATENCY_BOUNDS_IN_MILLIS.length + 1];
+
+        StatsHolder() {
+            for (int i = 0; i < bulkBatchLatency.length; i++) {
+                bulkBatchLatency[i] = new CounterMetric();
+            }
+        }
 
         IndexingStats.Stats stats(boolean isThrottled, long currentThrottleMillis) {
+            final long[] bulkBatchLatencyCounts = new long[bulkBatchLatency.length];
+            for (int i = 0; i < bulkBatchLatency.length; i++) {
+                bulkBatchLatencyCounts[i] = bulkBatchLatency[i].count();
+            }
             return new IndexingStats.Stats(
                 indexMetric.count(), TimeUnit.NANOSECONDS.toMillis(indexMetric.sum()), indexCurrent.count(), indexFailed.count(),
-                deleteMetric.count(), TimeUnit.NANOSECONDS.toMillis(deleteMetric.sum()), deleteCurrent.count(),
-                noopUpdates.count(), isThrottled, TimeUnit.MILLISECONDS.toMillis(currentThrottleMillis));
+                indexAppendOnly.count(), deleteMetric.count(), TimeUnit.NANOSECONDS.toMillis(deleteMetric.sum()), deleteCurrent.count(),
+                noopUpdates.count(), bulkBatchMetric.count(), TimeUnit.NANOSECONDS.toMillis(bulkBatchMetric.sum()),
+                bulkBatchOperations.count(), bulkBatchLatencyCounts, isThrottled, TimeUnit.MILLISECONDS.toMillis(currentThrottleMillis));
         }
 
         void clear() {
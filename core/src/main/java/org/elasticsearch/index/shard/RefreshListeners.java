@@ -53,6 +53,10 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener
      * The translog location that was last made visible by a refresh.
      */
     private volatile Translog.Location lastRefreshedLocation;
+    /**
+     * Called with the translog location that was made visible after every refresh, see {@link #setRefreshedLocationListener(Consumer)}.
+     */
+    private volatile Consumer<Translog.Location> refreshedLocationListener;
 
     public RefreshListeners(IntSupplier getMaxRefreshListeners, Runnable forceRefresh, Executor listenerExecutor, ESLogger logger) {
         this.getMaxRefreshListeners = getMaxRefreshListeners;
@@ -103,6 +107,14 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener
         return refreshListeners != null;
     }
 
+    /**
+     * Sets a listener that is called on the refreshing thread with the translog location that was made visible after every refresh,
+     * whether or not listeners were waiting for it.
+     */
+    public void setRefreshedLocationListener(Consumer<Translog.Location> refreshedLocationListener) {
+        this.refreshedLocationListener = refreshedLocationListener;
+    }
+
     /**
      * Setup the translog used to find the last refreshed location.
      */
@@ -147,6 +159,10 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener
          * that doesn't seem worth it given that we already skip this process early if there aren't any listeners to iterate.
          */
         lastRefreshedLocation = currentRefreshLocation;
+        final Consumer<Translog.Location> refreshedLocationListener = this.refreshedLocationListener;
+        if (refreshedLocationListener != null) {
+            refreshedLocationListener.accept(currentRefreshLocation);
+        }
         /*
          * Grab the current refresh listeners and replace them with null while synchronized. Any listeners that come in after this won't be
          * in the list we iterate over and very likely won't be candidates for refresh anyway because we've already moved the
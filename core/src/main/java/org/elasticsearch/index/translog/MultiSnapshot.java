@@ -19,6 +19,8 @@
 
 package org.elasticsearch.index.translog;
 
+import org.elasticsearch.common.bytes.BytesReference;
+
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -57,4 +59,16 @@ final class MultiSnapshot implements Translog.Snapshot {
         }
         return null;
     }
+
+    @Override
+    public BytesReference nextRaw() throws IOException {
+        for (; index < translogs.length; index++) {
+            final Translog.Snapshot current = translogs[index];
+            BytesReference op = current.nextRaw();
+            if (op != null) { // if we are null we move to the next snapshot
+                return op;
+            }
+        }
+        return null;
+    }
 }
@@ -26,10 +26,14 @@ import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.UUIDs;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.bytes.ReleasablePagedBytesReference;
+import org.elasticsearch.common.compress.Compressor;
+import org.elasticsearch.common.compress.CompressorFactory;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -109,6 +113,8 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     public static final String CHECKPOINT_FILE_NAME = "translog" + CHECKPOINT_SUFFIX;
 
     static final Pattern PARSE_STRICT_ID_PATTERN = Pattern.compile("^" + TRANSLOG_FILE_PREFIX + "(\\d+)(\\.tlog)$");
+    /** sources smaller than this are not compressed even if translog compression is enabled since they hardly shrink */
+    static final int COMPRESS_SOURCE_MIN_SIZE_IN_BYTES = 256;
 
     // the list of translog readers is guaranteed to be in order of translog generation
     private final List<TranslogReader> readers = new ArrayList<>();
@@ -129,6 +135,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     private final AtomicBoolean closed = new AtomicBoolean();
     private final TranslogConfig config;
     private final String translogUUID;
+    private final TranslogWriter.SyncStats syncStats = new TranslogWriter.SyncStats();
 
     /**
      * Creates a new Translog instance. This method will create a new transaction log unless the given {@link TranslogConfig} has
@@ -378,7 +385,8 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     TranslogWriter createWriter(long fileGeneration) throws IOException {
         TranslogWriter newFile;
         try {
-            newFile = TranslogWriter.create(shardId, translogUUID, fileGeneration, location.resolve(getFilename(fileGeneration)), getChannelFactory(), config.getBufferSize());
+            newFile = TranslogWriter.create(shardId, translogUUID, fileGeneration, location.resolve(getFilename(fileGeneration)), getChannelFactory(),
+                config.getBufferSize(), () -> indexSettings.getTranslogGroupCommitDelay().nanos(), syncStats);
         } catch (IOException e) {
             throw new TranslogException(shardId, "failed to create new translog file", e);
         }
@@ -423,7 +431,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             final BufferedChecksumStreamOutput checksumStreamOutput = new BufferedChecksumStreamOutput(out);
             final long start = out.position();
             out.skip(Integer.BYTES);
-            writeOperationNoSize(checksumStreamOutput, operation);
+            writeOperationNoSize(checksumStreamOutput, maybeCompress(operation));
             final long end = out.position();
             final int operationSize = (int) (end - Integer.BYTES - start);
             out.seek(start);
@@ -447,6 +455,66 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         }
     }
 
+    /**
+     * Adds the given operations to the translog with a single append and returns the location of each operation, in the order
+     * the operations were given.
+     */
+    public Location[] add(List<Operation> operations) throws IOException {
+        if (operations.isEmpty()) {
+            return new Location[0];
+        }
+        final ReleasableBytesStreamOutput out = new ReleasableBytesStreamOutput(bigArrays);
+        try {
+            final BufferedChecksumStreamOutput checksumStreamOutput = new BufferedChecksumStreamOutput(out);
+            final int[] sizes = new int[operations.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                final long start = out.position();
+                writeOperationWithSize(out, checksumStreamOutput, maybeCompress(operations.get(i)));
+                sizes[i] = (int) (out.position() - start);
+            }
+            final ReleasablePagedBytesReference bytes = out.bytes();
+            try (ReleasableLock lock = readLock.acquire()) {
+                ensureOpen();
+                final Location location = current.add(bytes, sizes.length);
+                assert assertBytesAtLocation(location, bytes);
+                final Location[] locations = new Location[sizes.length];
+                long offset = location.translogLocation;
+                for (int i = 0; i < sizes.length; i++) {
+                    locations[i] = new Location(location.generation, offset, sizes[i]);
+                    offset += sizes[i];
+                }
+                return locations;
+            }
+        } catch (AlreadyClosedException | IOException ex) {
+            closeOnTragicEvent(ex);
+            throw ex;
+        } catch (Throwable e) {
+            closeOnTragicEvent(e);
+            throw new TranslogException(shardId, "Failed to write [" + operations.size() + "] operations", e);
+        } finally {
+            Releasables.close(out.bytes());
+        }
+    }
+
+    /**
+     * Returns the operation to write to the translog: an index operation with a compressed source if translog compression is
+     * enabled and the source is large enough to benefit from it, otherwise the given operation.
+     */
+    private Operation maybeCompress(Operation operation) throws IOException {
+        if (indexSettings.isTranslogCompressionEnabled() && operation instanceof Index) {
+            final Index index = (Index) operation;
+            final Compressor compressor = CompressorFactory.defaultCompressor();
+            if (index.source().length() >= COMPRESS_SOURCE_MIN_SIZE_IN_BYTES && compressor.isCompressed(index.source()) == false) {
+                final BytesStreamOutput bytes = new BytesStreamOutput();
+                try (StreamOutput compressed = compressor.streamOutput(bytes)) {
+                    index.source().writeTo(compressed);
+                }
+                return new Index(index, bytes.bytes());
+            }
+        }
+        return operation;
+    }
+
     /**
      * The a {@linkplain Location} that will sort after the {@linkplain Location} returned by the last write but before any locations which
      * can be returned by the next write.
@@ -568,7 +636,8 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     public TranslogStats stats() {
         // acquire lock to make the two numbers roughly consistent (no file change half way)
         try (ReleasableLock lock = readLock.acquire()) {
-            return new TranslogStats(totalOperations(), sizeInBytes());
+            return new TranslogStats(totalOperations(), sizeInBytes(), syncStats.getSyncRequests(), syncStats.getFsyncs(),
+                syncStats.getFsyncTimeInMillis());
         }
     }
 
@@ -647,7 +716,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         public final long translogLocation;
         public final int size;
 
-        Location(long generation, long translogLocation, int size) {
+        public Location(long generation, long translogLocation, int size) {
             this.generation = generation;
             this.translogLocation = translogLocation;
             this.size = size;
@@ -721,6 +790,22 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
          */
         Translog.Operation next() throws IOException;
 
+        /**
+         * Returns the next operation in the snapshot serialized the way it is stored in the translog, that is its size, the
+         * operation and its checksum, or <code>null</code> if we reached the end. Snapshots of translog files return the stored bytes
+         * after verifying their checksum, without deserializing the operation. Use {@link Translog#readOperations(StreamInput, int)}
+         * to read the operations back.
+         */
+        default BytesReference nextRaw() throws IOException {
+            final Translog.Operation operation = next();
+            if (operation == null) {
+                return null;
+            }
+            final BytesStreamOutput out = new BytesStreamOutput();
+            writeOperationWithSize(out, new BufferedChecksumStreamOutput(out), operation);
+            return out.bytes();
+        }
+
     }
 
     /**
@@ -810,7 +895,10 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     }
 
     public static class Index implements Operation {
-        public static final int SERIALIZATION_FORMAT = 6; // since 2.0-beta1 and 1.1
+        public static final int FORMAT_2x = 6; // since 2.0-beta1 and 1.1
+        public static final int FORMAT_AUTO_GENERATED_IDS = 7; // since 5.0.0
+        public static final int FORMAT_COMPRESSED_SOURCE = 8; // since 5.0.0-alpha5
+        public static final int SERIALIZATION_FORMAT = FORMAT_COMPRESSED_SOURCE;
         private final String id;
         private final String type;
         private final long version;
@@ -820,13 +908,16 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         private final String parent;
         private final long timestamp;
         private final long ttl;
+        private final long autoGeneratedIdTimestamp;
+        /** whether the translog compressed the source of this operation, only ever set on the copy that is written */
+        private final boolean sourceCompressed;
 
         public Index(StreamInput in) throws IOException {
             final int format = in.readVInt(); // SERIALIZATION_FORMAT
-            assert format == SERIALIZATION_FORMAT : "format was: " + format;
+            assert format >= FORMAT_2x && format <= SERIALIZATION_FORMAT : "format was: " + format;
             id = in.readString();
             type = in.readString();
-            source = in.readBytesReference();
+            final BytesReference source = in.readBytesReference();
             routing = in.readOptionalString();
             parent = in.readOptionalString();
             this.version = in.readLong();
@@ -834,6 +925,17 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             this.ttl = in.readLong();
             this.versionType = VersionType.fromValue(in.readByte());
             assert versionType.validateVersionForWrites(this.version);
+            if (format >= FORMAT_AUTO_GENERATED_IDS) {
+                this.autoGeneratedIdTimestamp = in.readLong();
+            } else {
+                this.autoGeneratedIdTimestamp = IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP;
+            }
+            if (format >= FORMAT_COMPRESSED_SOURCE && in.readBoolean()) {
+                this.source = CompressorFactory.uncompress(source);
+            } else {
+                this.source = source;
+            }
+            this.sourceCompressed = false;
         }
 
         public Index(Engine.Index index) {
@@ -846,6 +948,23 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             this.timestamp = index.timestamp();
             this.ttl = index.ttl();
             this.versionType = index.versionType();
+            this.autoGeneratedIdTimestamp = index.getAutoGeneratedIdTimestamp();
+            this.sourceCompressed = false;
+        }
+
+        /** Creates a copy of the given operation with a source that was compressed by the translog. */
+        private Index(Index index, BytesReference compressedSource) {
+            this.id = index.id;
+            this.type = index.type;
+            this.source = compressedSource;
+            this.routing = index.routing;
+            this.parent = index.parent;
+            this.version = index.version;
+            this.timestamp = index.timestamp;
+            this.ttl = index.ttl;
+            this.versionType = index.versionType;
+            this.autoGeneratedIdTimestamp = index.autoGeneratedIdTimestamp;
+            this.sourceCompressed = true;
         }
 
         public Index(String type, String id, byte[] source) {
@@ -858,6 +977,8 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             parent = null;
             timestamp = 0;
             ttl = 0;
+            autoGeneratedIdTimestamp = IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP;
+            sourceCompressed = false;
         }
 
         @Override
@@ -906,6 +1027,14 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             return versionType;
         }
 
+        /**
+         * Returns the timestamp of the auto generated ID of this document or {@link IndexRequest#UNSET_AUTO_GENERATED_TIMESTAMP}
+         * if the ID was provided externally.
+         */
+        public long getAutoGeneratedIdTimestamp() {
+            return autoGeneratedIdTimestamp;
+        }
+
         @Override
         public Source getSource() {
             return new Source(source, routing, parent, timestamp, ttl);
@@ -923,6 +1052,8 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             out.writeLong(timestamp);
             out.writeLong(ttl);
             out.writeByte(versionType.getValue());
+            out.writeLong(autoGeneratedIdTimestamp);
+            out.writeBoolean(sourceCompressed);
         }
 
         @Override
@@ -939,6 +1070,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             if (version != index.version ||
                     timestamp != index.timestamp ||
                     ttl != index.ttl ||
+                    autoGeneratedIdTimestamp != index.autoGeneratedIdTimestamp ||
                     id.equals(index.id) == false ||
                     type.equals(index.type) == false ||
                     versionType != index.versionType ||
@@ -963,6 +1095,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
             result = 31 * result + (parent != null ? parent.hashCode() : 0);
             result = 31 * result + Long.hashCode(timestamp);
             result = 31 * result + Long.hashCode(ttl);
+            result = 31 * result + Long.hashCode(autoGeneratedIdTimestamp);
             return result;
         }
 
@@ -1102,8 +1235,15 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
      * Reads a list of operations written with {@link #writeOperations(StreamOutput, List)}
      */
     public static List<Operation> readOperations(StreamInput input) throws IOException {
-        ArrayList<Operation> operations = new ArrayList<>();
-        int numOps = input.readInt();
+        return readOperations(input, input.readInt());
+    }
+
+    /**
+     * Reads the given number of operations that were serialized the way they are stored in the translog, see
+     * {@link Snapshot#nextRaw()}.
+     */
+    public static List<Operation> readOperations(StreamInput input, int numOps) throws IOException {
+        ArrayList<Operation> operations = new ArrayList<>(numOps);
         final BufferedChecksumStreamInput checksumStreamInput = new BufferedChecksumStreamInput(input);
         for (int i = 0; i < numOps; i++) {
             operations.add(readOperation(checksumStreamInput));
@@ -1167,6 +1307,23 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
 
     }
 
+    /**
+     * Writes the given operation the way it is stored in the translog: its size, the operation and its checksum.
+     *
+     * @param checksumStreamOutput a checksum stream that wraps the given output
+     */
+    static void writeOperationWithSize(BytesStreamOutput out, BufferedChecksumStreamOutput checksumStreamOutput, Operation op)
+            throws IOException {
+        final long start = out.position();
+        out.skip(Integer.BYTES);
+        writeOperationNoSize(checksumStreamOutput, op);
+        final long end = out.position();
+        final int operationSize = (int) (end - Integer.BYTES - start);
+        out.seek(start);
+        out.writeInt(operationSize);
+        out.seek(end);
+    }
+
     public static void writeOperationNoSize(BufferedChecksumStreamOutput out, Translog.Operation op) throws IOException {
         // This BufferedChecksumStreamOutput remains unclosed on purpose,
         // because closing it closes the underlying stream, which we don't
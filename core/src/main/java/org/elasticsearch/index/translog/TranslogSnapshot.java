@@ -18,6 +18,8 @@
  */
 package org.elasticsearch.index.translog;
 
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.Channels;
 
 import java.io.EOFException;
@@ -25,6 +27,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.zip.CRC32;
 
 public class TranslogSnapshot extends BaseTranslogReader implements Translog.Snapshot {
 
@@ -64,6 +67,34 @@ public class TranslogSnapshot extends BaseTranslogReader implements Translog.Sna
         }
     }
 
+    @Override
+    public BytesReference nextRaw() throws IOException {
+        if (readOperations < totalOperations) {
+            final int opSize = readSize(reusableBuffer, position);
+            final ByteBuffer buffer = ByteBuffer.allocate(opSize);
+            readBytes(buffer, position);
+            verifyChecksum(buffer.array(), opSize);
+            position += opSize;
+            readOperations++;
+            return new BytesArray(buffer.array());
+        } else {
+            return null;
+        }
+    }
+
+    /** verifies the checksum of an operation that is stored with its size the given bytes */
+    private static void verifyChecksum(byte[] bytes, int opSize) {
+        final CRC32 checksum = new CRC32();
+        // the size is not part of the checksum
+        checksum.update(bytes, Integer.BYTES, opSize - 2 * Integer.BYTES);
+        final long expectedChecksum = checksum.getValue();
+        final long readChecksum = ByteBuffer.wrap(bytes, opSize - Integer.BYTES, Integer.BYTES).getInt() & 0xFFFF_FFFFL;
+        if (readChecksum != expectedChecksum) {
+            throw new TranslogCorruptedException("translog stream is corrupted, expected: 0x" +
+                Long.toHexString(expectedChecksum) + ", got: 0x" + Long.toHexString(readChecksum));
+        }
+    }
+
     protected final Translog.Operation readOperation() throws IOException {
         final int opSize = readSize(reusableBuffer, position);
         reuse = checksummedStream(reusableBuffer, position, opSize, reuse);
@@ -18,10 +18,12 @@
  */
 package org.elasticsearch.index.translog;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.support.ToXContentToBytes;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
@@ -33,11 +35,18 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
 
     private long translogSizeInBytes;
     private int numberOfOperations;
+    private long syncRequests;
+    private long fsyncs;
+    private long fsyncTimeInMillis;
 
     public TranslogStats() {
     }
 
     public TranslogStats(int numberOfOperations, long translogSizeInBytes) {
+        this(numberOfOperations, translogSizeInBytes, 0, 0, 0);
+    }
+
+    public TranslogStats(int numberOfOperations, long translogSizeInBytes, long syncRequests, long fsyncs, long fsyncTimeInMillis) {
         if (numberOfOperations < 0) {
             throw new IllegalArgumentException("numberOfOperations must be >= 0");
         }
@@ -47,6 +56,9 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
         assert translogSizeInBytes >= 0 : "translogSizeInBytes must be >= 0, got [" + translogSizeInBytes + "]";
         this.numberOfOperations = numberOfOperations;
         this.translogSizeInBytes = translogSizeInBytes;
+        this.syncRequests = syncRequests;
+        this.fsyncs = fsyncs;
+        this.fsyncTimeInMillis = fsyncTimeInMillis;
     }
 
     public void add(TranslogStats translogStats) {
@@ -56,6 +68,9 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
 
         this.numberOfOperations += translogStats.numberOfOperations;
         this.translogSizeInBytes += translogStats.translogSizeInBytes;
+        this.syncRequests += translogStats.syncRequests;
+        this.fsyncs += translogStats.fsyncs;
+        this.fsyncTimeInMillis += translogStats.fsyncTimeInMillis;
     }
 
     public long getTranslogSizeInBytes() {
@@ -66,11 +81,42 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
         return numberOfOperations;
     }
 
+    /**
+     * Returns the number of requests that waited for their operations to be fsynced.
+     */
+    public long getSyncRequests() {
+        return syncRequests;
+    }
+
+    /**
+     * Returns the number of fsyncs executed on behalf of sync requests.
+     */
+    public long getFsyncs() {
+        return fsyncs;
+    }
+
+    /**
+     * Returns the total time spent in fsyncs.
+     */
+    public TimeValue getFsyncTime() {
+        return new TimeValue(fsyncTimeInMillis);
+    }
+
+    /**
+     * Returns the average number of sync requests coalesced into a single fsync.
+     */
+    public double getAverageSyncBatchSize() {
+        return fsyncs == 0 ? 0 : (double) syncRequests / fsyncs;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(Fields.TRANSLOG);
         builder.field(Fields.OPERATIONS, numberOfOperations);
         builder.byteSizeField(Fields.SIZE_IN_BYTES, Fields.SIZE, translogSizeInBytes);
+        builder.field(Fields.SYNC_REQUESTS, syncRequests);
+        builder.field(Fields.FSYNCS, fsyncs);
+        builder.timeValueField(Fields.FSYNC_TIME_IN_MILLIS, Fields.FSYNC_TIME, fsyncTimeInMillis);
         builder.endObject();
         return builder;
     }
@@ -80,17 +126,31 @@ public class TranslogStats extends ToXContentToBytes implements Streamable {
         static final String OPERATIONS = "operations";
         static final String SIZE = "size";
         static final String SIZE_IN_BYTES = "size_in_bytes";
+        static final String SYNC_REQUESTS = "sync_requests";
+        static final String FSYNCS = "fsyncs";
+        static final String FSYNC_TIME = "fsync_time";
+        static final String FSYNC_TIME_IN_MILLIS = "fsync_time_in_millis";
     }
 
     @Override
     public void readFrom(StreamInput in) throws IOException {
         numberOfOperations = in.readVInt();
         translogSizeInBytes = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            syncRequests = in.readVLong();
+            fsyncs = in.readVLong();
+            fsyncTimeInMillis = in.readVLong();
+        }
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVInt(numberOfOperations);
         out.writeVLong(translogSizeInBytes);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeVLong(syncRequests);
+            out.writeVLong(fsyncs);
+            out.writeVLong(fsyncTimeInMillis);
+        }
     }
 }
@@ -27,6 +27,8 @@ import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.Channels;
 import org.elasticsearch.common.logging.ESLoggerFactory;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.index.shard.ShardId;
 
@@ -39,7 +41,11 @@ import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
 
 public class TranslogWriter extends BaseTranslogReader implements Closeable {
 
@@ -63,10 +69,18 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
     protected final AtomicBoolean closed = new AtomicBoolean(false);
     // lock order synchronized(syncLock) -> synchronized(this)
     private final Object syncLock = new Object();
-
-    public TranslogWriter(ShardId shardId, long generation, FileChannel channel, Path path, ByteSizeValue bufferSize) throws IOException {
+    /* the number of threads currently waiting in syncUpTo for their location to be fsynced */
+    private final AtomicInteger pendingSyncs = new AtomicInteger();
+    /* the time in nanos the leader of a group commit waits for concurrent writers before it fsyncs */
+    private final LongSupplier groupCommitDelayNanos;
+    private final SyncStats syncStats;
+
+    public TranslogWriter(ShardId shardId, long generation, FileChannel channel, Path path, ByteSizeValue bufferSize,
+                          LongSupplier groupCommitDelayNanos, SyncStats syncStats) throws IOException {
         super(generation, channel, path, channel.position());
         this.shardId = shardId;
+        this.groupCommitDelayNanos = groupCommitDelayNanos;
+        this.syncStats = syncStats;
         this.outputStream = new BufferedChannelOutputStream(java.nio.channels.Channels.newOutputStream(channel), bufferSize.bytesAsInt());
         this.lastSyncedOffset = channel.position();
         totalOffset = lastSyncedOffset;
@@ -80,7 +94,8 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
         return CodecUtil.headerLength(TRANSLOG_CODEC) + uuidLength + Integer.BYTES;
     }
 
-    public static TranslogWriter create(ShardId shardId, String translogUUID, long fileGeneration, Path file, ChannelFactory channelFactory, ByteSizeValue bufferSize) throws IOException {
+    public static TranslogWriter create(ShardId shardId, String translogUUID, long fileGeneration, Path file, ChannelFactory channelFactory,
+                                        ByteSizeValue bufferSize, LongSupplier groupCommitDelayNanos, SyncStats syncStats) throws IOException {
         final BytesRef ref = new BytesRef(translogUUID);
         final int headerLength = getHeaderLength(ref.length);
         final FileChannel channel = channelFactory.open(file);
@@ -93,7 +108,7 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
             out.writeBytes(ref.bytes, ref.offset, ref.length);
             channel.force(true);
             writeCheckpoint(headerLength, 0, file.getParent(), fileGeneration, StandardOpenOption.WRITE);
-            final TranslogWriter writer = new TranslogWriter(shardId, fileGeneration, channel, file, bufferSize);
+            final TranslogWriter writer = new TranslogWriter(shardId, fileGeneration, channel, file, bufferSize, groupCommitDelayNanos, syncStats);
             return writer;
         } catch (Throwable throwable) {
             // if we fail to bake the file-generation into the checkpoint we stick with the file and once we recover and that
@@ -127,7 +142,16 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
     /**
      * add the given bytes to the translog and return the location they were written at
      */
-    public synchronized Translog.Location add(BytesReference data) throws IOException {
+    public Translog.Location add(BytesReference data) throws IOException {
+        return add(data, 1);
+    }
+
+    /**
+     * add the given bytes that hold the given number of serialized operations to the translog and return the location they
+     * were written at
+     */
+    public synchronized Translog.Location add(BytesReference data, int numOperations) throws IOException {
+        assert numOperations > 0 : "must add at least one operation but was: " + numOperations;
         ensureOpen();
         final long offset = totalOffset;
         try {
@@ -137,7 +161,7 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
             throw ex;
         }
         totalOffset += data.length();
-        operationCounter++;
+        operationCounter += numOperations;
         return new Translog.Location(generation, offset, data.length());
     }
 
@@ -227,47 +251,75 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
     }
 
     /**
-     * Syncs the translog up to at least the given offset unless already synced
+     * Syncs the translog up to at least the given offset unless already synced.
+     * <p>
+     * Concurrent callers are coalesced into group commits: the first thread to acquire the sync lock becomes the leader and
+     * fsyncs everything that has been written so far, including the locations of all threads queued up behind it. These
+     * threads find their location already synced once they get the lock and return without an fsync of their own. If a
+     * group commit delay is configured and other threads are waiting for a sync, the leader waits for that delay before it
+     * flushes in order to pick up operations of writers that are still appending.
      *
      * @return <code>true</code> if this call caused an actual sync operation
      */
     public boolean syncUpTo(long offset) throws IOException {
         if (lastSyncedOffset < offset && syncNeeded()) {
-            synchronized (syncLock) { // only one sync/checkpoint should happen concurrently but we wait
-                if (lastSyncedOffset < offset && syncNeeded()) {
-                    // double checked locking - we don't want to fsync unless we have to and now that we have
-                    // the lock we should check again since if this code is busy we might have fsynced enough already
-                    final long offsetToSync;
-                    final int opsCounter;
-                    synchronized (this) {
-                        ensureOpen();
-                        try {
-                            outputStream.flush();
-                            offsetToSync = totalOffset;
-                            opsCounter = operationCounter;
-                        } catch (Throwable ex) {
-                            closeWithTragicEvent(ex);
-                            throw ex;
+            syncStats.syncRequests.inc();
+            pendingSyncs.incrementAndGet();
+            try {
+                synchronized (syncLock) { // only one sync/checkpoint should happen concurrently but we wait
+                    if (lastSyncedOffset < offset && syncNeeded()) {
+                        // double checked locking - we don't want to fsync unless we have to and now that we have
+                        // the lock we should check again since if this code is busy we might have fsynced enough already
+                        final long delayNanos = groupCommitDelayNanos.getAsLong();
+                        if (delayNanos > 0 && pendingSyncs.get() > 1) {
+                            // there are other writers waiting for a sync - give concurrent writers a chance to append
+                            // their operations so they are covered by this fsync as well
+                            LockSupport.parkNanos(delayNanos);
                         }
+                        syncLeader();
+                        return true;
                     }
-                    // now do the actual fsync outside of the synchronized block such that
-                    // we can continue writing to the buffer etc.
-                    try {
-                        channel.force(false);
-                        writeCheckpoint(offsetToSync, opsCounter, path.getParent(), generation, StandardOpenOption.WRITE);
-                    } catch (Throwable ex) {
-                        closeWithTragicEvent(ex);
-                        throw ex;
-                    }
-                    assert lastSyncedOffset <= offsetToSync : "illegal state: " + lastSyncedOffset + " <= " + offsetToSync;
-                    lastSyncedOffset = offsetToSync; // write protected by syncLock
-                    return true;
                 }
+            } finally {
+                pendingSyncs.decrementAndGet();
             }
         }
         return false;
     }
 
+    /**
+     * flushes the buffer and fsyncs everything written so far. Must be called while holding the sync lock.
+     */
+    private void syncLeader() throws IOException {
+        assert Thread.holdsLock(syncLock);
+        final long offsetToSync;
+        final int opsCounter;
+        synchronized (this) {
+            ensureOpen();
+            try {
+                outputStream.flush();
+                offsetToSync = totalOffset;
+                opsCounter = operationCounter;
+            } catch (Throwable ex) {
+                closeWithTragicEvent(ex);
+                throw ex;
+            }
+        }
+        // now do the actual fsync outside of the synchronized block such that
+        // we can continue writing to the buffer etc.
+        final long startTime = System.nanoTime();
+        try {
+            channel.force(false);
+            writeCheckpoint(offsetToSync, opsCounter, path.getParent(), generation, StandardOpenOption.WRITE);
+        } catch (Throwable ex) {
+            closeWithTragicEvent(ex);
+            throw ex;
+        }
+        syncStats.fsyncs.inc(System.nanoTime() - startTime);
+        assert lastSyncedOffset <= offsetToSync : "illegal state: " + lastSyncedOffset + " <= " + offsetToSync;
+        lastSyncedOffset = offsetToSync; // write protected by syncLock
+    }
+
     @Override
     protected void readBytes(ByteBuffer targetBuffer, long position) throws IOException {
         if (position + targetBuffer.remaining() > getWrittenOffset()) {
@@ -292,6 +344,29 @@ public class TranslogWriter extends BaseTranslogReader implements Closeable {
         Checkpoint.write(checkpointFile, checkpoint, options);
     }
 
+    /**
+     * Accumulates the fsync statistics of all writers of a single translog. Dividing the number of sync requests by the number
+     * of fsyncs gives the average number of requests that were coalesced into a single group commit.
+     */
+    public static final class SyncStats {
+        /* the number of requests that had to wait for their location to be fsynced */
+        final CounterMetric syncRequests = new CounterMetric();
+        /* the number of fsyncs and the total time spent in them in nanos */
+        final MeanMetric fsyncs = new MeanMetric();
+
+        public long getSyncRequests() {
+            return syncRequests.count();
+        }
+
+        public long getFsyncs() {
+            return fsyncs.count();
+        }
+
+        public long getFsyncTimeInMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(fsyncs.sum());
+        }
+    }
+
     static class ChannelFactory {
 
         static final ChannelFactory DEFAULT = new ChannelFactory();
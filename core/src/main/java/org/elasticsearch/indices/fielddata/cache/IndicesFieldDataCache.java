@@ -41,11 +41,16 @@ import org.elasticsearch.index.Index;
 import org.elasticsearch.index.fielddata.AtomicFieldData;
 import org.elasticsearch.index.fielddata.IndexFieldData;
 import org.elasticsearch.index.fielddata.IndexFieldDataCache;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalMap;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.shard.ShardUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.function.ToLongBiFunction;
 
 /**
@@ -56,10 +61,21 @@ public class IndicesFieldDataCache extends AbstractComponent implements RemovalL
         Setting.byteSizeSetting("indices.fielddata.cache.size", new ByteSizeValue(-1), Property.NodeScope);
     private final IndexFieldDataCache.Listener indicesFieldDataCacheListener;
     private final Cache<Key, Accountable> cache;
+    private final Executor globalOrdinalsExecutor;
 
     public IndicesFieldDataCache(Settings settings, IndexFieldDataCache.Listener indicesFieldDataCacheListener) {
+        this(settings, indicesFieldDataCacheListener, null);
+    }
+
+    /**
+     * @param globalOrdinalsExecutor the executor that the per-segment work of building global ordinals is forked to,
+     *                               or <code>null</code> to build global ordinals on the calling thread only
+     */
+    public IndicesFieldDataCache(Settings settings, IndexFieldDataCache.Listener indicesFieldDataCacheListener,
+                                 @Nullable Executor globalOrdinalsExecutor) {
         super(settings);
         this.indicesFieldDataCacheListener = indicesFieldDataCacheListener;
+        this.globalOrdinalsExecutor = globalOrdinalsExecutor;
         final long sizeInBytes = INDICES_FIELDDATA_CACHE_SIZE_KEY.get(settings).bytes();
         CacheBuilder<Key, Accountable> cacheBuilder = CacheBuilder.<Key, Accountable>builder()
                 .removalListener(this);
@@ -75,7 +91,7 @@ public class IndicesFieldDataCache extends AbstractComponent implements RemovalL
     }
 
     public IndexFieldDataCache buildIndexFieldDataCache(IndexFieldDataCache.Listener listener, Index index, String fieldName) {
-        return new IndexFieldCache(logger, cache, index, fieldName, indicesFieldDataCacheListener, listener);
+        return new IndexFieldCache(logger, cache, index, fieldName, globalOrdinalsExecutor, indicesFieldDataCacheListener, listener);
     }
 
     public Cache<Key, Accountable> getCache() {
@@ -88,6 +104,9 @@ public class IndicesFieldDataCache extends AbstractComponent implements RemovalL
         assert key != null && key.listeners != null;
         IndexFieldCache indexCache = key.indexCache;
         final Accountable value = notification.getValue();
+        if (value instanceof GlobalOrdinalsIndexFieldData) {
+            indexCache.onGlobalOrdinalsRemoval(key.shardId, ((GlobalOrdinalsIndexFieldData) value).getOrdinalMap());
+        }
         for (IndexFieldDataCache.Listener listener : key.listeners) {
             try {
                 listener.onRemoval(key.shardId, indexCache.fieldName, notification.getRemovalReason() == RemovalNotification.RemovalReason.EVICTED, value.ramBytesUsed());
@@ -115,13 +134,18 @@ public class IndicesFieldDataCache extends AbstractComponent implements RemovalL
         final String fieldName;
         private final Cache<Key, Accountable> cache;
         private final Listener[] listeners;
+        private final Executor globalOrdinalsExecutor;
+        // the global ordinals that were last built per shard, newer readers build their global ordinals incrementally from them
+        private final ConcurrentMap<ShardId, GlobalOrdinalMap> lastGlobalOrdinalMaps = new ConcurrentHashMap<>();
 
-        IndexFieldCache(ESLogger logger,final Cache<Key, Accountable> cache, Index index, String fieldName, Listener... listeners) {
+        IndexFieldCache(ESLogger logger,final Cache<Key, Accountable> cache, Index index, String fieldName,
+                        @Nullable Executor globalOrdinalsExecutor, Listener... listeners) {
             this.logger = logger;
             this.listeners = listeners;
             this.index = index;
             this.fieldName = fieldName;
             this.cache = cache;
+            this.globalOrdinalsExecutor = globalOrdinalsExecutor;
         }
 
         @Override
@@ -167,11 +191,31 @@ public class IndicesFieldDataCache extends AbstractComponent implements RemovalL
                         logger.error("Failed to call listener on global ordinals loading", e);
                     }
                 }
+                if (shardId != null && ifd instanceof GlobalOrdinalsIndexFieldData) {
+                    lastGlobalOrdinalMaps.put(shardId, ((GlobalOrdinalsIndexFieldData) ifd).getOrdinalMap());
+                }
                 return ifd;
             });
             return (IFD) accountable;
         }
 
+        @Override
+        public GlobalOrdinalMap getLastGlobalOrdinalMap(ShardId shardId) {
+            return shardId == null ? null : lastGlobalOrdinalMaps.get(shardId);
+        }
+
+        @Override
+        public Executor getGlobalOrdinalsExecutor() {
+            return globalOrdinalsExecutor;
+        }
+
+        void onGlobalOrdinalsRemoval(@Nullable ShardId shardId, GlobalOrdinalMap ordinalMap) {
+            if (shardId != null) {
+                // only forget the global ordinals if they haven't been replaced by the ones of a newer reader yet
+                lastGlobalOrdinalMaps.remove(shardId, ordinalMap);
+            }
+        }
+
         @Override
         public void onClose(Object coreKey) {
             cache.invalidate(new Key(this, coreKey, null));
@@ -33,7 +33,9 @@ import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.StopWatch;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.lucene.store.InputStreamIndexInput;
 import org.elasticsearch.common.unit.ByteSizeValue;
@@ -390,7 +392,9 @@ public class RecoverySourceHandler {
      * Send the given snapshot's operations to this handler's target node.
      * <p>
      * Operations are bulked into a single request depending on an operation
-     * count limit or size-in-bytes limit
+     * count limit or size-in-bytes limit. Operations are read from the translog
+     * in their serialized form, checksum verified and shipped as is, which avoids
+     * deserializing and re-serializing every operation on the source node.
      *
      * @return the total number of translog operations that were sent
      */
@@ -398,10 +402,10 @@ public class RecoverySourceHandler {
         int ops = 0;
         long size = 0;
         int totalOperations = 0;
-        final List<Translog.Operation> operations = new ArrayList<>();
-        Translog.Operation operation;
+        BytesStreamOutput operations = new BytesStreamOutput();
+        BytesReference operation;
         try {
-            operation = snapshot.next(); // this ex should bubble up
+            operation = snapshot.nextRaw(); // this ex should bubble up
         } catch (IOException ex) {
             throw new ElasticsearchException("failed to get next operation from translog", ex);
         }
@@ -415,9 +419,13 @@ public class RecoverySourceHandler {
                 throw new IndexShardClosedException(request.shardId());
             }
             cancellableThreads.checkForCancel();
-            operations.add(operation);
+            try {
+                operation.writeTo(operations);
+            } catch (IOException ex) {
+                throw new ElasticsearchException("failed to buffer translog operation", ex);
+            }
             ops += 1;
-            size += operation.estimateSize();
+            size += operation.length();
             totalOperations++;
 
             // Check if this request is past bytes threshold, and
@@ -429,7 +437,9 @@ public class RecoverySourceHandler {
                 // index docs to replicas while the index files are recovered
                 // the lock can potentially be removed, in which case, it might
                 // make sense to re-enable throttling in this phase
-                cancellableThreads.execute(() -> recoveryTarget.indexTranslogOperations(operations, snapshot.totalOperations()));
+                final BytesReference batch = operations.bytes();
+                final int batchOps = ops;
+                cancellableThreads.execute(() -> recoveryTarget.indexTranslogOperations(batch, batchOps, snapshot.totalOperations()));
                 if (logger.isTraceEnabled()) {
                     logger.trace("[{}][{}] sent batch of [{}][{}] (total: [{}]) translog operations to {}",
                             indexName, shardId, ops, new ByteSizeValue(size),
@@ -439,17 +449,19 @@ public class RecoverySourceHandler {
 
                 ops = 0;
                 size = 0;
-                operations.clear();
+                operations = new BytesStreamOutput();
             }
             try {
-                operation = snapshot.next(); // this ex should bubble up
+                operation = snapshot.nextRaw(); // this ex should bubble up
             } catch (IOException ex) {
                 throw new ElasticsearchException("failed to get next operation from translog", ex);
             }
         }
         // send the leftover
-        if (!operations.isEmpty()) {
-            cancellableThreads.execute(() -> recoveryTarget.indexTranslogOperations(operations, snapshot.totalOperations()));
+        if (ops > 0) {
+            final BytesReference batch = operations.bytes();
+            final int batchOps = ops;
+            cancellableThreads.execute(() -> recoveryTarget.indexTranslogOperations(batch, batchOps, snapshot.totalOperations()));
 
         }
         if (logger.isTraceEnabled()) {
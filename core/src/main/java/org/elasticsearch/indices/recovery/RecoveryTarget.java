@@ -311,6 +311,17 @@ public class RecoveryTarget extends AbstractRefCounted implements RecoveryTarget
         indexShard().performBatchRecovery(operations);
     }
 
+    @Override
+    public void indexTranslogOperations(BytesReference operations, int numOperations, int totalTranslogOps) {
+        final List<Translog.Operation> decoded;
+        try {
+            decoded = Translog.readOperations(operations.streamInput(), numOperations);
+        } catch (IOException e) {
+            throw new ElasticsearchException("failed to read translog operations", e);
+        }
+        indexTranslogOperations(decoded, totalTranslogOps);
+    }
+
     @Override
     public void receiveFileInfo(List<String> phase1FileNames,
                                 List<Long> phase1FileSizes,
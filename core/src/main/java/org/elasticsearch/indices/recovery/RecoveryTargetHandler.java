@@ -50,6 +50,15 @@ public interface RecoveryTargetHandler {
      */
     void indexTranslogOperations(List<Translog.Operation> operations, int totalTranslogOps);
 
+    /**
+     * Index a set of translog operations on the target that are given in their serialized translog form,
+     * see {@link Translog#readOperations(org.elasticsearch.common.io.stream.StreamInput, int)}
+     * @param operations the serialized operations to index
+     * @param numOperations the number of operations in the given bytes
+     * @param totalTranslogOps current number of total operations expected to be indexed
+     */
+    void indexTranslogOperations(BytesReference operations, int numOperations, int totalTranslogOps);
+
     /**
      * Notifies the target of the files it is going to receive
      */
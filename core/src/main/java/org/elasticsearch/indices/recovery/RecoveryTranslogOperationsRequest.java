@@ -19,6 +19,7 @@
 
 package org.elasticsearch.indices.recovery;
 
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.index.shard.ShardId;
@@ -36,6 +37,9 @@ public class RecoveryTranslogOperationsRequest extends TransportRequest {
     private long recoveryId;
     private ShardId shardId;
     private List<Translog.Operation> operations;
+    /** the operations in their serialized translog form, set on the sending side only */
+    private BytesReference rawOperations;
+    private int numRawOperations;
     private int totalTranslogOps = RecoveryState.Translog.UNKNOWN;
 
     public RecoveryTranslogOperationsRequest() {
@@ -48,6 +52,15 @@ public class RecoveryTranslogOperationsRequest extends TransportRequest {
         this.totalTranslogOps = totalTranslogOps;
     }
 
+    RecoveryTranslogOperationsRequest(long recoveryId, ShardId shardId, BytesReference rawOperations, int numRawOperations,
+                                      int totalTranslogOps) {
+        this.recoveryId = recoveryId;
+        this.shardId = shardId;
+        this.rawOperations = rawOperations;
+        this.numRawOperations = numRawOperations;
+        this.totalTranslogOps = totalTranslogOps;
+    }
+
     public long recoveryId() {
         return this.recoveryId;
     }
@@ -78,7 +91,13 @@ public class RecoveryTranslogOperationsRequest extends TransportRequest {
         super.writeTo(out);
         out.writeLong(recoveryId);
         shardId.writeTo(out);
-        Translog.writeOperations(out, operations);
+        if (rawOperations != null) {
+            // the serialized translog form is the same as the wire form so we can ship the bytes as is
+            out.writeInt(numRawOperations);
+            rawOperations.writeTo(out);
+        } else {
+            Translog.writeOperations(out, operations);
+        }
         out.writeVInt(totalTranslogOps);
     }
 }
@@ -97,6 +97,14 @@ public class RemoteRecoveryTargetHandler implements RecoveryTargetHandler {
                 translogOpsRequestOptions, EmptyTransportResponseHandler.INSTANCE_SAME).txGet();
     }
 
+    @Override
+    public void indexTranslogOperations(BytesReference operations, int numOperations, int totalTranslogOps) {
+        final RecoveryTranslogOperationsRequest translogOperationsRequest = new RecoveryTranslogOperationsRequest(
+                recoveryId, shardId, operations, numOperations, totalTranslogOps);
+        transportService.submitRequest(targetNode, RecoveryTargetService.Actions.TRANSLOG_OPS, translogOperationsRequest,
+                translogOpsRequestOptions, EmptyTransportResponseHandler.INSTANCE_SAME).txGet();
+    }
+
     @Override
     public void receiveFileInfo(List<String> phase1FileNames, List<Long> phase1FileSizes, List<String> phase1ExistingFileNames,
                                 List<Long> phase1ExistingFileSizes, int totalTranslogOps) {
@@ -101,6 +101,7 @@ import org.elasticsearch.search.SearchService;
 import org.elasticsearch.snapshots.SnapshotShardsService;
 import org.elasticsearch.snapshots.SnapshotsService;
 import org.elasticsearch.tasks.TaskPersistenceService;
+import org.elasticsearch.threadpool.AutoQueueAdjustingExecutorBuilder;
 import org.elasticsearch.threadpool.ExecutorBuilder;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
@@ -278,6 +279,15 @@ public class Node implements Closeable {
             modules.add(b -> b.bind(CircuitBreakerService.class).toInstance(circuitBreakerService));
             injector = modules.createInjector();
             client = injector.getInstance(Client.class);
+            for (final ExecutorBuilder<?> builder : threadPool.builders()) {
+                // the tenant of a request is read from the thread context so the header needs to be copied from rest requests
+                if (builder instanceof AutoQueueAdjustingExecutorBuilder) {
+                    final String tenantHeader = ((AutoQueueAdjustingExecutorBuilder) builder).tenantHeader(settings);
+                    if (tenantHeader != null) {
+                        injector.getInstance(RestController.class).registerRelevantHeaders(tenantHeader);
+                    }
+                }
+            }
             success = true;
         } catch (IOException ex) {
             throw new ElasticsearchException("failed to bind service", ex);
@@ -0,0 +1,255 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.node;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.ExponentiallyWeightedMovingAverage;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects statistics about the queue size, response time, and service time of
+ * search requests sent from this node to the nodes holding the shards. These
+ * statistics are used to rank the shard copies of a search request so that
+ * copies on slow or overloaded nodes are avoided (adaptive replica selection).
+ */
+public final class ResponseCollectorService extends AbstractComponent implements ClusterStateListener {
+
+    /**
+     * The weight parameter used for all moving averages of parameters.
+     */
+    public static final double ALPHA = 0.3;
+
+    private final ConcurrentMap<String, NodeStatistics> nodeIdToStats = ConcurrentCollections.newConcurrentMap();
+    private final ConcurrentMap<String, Long> outgoingSearchRequests = ConcurrentCollections.newConcurrentMap();
+
+    @Inject
+    public ResponseCollectorService(Settings settings, ClusterService clusterService) {
+        super(settings);
+        clusterService.add(this);
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        if (event.nodesRemoved()) {
+            for (DiscoveryNode removedNode : event.nodesDelta().removedNodes()) {
+                removeNode(removedNode.getId());
+            }
+        }
+    }
+
+    void removeNode(String nodeId) {
+        nodeIdToStats.remove(nodeId);
+        outgoingSearchRequests.remove(nodeId);
+    }
+
+    /**
+     * Records the queue size, the response time and the average service time of a search request that was executed on the
+     * given node.
+     */
+    public void addNodeStatistics(String nodeId, int queueSize, long responseTimeNanos, long avgServiceTimeNanos) {
+        nodeIdToStats.compute(nodeId, (id, ns) -> {
+            if (ns == null) {
+                ExponentiallyWeightedMovingAverage queueEWMA = new ExponentiallyWeightedMovingAverage(ALPHA, queueSize);
+                ExponentiallyWeightedMovingAverage responseEWMA = new ExponentiallyWeightedMovingAverage(ALPHA, responseTimeNanos);
+                return new NodeStatistics(nodeId, queueEWMA, responseEWMA, avgServiceTimeNanos);
+            } else {
+                ns.queueSize.addValue((double) queueSize);
+                ns.responseTime.addValue((double) responseTimeNanos);
+                ns.serviceTime = avgServiceTimeNanos;
+                return ns;
+            }
+        });
+    }
+
+    /**
+     * Called before a search request is sent to the given node.
+     */
+    public void onSearchRequestSent(String nodeId) {
+        outgoingSearchRequests.merge(nodeId, 1L, (a, b) -> a + b);
+    }
+
+    /**
+     * Called once a search request that was sent to the given node completed, successfully or not.
+     */
+    public void onSearchRequestDone(String nodeId) {
+        outgoingSearchRequests.computeIfPresent(nodeId, (id, count) -> count <= 1 ? null : count - 1);
+    }
+
+    /**
+     * Returns the number of search requests per node that were sent by this node and didn't complete yet.
+     */
+    public Map<String, Long> getOutgoingSearchRequests() {
+        return new HashMap<>(outgoingSearchRequests);
+    }
+
+    public Map<String, ComputedNodeStats> getAllNodeStatistics() {
+        final int clientNum = nodeIdToStats.size();
+        // Transform the mutable object internally used for accounting into the computed version
+        Map<String, ComputedNodeStats> nodeStats = new HashMap<>(nodeIdToStats.size());
+        nodeIdToStats.forEach((k, v) -> nodeStats.put(k, new ComputedNodeStats(clientNum, v)));
+        return nodeStats;
+    }
+
+    /**
+     * Optionally return a {@code NodeStatistics} for the given nodeid, if
+     * response information exists for the given node. Returns an empty
+     * {@code Optional} if the node was not found.
+     */
+    public Optional<ComputedNodeStats> getNodeStatistics(final String nodeId) {
+        final int clientNum = nodeIdToStats.size();
+        return Optional.ofNullable(nodeIdToStats.get(nodeId)).map(ns -> new ComputedNodeStats(clientNum, ns));
+    }
+
+    public AdaptiveSelectionStats getAdaptiveStats() {
+        return new AdaptiveSelectionStats(getOutgoingSearchRequests(), getAllNodeStatistics());
+    }
+
+    /**
+     * Struct-like class encapsulating a point-in-time snapshot of a particular
+     * node's statistics. This includes the EWMA of queue size, response time,
+     * and service time.
+     */
+    public static class ComputedNodeStats implements Writeable, ToXContent {
+        // We store timestamps with nanosecond precision, however, the
+        // formula specifies milliseconds, therefore we need to convert
+        // the values so the times don't unduely weight the formula
+        private static final double FACTOR = 1000000.0;
+        private static final int QUEUE_ADJUSTMENT_FACTOR = 3;
+
+        public final String nodeId;
+        public final int clientNum;
+        public final int queueSize;
+        public final double responseTime;
+        public final double serviceTime;
+
+        public ComputedNodeStats(String nodeId, int clientNum, int queueSize, double responseTime, double serviceTime) {
+            this.nodeId = nodeId;
+            this.clientNum = clientNum;
+            this.queueSize = queueSize;
+            this.responseTime = responseTime;
+            this.serviceTime = serviceTime;
+        }
+
+        ComputedNodeStats(int clientNum, NodeStatistics nodeStats) {
+            this(nodeStats.nodeId, clientNum,
+                    (int) nodeStats.queueSize.getAverage(), nodeStats.responseTime.getAverage(), nodeStats.serviceTime);
+        }
+
+        /**
+         * Read from a stream.
+         */
+        public ComputedNodeStats(StreamInput in) throws IOException {
+            this.nodeId = in.readString();
+            this.clientNum = in.readInt();
+            this.queueSize = in.readInt();
+            this.responseTime = in.readDouble();
+            this.serviceTime = in.readDouble();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(this.nodeId);
+            out.writeInt(this.clientNum);
+            out.writeInt(this.queueSize);
+            out.writeDouble(this.responseTime);
+            out.writeDouble(this.serviceTime);
+        }
+
+        /**
+         * Rank this copy of the data, according to the adaptive replica selection formula from the C3 paper
+         * https://www.usenix.org/system/files/conference/nsdi15/nsdi15-paper-suresh.pdf
+         */
+        public double rank(long outstandingRequests) {
+            // the concurrency compensation is defined as the number of
+            // outstanding requests from the client to the node times the number
+            // of clients in the system
+            double concurrencyCompensation = outstandingRequests * clientNum;
+
+            // EWMA of queue size
+            double qBar = queueSize;
+            double qHatS = 1 + concurrencyCompensation + qBar;
+
+            // EWMA of response time
+            double rS = responseTime / FACTOR;
+            // EWMA of service time
+            double muBarS = serviceTime / FACTOR;
+
+            // The final formula, the queue is penalized with a cubic factor
+            return rS - (1.0 / muBarS) + (Math.pow(qHatS, QUEUE_ADJUSTMENT_FACTOR) / muBarS);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("avg_queue_size", queueSize);
+            builder.timeValueField("avg_response_time_ns", "avg_response_time", (long) responseTime, TimeUnit.NANOSECONDS);
+            builder.timeValueField("avg_service_time_ns", "avg_service_time", (long) serviceTime, TimeUnit.NANOSECONDS);
+            return builder;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "ComputedNodeStats[%s](nodes: %d, queue: %d, response time: %s, service time: %s)",
+                    nodeId, clientNum, queueSize, new TimeValue((long) responseTime, TimeUnit.NANOSECONDS),
+                    new TimeValue((long) serviceTime, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * Class encapsulating a node's exponentially weighted queue size, response
+     * time, and service time, however, this class is private and intended only
+     * to be used for the internal accounting of {@code ResponseCollectorService}.
+     */
+    private static class NodeStatistics {
+        final String nodeId;
+        final ExponentiallyWeightedMovingAverage queueSize;
+        final ExponentiallyWeightedMovingAverage responseTime;
+        volatile double serviceTime;
+
+        NodeStatistics(String nodeId,
+                       ExponentiallyWeightedMovingAverage queueSizeEWMA,
+                       ExponentiallyWeightedMovingAverage responseTimeEWMA,
+                       double serviceTimeEWMA) {
+            this.nodeId = nodeId;
+            this.queueSize = queueSizeEWMA;
+            this.responseTime = responseTimeEWMA;
+            this.serviceTime = serviceTimeEWMA;
+        }
+    }
+}
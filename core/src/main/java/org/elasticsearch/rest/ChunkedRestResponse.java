@@ -0,0 +1,117 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link RestResponse} whose content is serialized while it is sent rather than upfront. Channels that support it
+ * call {@link #writeNextPart(OutputStream)} whenever they are ready to send more bytes, and send what was written in
+ * chunks, so that large responses never need to be materialized on the heap. Other channels fall back to {@link #content()}.
+ */
+public abstract class ChunkedRestResponse extends RestResponse {
+
+    protected final RestChannel channel;
+    private final RestStatus status;
+    private String contentType;
+    private CircuitBreaker inFlightRequestsBreaker;
+    private XContentBuilder builder;
+
+    protected ChunkedRestResponse(RestChannel channel, RestStatus status) {
+        this.channel = channel;
+        this.status = status;
+    }
+
+    /**
+     * Writes the next part of the content of this response to the given builder, and returns <code>false</code> once
+     * the whole content was written. Parts should be small, the channel stops between two parts when it has enough
+     * bytes to send.
+     */
+    protected abstract boolean writeNextContent(XContentBuilder builder) throws IOException;
+
+    /**
+     * Serializes the next part of the content of this response to the given stream, which must be the same for all
+     * parts, and returns <code>false</code> once the whole content was serialized. The content type is only known once
+     * this method was called, channels are expected to send it along with the first chunk.
+     */
+    public final boolean writeNextPart(OutputStream out) throws IOException {
+        if (builder == null) {
+            builder = channel.newBuilder(out);
+            contentType = builder.contentType().mediaType();
+        }
+        if (writeNextContent(builder)) {
+            builder.flush();
+            return true;
+        }
+        builder.close();
+        return false;
+    }
+
+    @Override
+    public String contentType() {
+        if (contentType == null) {
+            throw new IllegalStateException("content type is unknown until the content of the response was written");
+        }
+        return contentType;
+    }
+
+    /**
+     * Materializes the whole content of this response, used by channels that don't support chunked responses.
+     */
+    @Override
+    public BytesReference content() {
+        BytesStreamOutput out = channel.bytesOutput();
+        try {
+            boolean more;
+            do {
+                more = writeNextPart(out);
+            } while (more);
+        } catch (IOException e) {
+            throw new ElasticsearchException("failed to build the content of the response", e);
+        }
+        return out.bytes();
+    }
+
+    @Override
+    public RestStatus status() {
+        return status;
+    }
+
+    /**
+     * Sets the breaker that the chunks of this response which are buffered but not yet sent over the network should be
+     * accounted against.
+     */
+    public void inFlightRequestsBreaker(CircuitBreaker breaker) {
+        this.inFlightRequestsBreaker = breaker;
+    }
+
+    @Nullable
+    public CircuitBreaker inFlightRequestsBreaker() {
+        return inFlightRequestsBreaker;
+    }
+}
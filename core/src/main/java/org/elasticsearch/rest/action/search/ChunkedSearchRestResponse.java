@@ -0,0 +1,95 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest.action.search;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.ChunkedRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.action.support.RestResponseListener;
+import org.elasticsearch.rest.action.support.RestStatusToXContentListener;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.internal.InternalSearchHits;
+
+import java.io.IOException;
+
+/**
+ * Renders a {@link SearchResponse} while it is sent in chunks, releasing each hit once it was written. This keeps
+ * the heap usage of the coordinating node low for large result windows and scrolls. The search response itself is
+ * left untouched: this response takes its own references to the hits and only keeps a copy of the search response
+ * without them, so that written hits can be garbage collected once the search action let go of its response.
+ */
+public class ChunkedSearchRestResponse extends ChunkedRestResponse {
+
+    /**
+     * The request parameter that enables chunked search responses.
+     */
+    public static final String CHUNKED_PARAM = "chunked";
+
+    private final SearchResponse response;
+    private final SearchHit[] hits;
+    // the next hit to write, -1 until the start of the response was written
+    private int nextHit = -1;
+
+    public ChunkedSearchRestResponse(RestChannel channel, SearchResponse response) {
+        super(channel, response.status());
+        final SearchHits searchHits = response.getHits();
+        this.hits = searchHits.getHits().clone();
+        this.response = response.withHits(new InternalSearchHits(InternalSearchHits.EMPTY, searchHits.getTotalHits(),
+            searchHits.getMaxScore()));
+    }
+
+    @Override
+    protected boolean writeNextContent(XContentBuilder builder) throws IOException {
+        if (nextHit < 0) {
+            builder.startObject();
+            response.toXContentBeforeHits(builder, channel.request());
+            nextHit = 0;
+            return true;
+        }
+        if (nextHit < hits.length) {
+            hits[nextHit].toXContent(builder, channel.request());
+            hits[nextHit++] = null;
+            return true;
+        }
+        response.toXContentAfterHits(builder, channel.request());
+        builder.endObject();
+        return false;
+    }
+
+    /**
+     * Returns the listener that sends the search response back through the given channel, in chunks if the request
+     * asked for it.
+     */
+    public static ActionListener<SearchResponse> listener(RestChannel channel) {
+        if (channel.request().paramAsBoolean(CHUNKED_PARAM, false)) {
+            return new RestResponseListener<SearchResponse>(channel) {
+                @Override
+                public RestResponse buildResponse(SearchResponse response) throws Exception {
+                    return new ChunkedSearchRestResponse(channel, response);
+                }
+            };
+        }
+        return new RestStatusToXContentListener<>(channel);
+    }
+}
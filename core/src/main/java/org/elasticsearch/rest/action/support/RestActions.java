@@ -81,9 +81,21 @@ public class RestActions {
     public static void buildBroadcastShardsHeader(XContentBuilder builder, Params params,
                                                   int total, int successful, int failed,
                                                   ShardOperationFailedException[] shardFailures) throws IOException {
+        buildBroadcastShardsHeader(builder, params, total, successful, 0, failed, shardFailures);
+    }
+
+    /**
+     * Builds the <code>_shards</code> header, the number of <code>skipped</code> shards is only rendered if shards were skipped.
+     */
+    public static void buildBroadcastShardsHeader(XContentBuilder builder, Params params,
+                                                  int total, int successful, int skipped, int failed,
+                                                  ShardOperationFailedException[] shardFailures) throws IOException {
         builder.startObject("_shards");
         builder.field("total", total);
         builder.field("successful", successful);
+        if (skipped > 0) {
+            builder.field("skipped", skipped);
+        }
         builder.field("failed", failed);
         if (shardFailures != null && shardFailures.length > 0) {
             builder.startArray("failures");
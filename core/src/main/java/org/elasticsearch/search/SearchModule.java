@@ -21,6 +21,7 @@ package org.elasticsearch.search;
 
 import org.apache.lucene.search.BooleanQuery;
 import org.elasticsearch.common.ParseField;
+import org.elasticsearch.action.search.SearchResponseCache;
 import org.elasticsearch.common.geo.ShapesAvailability;
 import org.elasticsearch.common.geo.builders.ShapeBuilders;
 import org.elasticsearch.common.inject.AbstractModule;
@@ -99,6 +100,8 @@ import org.elasticsearch.search.aggregations.bucket.children.ChildrenAggregation
 import org.elasticsearch.search.aggregations.bucket.children.InternalChildren;
 import org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.filter.InternalFilter;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.InternalComposite;
 import org.elasticsearch.search.aggregations.bucket.filters.FiltersAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.filters.InternalFilters;
 import org.elasticsearch.search.aggregations.bucket.geogrid.GeoGridAggregationBuilder;
@@ -470,6 +473,8 @@ public class SearchModule extends AbstractModule {
                 FilterAggregationBuilder.AGGREGATION_NAME_FIELD);
         registerAggregation(FiltersAggregationBuilder::new, FiltersAggregationBuilder::parse,
                 FiltersAggregationBuilder.AGGREGATION_NAME_FIELD);
+        registerAggregation(CompositeAggregationBuilder::new, CompositeAggregationBuilder::parse,
+                CompositeAggregationBuilder.AGGREGATION_NAME_FIELD);
         registerAggregation(SamplerAggregationBuilder::new, SamplerAggregationBuilder::parse,
                 SamplerAggregationBuilder.AGGREGATION_NAME_FIELD);
         registerAggregation(DiversifiedAggregationBuilder::new, new DiversifiedSamplerParser(),
@@ -535,6 +540,7 @@ public class SearchModule extends AbstractModule {
         bind(SearchPhaseController.class).asEagerSingleton();
         bind(FetchPhase.class).toInstance(new FetchPhase(fetchSubPhases));
         bind(SearchTransportService.class).asEagerSingleton();
+        bind(SearchResponseCache.class).asEagerSingleton();
         if (searchServiceImpl == SearchService.class) {
             bind(SearchService.class).asEagerSingleton();
         } else {
@@ -698,6 +704,7 @@ public class SearchModule extends AbstractModule {
         InternalGlobal.registerStreams();
         InternalFilter.registerStreams();
         InternalFilters.registerStream();
+        InternalComposite.registerStream();
         InternalSampler.registerStreams();
         UnmappedSampler.registerStreams();
         InternalMissing.registerStreams();
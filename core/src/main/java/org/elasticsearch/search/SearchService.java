@@ -29,9 +29,13 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.TopDocs;
 import org.elasticsearch.ExceptionsHelper;
@@ -47,8 +51,12 @@ import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.ExponentiallyWeightedMovingAverage;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.ConcurrentMapLong;
 import org.elasticsearch.common.util.concurrent.FutureUtils;
@@ -58,6 +66,8 @@ import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.MatchNoneQueryBuilder;
 import org.elasticsearch.index.query.QueryParseContext;
 import org.elasticsearch.index.query.QueryShardContext;
 import org.elasticsearch.index.query.InnerHitBuilder;
@@ -65,6 +75,7 @@ import org.elasticsearch.index.shard.IndexEventListener;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.SearchOperationListener;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.node.ResponseCollectorService;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.ScriptContext;
 import org.elasticsearch.script.ScriptService;
@@ -75,6 +86,7 @@ import org.elasticsearch.search.aggregations.AggregatorParsers;
 import org.elasticsearch.search.aggregations.SearchContextAggregations;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.collapse.CollapseContext;
 import org.elasticsearch.search.dfs.DfsPhase;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.FetchPhase;
@@ -89,10 +101,13 @@ import org.elasticsearch.search.fetch.script.ScriptFieldsContext.ScriptField;
 import org.elasticsearch.search.highlight.HighlightBuilder;
 import org.elasticsearch.search.internal.DefaultSearchContext;
 import org.elasticsearch.search.internal.InternalScrollSearchRequest;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.SearchContext.Lifetime;
 import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.search.profile.ProfileShardResult;
 import org.elasticsearch.search.profile.Profilers;
 import org.elasticsearch.search.query.QueryPhase;
 import org.elasticsearch.search.query.QuerySearchRequest;
@@ -119,10 +134,24 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
     public static final Setting<TimeValue> KEEPALIVE_INTERVAL_SETTING =
         Setting.positiveTimeSetting("search.keep_alive_interval", timeValueMinutes(1), Property.NodeScope);
 
+    /** The number of hits to skip if the request doesn't specify <code>from</code>. */
+    public static final int DEFAULT_FROM = 0;
+    /** The number of hits to return if the request doesn't specify <code>size</code>. */
+    public static final int DEFAULT_SIZE = 10;
+
     public static final TimeValue NO_TIMEOUT = timeValueMillis(-1);
     public static final Setting<TimeValue> DEFAULT_SEARCH_TIMEOUT_SETTING =
         Setting.timeSetting("search.default_search_timeout", NO_TIMEOUT, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * The maximum size of the <code>_source</code> of the top hits of a shard that are sent back along with the query result when
+     * the coordinating node asks for a single round trip. If the hits are larger they are dropped and fetched in a separate round
+     * trip instead.
+     */
+    public static final Setting<ByteSizeValue> SINGLE_ROUND_TRIP_MAX_BYTES_SETTING =
+        Setting.byteSizeSetting("search.single_round_trip.max_bytes", new ByteSizeValue(1, ByteSizeUnit.MB),
+            Property.Dynamic, Property.NodeScope);
+
 
     private final ThreadPool threadPool;
 
@@ -144,10 +173,15 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
 
     private volatile TimeValue defaultSearchTimeout;
 
+    private volatile long singleRoundTripMaxBytes;
+
     private final ScheduledFuture<?> keepAliveReaper;
 
     private final AtomicLong idGenerator = new AtomicLong();
 
+    private final ExponentiallyWeightedMovingAverage queryServiceTimeEWMA =
+        new ExponentiallyWeightedMovingAverage(ResponseCollectorService.ALPHA, 0);
+
     private final ConcurrentMapLong<SearchContext> activeContexts = ConcurrentCollections.newConcurrentMapLongWithAggressiveConcurrency();
 
     private final Map<String, SearchParseElement> elementParsers;
@@ -185,12 +219,19 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
 
         defaultSearchTimeout = DEFAULT_SEARCH_TIMEOUT_SETTING.get(settings);
         clusterSettings.addSettingsUpdateConsumer(DEFAULT_SEARCH_TIMEOUT_SETTING, this::setDefaultSearchTimeout);
+
+        singleRoundTripMaxBytes = SINGLE_ROUND_TRIP_MAX_BYTES_SETTING.get(settings).bytes();
+        clusterSettings.addSettingsUpdateConsumer(SINGLE_ROUND_TRIP_MAX_BYTES_SETTING, this::setSingleRoundTripMaxBytes);
     }
 
     private void setDefaultSearchTimeout(TimeValue defaultSearchTimeout) {
         this.defaultSearchTimeout = defaultSearchTimeout;
     }
 
+    private void setSingleRoundTripMaxBytes(ByteSizeValue singleRoundTripMaxBytes) {
+        this.singleRoundTripMaxBytes = singleRoundTripMaxBytes.bytes();
+    }
+
     @Override
     public void afterIndexClosed(Index index, Settings indexSettings) {
         // once an index is closed we can just clean up all the pending search context information
@@ -237,6 +278,79 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
         FutureUtils.cancel(keepAliveReaper);
     }
 
+    /**
+     * Runs the given action once the shard the request targets is search active. If the shard skipped scheduled refreshes because
+     * it was search idle, the action waits for the refresh that makes the pending changes visible and is then executed on the search
+     * thread pool. Otherwise it is executed on the calling thread.
+     */
+    public void runWhenShardSearchActive(ShardSearchRequest request, AbstractRunnable action) {
+        IndexService indexService = indicesService.indexServiceSafe(request.shardId().getIndex());
+        IndexShard indexShard = indexService.getShard(request.shardId().getId());
+        indexShard.awaitShardSearchActive(refreshed -> {
+            if (refreshed) {
+                threadPool.executor(ThreadPool.Names.SEARCH).execute(action);
+            } else {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Returns <code>false</code> if the query of the given request can be rewritten on this shard into a query that matches no
+     * documents, for instance a range query on a field whose values on this shard are all outside of the range. This doesn't execute
+     * the query and allows the coordinating node to skip shards that can't contribute to the response.
+     */
+    public boolean canMatch(ShardSearchRequest request) throws IOException {
+        if (request.template() != null || canRewriteToMatchNone(request.source()) == false) {
+            return true;
+        }
+        IndexService indexService = indicesService.indexServiceSafe(request.shardId().getIndex());
+        IndexShard indexShard = indexService.getShard(request.shardId().getId());
+        if (indexShard.hasPendingRefresh()) {
+            // the searcher doesn't see all the changes yet so we can't tell
+            return true;
+        }
+        try (SearchContext context = createSearchContext(request, indexShard.acquireSearcher("can_match"))) {
+            // the context makes sure that now is resolved the same way as in the query phase
+            SearchContext.setCurrent(context);
+            try {
+                request.rewrite(context.getQueryShardContext());
+            } finally {
+                SearchContext.removeCurrent();
+            }
+            return request.source().query() instanceof MatchNoneQueryBuilder == false;
+        }
+    }
+
+    /**
+     * Returns the version of the reader a search on the given shard would currently be executed on, or <code>-1</code> if the
+     * shard has pending changes that the next search makes visible or if its reader isn't versioned.
+     */
+    public long readerVersion(ShardSearchRequest request) {
+        IndexService indexService = indicesService.indexServiceSafe(request.shardId().getIndex());
+        IndexShard indexShard = indexService.getShard(request.shardId().getId());
+        if (indexShard.hasPendingRefresh()) {
+            return -1;
+        }
+        try (Engine.Searcher searcher = indexShard.acquireSearcher("reader_version")) {
+            final IndexReader reader = searcher.reader();
+            return reader instanceof DirectoryReader ? ((DirectoryReader) reader).getVersion() : -1;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given source might be rewritten into a query that matches no documents and the response
+     * doesn't depend on the shards that don't match any document. Aggregations like <code>global</code> or <code>terms</code> with a
+     * <code>min_doc_count</code> of <code>0</code> need to visit all documents, so do suggesters.
+     */
+    public static boolean canRewriteToMatchNone(SearchSourceBuilder source) {
+        if (source == null || source.query() == null || source.query() instanceof MatchAllQueryBuilder || source.suggest() != null) {
+            return false;
+        }
+        AggregatorFactories.Builder aggregations = source.aggregations();
+        return aggregations == null || aggregations.mustVisitAllDocs() == false;
+    }
+
     public DfsSearchResult executeDfsPhase(ShardSearchRequest request) throws IOException {
         final SearchContext context = createAndPutContext(request);
         try {
@@ -280,7 +394,11 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
             } else {
                 contextProcessedSuccessfully(context);
             }
-            operationListener.onQueryPhase(context, System.nanoTime() - time);
+            final long took = System.nanoTime() - time;
+            operationListener.onQueryPhase(context, took);
+            recordServiceStats(context.queryResult(), took);
+            recordReaderVersion(context);
+            setProfileFetchMode(context, ProfileShardResult.FETCH_MODE_QUERY_THEN_FETCH);
 
             return context.queryResult();
         } catch (Throwable e) {
@@ -336,6 +454,7 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
                 contextProcessedSuccessfully(context);
             }
             operationListener.onQueryPhase(context, System.nanoTime() - time);
+            setProfileFetchMode(context, ProfileShardResult.FETCH_MODE_QUERY_THEN_FETCH);
             return context.queryResult();
         } catch (Throwable e) {
             operationListener.onFailedQueryPhase(context);
@@ -347,6 +466,31 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
         }
     }
 
+    /**
+     * Records how long the query phase took on this node and attaches the current size of the search queue as well as the
+     * moving average of the query phase service time to the result, so that the coordinating node can rank shard copies.
+     */
+    private void recordServiceStats(QuerySearchResult result, long tookInNanos) {
+        queryServiceTimeEWMA.addValue(tookInNanos);
+        final Executor executor = threadPool.executor(ThreadPool.Names.SEARCH);
+        if (executor instanceof ThreadPoolExecutor) {
+            result.nodeQueueSize(((ThreadPoolExecutor) executor).getQueue().size());
+        }
+        result.serviceTimeEWMA((long) queryServiceTimeEWMA.getAverage());
+    }
+
+    /**
+     * Attaches the version of the reader the query phase was executed on to the result, so that the coordinating node can tell
+     * whether the reduced response may be cached, see {@link org.elasticsearch.action.search.SearchResponseCache}. Results that
+     * depend on the current time are never cached.
+     */
+    private void recordReaderVersion(SearchContext context) {
+        final IndexReader reader = context.searcher().getIndexReader();
+        if (context.nowInMillisUsed() == false && reader instanceof DirectoryReader) {
+            context.queryResult().readerVersion(((DirectoryReader) reader).getVersion());
+        }
+    }
+
     private boolean fetchPhaseShouldFreeContext(SearchContext context) {
         if (context.scrollContext() == null) {
             // simple search, no scroll
@@ -372,6 +516,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
             }
             long time2 = System.nanoTime();
             operationListener.onQueryPhase(context, time2 - time);
+            recordServiceStats(context.queryResult(), time2 - time);
+            recordReaderVersion(context);
             operationListener.onPreFetchPhase(context);
             try {
                 shortcutDocIdsToLoad(context);
@@ -386,6 +532,7 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
                 throw ExceptionsHelper.convertToRuntime(e);
             }
             operationListener.onFetchPhase(context, System.nanoTime() - time2);
+            setProfileFetchMode(context, ProfileShardResult.FETCH_MODE_QUERY_AND_FETCH);
             return new QueryFetchSearchResult(context.queryResult(), context.fetchResult());
         } catch (Throwable e) {
             logger.trace("Fetch phase failed", e);
@@ -396,6 +543,72 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
         }
     }
 
+    /**
+     * Executes the query phase and fetches all top hits of the shard right away, so that the coordinating node doesn't need a
+     * separate fetch round trip for the hits that make it into the global top hits. If the <code>_source</code> of the fetched
+     * hits exceeds {@link #SINGLE_ROUND_TRIP_MAX_BYTES_SETTING} the hits are dropped and the context is kept open for a regular
+     * fetch phase, which the coordinating node detects by the missing hits.
+     */
+    public QueryFetchSearchResult executeQueryPhaseWithTopHits(ShardSearchRequest request) throws IOException {
+        final SearchContext context = createAndPutContext(request);
+        contextProcessing(context);
+        try {
+            SearchOperationListener operationListener = context.indexShard().getSearchOperationListener();
+            operationListener.onPreQueryPhase(context);
+            long time = System.nanoTime();
+            try {
+                loadOrExecuteQueryPhase(request, context);
+            } catch (Throwable e) {
+                operationListener.onFailedQueryPhase(context);
+                throw ExceptionsHelper.convertToRuntime(e);
+            }
+            long time2 = System.nanoTime();
+            operationListener.onQueryPhase(context, time2 - time);
+            recordServiceStats(context.queryResult(), time2 - time);
+            recordReaderVersion(context);
+            operationListener.onPreFetchPhase(context);
+            try {
+                shortcutDocIdsToLoadForScanning(context);
+                fetchPhase.execute(context);
+                if (sourceSizeInBytes(context.fetchResult().hits()) > singleRoundTripMaxBytes) {
+                    context.fetchResult().hits(InternalSearchHits.empty());
+                    contextProcessedSuccessfully(context);
+                    setProfileFetchMode(context, ProfileShardResult.FETCH_MODE_QUERY_THEN_FETCH);
+                } else {
+                    freeContext(context.id());
+                    setProfileFetchMode(context, ProfileShardResult.FETCH_MODE_QUERY_AND_FETCH);
+                }
+            } catch (Throwable e) {
+                operationListener.onFailedFetchPhase(context);
+                throw ExceptionsHelper.convertToRuntime(e);
+            }
+            operationListener.onFetchPhase(context, System.nanoTime() - time2);
+            return new QueryFetchSearchResult(context.queryResult(), context.fetchResult());
+        } catch (Throwable e) {
+            logger.trace("Query phase with top hits failed", e);
+            processFailure(context, e);
+            throw ExceptionsHelper.convertToRuntime(e);
+        } finally {
+            cleanContext(context);
+        }
+    }
+
+    private static long sourceSizeInBytes(InternalSearchHits hits) {
+        long size = 0;
+        for (InternalSearchHit hit : hits.internalHits()) {
+            if (hit.internalSourceRef() != null) {
+                size += hit.internalSourceRef().length();
+            }
+        }
+        return size;
+    }
+
+    private static void setProfileFetchMode(SearchContext context, String fetchMode) {
+        if (context.queryResult().profileResults() != null) {
+            context.queryResult().profileResults().setFetchMode(fetchMode);
+        }
+    }
+
     public QueryFetchSearchResult executeFetchPhase(QuerySearchRequest request) {
         final SearchContext context = findContext(request.id());
         contextProcessing(context);
@@ -426,6 +639,7 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
                 throw ExceptionsHelper.convertToRuntime(e);
             }
             operationListener.onFetchPhase(context, System.nanoTime() - time2);
+            setProfileFetchMode(context, ProfileShardResult.FETCH_MODE_QUERY_AND_FETCH);
             return new QueryFetchSearchResult(context.queryResult(), context.fetchResult());
         } catch (Throwable e) {
             logger.trace("Fetch phase failed", e);
@@ -533,16 +747,16 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
     }
 
     final SearchContext createContext(ShardSearchRequest request, @Nullable Engine.Searcher searcher) throws IOException {
-        IndexService indexService = indicesService.indexServiceSafe(request.shardId().getIndex());
-        IndexShard indexShard = indexService.getShard(request.shardId().getId());
-        SearchShardTarget shardTarget = new SearchShardTarget(clusterService.localNode().getId(), indexShard.shardId());
-
-        Engine.Searcher engineSearcher = searcher == null ? indexShard.acquireSearcher("search") : searcher;
-
-        DefaultSearchContext context = new DefaultSearchContext(idGenerator.incrementAndGet(), request, shardTarget, engineSearcher,
-                indexService,
-                indexShard, scriptService, bigArrays, threadPool.estimatedTimeInMillisCounter(), parseFieldMatcher,
-                defaultSearchTimeout, fetchPhase);
+        DefaultSearchContext context = createSearchContext(request, searcher);
+        context.indexShard().markSearcherAccessed();
+        final int concurrentSegmentSlices = context.indexShard().indexSettings().getConcurrentSegmentSlices();
+        final Executor searchExecutor = threadPool.executor(ThreadPool.Names.SEARCH);
+        // when searches queue up the node is already busy with searches running in parallel, slicing them wouldn't help
+        final boolean searchesQueued = searchExecutor instanceof ThreadPoolExecutor
+            && ((ThreadPoolExecutor) searchExecutor).getQueue().isEmpty() == false;
+        if (concurrentSegmentSlices > 1 && searchesQueued == false) {
+            context.searcher().setSliceExecutor(threadPool.executor(ThreadPool.Names.SEARCH_WORKER), concurrentSegmentSlices);
+        }
         SearchContext.setCurrent(context);
         try {
             request.rewrite(context.getQueryShardContext());
@@ -570,10 +784,10 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
 
             // if the from and size are still not set, default them
             if (context.from() == -1) {
-                context.from(0);
+                context.from(DEFAULT_FROM);
             }
             if (context.size() == -1) {
-                context.size(10);
+                context.size(DEFAULT_SIZE);
             }
 
             // pre process
@@ -595,6 +809,19 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
         return context;
     }
 
+    private DefaultSearchContext createSearchContext(ShardSearchRequest request, @Nullable Engine.Searcher searcher) {
+        IndexService indexService = indicesService.indexServiceSafe(request.shardId().getIndex());
+        IndexShard indexShard = indexService.getShard(request.shardId().getId());
+        SearchShardTarget shardTarget = new SearchShardTarget(clusterService.localNode().getId(), indexShard.shardId());
+
+        Engine.Searcher engineSearcher = searcher == null ? indexShard.acquireSearcher("search") : searcher;
+
+        return new DefaultSearchContext(idGenerator.incrementAndGet(), request, shardTarget, engineSearcher,
+                indexService,
+                indexShard, scriptService, bigArrays, threadPool.estimatedTimeInMillisCounter(), parseFieldMatcher,
+                defaultSearchTimeout, fetchPhase);
+    }
+
     private void freeAllContextForIndex(Index index) {
         assert index != null;
         for (SearchContext ctx : activeContexts.values()) {
@@ -820,6 +1047,25 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> imp
             context.searchAfter(fieldDoc);
         }
 
+        if (source.collapse() != null) {
+            final CollapseContext collapseContext = source.collapse().build(context);
+            context.collapse(collapseContext);
+            // the collapse value of every hit is returned so that the coordinating node can expand the groups of the hits
+            final String collapseField = collapseContext.getFieldType().name();
+            FieldDataFieldsContext fieldDataFieldsContext = context.getFetchSubPhaseContext(FieldDataFieldsFetchSubPhase.CONTEXT_FACTORY);
+            boolean found = false;
+            for (FieldDataField field : fieldDataFieldsContext.fields()) {
+                if (field.name().equals(collapseField)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (found == false) {
+                fieldDataFieldsContext.add(new FieldDataField(collapseField));
+            }
+            fieldDataFieldsContext.setHitExecutionNeeded(true);
+        }
+
         if (source.slice() != null) {
             if (context.scrollContext() == null) {
                 throw new SearchContextException(context, "`slice` cannot be used outside of a scroll context");
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.action;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionListenerResponseHandler;
 import org.elasticsearch.action.IndicesRequest;
@@ -31,6 +32,8 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.node.ResponseCollectorService;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.FetchSearchResult;
@@ -62,11 +65,13 @@ public class SearchTransportService extends AbstractComponent {
     public static final String FREE_CONTEXT_SCROLL_ACTION_NAME = "indices:data/read/search[free_context/scroll]";
     public static final String FREE_CONTEXT_ACTION_NAME = "indices:data/read/search[free_context]";
     public static final String CLEAR_SCROLL_CONTEXTS_ACTION_NAME = "indices:data/read/search[clear_scroll_contexts]";
+    public static final String CAN_MATCH_ACTION_NAME = "indices:data/read/search[can_match]";
     public static final String DFS_ACTION_NAME = "indices:data/read/search[phase/dfs]";
     public static final String QUERY_ACTION_NAME = "indices:data/read/search[phase/query]";
     public static final String QUERY_ID_ACTION_NAME = "indices:data/read/search[phase/query/id]";
     public static final String QUERY_SCROLL_ACTION_NAME = "indices:data/read/search[phase/query/scroll]";
     public static final String QUERY_FETCH_ACTION_NAME = "indices:data/read/search[phase/query+fetch]";
+    public static final String QUERY_TOP_HITS_ACTION_NAME = "indices:data/read/search[phase/query+top_hits]";
     public static final String QUERY_QUERY_FETCH_ACTION_NAME = "indices:data/read/search[phase/query/query+fetch]";
     public static final String QUERY_FETCH_SCROLL_ACTION_NAME = "indices:data/read/search[phase/query+fetch/scroll]";
     public static final String FETCH_ID_SCROLL_ACTION_NAME = "indices:data/read/search[phase/fetch/id/scroll]";
@@ -74,18 +79,23 @@ public class SearchTransportService extends AbstractComponent {
 
     private final TransportService transportService;
     private final SearchService searchService;
+    private final ResponseCollectorService responseCollectorService;
 
     @Inject
-    public SearchTransportService(Settings settings, TransportService transportService, SearchService searchService) {
+    public SearchTransportService(Settings settings, TransportService transportService, SearchService searchService,
+                                  ResponseCollectorService responseCollectorService) {
         super(settings);
         this.transportService = transportService;
         this.searchService = searchService;
+        this.responseCollectorService = responseCollectorService;
         transportService.registerRequestHandler(FREE_CONTEXT_SCROLL_ACTION_NAME, ScrollFreeContextRequest::new, ThreadPool.Names.SAME,
                 new FreeContextTransportHandler<>());
         transportService.registerRequestHandler(FREE_CONTEXT_ACTION_NAME, SearchFreeContextRequest::new, ThreadPool.Names.SAME,
                 new FreeContextTransportHandler<>());
         transportService.registerRequestHandler(CLEAR_SCROLL_CONTEXTS_ACTION_NAME, ClearScrollContextsRequest::new, ThreadPool.Names.SAME,
                 new ClearScrollContextsTransportHandler());
+        transportService.registerRequestHandler(CAN_MATCH_ACTION_NAME, ShardSearchTransportRequest::new, ThreadPool.Names.SEARCH,
+                new CanMatchTransportHandler());
         transportService.registerRequestHandler(DFS_ACTION_NAME, ShardSearchTransportRequest::new, ThreadPool.Names.SEARCH,
                 new SearchDfsTransportHandler());
         transportService.registerRequestHandler(QUERY_ACTION_NAME, ShardSearchTransportRequest::new, ThreadPool.Names.SEARCH,
@@ -96,6 +106,8 @@ public class SearchTransportService extends AbstractComponent {
                 new SearchQueryScrollTransportHandler());
         transportService.registerRequestHandler(QUERY_FETCH_ACTION_NAME, ShardSearchTransportRequest::new, ThreadPool.Names.SEARCH,
                 new SearchQueryFetchTransportHandler());
+        transportService.registerRequestHandler(QUERY_TOP_HITS_ACTION_NAME, ShardSearchTransportRequest::new, ThreadPool.Names.SEARCH,
+                new SearchQueryTopHitsTransportHandler());
         transportService.registerRequestHandler(QUERY_QUERY_FETCH_ACTION_NAME, QuerySearchRequest::new, ThreadPool.Names.SEARCH,
                 new SearchQueryQueryFetchTransportHandler());
         transportService.registerRequestHandler(QUERY_FETCH_SCROLL_ACTION_NAME, InternalScrollSearchRequest::new, ThreadPool.Names.SEARCH,
@@ -131,6 +143,17 @@ public class SearchTransportService extends AbstractComponent {
                 new ActionListenerResponseHandler<>(listener, () -> TransportResponse.Empty.INSTANCE));
     }
 
+    public void sendCanMatch(DiscoveryNode node, final ShardSearchTransportRequest request,
+                             final ActionListener<CanMatchResponse> listener) {
+        if (node.getVersion().before(Version.V_5_0_0_alpha5)) {
+            // nodes before 5.0.0-alpha5 don't know the can_match phase, we have to assume that the shard might match
+            listener.onResponse(new CanMatchResponse(true, -1));
+            return;
+        }
+        transportService.sendRequest(node, CAN_MATCH_ACTION_NAME, request,
+            new ActionListenerResponseHandler<>(listener, CanMatchResponse::new));
+    }
+
     public void sendExecuteDfs(DiscoveryNode node, final ShardSearchTransportRequest request,
                                final ActionListener<DfsSearchResult> listener) {
         transportService.sendRequest(node, DFS_ACTION_NAME, request, new ActionListenerResponseHandler<>(listener, DfsSearchResult::new));
@@ -139,7 +162,7 @@ public class SearchTransportService extends AbstractComponent {
     public void sendExecuteQuery(DiscoveryNode node, final ShardSearchTransportRequest request,
                                  final ActionListener<QuerySearchResultProvider> listener) {
         transportService.sendRequest(node, QUERY_ACTION_NAME, request,
-                new ActionListenerResponseHandler<>(listener, QuerySearchResult::new));
+                new ActionListenerResponseHandler<>(wrapWithResponseCollector(node, listener), QuerySearchResult::new));
     }
 
     public void sendExecuteQuery(DiscoveryNode node, final QuerySearchRequest request, final ActionListener<QuerySearchResult> listener) {
@@ -156,7 +179,23 @@ public class SearchTransportService extends AbstractComponent {
     public void sendExecuteFetch(DiscoveryNode node, final ShardSearchTransportRequest request,
                                  final ActionListener<QueryFetchSearchResult> listener) {
         transportService.sendRequest(node, QUERY_FETCH_ACTION_NAME, request,
-                new ActionListenerResponseHandler<>(listener, QueryFetchSearchResult::new));
+                new ActionListenerResponseHandler<>(wrapWithResponseCollector(node, listener), QueryFetchSearchResult::new));
+    }
+
+    /**
+     * Executes the query phase and fetches the top hits of the shard along with it, see
+     * {@link SearchService#executeQueryPhaseWithTopHits}. Nodes before 5.0.0-alpha5 only execute the query phase, their top hits
+     * are fetched in a separate round trip.
+     */
+    public void sendExecuteQueryWithTopHits(DiscoveryNode node, final ShardSearchTransportRequest request,
+                                            final ActionListener<QuerySearchResultProvider> listener) {
+        if (node.getVersion().before(Version.V_5_0_0_alpha5)) {
+            // nodes before 5.0.0-alpha5 don't know the query+top_hits action
+            sendExecuteQuery(node, request, listener);
+            return;
+        }
+        transportService.sendRequest(node, QUERY_TOP_HITS_ACTION_NAME, request,
+                new ActionListenerResponseHandler<>(wrapWithResponseCollector(node, listener), QueryFetchSearchResult::new));
     }
 
     public void sendExecuteFetch(DiscoveryNode node, final QuerySearchRequest request,
@@ -186,6 +225,40 @@ public class SearchTransportService extends AbstractComponent {
         transportService.sendRequest(node, action, request, new ActionListenerResponseHandler<>(listener, FetchSearchResult::new));
     }
 
+    /**
+     * Wraps the listener of a request that starts a query phase on the given node so that the number of outstanding requests,
+     * the response time and the queue and service time statistics reported by the node are recorded in the
+     * {@link ResponseCollectorService}.
+     */
+    private <T extends QuerySearchResultProvider> ActionListener<T> wrapWithResponseCollector(DiscoveryNode node,
+                                                                                              ActionListener<T> listener) {
+        final String nodeId = node.getId();
+        final long startNanos = System.nanoTime();
+        responseCollectorService.onSearchRequestSent(nodeId);
+        return new ActionListener<T>() {
+            @Override
+            public void onResponse(T response) {
+                responseCollectorService.onSearchRequestDone(nodeId);
+                final QuerySearchResult queryResult = response.queryResult();
+                if (queryResult.nodeQueueSize() >= 0 && queryResult.serviceTimeEWMA() >= 0) {
+                    responseCollectorService.addNodeStatistics(nodeId, queryResult.nodeQueueSize(), System.nanoTime() - startNanos,
+                        queryResult.serviceTimeEWMA());
+                }
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                responseCollectorService.onSearchRequestDone(nodeId);
+                listener.onFailure(e);
+            }
+        };
+    }
+
+    public ResponseCollectorService getResponseCollectorService() {
+        return responseCollectorService;
+    }
+
     static class ScrollFreeContextRequest extends TransportRequest {
         private long id;
 
@@ -281,6 +354,51 @@ public class SearchTransportService extends AbstractComponent {
         }
     }
 
+    /**
+     * The response of the can_match phase. It is never exchanged with nodes before 5.0.0-alpha5, see {@link #sendCanMatch}.
+     */
+    public static class CanMatchResponse extends TransportResponse {
+
+        private boolean canMatch = true;
+        private long readerVersion = -1;
+
+        CanMatchResponse() {
+        }
+
+        public CanMatchResponse(boolean canMatch, long readerVersion) {
+            this.canMatch = canMatch;
+            this.readerVersion = readerVersion;
+        }
+
+        /**
+         * Returns <code>false</code> if the shard can't match any document of the request and can be skipped.
+         */
+        public boolean canMatch() {
+            return canMatch;
+        }
+
+        /**
+         * Returns the version of the reader the shard would execute the request on, or <code>-1</code> if unknown.
+         */
+        public long readerVersion() {
+            return readerVersion;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            canMatch = in.readBoolean();
+            readerVersion = in.readZLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeBoolean(canMatch);
+            out.writeZLong(readerVersion);
+        }
+    }
+
     class FreeContextTransportHandler<FreeContextRequest extends ScrollFreeContextRequest>
             implements TransportRequestHandler<FreeContextRequest> {
         @Override
@@ -301,19 +419,60 @@ public class SearchTransportService extends AbstractComponent {
         }
     }
 
+    /**
+     * Executes a search phase that might have to wait until its shard is search active and sends failures back to the channel.
+     */
+    abstract class ShardSearchActionRunnable extends AbstractRunnable {
+        protected final TransportChannel channel;
+        private final String action;
+
+        ShardSearchActionRunnable(TransportChannel channel, String action) {
+            this.channel = channel;
+            this.action = action;
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            try {
+                channel.sendResponse(t);
+            } catch (Throwable e) {
+                logger.warn("failed to send response for [{}]", e, action);
+            }
+        }
+    }
+
+    class CanMatchTransportHandler implements TransportRequestHandler<ShardSearchTransportRequest> {
+        @Override
+        public void messageReceived(ShardSearchTransportRequest request, TransportChannel channel) throws Exception {
+            // no need to wait for the shard to become search active, shards with pending refreshes are never skipped
+            boolean canMatch = searchService.canMatch(request);
+            channel.sendResponse(new CanMatchResponse(canMatch, searchService.readerVersion(request)));
+        }
+    }
+
     class SearchDfsTransportHandler implements TransportRequestHandler<ShardSearchTransportRequest> {
         @Override
         public void messageReceived(ShardSearchTransportRequest request, TransportChannel channel) throws Exception {
-            DfsSearchResult result = searchService.executeDfsPhase(request);
-            channel.sendResponse(result);
+            searchService.runWhenShardSearchActive(request, new ShardSearchActionRunnable(channel, DFS_ACTION_NAME) {
+                @Override
+                protected void doRun() throws Exception {
+                    DfsSearchResult result = searchService.executeDfsPhase(request);
+                    channel.sendResponse(result);
+                }
+            });
         }
     }
 
     class SearchQueryTransportHandler implements TransportRequestHandler<ShardSearchTransportRequest> {
         @Override
         public void messageReceived(ShardSearchTransportRequest request, TransportChannel channel) throws Exception {
-            QuerySearchResultProvider result = searchService.executeQueryPhase(request);
-            channel.sendResponse(result);
+            searchService.runWhenShardSearchActive(request, new ShardSearchActionRunnable(channel, QUERY_ACTION_NAME) {
+                @Override
+                protected void doRun() throws Exception {
+                    QuerySearchResultProvider result = searchService.executeQueryPhase(request);
+                    channel.sendResponse(result);
+                }
+            });
         }
     }
 
@@ -336,8 +495,26 @@ public class SearchTransportService extends AbstractComponent {
     class SearchQueryFetchTransportHandler implements TransportRequestHandler<ShardSearchTransportRequest> {
         @Override
         public void messageReceived(ShardSearchTransportRequest request, TransportChannel channel) throws Exception {
-            QueryFetchSearchResult result = searchService.executeFetchPhase(request);
-            channel.sendResponse(result);
+            searchService.runWhenShardSearchActive(request, new ShardSearchActionRunnable(channel, QUERY_FETCH_ACTION_NAME) {
+                @Override
+                protected void doRun() throws Exception {
+                    QueryFetchSearchResult result = searchService.executeFetchPhase(request);
+                    channel.sendResponse(result);
+                }
+            });
+        }
+    }
+
+    class SearchQueryTopHitsTransportHandler implements TransportRequestHandler<ShardSearchTransportRequest> {
+        @Override
+        public void messageReceived(ShardSearchTransportRequest request, TransportChannel channel) throws Exception {
+            searchService.runWhenShardSearchActive(request, new ShardSearchActionRunnable(channel, QUERY_TOP_HITS_ACTION_NAME) {
+                @Override
+                protected void doRun() throws Exception {
+                    QueryFetchSearchResult result = searchService.executeQueryPhaseWithTopHits(request);
+                    channel.sendResponse(result);
+                }
+            });
         }
     }
 
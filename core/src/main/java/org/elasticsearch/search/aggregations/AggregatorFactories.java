@@ -23,6 +23,8 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 import org.elasticsearch.search.aggregations.support.AggregationPath;
@@ -188,6 +190,27 @@ public class AggregatorFactories {
             return this;
         }
 
+        /**
+         * Returns <code>true</code> iff one of the aggregations or of their sub-aggregations needs to see all documents of a shard even
+         * if the query does not match any document on that shard, for instance the global aggregation or terms with
+         * <code>min_doc_count: 0</code>.
+         */
+        public boolean mustVisitAllDocs() {
+            for (AggregationBuilder builder : aggregationBuilders) {
+                if (builder instanceof GlobalAggregationBuilder) {
+                    return true;
+                } else if (builder instanceof TermsAggregationBuilder) {
+                    if (((TermsAggregationBuilder) builder).bucketCountThresholds().getMinDocCount() == 0) {
+                        return true;
+                    }
+                }
+                if (builder.factoriesBuilder.mustVisitAllDocs()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /**
          * FOR TESTING ONLY
          */
@@ -98,11 +98,26 @@ public abstract class InternalAggregation implements Aggregation, ToXContent, St
         private final BigArrays bigArrays;
         private final ScriptService scriptService;
         private final ClusterState clusterState;
+        private final boolean isFinalReduce;
 
         public ReduceContext(BigArrays bigArrays, ScriptService scriptService, ClusterState clusterState) {
+            this(bigArrays, scriptService, clusterState, true);
+        }
+
+        public ReduceContext(BigArrays bigArrays, ScriptService scriptService, ClusterState clusterState, boolean isFinalReduce) {
             this.bigArrays = bigArrays;
             this.scriptService = scriptService;
             this.clusterState = clusterState;
+            this.isFinalReduce = isFinalReduce;
+        }
+
+        /**
+         * Returns <code>true</code> iff the current reduce phase is the final reduce phase. This indicates if operations like
+         * pipeline aggregations should be applied or if specific features like <code>minDocCount</code> should be taken into account.
+         * Operations that are potentially losing information can only be applied during the final reduce phase.
+         */
+        public boolean isFinalReduce() {
+            return isFinalReduce;
         }
 
         public BigArrays bigArrays() {
@@ -153,12 +168,15 @@ public abstract class InternalAggregation implements Aggregation, ToXContent, St
      * Reduces the given addAggregation to a single one and returns it. In <b>most</b> cases, the assumption will be the all given
      * addAggregation are of the same type (the same type as this aggregation). For best efficiency, when implementing,
      * try reusing an existing get instance (typically the first in the given list) to save on redundant object
-     * construction.
+     * construction. Pipeline aggregators are only applied during the final reduce phase, partially reduced aggregations
+     * must be reducible again together with other shard or partial results.
      */
     public final InternalAggregation reduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
         InternalAggregation aggResult = doReduce(aggregations, reduceContext);
-        for (PipelineAggregator pipelineAggregator : pipelineAggregators) {
-            aggResult = pipelineAggregator.reduce(aggResult, reduceContext);
+        if (reduceContext.isFinalReduce()) {
+            for (PipelineAggregator pipelineAggregator : pipelineAggregators) {
+                aggResult = pipelineAggregator.reduce(aggResult, reduceContext);
+            }
         }
         return aggResult;
     }
@@ -18,6 +18,7 @@
  */
 package org.elasticsearch.search.aggregations.bucket;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.IntArray;
@@ -31,7 +32,9 @@ import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -42,6 +45,7 @@ public abstract class BucketsAggregator extends AggregatorBase {
 
     private final BigArrays bigArrays;
     private IntArray docCounts;
+    private List<String> precomputedSegments;
 
     public BucketsAggregator(String name, AggregatorFactories factories, AggregationContext context, Aggregator parent,
             List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
@@ -107,6 +111,32 @@ public abstract class BucketsAggregator extends AggregatorBase {
         }
     }
 
+    /**
+     * Returns <code>true</code> if this aggregator may compute the buckets of a whole segment from the statistics of the index
+     * instead of collecting its documents, see {@link PrecomputedSegments}. This is only possible for top level aggregators that
+     * have no sub aggregations, since they never need to know which documents fall into a bucket.
+     */
+    protected final boolean canPrecomputeSegments() {
+        return parent == null && subAggregators.length == 0;
+    }
+
+    /**
+     * Records that the buckets of the given segment were computed without collecting its documents.
+     */
+    protected final void segmentPrecomputed(LeafReaderContext ctx) {
+        if (precomputedSegments == null) {
+            precomputedSegments = new ArrayList<>();
+        }
+        precomputedSegments.add(PrecomputedSegments.segmentName(ctx));
+    }
+
+    /**
+     * Returns the names of the segments whose buckets were computed without collecting their documents.
+     */
+    public List<String> getPrecomputedSegments() {
+        return precomputedSegments == null ? Collections.emptyList() : Collections.unmodifiableList(precomputedSegments);
+    }
+
     /**
      * Required method to build the child aggregations of the given bucket (identified by the bucket ordinal).
      */
@@ -0,0 +1,173 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.IntArray;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.common.util.LongHash;
+
+/**
+ * Maps the <code>long</code> keys of buckets to bucket ordinals with the same contract as {@link LongHash#add(long)}: ordinals are
+ * assigned in the order in which the keys are first added. When the keys are known up front to be the multiples of a step within a
+ * small range, the ordinal of a key is looked up in an array that is indexed by the key, which is cheaper than hashing it. The first
+ * key that is not part of this range moves all keys to a {@link LongHash}, which keeps their ordinals.
+ * This class is not thread-safe.
+ */
+public final class LongKeyedBucketOrds implements Releasable {
+
+    /**
+     * The maximum number of keys of a range whose ordinals are looked up in an array.
+     */
+    public static final long MAX_DENSE_KEYS = 2048;
+
+    private final BigArrays bigArrays;
+    private final long minKey;
+    private final long maxKey;
+    private final long step;
+
+    // ordinal + 1 of every key of the range, 0 encodes for a key that was not added yet
+    private IntArray ords;
+    // key of every ordinal
+    private LongArray keys;
+    private long size;
+
+    // replaces the arrays once a key is not part of the range
+    private LongHash hash;
+
+    private LongKeyedBucketOrds(BigArrays bigArrays, long minKey, long maxKey, long step, long numKeys) {
+        this.bigArrays = bigArrays;
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+        this.step = step;
+        boolean success = false;
+        try {
+            ords = bigArrays.newIntArray(numKeys, true);
+            keys = bigArrays.newLongArray(1, false);
+            success = true;
+        } finally {
+            if (success == false) {
+                close();
+            }
+        }
+    }
+
+    private LongKeyedBucketOrds(BigArrays bigArrays) {
+        this.bigArrays = bigArrays;
+        this.minKey = 0;
+        this.maxKey = -1;
+        this.step = 1;
+        this.hash = new LongHash(1, bigArrays);
+    }
+
+    /**
+     * Creates bucket ordinals that hash their keys.
+     */
+    public static LongKeyedBucketOrds hash(BigArrays bigArrays) {
+        return new LongKeyedBucketOrds(bigArrays);
+    }
+
+    /**
+     * Creates bucket ordinals for keys that are expected to be the multiples of <code>step</code> starting from <code>minKey</code>
+     * up to <code>maxKey</code>. The ordinals hash their keys if the range has more than {@link #MAX_DENSE_KEYS} keys.
+     */
+    public static LongKeyedBucketOrds dense(long minKey, long maxKey, long step, BigArrays bigArrays) {
+        if (step < 1) {
+            throw new IllegalArgumentException("step must be 1 or greater, got [" + step + "]");
+        }
+        final long range = maxKey - minKey;
+        if (minKey > maxKey || range < 0 || range / step >= MAX_DENSE_KEYS) { // range < 0 on overflow
+            return hash(bigArrays);
+        }
+        return new LongKeyedBucketOrds(bigArrays, minKey, maxKey, step, range / step + 1);
+    }
+
+    /**
+     * Returns <code>true</code> if the ordinals of the keys are looked up in an array.
+     */
+    public boolean isDense() {
+        return hash == null;
+    }
+
+    /**
+     * Adds a key and returns its ordinal if it was not added yet, or <code>-1 - ordinal</code> if it was.
+     */
+    public long add(long key) {
+        if (hash == null) {
+            if (key >= minKey && key <= maxKey) {
+                final long delta = key - minKey;
+                final long index = delta / step;
+                if (index * step == delta) {
+                    final int ord = ords.get(index);
+                    if (ord > 0) {
+                        return -ord;
+                    }
+                    keys = bigArrays.grow(keys, size + 1);
+                    keys.set(size, key);
+                    ords.set(index, (int) ++size);
+                    return size - 1;
+                }
+            }
+            switchToHash();
+        }
+        return hash.add(key);
+    }
+
+    private void switchToHash() {
+        final LongHash hash = new LongHash(Math.max(1, size), bigArrays);
+        boolean success = false;
+        try {
+            for (long ord = 0; ord < size; ord++) {
+                final long newOrd = hash.add(keys.get(ord));
+                assert newOrd == ord;
+            }
+            success = true;
+        } finally {
+            if (success == false) {
+                Releasables.close(hash);
+            }
+        }
+        Releasables.close(ords, keys);
+        ords = null;
+        keys = null;
+        this.hash = hash;
+    }
+
+    /**
+     * Returns the key of the given ordinal.
+     */
+    public long get(long ord) {
+        return hash == null ? keys.get(ord) : hash.get(ord);
+    }
+
+    /**
+     * Returns the number of keys that were added.
+     */
+    public long size() {
+        return hash == null ? size : hash.size();
+    }
+
+    @Override
+    public void close() {
+        Releasables.close(ords, keys, hash);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.StringHelper;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+
+/**
+ * Helpers for the bucket aggregators that compute the buckets of a whole segment from the statistics that the index keeps about a
+ * field, the doc frequencies of its terms or the number of values in the cells of its points, instead of collecting the matching
+ * documents of the segment one by one. This is only possible if the query is known to match all documents of the segment.
+ */
+public final class PrecomputedSegments {
+
+    private PrecomputedSegments() {}
+
+    /**
+     * Returns <code>true</code> if the query of the search matches all documents of the segment and if none of them is deleted. This
+     * is the case of a <code>match_all</code> query and of a range query on points whose bounds contain all values of the segment
+     * when every document of the segment has a value.
+     */
+    public static boolean matchesAllDocs(SearchContext context, LeafReaderContext ctx) throws IOException {
+        if (context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER || context.minimumScore() != null) {
+            return false;
+        }
+        final LeafReader reader = ctx.reader();
+        if (reader.hasDeletions()) {
+            return false;
+        }
+        Query query = context.query();
+        while (true) {
+            if (query instanceof ConstantScoreQuery) {
+                query = ((ConstantScoreQuery) query).getQuery();
+            } else if (query instanceof BoostQuery) {
+                query = ((BoostQuery) query).getQuery();
+            } else {
+                break;
+            }
+        }
+        if (query instanceof MatchAllDocsQuery) {
+            return true;
+        } else if (query instanceof PointRangeQuery) {
+            return containsAllDocs((PointRangeQuery) query, reader);
+        }
+        return false;
+    }
+
+    private static boolean containsAllDocs(PointRangeQuery query, LeafReader reader) throws IOException {
+        final String field = query.getField();
+        final FieldInfo info = reader.getFieldInfos().fieldInfo(field);
+        if (info == null || info.getPointDimensionCount() != query.getNumDims() || info.getPointNumBytes() != query.getBytesPerDim()) {
+            return false;
+        }
+        final PointValues values = reader.getPointValues();
+        if (values.getDocCount(field) != reader.maxDoc()) {
+            return false;
+        }
+        final byte[] minPackedValue = values.getMinPackedValue(field);
+        final byte[] maxPackedValue = values.getMaxPackedValue(field);
+        final int bytesPerDim = query.getBytesPerDim();
+        for (int dim = 0; dim < query.getNumDims(); dim++) {
+            final int offset = dim * bytesPerDim;
+            if (StringHelper.compare(bytesPerDim, query.getLowerPoint(), offset, minPackedValue, offset) > 0
+                    || StringHelper.compare(bytesPerDim, query.getUpperPoint(), offset, maxPackedValue, offset) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if the values of the field are indexed as one dimensional integral points, which are
+     * {@link #decode(byte[], int) decoded} and {@link #encode(long, int) encoded} with the given number of bytes.
+     */
+    public static boolean hasIntegralPoints(FieldInfo info) {
+        return info.getPointDimensionCount() == 1
+            && (info.getPointNumBytes() == Integer.BYTES || info.getPointNumBytes() == Long.BYTES);
+    }
+
+    /**
+     * Decodes an integral point.
+     */
+    public static long decode(byte[] packedValue, int bytesPerDim) {
+        return bytesPerDim == Integer.BYTES ? IntPoint.decodeDimension(packedValue, 0) : LongPoint.decodeDimension(packedValue, 0);
+    }
+
+    /**
+     * Encodes an integral point, the value must fit in the number of bytes.
+     */
+    public static byte[] encode(long value, int bytesPerDim) {
+        final byte[] packedValue = new byte[bytesPerDim];
+        if (bytesPerDim == Integer.BYTES) {
+            assert value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+            IntPoint.encodeDimension((int) value, packedValue, 0);
+        } else {
+            LongPoint.encodeDimension(value, packedValue, 0);
+        }
+        return packedValue;
+    }
+
+    /**
+     * Counts the points of the field that are between <code>lowerPoint</code> and <code>upperPoint</code>, both inclusive. Whole cells
+     * of the points that are within the bounds only count the ids of their documents, without decoding their values.
+     */
+    public static int countPoints(PointValues values, String field, byte[] lowerPoint, byte[] upperPoint) throws IOException {
+        final int bytesPerDim = lowerPoint.length;
+        final int[] count = new int[1];
+        values.intersect(field, new PointValues.IntersectVisitor() {
+            @Override
+            public void visit(int docID) {
+                count[0]++;
+            }
+
+            @Override
+            public void visit(int docID, byte[] packedValue) {
+                if (StringHelper.compare(bytesPerDim, packedValue, 0, lowerPoint, 0) >= 0
+                        && StringHelper.compare(bytesPerDim, packedValue, 0, upperPoint, 0) <= 0) {
+                    count[0]++;
+                }
+            }
+
+            @Override
+            public PointValues.Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+                if (StringHelper.compare(bytesPerDim, maxPackedValue, 0, lowerPoint, 0) < 0
+                        || StringHelper.compare(bytesPerDim, minPackedValue, 0, upperPoint, 0) > 0) {
+                    return PointValues.Relation.CELL_OUTSIDE_QUERY;
+                }
+                if (StringHelper.compare(bytesPerDim, minPackedValue, 0, lowerPoint, 0) >= 0
+                        && StringHelper.compare(bytesPerDim, maxPackedValue, 0, upperPoint, 0) <= 0) {
+                    return PointValues.Relation.CELL_INSIDE_QUERY;
+                }
+                return PointValues.Relation.CELL_CROSSES_QUERY;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Returns a name that identifies the segment in profiles.
+     */
+    public static String segmentName(LeafReaderContext ctx) {
+        LeafReader reader = ctx.reader();
+        while (reader instanceof FilterLeafReader) {
+            reader = ((FilterLeafReader) reader).getDelegate();
+        }
+        if (reader instanceof SegmentReader) {
+            return ((SegmentReader) reader).getSegmentName();
+        }
+        return "leaf[" + ctx.ord + "]";
+    }
+}
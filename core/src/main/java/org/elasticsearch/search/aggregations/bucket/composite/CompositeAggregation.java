@@ -0,0 +1,55 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A multi bucket aggregation that creates a bucket per combination of the values of its sources, the buckets are
+ * returned in the order of their composite key and can be paginated with {@link #afterKey()}.
+ */
+public interface CompositeAggregation extends MultiBucketsAggregation {
+
+    /**
+     * A bucket associated with a combination of values, one per source.
+     */
+    interface Bucket extends MultiBucketsAggregation.Bucket {
+        /**
+         * The values of the composite key, keyed by the name of their source.
+         */
+        @Override
+        Map<String, Object> getKey();
+    }
+
+    /**
+     * The buckets created by this aggregation.
+     */
+    @Override
+    List<? extends Bucket> getBuckets();
+
+    /**
+     * Returns the key of the last bucket, <code>null</code> if there is no bucket. Setting this key as the
+     * <code>after</code> key of the request retrieves the next page of buckets.
+     */
+    Map<String, Object> afterKey();
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregatorFactories.Builder;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+public class CompositeAggregationBuilder extends AbstractAggregationBuilder<CompositeAggregationBuilder> {
+    public static final String NAME = InternalComposite.TYPE.name();
+    public static final ParseField AGGREGATION_NAME_FIELD = new ParseField(NAME);
+
+    static final ParseField SIZE_FIELD = new ParseField("size");
+    static final ParseField SOURCES_FIELD = new ParseField("sources");
+    static final ParseField AFTER_FIELD = new ParseField("after");
+
+    private final List<CompositeValuesSourceBuilder<?>> sources;
+    private Map<String, Object> after;
+    private int size = 10;
+
+    /**
+     * @param name
+     *            the name of this aggregation
+     * @param sources
+     *            the sources of the composite key, the buckets are sorted by the first source, then by the second one...
+     */
+    public CompositeAggregationBuilder(String name, List<CompositeValuesSourceBuilder<?>> sources) {
+        super(name, InternalComposite.TYPE);
+        if (sources == null || sources.isEmpty()) {
+            throw new IllegalArgumentException("Composite [" + SOURCES_FIELD.getPreferredName() + "] cannot be null or empty: ["
+                    + name + "]");
+        }
+        Set<String> names = new HashSet<>();
+        for (CompositeValuesSourceBuilder<?> source : sources) {
+            if (names.add(source.name()) == false) {
+                throw new IllegalArgumentException("Composite source names must be unique, found duplicates: [" + source.name() + "]");
+            }
+        }
+        this.sources = new ArrayList<>(sources);
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public CompositeAggregationBuilder(StreamInput in) throws IOException {
+        super(in, InternalComposite.TYPE);
+        int num = in.readVInt();
+        this.sources = new ArrayList<>(num);
+        for (int i = 0; i < num; i++) {
+            sources.add(CompositeValuesSourceParserHelper.readFrom(in));
+        }
+        this.size = in.readVInt();
+        if (in.readBoolean()) {
+            this.after = in.readMap();
+        }
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeVInt(sources.size());
+        for (CompositeValuesSourceBuilder<?> source : sources) {
+            CompositeValuesSourceParserHelper.writeTo(source, out);
+        }
+        out.writeVInt(size);
+        out.writeBoolean(after != null);
+        if (after != null) {
+            out.writeMap(after);
+        }
+    }
+
+    /**
+     * Gets the list of sources of the composite key. This will be an unmodifiable list
+     */
+    public List<CompositeValuesSourceBuilder<?>> sources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * Sets the key of the bucket after which the buckets are returned, usually the
+     * {@link CompositeAggregation#afterKey()} of the previous page. The key must have a value for every source.
+     */
+    public CompositeAggregationBuilder aggregateAfter(Map<String, Object> afterKey) {
+        if (afterKey == null) {
+            throw new IllegalArgumentException("[afterKey] must not be null: [" + name + "]");
+        }
+        this.after = afterKey;
+        return this;
+    }
+
+    /**
+     * Gets the key of the bucket after which the buckets are returned.
+     */
+    public Map<String, Object> aggregateAfter() {
+        return after;
+    }
+
+    /**
+     * Sets the number of composite buckets to return, every shard keeps at most this number of buckets in memory.
+     */
+    public CompositeAggregationBuilder size(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("[size] must be greater than 0. Found [" + size + "] in [" + name + "]");
+        }
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * Gets the number of composite buckets to return.
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    protected AggregatorFactory<?> doBuild(AggregationContext context, AggregatorFactory<?> parent, Builder subFactoriesBuilder)
+            throws IOException {
+        final CompositeValuesSource[] valuesSources = new CompositeValuesSource[sources.size()];
+        for (int i = 0; i < valuesSources.length; i++) {
+            valuesSources[i] = sources.get(i).build(context);
+        }
+        final CompositeKey afterKey;
+        if (after != null) {
+            if (after.size() != sources.size()) {
+                throw new IllegalArgumentException("[" + AFTER_FIELD.getPreferredName() + "] has " + after.size()
+                        + " value(s) but [" + SOURCES_FIELD.getPreferredName() + "] has " + sources.size() + " in [" + name + "]");
+            }
+            final Comparable<?>[] values = new Comparable<?>[valuesSources.length];
+            for (int i = 0; i < valuesSources.length; i++) {
+                final CompositeValuesSource source = valuesSources[i];
+                final Object value = after.get(source.name());
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for [" + AFTER_FIELD.getPreferredName() + "." + source.name()
+                            + "] in [" + name + "]");
+                }
+                values[i] = source.parseAfter(value, context.searchContext().nowCallable());
+            }
+            afterKey = new CompositeKey(values);
+        } else {
+            afterKey = null;
+        }
+        return new CompositeAggregationFactory(name, type, context, parent, subFactoriesBuilder, metaData, size, valuesSources,
+                afterKey);
+    }
+
+    @Override
+    protected XContentBuilder internalXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(SIZE_FIELD.getPreferredName(), size);
+        builder.startArray(SOURCES_FIELD.getPreferredName());
+        for (CompositeValuesSourceBuilder<?> source : sources) {
+            source.toXContent(builder, params);
+        }
+        builder.endArray();
+        if (after != null) {
+            builder.field(AFTER_FIELD.getPreferredName(), after);
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    public static CompositeAggregationBuilder parse(String aggregationName, QueryParseContext context) throws IOException {
+        XContentParser parser = context.parser();
+
+        List<CompositeValuesSourceBuilder<?>> sources = null;
+        Map<String, Object> after = null;
+        Integer size = null;
+
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.VALUE_NUMBER) {
+                if (context.getParseFieldMatcher().match(currentFieldName, SIZE_FIELD)) {
+                    size = parser.intValue();
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(),
+                            "Unknown key for a " + token + " in [" + aggregationName + "]: [" + currentFieldName + "].");
+                }
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                if (context.getParseFieldMatcher().match(currentFieldName, SOURCES_FIELD)) {
+                    sources = new ArrayList<>();
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                        sources.add(CompositeValuesSourceParserHelper.fromXContent(context));
+                    }
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(),
+                            "Unknown key for a " + token + " in [" + aggregationName + "]: [" + currentFieldName + "].");
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if (context.getParseFieldMatcher().match(currentFieldName, AFTER_FIELD)) {
+                    after = parser.map();
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(),
+                            "Unknown key for a " + token + " in [" + aggregationName + "]: [" + currentFieldName + "].");
+                }
+            } else {
+                throw new ParsingException(parser.getTokenLocation(),
+                        "Unknown key for a " + token + " in [" + aggregationName + "]: [" + currentFieldName + "].");
+            }
+        }
+
+        if (sources == null) {
+            throw new ParsingException(parser.getTokenLocation(),
+                    "Missing required field [" + SOURCES_FIELD.getPreferredName() + "] for [" + aggregationName + "]");
+        }
+        CompositeAggregationBuilder factory = new CompositeAggregationBuilder(aggregationName, sources);
+        if (size != null) {
+            factory.size(size);
+        }
+        if (after != null) {
+            factory.aggregateAfter(after);
+        }
+        return factory;
+    }
+
+    @Override
+    protected int doHashCode() {
+        return Objects.hash(sources, size, after);
+    }
+
+    @Override
+    protected boolean doEquals(Object obj) {
+        CompositeAggregationBuilder other = (CompositeAggregationBuilder) obj;
+        return Objects.equals(sources, other.sources)
+                && size == other.size
+                && Objects.equals(after, other.after);
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+}
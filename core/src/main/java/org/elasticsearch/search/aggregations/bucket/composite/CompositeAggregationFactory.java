@@ -0,0 +1,60 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.search.aggregations.AggregationExecutionException;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.InternalAggregation.Type;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+class CompositeAggregationFactory extends AggregatorFactory<CompositeAggregationFactory> {
+    private final int size;
+    private final CompositeValuesSource[] sources;
+    private final CompositeKey afterKey;
+
+    CompositeAggregationFactory(String name, Type type, AggregationContext context, AggregatorFactory<?> parent,
+                                AggregatorFactories.Builder subFactoriesBuilder, Map<String, Object> metaData,
+                                int size, CompositeValuesSource[] sources, CompositeKey afterKey) throws IOException {
+        super(name, type, context, parent, subFactoriesBuilder, metaData);
+        this.size = size;
+        this.sources = sources;
+        this.afterKey = afterKey;
+    }
+
+    @Override
+    protected Aggregator createInternal(Aggregator parent, boolean collectsFromSingleBucket,
+                                        List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+        if (parent != null) {
+            throw new AggregationExecutionException("Aggregation [" + parent.name() + "] cannot have a composite " + "sub-aggregation ["
+                    + name + "]. Composite aggregations can only be defined as top level aggregations");
+        }
+        if (collectsFromSingleBucket == false) {
+            throw new IllegalStateException();
+        }
+        return new CompositeAggregator(name, factories, context, pipelineAggregators, metaData, size, sources, afterKey);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.LeafBucketCollector;
+import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the first <code>size</code> composite keys that sort after the <code>after</code> key. The keys are kept in
+ * a sorted map bounded by <code>size</code>: once the map is full a new key either replaces the last key or is rejected, so
+ * the memory used by the aggregator does not depend on the number of distinct keys.
+ * <p>
+ * The buckets of the sub-aggregations are only known at the end of the collection, so the documents that were accepted
+ * by the map are recorded and replayed to the sub-aggregators in {@link #doPostCollection()} for the keys that survived.
+ * This replay buffer grows with the number of documents that were accepted by the map at the time they were collected,
+ * not with <code>size</code>: on a shard where the keys arrive in reverse order, every document is accepted and recorded.
+ * The buffer holds packed deltas of doc ids, which usually takes a few bits per document.
+ */
+class CompositeAggregator extends BucketsAggregator {
+    private final int size;
+    private final CompositeValuesSource[] sources;
+    private final CompositeKey afterKey;
+    private final Comparator<CompositeKey> comparator;
+    private final List<String> sourceNames;
+    private final List<DocValueFormat> formats;
+    private final int[] reverseMuls;
+
+    // the sorted keys and the slot of their doc count and sub-aggregations
+    private final TreeMap<CompositeKey, Integer> queue;
+    private LongArray docCounts;
+
+    // the documents to replay to the sub-aggregators, null if there is no sub-aggregator
+    private final List<Entry> entries;
+    private LeafReaderContext currentLeaf;
+    private PackedLongValues.Builder currentDocDeltas;
+
+    CompositeAggregator(String name, AggregatorFactories factories, AggregationContext context,
+                        List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData,
+                        int size, CompositeValuesSource[] sources, CompositeKey afterKey) throws IOException {
+        super(name, factories, context, null, pipelineAggregators, metaData);
+        this.size = size;
+        this.sources = sources;
+        this.afterKey = afterKey;
+        this.reverseMuls = new int[sources.length];
+        final List<String> sourceNames = new ArrayList<>(sources.length);
+        final List<DocValueFormat> formats = new ArrayList<>(sources.length);
+        for (int i = 0; i < sources.length; i++) {
+            reverseMuls[i] = sources[i].reverseMul();
+            sourceNames.add(sources[i].name());
+            formats.add(sources[i].format());
+        }
+        this.sourceNames = Collections.unmodifiableList(sourceNames);
+        this.formats = Collections.unmodifiableList(formats);
+        this.comparator = CompositeKey.comparator(reverseMuls);
+        this.queue = new TreeMap<>(comparator);
+        this.docCounts = context.bigArrays().newLongArray(1, false);
+        this.entries = subAggregators.length > 0 ? new ArrayList<>() : null;
+    }
+
+    private static class Entry {
+        final LeafReaderContext context;
+        final PackedLongValues docDeltas;
+
+        Entry(LeafReaderContext context, PackedLongValues docDeltas) {
+            this.context = context;
+            this.docDeltas = docDeltas;
+        }
+    }
+
+    @Override
+    public boolean needsScores() {
+        if (super.needsScores()) {
+            return true;
+        }
+        for (CompositeValuesSource source : sources) {
+            if (source.needsScores()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void finishLeaf() {
+        if (currentLeaf != null) {
+            entries.add(new Entry(currentLeaf, currentDocDeltas.build()));
+        }
+        currentLeaf = null;
+        currentDocDeltas = null;
+    }
+
+    @Override
+    protected LeafBucketCollector getLeafCollector(LeafReaderContext ctx, LeafBucketCollector sub) throws IOException {
+        final KeyIterator keys = new KeyIterator(ctx);
+        if (entries != null) {
+            finishLeaf();
+            currentLeaf = ctx;
+            currentDocDeltas = PackedLongValues.packedBuilder(PackedInts.DEFAULT);
+        }
+        return new LeafBucketCollector() {
+            int lastDoc = 0;
+
+            @Override
+            public void setScorer(Scorer scorer) throws IOException {
+                keys.setScorer(scorer);
+            }
+
+            @Override
+            public void collect(int doc, long bucket) throws IOException {
+                assert bucket == 0 : "composite aggregator can only be a top level aggregator";
+                if (keys.setDocument(doc) == false) {
+                    return;
+                }
+                boolean accepted = false;
+                do {
+                    accepted |= collectKey(keys.key());
+                } while (keys.next());
+                if (accepted && currentDocDeltas != null) {
+                    currentDocDeltas.add(doc - lastDoc);
+                    lastDoc = doc;
+                }
+            }
+        };
+    }
+
+    /**
+     * Adds a document to the bucket of <code>key</code> and returns <code>true</code> if the key is in the queue.
+     * <code>key</code> is reused by the caller and is copied if it needs to be inserted.
+     */
+    private boolean collectKey(CompositeKey key) {
+        if (afterKey != null && comparator.compare(key, afterKey) <= 0) {
+            return false;
+        }
+        Integer slot = queue.get(key);
+        if (slot != null) {
+            docCounts.increment(slot, 1);
+            return true;
+        }
+        if (queue.size() >= size) {
+            // keys that are evicted sort after the last key of the queue, which can only decrease,
+            // so they can never be inserted again and the doc counts are exact
+            if (comparator.compare(key, queue.lastKey()) > 0) {
+                return false;
+            }
+            slot = queue.pollLastEntry().getValue();
+        } else {
+            slot = queue.size();
+            docCounts = context.bigArrays().grow(docCounts, slot + 1);
+        }
+        queue.put(copyKey(key), slot);
+        docCounts.set(slot, 1);
+        return true;
+    }
+
+    private CompositeKey copyKey(CompositeKey key) {
+        final Comparable<?>[] values = new Comparable<?>[key.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = sources[i].copy(key.get(i));
+        }
+        return new CompositeKey(values);
+    }
+
+    @Override
+    protected void doPostCollection() throws IOException {
+        if (entries == null) {
+            return;
+        }
+        finishLeaf();
+        final boolean needsScores = needsScores();
+        Weight weight = null;
+        if (needsScores) {
+            weight = context.searchContext().searcher().createNormalizedWeight(context.searchContext().query(), true);
+        }
+        for (Entry entry : entries) {
+            if (entry.docDeltas.size() == 0) {
+                continue;
+            }
+            final LeafBucketCollector subCollector = collectableSubAggregators.getLeafCollector(entry.context);
+            final KeyIterator keys = new KeyIterator(entry.context);
+            DocIdSetIterator docIt = null;
+            if (needsScores) {
+                // there are documents to replay so the scorer cannot be null
+                Scorer scorer = weight.scorer(entry.context);
+                docIt = scorer.iterator();
+                subCollector.setScorer(scorer);
+                keys.setScorer(scorer);
+            }
+            final PackedLongValues.Iterator docDeltaIterator = entry.docDeltas.iterator();
+            int doc = 0;
+            for (long i = 0, end = entry.docDeltas.size(); i < end; ++i) {
+                doc += docDeltaIterator.next();
+                if (needsScores) {
+                    if (docIt.docID() < doc) {
+                        docIt.advance(doc);
+                    }
+                    // aggregations should only be replayed on matching documents
+                    assert docIt.docID() == doc;
+                }
+                if (keys.setDocument(doc) == false) {
+                    continue;
+                }
+                do {
+                    final Integer slot = queue.get(keys.key());
+                    if (slot != null) {
+                        subCollector.collect(doc, slot);
+                    }
+                } while (keys.next());
+            }
+        }
+        entries.clear();
+    }
+
+    @Override
+    public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
+        assert owningBucketOrdinal == 0 : "composite aggregator can only be a top level aggregator";
+        final List<InternalComposite.InternalBucket> buckets = new ArrayList<>(queue.size());
+        for (Map.Entry<CompositeKey, Integer> entry : queue.entrySet()) {
+            final int slot = entry.getValue();
+            buckets.add(new InternalComposite.InternalBucket(sourceNames, formats, entry.getKey(), docCounts.get(slot),
+                    bucketAggregations(slot)));
+        }
+        return new InternalComposite(name, size, sourceNames, formats, reverseMuls, buckets, pipelineAggregators(), metaData());
+    }
+
+    @Override
+    public InternalAggregation buildEmptyAggregation() {
+        return new InternalComposite(name, size, sourceNames, formats, reverseMuls, Collections.emptyList(), pipelineAggregators(),
+                metaData());
+    }
+
+    @Override
+    public void doClose() {
+        Releasables.close(docCounts);
+    }
+
+    /**
+     * Iterates over the cartesian product of the values of the sources for a document, the first source varies the slowest.
+     */
+    private class KeyIterator {
+        final CompositeValuesSource.LeafValues[] values;
+        final int[] counts;
+        final int[] positions;
+        final Comparable<?>[] current;
+        final CompositeKey key;
+
+        KeyIterator(LeafReaderContext ctx) throws IOException {
+            values = new CompositeValuesSource.LeafValues[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                values[i] = sources[i].getLeafValues(ctx);
+            }
+            counts = new int[sources.length];
+            positions = new int[sources.length];
+            current = new Comparable<?>[sources.length];
+            key = new CompositeKey(current);
+        }
+
+        void setScorer(Scorer scorer) {
+            for (CompositeValuesSource.LeafValues leafValues : values) {
+                leafValues.setScorer(scorer);
+            }
+        }
+
+        /**
+         * Positions the iterator on the first key of <code>doc</code>, returns <code>false</code> if a source has no value.
+         */
+        boolean setDocument(int doc) {
+            for (int i = 0; i < values.length; i++) {
+                counts[i] = values[i].setDocument(doc);
+                if (counts[i] == 0) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < values.length; i++) {
+                positions[i] = 0;
+                current[i] = values[i].valueAt(0);
+            }
+            return true;
+        }
+
+        /**
+         * The current key, which is reused when the iterator moves.
+         */
+        CompositeKey key() {
+            return key;
+        }
+
+        boolean next() {
+            for (int i = values.length - 1; i >= 0; i--) {
+                if (++positions[i] < counts[i]) {
+                    current[i] = values[i].valueAt(positions[i]);
+                    return true;
+                }
+                positions[i] = 0;
+                current[i] = values[i].valueAt(0);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The key of a composite bucket: one value per source, each value is a {@link org.apache.lucene.util.BytesRef},
+ * a {@link Long} or a {@link Double} depending on its source.
+ */
+final class CompositeKey implements Writeable {
+    private final Comparable<?>[] values;
+
+    CompositeKey(Comparable<?>... values) {
+        this.values = values;
+    }
+
+    CompositeKey(StreamInput in) throws IOException {
+        values = new Comparable<?>[in.readVInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (Comparable<?>) in.readGenericValue();
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(values.length);
+        for (Comparable<?> value : values) {
+            out.writeGenericValue(value);
+        }
+    }
+
+    Comparable<?>[] values() {
+        return values;
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    Comparable<?> get(int pos) {
+        return values[pos];
+    }
+
+    /**
+     * Compares keys value by value, <code>reverseMuls</code> holds <code>1</code> for the sources that sort their values in
+     * ascending order and <code>-1</code> for the descending ones.
+     */
+    static Comparator<CompositeKey> comparator(int[] reverseMuls) {
+        return (k1, k2) -> {
+            assert k1.size() == reverseMuls.length && k2.size() == reverseMuls.length;
+            for (int i = 0; i < reverseMuls.length; i++) {
+                final int cmp = compareValues(k1.values[i], k2.values[i]);
+                if (cmp != 0) {
+                    return cmp * reverseMuls[i];
+                }
+            }
+            return 0;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Comparable<?> v1, Comparable<?> v2) {
+        if (v1.getClass() == v2.getClass()) {
+            return ((Comparable<Object>) v1).compareTo(v2);
+        }
+        // the same field can be mapped as a long in an index and as a double in another one
+        if (v1 instanceof Number && v2 instanceof Number) {
+            return Double.compare(((Number) v1).doubleValue(), ((Number) v2).doubleValue());
+        }
+        throw new IllegalArgumentException("Cannot compare the values [" + v1 + "] and [" + v2
+                + "] of a composite key, the types [" + v1.getClass().getSimpleName() + "] and ["
+                + v2.getClass().getSimpleName() + "] are incompatible");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CompositeKey that = (CompositeKey) o;
+        return Arrays.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.elasticsearch.common.lucene.ScorerAware;
+import org.elasticsearch.index.fielddata.SortedBinaryDocValues;
+import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * The shard level view of a {@link CompositeValuesSourceBuilder}: reads the distinct values of every document in a
+ * segment, in their natural order.
+ */
+abstract class CompositeValuesSource {
+
+    /**
+     * The values of a source in a segment.
+     */
+    abstract static class LeafValues implements ScorerAware {
+        /**
+         * Loads the distinct values of <code>doc</code> and returns their number.
+         */
+        abstract int setDocument(int doc);
+
+        /**
+         * Returns the value at <code>index</code> of the current document. The returned value can be reused for the next
+         * document and must be copied with {@link CompositeValuesSource#copy(Comparable)} if it needs to be kept.
+         */
+        abstract Comparable<?> valueAt(int index);
+
+        @Override
+        public void setScorer(Scorer scorer) {
+        }
+    }
+
+    private static final LeafValues EMPTY = new LeafValues() {
+        @Override
+        int setDocument(int doc) {
+            return 0;
+        }
+
+        @Override
+        Comparable<?> valueAt(int index) {
+            throw new IndexOutOfBoundsException();
+        }
+    };
+
+    protected final String name;
+    protected final DocValueFormat format;
+    protected final int reverseMul;
+
+    CompositeValuesSource(String name, DocValueFormat format, int reverseMul) {
+        this.name = name;
+        this.format = format;
+        this.reverseMul = reverseMul;
+    }
+
+    String name() {
+        return name;
+    }
+
+    DocValueFormat format() {
+        return format;
+    }
+
+    /**
+     * Returns <code>1</code> if the values are sorted in ascending order and <code>-1</code> otherwise.
+     */
+    int reverseMul() {
+        return reverseMul;
+    }
+
+    abstract LeafValues getLeafValues(LeafReaderContext context) throws IOException;
+
+    abstract boolean needsScores();
+
+    /**
+     * Converts a value of the <code>after</code> key of the request, which is formatted like the keys of the response.
+     */
+    abstract Comparable<?> parseAfter(Object value, Callable<Long> now);
+
+    /**
+     * Returns a copy of a value returned by {@link LeafValues#valueAt(int)} that can be kept across documents.
+     */
+    Comparable<?> copy(Comparable<?> value) {
+        return value;
+    }
+
+    /**
+     * Values of a {@link ValuesSource.Bytes}, the composite values are {@link BytesRef}s.
+     */
+    static final class Bytes extends CompositeValuesSource {
+        private final ValuesSource.Bytes valuesSource;
+
+        Bytes(String name, ValuesSource.Bytes valuesSource, DocValueFormat format, int reverseMul) {
+            super(name, format, reverseMul);
+            this.valuesSource = valuesSource;
+        }
+
+        @Override
+        LeafValues getLeafValues(LeafReaderContext context) throws IOException {
+            if (valuesSource == null) {
+                return EMPTY;
+            }
+            final SortedBinaryDocValues values = valuesSource.bytesValues(context);
+            return new LeafValues() {
+                // the doc values can reuse the bytes of a value when the next one is read
+                private BytesRefBuilder[] current = new BytesRefBuilder[1];
+                private int count;
+
+                @Override
+                int setDocument(int doc) {
+                    values.setDocument(doc);
+                    count = 0;
+                    for (int i = 0; i < values.count(); i++) {
+                        final BytesRef value = values.valueAt(i);
+                        if (count > 0 && current[count - 1].get().equals(value)) {
+                            continue;
+                        }
+                        if (count == current.length) {
+                            final BytesRefBuilder[] newCurrent = new BytesRefBuilder[ArrayUtil.oversize(count + 1, 1)];
+                            System.arraycopy(current, 0, newCurrent, 0, count);
+                            current = newCurrent;
+                        }
+                        if (current[count] == null) {
+                            current[count] = new BytesRefBuilder();
+                        }
+                        current[count++].copyBytes(value);
+                    }
+                    return count;
+                }
+
+                @Override
+                Comparable<?> valueAt(int index) {
+                    assert index < count;
+                    return current[index].get();
+                }
+
+                @Override
+                public void setScorer(Scorer scorer) {
+                    if (values instanceof ScorerAware) {
+                        ((ScorerAware) values).setScorer(scorer);
+                    }
+                }
+            };
+        }
+
+        @Override
+        boolean needsScores() {
+            return valuesSource != null && valuesSource.needsScores();
+        }
+
+        @Override
+        Comparable<?> parseAfter(Object value, Callable<Long> now) {
+            return format.parseBytesRef(value.toString());
+        }
+
+        @Override
+        Comparable<?> copy(Comparable<?> value) {
+            return BytesRef.deepCopyOf((BytesRef) value);
+        }
+    }
+
+    /**
+     * Values of a {@link ValuesSource.Numeric} read as longs, optionally rounded. The composite values are {@link Long}s.
+     */
+    static final class Longs extends CompositeValuesSource {
+        private final ValuesSource.Numeric valuesSource;
+        private final LongUnaryOperator rounding;
+
+        /**
+         * @param rounding rounds the values of the documents, it must preserve their order
+         */
+        Longs(String name, ValuesSource.Numeric valuesSource, LongUnaryOperator rounding, DocValueFormat format, int reverseMul) {
+            super(name, format, reverseMul);
+            this.valuesSource = valuesSource;
+            this.rounding = rounding;
+        }
+
+        @Override
+        LeafValues getLeafValues(LeafReaderContext context) throws IOException {
+            if (valuesSource == null) {
+                return EMPTY;
+            }
+            final SortedNumericDocValues values = valuesSource.longValues(context);
+            return new LeafValues() {
+                private long[] current = new long[1];
+                private int count;
+
+                @Override
+                int setDocument(int doc) {
+                    values.setDocument(doc);
+                    count = 0;
+                    current = ArrayUtil.grow(current, values.count());
+                    for (int i = 0; i < values.count(); i++) {
+                        final long value = rounding.applyAsLong(values.valueAt(i));
+                        if (count == 0 || current[count - 1] != value) {
+                            current[count++] = value;
+                        }
+                    }
+                    return count;
+                }
+
+                @Override
+                Comparable<?> valueAt(int index) {
+                    assert index < count;
+                    return current[index];
+                }
+
+                @Override
+                public void setScorer(Scorer scorer) {
+                    if (values instanceof ScorerAware) {
+                        ((ScorerAware) values).setScorer(scorer);
+                    }
+                }
+            };
+        }
+
+        @Override
+        boolean needsScores() {
+            return valuesSource != null && valuesSource.needsScores();
+        }
+
+        @Override
+        Comparable<?> parseAfter(Object value, Callable<Long> now) {
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return format.parseLong(value.toString(), false, now);
+        }
+    }
+
+    /**
+     * Values of a floating point {@link ValuesSource.Numeric}, the composite values are {@link Double}s.
+     */
+    static final class Doubles extends CompositeValuesSource {
+        private final ValuesSource.Numeric valuesSource;
+
+        Doubles(String name, ValuesSource.Numeric valuesSource, DocValueFormat format, int reverseMul) {
+            super(name, format, reverseMul);
+            this.valuesSource = valuesSource;
+        }
+
+        @Override
+        LeafValues getLeafValues(LeafReaderContext context) throws IOException {
+            if (valuesSource == null) {
+                return EMPTY;
+            }
+            final SortedNumericDoubleValues values = valuesSource.doubleValues(context);
+            return new LeafValues() {
+                private double[] current = new double[1];
+                private int count;
+
+                @Override
+                int setDocument(int doc) {
+                    values.setDocument(doc);
+                    count = 0;
+                    current = ArrayUtil.grow(current, values.count());
+                    for (int i = 0; i < values.count(); i++) {
+                        final double value = values.valueAt(i);
+                        if (count == 0 || Double.compare(current[count - 1], value) != 0) {
+                            current[count++] = value;
+                        }
+                    }
+                    return count;
+                }
+
+                @Override
+                Comparable<?> valueAt(int index) {
+                    assert index < count;
+                    return current[index];
+                }
+
+                @Override
+                public void setScorer(Scorer scorer) {
+                    if (values instanceof ScorerAware) {
+                        ((ScorerAware) values).setScorer(scorer);
+                    }
+                }
+            };
+        }
+
+        @Override
+        boolean needsScores() {
+            return valuesSource != null && valuesSource.needsScores();
+        }
+
+        @Override
+        Comparable<?> parseAfter(Object value, Callable<Long> now) {
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return format.parseDouble(value.toString(), false, now);
+        }
+    }
+}
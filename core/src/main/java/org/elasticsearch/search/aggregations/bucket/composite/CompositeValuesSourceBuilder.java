@@ -0,0 +1,389 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexGeoPointFieldData;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptContext;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.FieldContext;
+import org.elasticsearch.search.aggregations.support.ValueType;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.aggregations.support.ValuesSourceType;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.sort.SortOrder;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Objects;
+
+/**
+ * A source of values for the {@link CompositeAggregationBuilder}, every source produces one value of the composite key
+ * of the buckets.
+ */
+public abstract class CompositeValuesSourceBuilder<AB extends CompositeValuesSourceBuilder<AB>> implements Writeable, ToXContent {
+    static final ParseField FIELD_FIELD = new ParseField("field");
+    static final ParseField SCRIPT_FIELD = new ParseField("script");
+    static final ParseField VALUE_TYPE_FIELD = new ParseField("value_type");
+    static final ParseField ORDER_FIELD = new ParseField("order");
+    static final ParseField FORMAT_FIELD = new ParseField("format");
+
+    protected final String name;
+    private String field = null;
+    private Script script = null;
+    private ValueType valueType = null;
+    private SortOrder order = SortOrder.ASC;
+    private String format = null;
+
+    CompositeValuesSourceBuilder(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("[name] must not be null");
+        }
+        this.name = name;
+    }
+
+    CompositeValuesSourceBuilder(StreamInput in) throws IOException {
+        this.name = in.readString();
+        this.field = in.readOptionalString();
+        if (in.readBoolean()) {
+            this.script = new Script(in);
+        }
+        if (in.readBoolean()) {
+            this.valueType = ValueType.readFromStream(in);
+        }
+        this.order = SortOrder.readFromStream(in);
+        this.format = in.readOptionalString();
+    }
+
+    @Override
+    public final void writeTo(StreamOutput out) throws IOException {
+        out.writeString(name);
+        out.writeOptionalString(field);
+        boolean hasScript = script != null;
+        out.writeBoolean(hasScript);
+        if (hasScript) {
+            script.writeTo(out);
+        }
+        boolean hasValueType = valueType != null;
+        out.writeBoolean(hasValueType);
+        if (hasValueType) {
+            valueType.writeTo(out);
+        }
+        order.writeTo(out);
+        out.writeOptionalString(format);
+        innerWriteTo(out);
+    }
+
+    /**
+     * Write subclass's state to the stream.
+     */
+    protected abstract void innerWriteTo(StreamOutput out) throws IOException;
+
+    /**
+     * The name under which the source is parsed and serialized.
+     */
+    abstract String type();
+
+    @Override
+    public final XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.startObject(name);
+        builder.startObject(type());
+        if (field != null) {
+            builder.field(FIELD_FIELD.getPreferredName(), field);
+        }
+        if (script != null) {
+            builder.field(SCRIPT_FIELD.getPreferredName(), script);
+        }
+        if (valueType != null) {
+            builder.field(VALUE_TYPE_FIELD.getPreferredName(), valueType.getPreferredName());
+        }
+        builder.field(ORDER_FIELD.getPreferredName(), order);
+        if (format != null) {
+            builder.field(FORMAT_FIELD.getPreferredName(), format);
+        }
+        doXContentBody(builder, params);
+        builder.endObject();
+        builder.endObject();
+        builder.endObject();
+        return builder;
+    }
+
+    protected abstract void doXContentBody(XContentBuilder builder, Params params) throws IOException;
+
+    /**
+     * Parses the body of a source, <code>builder</code> is filled with the options that are common to all sources and
+     * <code>optionParser</code> is called for the other ones.
+     */
+    protected static <AB extends CompositeValuesSourceBuilder<AB>> AB parseSource(AB builder, QueryParseContext context,
+                                                                               OptionParser optionParser) throws IOException {
+        final XContentParser parser = context.parser();
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (context.getParseFieldMatcher().match(currentFieldName, SCRIPT_FIELD)) {
+                builder.script(Script.parse(parser, context.getParseFieldMatcher()));
+            } else if (token == XContentParser.Token.VALUE_STRING
+                    && context.getParseFieldMatcher().match(currentFieldName, FIELD_FIELD)) {
+                builder.field(parser.text());
+            } else if (token == XContentParser.Token.VALUE_STRING
+                    && context.getParseFieldMatcher().match(currentFieldName, VALUE_TYPE_FIELD)) {
+                builder.valueType(ValueType.resolveForScript(parser.text()));
+            } else if (token == XContentParser.Token.VALUE_STRING
+                    && context.getParseFieldMatcher().match(currentFieldName, ORDER_FIELD)) {
+                builder.order(SortOrder.fromString(parser.text()));
+            } else if (token == XContentParser.Token.VALUE_STRING
+                    && context.getParseFieldMatcher().match(currentFieldName, FORMAT_FIELD)) {
+                builder.format(parser.text());
+            } else if (optionParser.parse(currentFieldName, token, parser) == false) {
+                throw new ParsingException(parser.getTokenLocation(),
+                        "Unknown key for a " + token + " in [" + builder.name() + "]: [" + currentFieldName + "].");
+            }
+        }
+        if (builder.field() == null && builder.script() == null) {
+            throw new ParsingException(parser.getTokenLocation(),
+                    "Required one of fields [" + FIELD_FIELD.getPreferredName() + ", " + SCRIPT_FIELD.getPreferredName()
+                            + "] in [" + builder.name() + "]");
+        }
+        return builder;
+    }
+
+    /**
+     * Parses an option that is specific to a type of source.
+     */
+    @FunctionalInterface
+    protected interface OptionParser {
+        /**
+         * Returns <code>false</code> if the option is unknown.
+         */
+        boolean parse(String currentFieldName, XContentParser.Token token, XContentParser parser) throws IOException;
+    }
+
+    /**
+     * The name of the source, which is also the key of its values in the composite key.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Sets the field to use for this source.
+     */
+    @SuppressWarnings("unchecked")
+    public AB field(String field) {
+        if (field == null) {
+            throw new IllegalArgumentException("[field] must not be null: [" + name + "]");
+        }
+        this.field = field;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the field to use for this source.
+     */
+    public String field() {
+        return field;
+    }
+
+    /**
+     * Sets the script to use for this source.
+     */
+    @SuppressWarnings("unchecked")
+    public AB script(Script script) {
+        if (script == null) {
+            throw new IllegalArgumentException("[script] must not be null: [" + name + "]");
+        }
+        this.script = script;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the script to use for this source.
+     */
+    public Script script() {
+        return script;
+    }
+
+    /**
+     * Sets the {@link ValueType} for the values produced by the script of this source.
+     */
+    @SuppressWarnings("unchecked")
+    public AB valueType(ValueType valueType) {
+        if (valueType == null) {
+            throw new IllegalArgumentException("[valueType] must not be null: [" + name + "]");
+        }
+        this.valueType = valueType;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the {@link ValueType} for the values produced by the script of this source.
+     */
+    public ValueType valueType() {
+        return valueType;
+    }
+
+    /**
+     * Sets the order of the values of this source.
+     */
+    @SuppressWarnings("unchecked")
+    public AB order(SortOrder order) {
+        if (order == null) {
+            throw new IllegalArgumentException("[order] must not be null: [" + name + "]");
+        }
+        this.order = order;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the order of the values of this source.
+     */
+    public SortOrder order() {
+        return order;
+    }
+
+    /**
+     * Sets the format of the values of this source in the keys of the response. Numbers are returned as is if no format is set.
+     */
+    @SuppressWarnings("unchecked")
+    public AB format(String format) {
+        if (format == null) {
+            throw new IllegalArgumentException("[format] must not be null: [" + name + "]");
+        }
+        this.format = format;
+        return (AB) this;
+    }
+
+    /**
+     * Gets the format of the values of this source.
+     */
+    public String format() {
+        return format;
+    }
+
+    /**
+     * The time zone of the values, used to format dates.
+     */
+    protected DateTimeZone timeZone() {
+        return null;
+    }
+
+    /**
+     * The type of values source to use for fields whose type does not force one.
+     */
+    protected abstract ValuesSourceType defaultValuesSourceType();
+
+    /**
+     * Creates the shard level source of values.
+     */
+    final CompositeValuesSource build(AggregationContext context) throws IOException {
+        return innerBuild(context, resolveConfig(context), order == SortOrder.ASC ? 1 : -1);
+    }
+
+    protected abstract CompositeValuesSource innerBuild(AggregationContext context, ValuesSourceConfig<ValuesSource> config,
+                                                         int reverseMul) throws IOException;
+
+    private ValuesSourceConfig<ValuesSource> resolveConfig(AggregationContext context) {
+        final SearchContext searchContext = context.searchContext();
+        final ValuesSourceConfig<ValuesSource> config;
+        final MappedFieldType fieldType = field == null ? null : searchContext.smartNameFieldType(field);
+        if (fieldType == null) {
+            ValuesSourceType valuesSourceType = valueType != null ? valueType.getValuesSourceType() : defaultValuesSourceType();
+            if (valuesSourceType == ValuesSourceType.ANY) {
+                valuesSourceType = ValuesSourceType.BYTES;
+            }
+            config = new ValuesSourceConfig<>(valuesSourceType);
+            config.format(DocValueFormat.RAW);
+            if (field != null) {
+                config.unmapped(true);
+            } else {
+                config.scriptValueType(valueType);
+            }
+        } else {
+            final IndexFieldData<?> indexFieldData = searchContext.fieldData().getForField(fieldType);
+            ValuesSourceType valuesSourceType = defaultValuesSourceType();
+            if (valuesSourceType == ValuesSourceType.ANY) {
+                if (indexFieldData instanceof IndexNumericFieldData) {
+                    valuesSourceType = ValuesSourceType.NUMERIC;
+                } else if (indexFieldData instanceof IndexGeoPointFieldData) {
+                    throw new IllegalArgumentException("Field [" + field + "] of type [" + fieldType.typeName()
+                            + "] is not supported by the source [" + name + "] of type [" + type() + "]");
+                } else {
+                    valuesSourceType = ValuesSourceType.BYTES;
+                }
+            }
+            config = new ValuesSourceConfig<>(valuesSourceType);
+            config.fieldContext(new FieldContext(field, indexFieldData, fieldType));
+            if (valuesSourceType == ValuesSourceType.NUMERIC && format == null) {
+                // numbers are returned as is so that they can be sorted by clients
+                config.format(DocValueFormat.RAW);
+            } else {
+                config.format(fieldType.docValueFormat(format, timeZone()));
+            }
+        }
+        if (script != null) {
+            config.script(searchContext.scriptService().search(searchContext.lookup(), script, ScriptContext.Standard.AGGS,
+                    Collections.emptyMap(), searchContext.getQueryShardContext().getClusterState()));
+        }
+        return config;
+    }
+
+    @Override
+    public final int hashCode() {
+        return Objects.hash(getClass(), name, field, script, valueType, order, format, innerHashCode());
+    }
+
+    protected abstract int innerHashCode();
+
+    @Override
+    public final boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        CompositeValuesSourceBuilder<?> that = (CompositeValuesSourceBuilder<?>) obj;
+        @SuppressWarnings("unchecked")
+        AB other = (AB) obj;
+        return Objects.equals(name, that.name)
+                && Objects.equals(field, that.field)
+                && Objects.equals(script, that.script)
+                && Objects.equals(valueType, that.valueType)
+                && Objects.equals(order, that.order)
+                && Objects.equals(format, that.format)
+                && innerEquals(other);
+    }
+
+    protected abstract boolean innerEquals(AB builder);
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryParseContext;
+
+import java.io.IOException;
+
+/**
+ * Reads, writes and parses the {@link CompositeValuesSourceBuilder}s of a composite aggregation by their type.
+ */
+final class CompositeValuesSourceParserHelper {
+
+    private CompositeValuesSourceParserHelper() {}
+
+    static void writeTo(CompositeValuesSourceBuilder<?> builder, StreamOutput out) throws IOException {
+        out.writeString(builder.type());
+        builder.writeTo(out);
+    }
+
+    static CompositeValuesSourceBuilder<?> readFrom(StreamInput in) throws IOException {
+        final String type = in.readString();
+        switch (type) {
+            case TermsValuesSourceBuilder.TYPE:
+                return new TermsValuesSourceBuilder(in);
+            case HistogramValuesSourceBuilder.TYPE:
+                return new HistogramValuesSourceBuilder(in);
+            case DateHistogramValuesSourceBuilder.TYPE:
+                return new DateHistogramValuesSourceBuilder(in);
+            default:
+                throw new IOException("Unknown composite source type [" + type + "]");
+        }
+    }
+
+    /**
+     * Parses a source of the form <code>{"name": {"type": {...}}}</code>.
+     */
+    static CompositeValuesSourceBuilder<?> fromXContent(QueryParseContext context) throws IOException {
+        final XContentParser parser = context.parser();
+        XContentParser.Token token = parser.currentToken();
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new ParsingException(parser.getTokenLocation(), "Expected [" + XContentParser.Token.START_OBJECT
+                    + "] for a composite source but found [" + token + "]");
+        }
+        token = parser.nextToken();
+        if (token != XContentParser.Token.FIELD_NAME) {
+            throw new ParsingException(parser.getTokenLocation(), "Expected the name of a composite source but found [" + token + "]");
+        }
+        final String name = parser.currentName();
+        token = parser.nextToken();
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new ParsingException(parser.getTokenLocation(), "Expected [" + XContentParser.Token.START_OBJECT
+                    + "] for the composite source [" + name + "] but found [" + token + "]");
+        }
+        token = parser.nextToken();
+        if (token != XContentParser.Token.FIELD_NAME) {
+            throw new ParsingException(parser.getTokenLocation(),
+                    "Expected the type of the composite source [" + name + "] but found [" + token + "]");
+        }
+        final String type = parser.currentName();
+        token = parser.nextToken();
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new ParsingException(parser.getTokenLocation(), "Expected [" + XContentParser.Token.START_OBJECT
+                    + "] for the composite source [" + name + "] but found [" + token + "]");
+        }
+        final CompositeValuesSourceBuilder<?> builder;
+        switch (type) {
+            case TermsValuesSourceBuilder.TYPE:
+                builder = TermsValuesSourceBuilder.parse(name, context);
+                break;
+            case HistogramValuesSourceBuilder.TYPE:
+                builder = HistogramValuesSourceBuilder.parse(name, context);
+                break;
+            case DateHistogramValuesSourceBuilder.TYPE:
+                builder = DateHistogramValuesSourceBuilder.parse(name, context);
+                break;
+            default:
+                throw new ParsingException(parser.getTokenLocation(),
+                    "Unknown type [" + type + "] for the composite source [" + name + "]");
+        }
+        // closes the type and the name objects
+        if (parser.nextToken() != XContentParser.Token.END_OBJECT || parser.nextToken() != XContentParser.Token.END_OBJECT) {
+            throw new ParsingException(parser.getTokenLocation(),
+                    "The composite source [" + name + "] must define exactly one type, found [" + parser.currentToken() + "]");
+        }
+        return builder;
+    }
+}
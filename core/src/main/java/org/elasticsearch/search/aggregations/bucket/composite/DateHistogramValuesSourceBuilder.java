@@ -0,0 +1,229 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.rounding.DateTimeUnit;
+import org.elasticsearch.common.rounding.Rounding;
+import org.elasticsearch.common.rounding.TimeZoneRounding;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregatorFactory;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.aggregations.support.ValuesSourceType;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A {@link CompositeValuesSourceBuilder} that rounds dates down to the start of their interval, like the
+ * <code>date_histogram</code> aggregation.
+ */
+public class DateHistogramValuesSourceBuilder extends CompositeValuesSourceBuilder<DateHistogramValuesSourceBuilder> {
+    static final String TYPE = "date_histogram";
+    static final ParseField INTERVAL_FIELD = new ParseField("interval");
+    static final ParseField TIME_ZONE_FIELD = new ParseField("time_zone");
+
+    private long interval = 0;
+    private DateHistogramInterval dateHistogramInterval;
+    private DateTimeZone timeZone;
+
+    public DateHistogramValuesSourceBuilder(String name) {
+        super(name);
+    }
+
+    /**
+     * Read from a stream.
+     */
+    protected DateHistogramValuesSourceBuilder(StreamInput in) throws IOException {
+        super(in);
+        this.interval = in.readLong();
+        this.dateHistogramInterval = in.readOptionalWriteable(DateHistogramInterval::new);
+        if (in.readBoolean()) {
+            timeZone = DateTimeZone.forID(in.readString());
+        }
+    }
+
+    @Override
+    protected void innerWriteTo(StreamOutput out) throws IOException {
+        out.writeLong(interval);
+        out.writeOptionalWriteable(dateHistogramInterval);
+        boolean hasTimeZone = timeZone != null;
+        out.writeBoolean(hasTimeZone);
+        if (hasTimeZone) {
+            out.writeString(timeZone.getID());
+        }
+    }
+
+    @Override
+    String type() {
+        return TYPE;
+    }
+
+    @Override
+    protected void doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        if (dateHistogramInterval == null) {
+            builder.field(INTERVAL_FIELD.getPreferredName(), interval);
+        } else {
+            builder.field(INTERVAL_FIELD.getPreferredName(), dateHistogramInterval.toString());
+        }
+        if (timeZone != null) {
+            builder.field(TIME_ZONE_FIELD.getPreferredName(), timeZone.getID());
+        }
+    }
+
+    static DateHistogramValuesSourceBuilder parse(String name, QueryParseContext context) throws IOException {
+        final DateHistogramValuesSourceBuilder builder = new DateHistogramValuesSourceBuilder(name);
+        parseSource(builder, context, (currentFieldName, token, parser) -> {
+            if (context.getParseFieldMatcher().match(currentFieldName, INTERVAL_FIELD)) {
+                if (token == XContentParser.Token.VALUE_NUMBER) {
+                    builder.interval(parser.longValue());
+                    return true;
+                } else if (token == XContentParser.Token.VALUE_STRING) {
+                    builder.dateHistogramInterval(new DateHistogramInterval(parser.text()));
+                    return true;
+                }
+            } else if (token == XContentParser.Token.VALUE_STRING
+                    && context.getParseFieldMatcher().match(currentFieldName, TIME_ZONE_FIELD)) {
+                builder.timeZone(DateTimeZone.forID(parser.text()));
+                return true;
+            }
+            return false;
+        });
+        if (builder.interval == 0 && builder.dateHistogramInterval == null) {
+            throw new ParsingException(context.parser().getTokenLocation(),
+                    "Missing required field [" + INTERVAL_FIELD.getPreferredName() + "] for [" + name + "]");
+        }
+        return builder;
+    }
+
+    /**
+     * Sets the interval of the buckets in milliseconds.
+     */
+    public DateHistogramValuesSourceBuilder interval(long interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("[interval] must be 1 or greater for [" + name + "]");
+        }
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * Returns the interval of the buckets in milliseconds, <code>0</code> if the interval is a {@link DateHistogramInterval}.
+     */
+    public long interval() {
+        return interval;
+    }
+
+    /**
+     * Sets the interval of the buckets as a calendar unit or a time value, such as <code>1d</code>.
+     */
+    public DateHistogramValuesSourceBuilder dateHistogramInterval(DateHistogramInterval dateHistogramInterval) {
+        if (dateHistogramInterval == null) {
+            throw new IllegalArgumentException("[dateHistogramInterval] must not be null: [" + name + "]");
+        }
+        this.dateHistogramInterval = dateHistogramInterval;
+        return this;
+    }
+
+    /**
+     * Returns the interval of the buckets as a calendar unit or a time value.
+     */
+    public DateHistogramInterval dateHistogramInterval() {
+        return dateHistogramInterval;
+    }
+
+    /**
+     * Sets the time zone used to round the dates and to format them.
+     */
+    public DateHistogramValuesSourceBuilder timeZone(DateTimeZone timeZone) {
+        if (timeZone == null) {
+            throw new IllegalArgumentException("[timeZone] must not be null: [" + name + "]");
+        }
+        this.timeZone = timeZone;
+        return this;
+    }
+
+    @Override
+    public DateTimeZone timeZone() {
+        return timeZone;
+    }
+
+    private Rounding createRounding() {
+        TimeZoneRounding.Builder tzRoundingBuilder;
+        if (dateHistogramInterval != null) {
+            DateTimeUnit dateTimeUnit = DateHistogramAggregatorFactory.DATE_FIELD_UNITS.get(dateHistogramInterval.toString());
+            if (dateTimeUnit != null) {
+                tzRoundingBuilder = TimeZoneRounding.builder(dateTimeUnit);
+            } else {
+                // the interval is a time value?
+                tzRoundingBuilder = TimeZoneRounding.builder(
+                        TimeValue.parseTimeValue(dateHistogramInterval.toString(), null, getClass().getSimpleName() + ".interval"));
+            }
+        } else {
+            // the interval is an integer time value in millis?
+            tzRoundingBuilder = TimeZoneRounding.builder(TimeValue.timeValueMillis(interval));
+        }
+        if (timeZone != null) {
+            tzRoundingBuilder.timeZone(timeZone);
+        }
+        return tzRoundingBuilder.build();
+    }
+
+    @Override
+    protected ValuesSourceType defaultValuesSourceType() {
+        return ValuesSourceType.NUMERIC;
+    }
+
+    @Override
+    protected CompositeValuesSource innerBuild(AggregationContext context, ValuesSourceConfig<ValuesSource> config,
+                                                int reverseMul) throws IOException {
+        if (config.valueSourceType() != ValuesSourceType.NUMERIC) {
+            throw new IllegalArgumentException("The source [" + name + "] of type [" + TYPE + "] requires numeric values");
+        }
+        if (interval < 1 && dateHistogramInterval == null) {
+            throw new IllegalArgumentException("[interval] must be 1 or greater for [" + name + "]");
+        }
+        final Rounding rounding = createRounding();
+        final ValuesSource.Numeric valuesSource = (ValuesSource.Numeric) context.valuesSource(config, context.searchContext());
+        return new CompositeValuesSource.Longs(name, valuesSource, rounding::round, config.format(), reverseMul);
+    }
+
+    @Override
+    protected int innerHashCode() {
+        return Objects.hash(interval, dateHistogramInterval, timeZone);
+    }
+
+    @Override
+    protected boolean innerEquals(DateHistogramValuesSourceBuilder builder) {
+        return interval == builder.interval
+                && Objects.equals(dateHistogramInterval, builder.dateHistogramInterval)
+                && Objects.equals(timeZone, builder.timeZone);
+    }
+}
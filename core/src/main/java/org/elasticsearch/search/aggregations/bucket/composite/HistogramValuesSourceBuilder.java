@@ -0,0 +1,138 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.rounding.Rounding;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.aggregations.support.ValuesSourceType;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A {@link CompositeValuesSourceBuilder} that rounds numeric values down to the closest multiple of an interval, like the
+ * <code>histogram</code> aggregation.
+ */
+public class HistogramValuesSourceBuilder extends CompositeValuesSourceBuilder<HistogramValuesSourceBuilder> {
+    static final String TYPE = "histogram";
+    static final ParseField INTERVAL_FIELD = new ParseField("interval");
+
+    private long interval = 0;
+
+    public HistogramValuesSourceBuilder(String name) {
+        super(name);
+    }
+
+    /**
+     * Read from a stream.
+     */
+    protected HistogramValuesSourceBuilder(StreamInput in) throws IOException {
+        super(in);
+        this.interval = in.readVLong();
+    }
+
+    @Override
+    protected void innerWriteTo(StreamOutput out) throws IOException {
+        out.writeVLong(interval);
+    }
+
+    @Override
+    String type() {
+        return TYPE;
+    }
+
+    @Override
+    protected void doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        builder.field(INTERVAL_FIELD.getPreferredName(), interval);
+    }
+
+    static HistogramValuesSourceBuilder parse(String name, QueryParseContext context) throws IOException {
+        final HistogramValuesSourceBuilder builder = new HistogramValuesSourceBuilder(name);
+        parseSource(builder, context, (currentFieldName, token, parser) -> {
+            if (token == XContentParser.Token.VALUE_NUMBER
+                    && context.getParseFieldMatcher().match(currentFieldName, INTERVAL_FIELD)) {
+                builder.interval(parser.longValue());
+                return true;
+            }
+            return false;
+        });
+        if (builder.interval == 0) {
+            throw new ParsingException(context.parser().getTokenLocation(),
+                    "Missing required field [" + INTERVAL_FIELD.getPreferredName() + "] for [" + name + "]");
+        }
+        return builder;
+    }
+
+    /**
+     * Sets the interval on which to round the values.
+     */
+    public HistogramValuesSourceBuilder interval(long interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("[interval] must be 1 or greater for [" + name + "]");
+        }
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * Returns the interval on which the values are rounded.
+     */
+    public long interval() {
+        return interval;
+    }
+
+    @Override
+    protected ValuesSourceType defaultValuesSourceType() {
+        return ValuesSourceType.NUMERIC;
+    }
+
+    @Override
+    protected CompositeValuesSource innerBuild(AggregationContext context, ValuesSourceConfig<ValuesSource> config,
+                                                int reverseMul) throws IOException {
+        if (config.valueSourceType() != ValuesSourceType.NUMERIC) {
+            throw new IllegalArgumentException("The source [" + name + "] of type [" + TYPE + "] requires numeric values");
+        }
+        if (interval < 1) {
+            throw new IllegalArgumentException("[interval] must be 1 or greater for [" + name + "]");
+        }
+        final Rounding rounding = new Rounding.Interval(interval);
+        final ValuesSource.Numeric valuesSource = (ValuesSource.Numeric) context.valuesSource(config, context.searchContext());
+        return new CompositeValuesSource.Longs(name, valuesSource, rounding::round, config.format(), reverseMul);
+    }
+
+    @Override
+    protected int innerHashCode() {
+        return Objects.hash(interval);
+    }
+
+    @Override
+    protected boolean innerEquals(HistogramValuesSourceBuilder builder) {
+        return interval == builder.interval;
+    }
+}
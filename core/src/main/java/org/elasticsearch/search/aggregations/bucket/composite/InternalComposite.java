@@ -0,0 +1,329 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.AggregationStreams;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.InternalMultiBucketAggregation;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a {@link CompositeAggregationBuilder}. Every shard returns its first <code>size</code> buckets in the
+ * order of their composite key, so merging the sorted shard buckets and stopping after <code>size</code> distinct keys
+ * gives exact buckets and doc counts.
+ */
+public class InternalComposite extends InternalMultiBucketAggregation<InternalComposite, InternalComposite.InternalBucket>
+        implements CompositeAggregation {
+
+    public static final Type TYPE = new Type("composite");
+
+    static final ParseField AFTER_KEY_FIELD = new ParseField("after_key");
+
+    private static final AggregationStreams.Stream STREAM = new AggregationStreams.Stream() {
+        @Override
+        public InternalComposite readResult(StreamInput in) throws IOException {
+            InternalComposite composite = new InternalComposite();
+            composite.readFrom(in);
+            return composite;
+        }
+    };
+
+    public static void registerStream() {
+        AggregationStreams.registerStream(STREAM, TYPE.stream());
+    }
+
+    public static class InternalBucket extends InternalMultiBucketAggregation.InternalBucket implements CompositeAggregation.Bucket {
+
+        private final List<String> sourceNames;
+        private final List<DocValueFormat> formats;
+        private CompositeKey key;
+        private long docCount;
+        private InternalAggregations aggregations;
+
+        private InternalBucket(List<String> sourceNames, List<DocValueFormat> formats) {
+            // for serialization
+            this.sourceNames = sourceNames;
+            this.formats = formats;
+        }
+
+        InternalBucket(List<String> sourceNames, List<DocValueFormat> formats, CompositeKey key, long docCount,
+                       InternalAggregations aggregations) {
+            this.sourceNames = sourceNames;
+            this.formats = formats;
+            this.key = key;
+            this.docCount = docCount;
+            this.aggregations = aggregations;
+        }
+
+        CompositeKey getRawKey() {
+            return key;
+        }
+
+        @Override
+        public Map<String, Object> getKey() {
+            return formatKey(sourceNames, formats, key);
+        }
+
+        @Override
+        public String getKeyAsString() {
+            return getKey().toString();
+        }
+
+        @Override
+        public long getDocCount() {
+            return docCount;
+        }
+
+        @Override
+        public Aggregations getAggregations() {
+            return aggregations;
+        }
+
+        InternalBucket reduce(List<InternalBucket> buckets, ReduceContext reduceContext) {
+            long docCount = 0;
+            List<InternalAggregations> aggregationsList = new ArrayList<>(buckets.size());
+            for (InternalBucket bucket : buckets) {
+                docCount += bucket.docCount;
+                aggregationsList.add(bucket.aggregations);
+            }
+            InternalAggregations aggs = InternalAggregations.reduce(aggregationsList, reduceContext);
+            return new InternalBucket(sourceNames, formats, key, docCount, aggs);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field(CommonFields.KEY, getKey());
+            builder.field(CommonFields.DOC_COUNT, docCount);
+            aggregations.toXContentInternal(builder, params);
+            builder.endObject();
+            return builder;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            key = new CompositeKey(in);
+            docCount = in.readVLong();
+            aggregations = InternalAggregations.readAggregations(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            key.writeTo(out);
+            out.writeVLong(docCount);
+            aggregations.writeTo(out);
+        }
+    }
+
+    private int size;
+    private List<String> sourceNames;
+    private List<DocValueFormat> formats;
+    private int[] reverseMuls;
+    private List<InternalBucket> buckets;
+
+    InternalComposite() {} // for serialization
+
+    InternalComposite(String name, int size, List<String> sourceNames, List<DocValueFormat> formats, int[] reverseMuls,
+                      List<InternalBucket> buckets, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) {
+        super(name, pipelineAggregators, metaData);
+        this.size = size;
+        this.sourceNames = sourceNames;
+        this.formats = formats;
+        this.reverseMuls = reverseMuls;
+        this.buckets = buckets;
+    }
+
+    @Override
+    public Type type() {
+        return TYPE;
+    }
+
+    @Override
+    public InternalComposite create(List<InternalBucket> buckets) {
+        return new InternalComposite(name, size, sourceNames, formats, reverseMuls, buckets, pipelineAggregators(), getMetaData());
+    }
+
+    @Override
+    public InternalBucket createBucket(InternalAggregations aggregations, InternalBucket prototype) {
+        return new InternalBucket(prototype.sourceNames, prototype.formats, prototype.key, prototype.docCount, aggregations);
+    }
+
+    @Override
+    public List<InternalBucket> getBuckets() {
+        return buckets;
+    }
+
+    @Override
+    public Map<String, Object> afterKey() {
+        if (buckets.isEmpty()) {
+            return null;
+        }
+        return buckets.get(buckets.size() - 1).getKey();
+    }
+
+    private static class BucketIterator {
+        final List<InternalBucket> buckets;
+        int index = 0;
+
+        BucketIterator(List<InternalBucket> buckets) {
+            this.buckets = buckets;
+        }
+
+        InternalBucket current() {
+            return buckets.get(index);
+        }
+    }
+
+    @Override
+    public InternalAggregation doReduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
+        final Comparator<CompositeKey> comparator = CompositeKey.comparator(reverseMuls);
+        final PriorityQueue<BucketIterator> pq = new PriorityQueue<BucketIterator>(aggregations.size()) {
+            @Override
+            protected boolean lessThan(BucketIterator a, BucketIterator b) {
+                return comparator.compare(a.current().key, b.current().key) < 0;
+            }
+        };
+        for (InternalAggregation aggregation : aggregations) {
+            InternalComposite composite = (InternalComposite) aggregation;
+            if (composite.buckets.isEmpty() == false) {
+                pq.add(new BucketIterator(composite.buckets));
+            }
+        }
+
+        final List<InternalBucket> result = new ArrayList<>();
+        final List<InternalBucket> sameKeyBuckets = new ArrayList<>();
+        CompositeKey lastKey = null;
+        while (pq.size() > 0) {
+            BucketIterator top = pq.top();
+            if (lastKey != null && comparator.compare(top.current().key, lastKey) != 0) {
+                result.add(sameKeyBuckets.get(0).reduce(sameKeyBuckets, reduceContext));
+                sameKeyBuckets.clear();
+                if (result.size() >= size) {
+                    break;
+                }
+            }
+            lastKey = top.current().key;
+            sameKeyBuckets.add(top.current());
+            if (++top.index < top.buckets.size()) {
+                pq.updateTop();
+            } else {
+                pq.pop();
+            }
+        }
+        if (sameKeyBuckets.isEmpty() == false && result.size() < size) {
+            result.add(sameKeyBuckets.get(0).reduce(sameKeyBuckets, reduceContext));
+        }
+        return new InternalComposite(name, size, sourceNames, formats, reverseMuls, result, pipelineAggregators(), getMetaData());
+    }
+
+    @Override
+    protected void doReadFrom(StreamInput in) throws IOException {
+        size = in.readVInt();
+        sourceNames = Collections.unmodifiableList(Arrays.asList(in.readStringArray()));
+        int numFormats = in.readVInt();
+        List<DocValueFormat> formats = new ArrayList<>(numFormats);
+        for (int i = 0; i < numFormats; i++) {
+            formats.add(in.readNamedWriteable(DocValueFormat.class));
+        }
+        this.formats = Collections.unmodifiableList(formats);
+        reverseMuls = in.readIntArray();
+        int numBuckets = in.readVInt();
+        List<InternalBucket> buckets = new ArrayList<>(numBuckets);
+        for (int i = 0; i < numBuckets; i++) {
+            InternalBucket bucket = new InternalBucket(sourceNames, this.formats);
+            bucket.readFrom(in);
+            buckets.add(bucket);
+        }
+        this.buckets = buckets;
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeVInt(size);
+        out.writeStringArray(sourceNames.toArray(new String[sourceNames.size()]));
+        out.writeVInt(formats.size());
+        for (DocValueFormat format : formats) {
+            out.writeNamedWriteable(format);
+        }
+        out.writeIntArray(reverseMuls);
+        out.writeVInt(buckets.size());
+        for (InternalBucket bucket : buckets) {
+            bucket.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        Map<String, Object> afterKey = afterKey();
+        if (afterKey != null) {
+            builder.field(AFTER_KEY_FIELD.getPreferredName(), afterKey);
+        }
+        builder.startArray(CommonFields.BUCKETS);
+        for (InternalBucket bucket : buckets) {
+            bucket.toXContent(builder, params);
+        }
+        builder.endArray();
+        return builder;
+    }
+
+    /**
+     * Formats the values of a composite key like the keys of the response: strings are formatted with the format of their
+     * source, numbers are returned as is unless their source defines a format.
+     */
+    static Map<String, Object> formatKey(List<String> sourceNames, List<DocValueFormat> formats, CompositeKey key) {
+        final Map<String, Object> formatted = new LinkedHashMap<>(key.size());
+        for (int i = 0; i < key.size(); i++) {
+            formatted.put(sourceNames.get(i), formatValue(formats.get(i), key.get(i)));
+        }
+        return formatted;
+    }
+
+    private static Object formatValue(DocValueFormat format, Comparable<?> value) {
+        if (value instanceof BytesRef) {
+            return format.format((BytesRef) value);
+        } else if (format == DocValueFormat.RAW) {
+            return value;
+        } else if (value instanceof Long) {
+            return format.format((Long) value);
+        } else if (value instanceof Double) {
+            return format.format((Double) value);
+        } else {
+            throw new IllegalStateException("Unexpected value [" + value + "] in a composite key");
+        }
+    }
+}
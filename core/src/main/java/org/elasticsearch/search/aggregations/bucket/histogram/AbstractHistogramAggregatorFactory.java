@@ -47,6 +47,8 @@ public abstract class AbstractHistogramAggregatorFactory<AF extends AbstractHist
     protected final long minDocCount;
     protected final ExtendedBounds extendedBounds;
     private final InternalHistogram.Factory<?> histogramFactory;
+    // computed when the first aggregator of a mapped field is created
+    private ShardRounding shardRounding;
 
     public AbstractHistogramAggregatorFactory(String name, Type type, ValuesSourceConfig<Numeric> config, long interval, long offset,
             InternalOrder order, boolean keyed, long minDocCount, ExtendedBounds extendedBounds,
@@ -70,8 +72,8 @@ public abstract class AbstractHistogramAggregatorFactory<AF extends AbstractHist
     protected Aggregator createUnmapped(Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
             throws IOException {
         Rounding rounding = createRounding();
-        return new HistogramAggregator(name, factories, rounding, order, keyed, minDocCount, extendedBounds, null, config.format(),
-                histogramFactory, context, parent, pipelineAggregators, metaData);
+        return new HistogramAggregator(name, factories, rounding, rounding.prepare(Long.MIN_VALUE, Long.MAX_VALUE), order, keyed,
+                minDocCount, extendedBounds, null, null, config.format(), histogramFactory, context, parent, pipelineAggregators, metaData);
     }
 
     protected Rounding createRounding() {
@@ -92,20 +94,46 @@ public abstract class AbstractHistogramAggregatorFactory<AF extends AbstractHist
         if (collectsFromSingleBucket == false) {
             return asMultiBucketAggregator(this, context, parent);
         }
-        Rounding rounding = createRounding();
-        // we need to round the bounds given by the user and we have to do it
-        // for every aggregator we create
-        // as the rounding is not necessarily an idempotent operation.
-        // todo we need to think of a better structure to the factory/agtor
-        // code so we won't need to do that
-        ExtendedBounds roundedBounds = null;
-        if (extendedBounds != null) {
-            // we need to process & validate here using the parser
-            extendedBounds.processAndValidate(name, context.searchContext(), config.format());
-            roundedBounds = extendedBounds.round(rounding);
+        if (shardRounding == null) {
+            // aggregators are created per parent bucket, so everything that only depends on the shard is computed once
+            shardRounding = new ShardRounding();
+        }
+        return new HistogramAggregator(name, factories, shardRounding.rounding, shardRounding.preparedRounding, order, keyed,
+                minDocCount, shardRounding.roundedBounds, valuesSource, shardRounding.denseKeyRange, config.format(),
+                histogramFactory, context, parent, pipelineAggregators, metaData);
+    }
+
+    /**
+     * The rounding of this shard and what depends on it: the rounding is prepared for the range of values of the field on this
+     * shard, which might require to compute time zone transitions, and the bucket keys of this range are probed to find out if
+     * they can be looked up in an array.
+     */
+    private final class ShardRounding {
+        final Rounding rounding;
+        final Rounding.Prepared preparedRounding;
+        final ExtendedBounds roundedBounds;
+        final long[] denseKeyRange;
+
+        ShardRounding() throws IOException {
+            long[] bounds = fieldBounds();
+            rounding = createRounding();
+            // tunes the rounding for the range of values of the field on this shard
+            preparedRounding = bounds == null ? rounding.prepare(Long.MIN_VALUE, Long.MAX_VALUE)
+                    : rounding.prepare(bounds[0], bounds[1]);
+            // the bounds given by the user have to be rounded with the rounding of the aggregators
+            ExtendedBounds roundedBounds = null;
+            if (extendedBounds != null) {
+                // we need to process & validate here using the parser
+                extendedBounds.processAndValidate(name, context.searchContext(), config.format());
+                roundedBounds = extendedBounds.round(rounding);
+                if (bounds == null && roundedBounds.min != null && roundedBounds.max != null) {
+                    // the values are likely within the bounds given by the user when the field can't tell
+                    bounds = new long[] { roundedBounds.min, roundedBounds.max };
+                }
+            }
+            this.roundedBounds = roundedBounds;
+            denseKeyRange = bounds == null ? null : HistogramAggregator.denseKeyRange(preparedRounding, bounds[0], bounds[1]);
         }
-        return new HistogramAggregator(name, factories, rounding, order, keyed, minDocCount, roundedBounds, valuesSource,
-                config.format(), histogramFactory, context, parent, pipelineAggregators, metaData);
     }
 
 }
@@ -18,14 +18,16 @@
  */
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
 import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.util.CollectionUtil;
+import org.apache.lucene.util.bkd.BKDWriter;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.inject.internal.Nullable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.rounding.Rounding;
-import org.elasticsearch.common.util.LongHash;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
@@ -33,6 +35,8 @@ import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
 import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
+import org.elasticsearch.search.aggregations.bucket.LongKeyedBucketOrds;
+import org.elasticsearch.search.aggregations.bucket.PrecomputedSegments;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.AggregationContext;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
@@ -52,6 +56,7 @@ public class HistogramAggregator extends BucketsAggregator {
     private final ValuesSource.Numeric valuesSource;
     private final DocValueFormat formatter;
     private final Rounding rounding;
+    private final Rounding.Prepared preparedRounding;
     private final InternalOrder order;
     private final boolean keyed;
 
@@ -59,15 +64,22 @@ public class HistogramAggregator extends BucketsAggregator {
     private final ExtendedBounds extendedBounds;
     private final InternalHistogram.Factory histogramFactory;
 
-    private final LongHash bucketOrds;
+    private final LongKeyedBucketOrds bucketOrds;
 
-    public HistogramAggregator(String name, AggregatorFactories factories, Rounding rounding, InternalOrder order, boolean keyed,
-            long minDocCount, @Nullable ExtendedBounds extendedBounds, @Nullable ValuesSource.Numeric valuesSource,
-            DocValueFormat formatter, InternalHistogram.Factory<?> histogramFactory, AggregationContext aggregationContext,
+    /**
+     * @param preparedRounding <code>rounding</code> prepared for the values of the field on this shard
+     * @param denseKeyRange the range of keys whose ordinals are looked up in an array, see {@link #denseKeyRange}, or
+     *                      <code>null</code> to hash the keys
+     */
+    public HistogramAggregator(String name, AggregatorFactories factories, Rounding rounding, Rounding.Prepared preparedRounding,
+            InternalOrder order, boolean keyed, long minDocCount, @Nullable ExtendedBounds extendedBounds,
+            @Nullable ValuesSource.Numeric valuesSource, @Nullable long[] denseKeyRange, DocValueFormat formatter,
+            InternalHistogram.Factory<?> histogramFactory, AggregationContext aggregationContext,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
 
         super(name, factories, aggregationContext, parent, pipelineAggregators, metaData);
         this.rounding = rounding;
+        this.preparedRounding = preparedRounding;
         this.order = order;
         this.keyed = keyed;
         this.minDocCount = minDocCount;
@@ -76,7 +88,41 @@ public class HistogramAggregator extends BucketsAggregator {
         this.formatter = formatter;
         this.histogramFactory = histogramFactory;
 
-        bucketOrds = new LongHash(1, aggregationContext.bigArrays());
+        bucketOrds = denseKeyRange == null ? LongKeyedBucketOrds.hash(aggregationContext.bigArrays())
+            : LongKeyedBucketOrds.dense(denseKeyRange[0], denseKeyRange[1], denseKeyRange[2], aggregationContext.bigArrays());
+    }
+
+    /**
+     * Returns the minimum key, the maximum key and the step between the keys of the buckets if the ordinals of the buckets can be
+     * looked up in an array indexed by key, otherwise <code>null</code>. This is the case when the keys of the values between
+     * <code>minValue</code> and <code>maxValue</code> are evenly spaced and not too many, which is the case of numeric histograms
+     * and of date histograms with a fixed length interval in a time zone without daylight saving time. This probes up to
+     * {@link LongKeyedBucketOrds#MAX_DENSE_KEYS} roundings, so factories compute it once for all the aggregators they create.
+     */
+    static long[] denseKeyRange(Rounding.Prepared rounding, long minValue, long maxValue) {
+        if (minValue > maxValue || minValue == Long.MIN_VALUE || maxValue == Long.MAX_VALUE) {
+            return null;
+        }
+        final long minKey = rounding.roundKey(minValue);
+        final long maxKey = rounding.roundKey(maxValue);
+        long step = 0;
+        long key = minKey;
+        for (long numKeys = 1; key < maxKey; numKeys++) {
+            if (numKeys >= LongKeyedBucketOrds.MAX_DENSE_KEYS) {
+                return null;
+            }
+            final long nextKey = rounding.roundKey(rounding.nextRoundingValue(rounding.valueForKey(key)));
+            final long delta = nextKey - key;
+            if (nextKey <= key || delta <= 0 || (step != 0 && delta != step)) {
+                return null;
+            }
+            step = delta;
+            key = nextKey;
+        }
+        if (key != maxKey) {
+            return null;
+        }
+        return new long[] { minKey, maxKey, Math.max(1, step) };
     }
 
     @Override
@@ -90,6 +136,9 @@ public class HistogramAggregator extends BucketsAggregator {
         if (valuesSource == null) {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
+        if (precomputeSegment(ctx)) {
+            return LeafBucketCollector.NO_OP_COLLECTOR;
+        }
         final SortedNumericDocValues values = valuesSource.longValues(ctx);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
@@ -101,7 +150,7 @@ public class HistogramAggregator extends BucketsAggregator {
                 long previousKey = Long.MIN_VALUE;
                 for (int i = 0; i < valuesCount; ++i) {
                     long value = values.valueAt(i);
-                    long key = rounding.roundKey(value);
+                    long key = preparedRounding.roundKey(value);
                     assert key >= previousKey;
                     if (key == previousKey) {
                         continue;
@@ -119,12 +168,81 @@ public class HistogramAggregator extends BucketsAggregator {
         };
     }
 
+    /**
+     * Counts the documents of every bucket of the segment with the points of the field when the query matches all documents of the
+     * segment and the field has at most one integral value per document. Returns <code>false</code> if the documents of the segment
+     * must be collected instead, which is also the case when the buckets are so narrow that decoding the values in the cells that
+     * cross their bounds would cost more than collecting.
+     */
+    private boolean precomputeSegment(LeafReaderContext ctx) throws IOException {
+        if (canPrecomputeSegments() == false || (valuesSource instanceof ValuesSource.Numeric.FieldData) == false
+                || valuesSource.isFloatingPoint() || PrecomputedSegments.matchesAllDocs(context.searchContext(), ctx) == false) {
+            return false;
+        }
+        final String field = ((ValuesSource.Numeric.FieldData) valuesSource).fieldName();
+        final FieldInfo info = ctx.reader().getFieldInfos().fieldInfo(field);
+        if (info == null) {
+            // no document of this segment has a value
+            segmentPrecomputed(ctx);
+            return true;
+        }
+        if (PrecomputedSegments.hasIntegralPoints(info) == false) {
+            return false;
+        }
+        final PointValues points = ctx.reader().getPointValues();
+        final int docCount = points.getDocCount(field);
+        if (points.size(field) != docCount) {
+            // some documents have several values
+            return false;
+        }
+        final int bytesPerDim = info.getPointNumBytes();
+        final long min = PrecomputedSegments.decode(points.getMinPackedValue(field), bytesPerDim);
+        final long max = PrecomputedSegments.decode(points.getMaxPackedValue(field), bytesPerDim);
+        final int maxBuckets = docCount / (2 * BKDWriter.DEFAULT_MAX_POINTS_IN_LEAF_NODE);
+
+        // the rounding is monotonic, so the values of a bucket are those between the first value of the bucket and the first value of
+        // the next one
+        final List<long[]> buckets = new ArrayList<>();
+        long key = preparedRounding.roundKey(min);
+        while (true) {
+            if (buckets.size() >= maxBuckets) {
+                return false;
+            }
+            final long start = preparedRounding.valueForKey(key);
+            final long next = preparedRounding.nextRoundingValue(start);
+            final long lower = Math.max(min, start);
+            final long upper = next > max ? max : next - 1;
+            if (upper < lower || preparedRounding.roundKey(lower) != key || preparedRounding.roundKey(upper) != key) {
+                return false;
+            }
+            buckets.add(new long[] { key, lower, upper });
+            if (upper == max) {
+                break;
+            }
+            key = preparedRounding.roundKey(next);
+        }
+
+        for (long[] bucket : buckets) {
+            final int count = PrecomputedSegments.countPoints(points, field, PrecomputedSegments.encode(bucket[1], bytesPerDim),
+                    PrecomputedSegments.encode(bucket[2], bytesPerDim));
+            if (count > 0) {
+                long bucketOrd = bucketOrds.add(bucket[0]);
+                if (bucketOrd < 0) { // already seen
+                    bucketOrd = -1 - bucketOrd;
+                }
+                incrementBucketDocCount(bucketOrd, count);
+            }
+        }
+        segmentPrecomputed(ctx);
+        return true;
+    }
+
     @Override
     public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
         assert owningBucketOrdinal == 0;
         List<InternalHistogram.Bucket> buckets = new ArrayList<>((int) bucketOrds.size());
         for (long i = 0; i < bucketOrds.size(); i++) {
-            buckets.add(histogramFactory.createBucket(rounding.valueForKey(bucketOrds.get(i)), bucketDocCount(i), bucketAggregations(i), keyed, formatter));
+            buckets.add(histogramFactory.createBucket(preparedRounding.valueForKey(bucketOrds.get(i)), bucketDocCount(i), bucketAggregations(i), keyed, formatter));
         }
 
         // the contract of the histogram aggregation is that shards must return buckets ordered by key in ascending order
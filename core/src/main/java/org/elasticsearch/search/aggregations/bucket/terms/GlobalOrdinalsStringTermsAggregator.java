@@ -23,6 +23,7 @@ import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.RandomAccessOrds;
 import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongBitSet;
@@ -41,6 +42,7 @@ import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
+import org.elasticsearch.search.aggregations.bucket.PrecomputedSegments;
 import org.elasticsearch.search.aggregations.bucket.terms.InternalTerms.Bucket;
 import org.elasticsearch.search.aggregations.bucket.terms.support.BucketPriorityQueue;
 import org.elasticsearch.search.aggregations.bucket.terms.support.IncludeExclude;
@@ -92,6 +94,10 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
 
         globalOrds = valuesSource.globalOrdinalsValues(ctx);
 
+        if (precomputeSegment(ctx, globalOrds)) {
+            return LeafBucketCollector.NO_OP_COLLECTOR;
+        }
+
         if (acceptedGlobalOrdinals == null && includeExclude != null) {
             acceptedGlobalOrdinals = includeExclude.acceptedGlobalOrdinals(globalOrds, valuesSource);
         }
@@ -103,6 +109,59 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
         return newCollector(globalOrds, sub);
     }
 
+    /**
+     * Returns the bucket ordinal of a global ordinal, creating the bucket if needed.
+     */
+    protected long addBucketOrd(long globalOrd) {
+        return globalOrd;
+    }
+
+    /**
+     * Computes the doc counts of the terms of the segment from their doc frequencies in the inverted index of the field when the
+     * query matches all documents of the segment. Returns <code>false</code> if the documents of the segment must be collected
+     * instead.
+     */
+    protected final boolean precomputeSegment(LeafReaderContext ctx, RandomAccessOrds globalOrds) throws IOException {
+        if (includeExclude != null || canPrecomputeSegments() == false
+                || (valuesSource instanceof ValuesSource.Bytes.WithOrdinals.FieldData) == false
+                || PrecomputedSegments.matchesAllDocs(context.searchContext(), ctx) == false) {
+            return false;
+        }
+        final String field = ((ValuesSource.Bytes.WithOrdinals.FieldData) valuesSource).fieldName();
+        // the Terms aggregation interface is in scope, the inverted index terms of the field need their qualified name
+        final org.apache.lucene.index.Terms terms = ctx.reader().terms(field);
+        final RandomAccessOrds segmentOrds = valuesSource.ordinalsValues(ctx);
+        if (terms == null) {
+            // the field is either not indexed or has no value in this segment
+            if (segmentOrds.getValueCount() == 0) {
+                segmentPrecomputed(ctx);
+                return true;
+            }
+            return false;
+        }
+        if (terms.size() != segmentOrds.getValueCount()) {
+            return false;
+        }
+        // the terms of the inverted index and of the ordinals are sorted the same way, the ordinal of a term is its position
+        try (IntArray docFreqs = context.bigArrays().newIntArray(segmentOrds.getValueCount(), false)) {
+            final TermsEnum termsEnum = terms.iterator();
+            long segmentOrd = 0;
+            for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next(), ++segmentOrd) {
+                if (term.equals(segmentOrds.lookupOrd(segmentOrd)) == false) {
+                    return false;
+                }
+                docFreqs.set(segmentOrd, termsEnum.docFreq());
+            }
+            final GlobalOrdinalMapping mapping = globalOrds instanceof GlobalOrdinalMapping ? (GlobalOrdinalMapping) globalOrds : null;
+            for (long ord = 0; ord < segmentOrd; ++ord) {
+                final long globalOrd = mapping == null ? ord : mapping.getGlobalOrd(ord);
+                incrementBucketDocCount(addBucketOrd(globalOrd), docFreqs.get(ord));
+            }
+        }
+        segmentPrecomputed(ctx);
+        return true;
+    }
+
     protected LeafBucketCollector newCollector(final RandomAccessOrds ords, final LeafBucketCollector sub) {
         grow(ords.getValueCount());
         final SortedDocValues singleValues = DocValues.unwrapSingleton(ords);
@@ -316,6 +375,12 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
             }
         }
 
+        @Override
+        protected long addBucketOrd(long globalOrd) {
+            final long bucketOrd = bucketOrds.add(globalOrd);
+            return bucketOrd < 0 ? -1 - bucketOrd : bucketOrd;
+        }
+
         @Override
         protected long getBucketOrd(long termOrd) {
             return bucketOrds.find(termOrd);
@@ -389,6 +454,10 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
             }
 
             globalOrds = valuesSource.globalOrdinalsValues(ctx);
+            if (precomputeSegment(ctx, globalOrds)) {
+                segmentOrds = null;
+                return LeafBucketCollector.NO_OP_COLLECTOR;
+            }
             segmentOrds = valuesSource.ordinalsValues(ctx);
             return newCollector(segmentOrds, sub);
         }
@@ -18,7 +18,11 @@
  */
 package org.elasticsearch.search.aggregations.bucket.terms;
 
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.PriorityQueue;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.ObjectArray;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.AggregationExecutionException;
@@ -44,6 +48,14 @@ public abstract class InternalTerms<A extends InternalTerms, B extends InternalT
     protected static final String DOC_COUNT_ERROR_UPPER_BOUND_FIELD_NAME = "doc_count_error_upper_bound";
     protected static final String SUM_OF_OTHER_DOC_COUNTS = "sum_other_doc_count";
 
+    /**
+     * The estimated size of a bucket on the heap, used to account the buckets of a reduce on the request circuit breaker.
+     * Buckets with sub-aggregations or long terms use more, this is a lower bound rather than an exact size.
+     */
+    static final long ESTIMATED_BUCKET_BYTES = 128;
+    // the reduced buckets are accounted in batches of this size to not update the breaker for every term
+    private static final int REDUCED_BUCKETS_BATCH = 1024;
+
     public static abstract class Bucket extends Terms.Bucket {
 
         long bucketOrd;
@@ -166,12 +178,14 @@ public abstract class InternalTerms<A extends InternalTerms, B extends InternalT
     @Override
     public InternalAggregation doReduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
 
-        Map<Object, List<InternalTerms.Bucket>> buckets = new HashMap<>();
         long sumDocCountError = 0;
         long otherDocCount = 0;
+        long totalBuckets = 0;
+        final List<InternalTerms<A, B>> allTerms = new ArrayList<>(aggregations.size());
         InternalTerms<A, B> referenceTerms = null;
         for (InternalAggregation aggregation : aggregations) {
             InternalTerms<A, B> terms = (InternalTerms<A, B>) aggregation;
+            allTerms.add(terms);
             if (referenceTerms == null && !terms.getClass().equals(UnmappedTerms.class)) {
                 referenceTerms = (InternalTerms<A, B>) aggregation;
             }
@@ -193,7 +207,13 @@ public abstract class InternalTerms<A extends InternalTerms, B extends InternalT
             if (terms.buckets.size() < this.shardSize || InternalOrder.isTermOrder(order)) {
                 thisAggDocCountError = 0;
             } else if (InternalOrder.isCountDesc(this.order)) {
-                thisAggDocCountError = terms.buckets.get(terms.buckets.size() - 1).docCount;
+                if (terms.docCountError > 0) {
+                    // a partially reduced aggregation already carries the error of the shards it was reduced from
+                    thisAggDocCountError = terms.docCountError;
+                } else {
+                    // the buckets of partially reduced aggregations are sorted by term, not by count
+                    thisAggDocCountError = smallestDocCount(terms.buckets);
+                }
             } else {
                 thisAggDocCountError = -1;
             }
@@ -207,36 +227,69 @@ public abstract class InternalTerms<A extends InternalTerms, B extends InternalT
             terms.docCountError = thisAggDocCountError;
             for (Bucket bucket : terms.buckets) {
                 bucket.docCountError = thisAggDocCountError;
-                List<Bucket> bucketList = buckets.get(bucket.getKey());
-                if (bucketList == null) {
-                    bucketList = new ArrayList<>();
-                    buckets.put(bucket.getKey(), bucketList);
-                }
-                bucketList.add(bucket);
             }
+            totalBuckets += terms.buckets.size();
         }
 
-        final int size = Math.min(requiredSize, buckets.size());
-        BucketPriorityQueue ordered = new BucketPriorityQueue(size, order.comparator(null));
-        for (List<Bucket> sameTermBuckets : buckets.values()) {
-            final Bucket b = sameTermBuckets.get(0).reduce(sameTermBuckets, reduceContext);
-            if (b.docCountError != -1) {
-                if (sumDocCountError == -1) {
-                    b.docCountError = -1;
-                } else {
-                    b.docCountError = sumDocCountError - b.docCountError;
+        // The buckets of every shard are sorted by term and merged, so that the buckets of the same term are reduced together
+        // without a map from each term to its buckets. The references to the buckets and the estimated size of the buckets
+        // of the shards and of the reduced buckets are accounted for on the request breaker while they are merged.
+        final BigArrays bigArrays = reduceContext.bigArrays().withCircuitBreaking();
+        // partial reduces keep all buckets in the order in which they are merged, only the final reduce can trim them
+        final BucketPriorityQueue ordered = reduceContext.isFinalReduce()
+            ? new BucketPriorityQueue(Math.toIntExact(Math.min(requiredSize, totalBuckets)), order.comparator(null)) : null;
+        final List<Bucket> reducedBuckets = reduceContext.isFinalReduce() ? null : new ArrayList<>();
+        long accountedBytes = 0;
+        try (ObjectArray<Bucket> sortedBuckets = bigArrays.newObjectArray(totalBuckets)) {
+            accountedBytes += totalBuckets * ESTIMATED_BUCKET_BYTES;
+            bigArrays.adjustBreaker(totalBuckets * ESTIMATED_BUCKET_BYTES);
+            final long[] starts = new long[allTerms.size() + 1];
+            for (int i = 0; i < allTerms.size(); i++) {
+                long to = starts[i];
+                for (Bucket bucket : allTerms.get(i).buckets) {
+                    sortedBuckets.set(to++, bucket);
                 }
+                sortByTerm(sortedBuckets, starts[i], to);
+                starts[i + 1] = to;
             }
-            if (b.docCount >= minDocCount) {
-                Terms.Bucket removed = ordered.insertWithOverflow(b);
-                if (removed != null) {
-                    otherDocCount += removed.getDocCount();
+
+            final List<Bucket> sameTermBuckets = new ArrayList<>(allTerms.size());
+            long numTerms = 0;
+            for (TermMerger merger = new TermMerger(sortedBuckets, starts); merger.next(sameTermBuckets); ) {
+                if (numTerms++ % REDUCED_BUCKETS_BATCH == 0) {
+                    accountedBytes += REDUCED_BUCKETS_BATCH * ESTIMATED_BUCKET_BYTES;
+                    bigArrays.adjustBreaker(REDUCED_BUCKETS_BATCH * ESTIMATED_BUCKET_BYTES);
+                }
+                final Bucket b = sameTermBuckets.get(0).reduce(sameTermBuckets, reduceContext);
+                if (b.docCountError != -1) {
+                    if (sumDocCountError == -1) {
+                        b.docCountError = -1;
+                    } else {
+                        b.docCountError = sumDocCountError - b.docCountError;
+                    }
+                }
+                if (ordered == null) {
+                    reducedBuckets.add(b);
+                } else if (b.docCount >= minDocCount) {
+                    Terms.Bucket removed = ordered.insertWithOverflow(b);
+                    if (removed != null) {
+                        otherDocCount += removed.getDocCount();
+                    }
                 }
             }
+        } finally {
+            // the buckets are released or handed over to the response once the reduce is done
+            bigArrays.adjustBreaker(-accountedBytes);
         }
-        Bucket[] list = new Bucket[ordered.size()];
-        for (int i = ordered.size() - 1; i >= 0; i--) {
-            list[i] = (Bucket) ordered.pop();
+        final List<Bucket> list;
+        if (ordered == null) {
+            list = reducedBuckets;
+        } else {
+            Bucket[] array = new Bucket[ordered.size()];
+            for (int i = ordered.size() - 1; i >= 0; i--) {
+                array[i] = (Bucket) ordered.pop();
+            }
+            list = Arrays.asList(array);
         }
         long docCountError;
         if (sumDocCountError == -1) {
@@ -244,7 +297,128 @@ public abstract class InternalTerms<A extends InternalTerms, B extends InternalT
         } else {
             docCountError = aggregations.size() == 1 ? 0 : sumDocCountError;
         }
-        return create(name, Arrays.asList(list), docCountError, otherDocCount, this);
+        return create(name, list, docCountError, otherDocCount, this);
+    }
+
+    private static long smallestDocCount(List<? extends Bucket> buckets) {
+        long min = Long.MAX_VALUE;
+        for (Bucket bucket : buckets) {
+            min = Math.min(min, bucket.docCount);
+        }
+        return min;
+    }
+
+    /**
+     * Sorts the buckets between <code>from</code> inclusive and <code>to</code> exclusive by term, buckets that are already sorted,
+     * as with a term order, are left untouched.
+     */
+    private static void sortByTerm(ObjectArray<Bucket> buckets, long from, long to) {
+        boolean sorted = true;
+        for (long i = from + 1; i < to && sorted; i++) {
+            sorted = buckets.get(i - 1).compareTerm(buckets.get(i)) < 0;
+        }
+        if (sorted) {
+            return;
+        }
+        final long offset = from;
+        new IntroSorter() {
+            Bucket pivot;
+
+            @Override
+            protected void swap(int i, int j) {
+                final Bucket tmp = buckets.get(offset + i);
+                buckets.set(offset + i, buckets.get(offset + j));
+                buckets.set(offset + j, tmp);
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return buckets.get(offset + i).compareTerm(buckets.get(offset + j));
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                pivot = buckets.get(offset + i);
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return pivot.compareTerm(buckets.get(offset + j));
+            }
+        }.sort(0, Math.toIntExact(to - from));
+    }
+
+    /**
+     * Merges the ranges of buckets that are sorted by term and returns the buckets of one term at a time.
+     */
+    private static class TermMerger {
+        private final PriorityQueue<BucketCursor> cursors;
+
+        /**
+         * @param starts the start of the range of every aggregation, followed by the end of the last range
+         */
+        TermMerger(ObjectArray<Bucket> buckets, long[] starts) {
+            cursors = new PriorityQueue<BucketCursor>(starts.length - 1) {
+                @Override
+                protected boolean lessThan(BucketCursor a, BucketCursor b) {
+                    return a.current().compareTerm(b.current()) < 0;
+                }
+            };
+            for (int i = 0; i < starts.length - 1; i++) {
+                if (starts[i] < starts[i + 1]) {
+                    cursors.add(new BucketCursor(buckets, starts[i], starts[i + 1]));
+                }
+            }
+        }
+
+        /**
+         * Replaces the content of <code>sameTermBuckets</code> with the buckets of the next term, returns <code>false</code> if
+         * all terms have been merged.
+         */
+        boolean next(List<Bucket> sameTermBuckets) {
+            sameTermBuckets.clear();
+            if (cursors.size() == 0) {
+                return false;
+            }
+            final Bucket first = cursors.top().current();
+            do {
+                final BucketCursor cursor = cursors.top();
+                sameTermBuckets.add(cursor.current());
+                if (cursor.next()) {
+                    cursors.updateTop();
+                } else {
+                    cursors.pop();
+                }
+            } while (cursors.size() > 0 && cursors.top().current().compareTerm(first) == 0);
+            return true;
+        }
+    }
+
+    /**
+     * Iterates over the buckets of one aggregation, once they are sorted by term.
+     */
+    private static class BucketCursor {
+        private final ObjectArray<Bucket> buckets;
+        private final long end;
+        private long current;
+
+        BucketCursor(ObjectArray<Bucket> buckets, long start, long end) {
+            assert start < end;
+            this.buckets = buckets;
+            this.current = start;
+            this.end = end;
+        }
+
+        Bucket current() {
+            return buckets.get(current);
+        }
+
+        /**
+         * Moves to the next bucket and returns <code>false</code> if there is none.
+         */
+        boolean next() {
+            return ++current < end;
+        }
     }
 
     protected abstract A create(String name, List<InternalTerms.Bucket> buckets, long docCountError, long otherDocCount,
@@ -194,8 +194,10 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
             if (includeExclude != null) {
                 longFilter = includeExclude.convertToLongFilter(config.format());
             }
+            final long[] bounds = fieldBounds();
             return new LongTermsAggregator(name, factories, (ValuesSource.Numeric) valuesSource, config.format(), order,
-                    bucketCountThresholds, context, parent, cm, showTermDocCountError, longFilter, pipelineAggregators,
+                    bucketCountThresholds, context, parent, cm, showTermDocCountError, longFilter,
+                    bounds == null ? Long.MIN_VALUE : bounds[0], bounds == null ? Long.MAX_VALUE : bounds[1], pipelineAggregators,
                     metaData);
         }
 
@@ -133,6 +133,13 @@ public abstract class ValuesSource {
                     this.indexFieldData = indexFieldData;
                 }
 
+                /**
+                 * The name of the field whose values are aggregated.
+                 */
+                public String fieldName() {
+                    return indexFieldData.getFieldName();
+                }
+
                 @Override
                 public SortedBinaryDocValues bytesValues(LeafReaderContext context) {
                     final AtomicOrdinalsFieldData atomicFieldData = indexFieldData.load(context);
@@ -378,6 +385,13 @@ public abstract class ValuesSource {
                 this.indexFieldData = indexFieldData;
             }
 
+            /**
+             * The name of the field whose values are aggregated.
+             */
+            public String fieldName() {
+                return indexFieldData.getFieldName();
+            }
+
             @Override
             public boolean isFloatingPoint() {
                 return indexFieldData.getNumericType().isFloatingPoint();
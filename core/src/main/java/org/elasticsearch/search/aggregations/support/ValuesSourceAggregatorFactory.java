@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.support;
 
+import org.elasticsearch.action.fieldstats.FieldStats;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
@@ -34,6 +35,9 @@ public abstract class ValuesSourceAggregatorFactory<VS extends ValuesSource, AF
         extends AggregatorFactory<AF> {
 
     protected ValuesSourceConfig<VS> config;
+    // the field stats are read once, not for every aggregator that is created per parent bucket
+    private boolean fieldBoundsComputed;
+    private long[] fieldBounds;
 
     public ValuesSourceAggregatorFactory(String name, Type type, ValuesSourceConfig<VS> config, AggregationContext context,
             AggregatorFactory<?> parent, AggregatorFactories.Builder subFactoriesBuilder, Map<String, Object> metaData) throws IOException {
@@ -45,6 +49,23 @@ public abstract class ValuesSourceAggregatorFactory<VS extends ValuesSource, AF
         return config.timezone();
         }
 
+    /**
+     * Returns the minimum and the maximum value of the integral field that is aggregated on this shard, or <code>null</code> if
+     * they are unknown, for instance because the values come from a script. The returned array must not be modified.
+     */
+    protected long[] fieldBounds() throws IOException {
+        if (fieldBoundsComputed == false) {
+            if (config.fieldContext() != null && config.script() == null && context.searchContext().searcher() != null) {
+                FieldStats<?> stats = config.fieldContext().fieldType().stats(context.searchContext().searcher().getIndexReader());
+                if (stats != null && stats.getMinValue() instanceof Long) {
+                    fieldBounds = new long[] { (Long) stats.getMinValue(), (Long) stats.getMaxValue() };
+                }
+            }
+            fieldBoundsComputed = true;
+        }
+        return fieldBounds;
+    }
+
     @Override
     public Aggregator createInternal(Aggregator parent, boolean collectsFromSingleBucket,
             List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
@@ -23,6 +23,7 @@ import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.ObjectObjectHashMap;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.CollapseTopFieldDocs;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
@@ -32,6 +33,7 @@ import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldDocs;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.collect.HppcMaps;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
@@ -44,6 +46,7 @@ import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
 import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.pipeline.SiblingPipelineAggregator;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.dfs.AggregatedDfs;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.FetchSearchResult;
@@ -226,7 +229,26 @@ public class SearchPhaseController extends AbstractComponent {
         }
 
         final TopDocs mergedTopDocs;
-        if (firstResult.queryResult().topDocs() instanceof TopFieldDocs) {
+        if (firstResult.queryResult().topDocs() instanceof CollapseTopFieldDocs) {
+            CollapseTopFieldDocs firstTopDocs = (CollapseTopFieldDocs) firstResult.queryResult().topDocs();
+            final Sort sort = new Sort(firstTopDocs.fields);
+
+            final CollapseTopFieldDocs[] shardTopDocs = new CollapseTopFieldDocs[resultsArr.length()];
+            for (AtomicArray.Entry<? extends QuerySearchResultProvider> sortedResult : sortedResults) {
+                TopDocs topDocs = sortedResult.value.queryResult().topDocs();
+                // the 'index' field is the position in the resultsArr atomic array
+                shardTopDocs[sortedResult.index] = (CollapseTopFieldDocs) topDocs;
+            }
+            // CollapseTopFieldDocs#merge can't deal with null shard TopDocs
+            for (int i = 0; i < shardTopDocs.length; ++i) {
+                if (shardTopDocs[i] == null) {
+                    shardTopDocs[i] = new CollapseTopFieldDocs(firstTopDocs.field, 0, new FieldDoc[0], sort.getSort(),
+                        new Object[0], Float.NaN);
+                }
+            }
+            // keeps the best hit of every group, the same group can be part of the top hits of several shards
+            mergedTopDocs = CollapseTopFieldDocs.merge(sort, from, topN, shardTopDocs);
+        } else if (firstResult.queryResult().topDocs() instanceof TopFieldDocs) {
             TopFieldDocs firstTopDocs = (TopFieldDocs) firstResult.queryResult().topDocs();
             final Sort sort = new Sort(firstTopDocs.fields);
 
@@ -293,6 +315,18 @@ public class SearchPhaseController extends AbstractComponent {
 
     public InternalSearchResponse merge(ScoreDoc[] sortedDocs, AtomicArray<? extends QuerySearchResultProvider> queryResultsArr,
                                         AtomicArray<? extends FetchSearchResultProvider> fetchResultsArr) {
+        return merge(sortedDocs, queryResultsArr, fetchResultsArr, null);
+    }
+
+    /**
+     * Merges the query and fetch results into the final search response.
+     *
+     * @param consumer the consumer that partially reduced the query results as they arrived or <code>null</code> if the query
+     *                 results were not reduced in batches
+     */
+    public InternalSearchResponse merge(ScoreDoc[] sortedDocs, AtomicArray<? extends QuerySearchResultProvider> queryResultsArr,
+                                        AtomicArray<? extends FetchSearchResultProvider> fetchResultsArr,
+                                        @Nullable QueryPhaseResultConsumer consumer) {
 
         List<? extends AtomicArray.Entry<? extends QuerySearchResultProvider>> queryResults = queryResultsArr.asList();
         List<? extends AtomicArray.Entry<? extends FetchSearchResultProvider>> fetchResults = fetchResultsArr.asList();
@@ -305,7 +339,10 @@ public class SearchPhaseController extends AbstractComponent {
 
         boolean sorted = false;
         int sortScoreIndex = -1;
-        if (firstResult.topDocs() instanceof TopFieldDocs) {
+        if (firstResult.topDocs() instanceof CollapseTopFieldDocs && firstResult.sortValueFormats().length == 0) {
+            // collapsed hits are sorted by score if the request has no sort, the score of the hits is their sort value then
+            sorted = false;
+        } else if (firstResult.topDocs() instanceof TopFieldDocs) {
             sorted = true;
             TopFieldDocs fieldDocs = (TopFieldDocs) firstResult.queryResult().topDocs();
             for (int i = 0; i < fieldDocs.fields.length; i++) {
@@ -394,7 +431,12 @@ public class SearchPhaseController extends AbstractComponent {
 
         // merge addAggregation
         InternalAggregations aggregations = null;
-        if (!queryResults.isEmpty()) {
+        if (consumer != null) {
+            if (consumer.hasAggs()) {
+                ReduceContext reduceContext = new ReduceContext(bigArrays, scriptService, clusterService.state());
+                aggregations = InternalAggregations.reduce(consumer.consumeAggs(), reduceContext);
+            }
+        } else if (!queryResults.isEmpty()) {
             if (firstResult.aggregations() != null && firstResult.aggregations().asList() != null) {
                 List<InternalAggregations> aggregationsList = new ArrayList<>(queryResults.size());
                 for (AtomicArray.Entry<? extends QuerySearchResultProvider> entry : queryResults) {
@@ -433,7 +475,184 @@ public class SearchPhaseController extends AbstractComponent {
 
         InternalSearchHits searchHits = new InternalSearchHits(hits.toArray(new InternalSearchHit[hits.size()]), totalHits, maxScore);
 
-        return new InternalSearchResponse(searchHits, aggregations, suggest, shardResults, timedOut, terminatedEarly);
+        final int numReducePhases = consumer == null ? 1 : consumer.getNumReducePhases() + 1;
+        return new InternalSearchResponse(searchHits, aggregations, suggest, shardResults, timedOut, terminatedEarly, numReducePhases);
+    }
+
+    /**
+     * Returns a new {@link QueryPhaseResultConsumer} that reduces the query results of the given request in batches of
+     * {@link SearchRequest#getBatchedReduceSize()} shard results, or <code>null</code> if the results should be reduced all at
+     * once because the request targets fewer shards than the batch size, is a scroll request or returns neither hits nor
+     * aggregations.
+     */
+    @Nullable
+    public QueryPhaseResultConsumer newQueryPhaseResultConsumer(SearchRequest request, int numShards) {
+        final SearchSourceBuilder source = request.source();
+        final boolean hasAggs = source != null && source.aggregations() != null;
+        // the top docs of collapsed searches are not trimmed since a shard's hits that are not part of the merged top docs might
+        // only be dropped because another shard returned a better hit of the same group
+        final boolean hasTopDocs = source == null || (source.size() != 0 && source.collapse() == null);
+        if (request.scroll() != null || numShards <= request.getBatchedReduceSize() || (hasAggs || hasTopDocs) == false) {
+            return null;
+        }
+        return new QueryPhaseResultConsumer(numShards, request.getBatchedReduceSize(), hasTopDocs, hasAggs);
+    }
+
+    /**
+     * Reduces the aggregations and top docs of query results as soon as a batch of shard results has arrived so that the
+     * coordinating node does not need to hold all shard level aggregations in memory at once. Aggregations are reduced into a
+     * single partial result and the top docs of every shard are trimmed to the hits that can still make it into the final
+     * top hits. The final reduce happens in {@link #merge(ScoreDoc[], AtomicArray, AtomicArray, QueryPhaseResultConsumer)}.
+     */
+    public final class QueryPhaseResultConsumer {
+        private final QuerySearchResult[] results;
+        private final int bufferSize;
+        private final boolean hasTopDocs;
+        private final boolean hasAggs;
+        private int numBuffered;
+        private InternalAggregations reducedAggs;
+        private int numReducePhases;
+        private boolean disabled;
+
+        private QueryPhaseResultConsumer(int numShards, int bufferSize, boolean hasTopDocs, boolean hasAggs) {
+            if (bufferSize < 2) {
+                throw new IllegalArgumentException("buffer size must be >= 2");
+            }
+            this.results = new QuerySearchResult[numShards];
+            this.bufferSize = bufferSize;
+            this.hasTopDocs = hasTopDocs;
+            this.hasAggs = hasAggs;
+        }
+
+        /**
+         * Consumes the query result of the shard with the given index and partially reduces the buffered results if the
+         * buffer is full.
+         */
+        public synchronized void consume(int shardIndex, QuerySearchResult result) {
+            assert results[shardIndex] == null : "shard [" + shardIndex + "] was already consumed";
+            results[shardIndex] = result;
+            if (++numBuffered == bufferSize && disabled == false) {
+                try {
+                    partialReduce();
+                    numBuffered = 0;
+                } catch (Exception e) {
+                    // we keep all results from now on and let the final reduce report the failure if there is one
+                    logger.debug("failed to partially reduce shard results, falling back to a single reduce", e);
+                    disabled = true;
+                }
+            }
+        }
+
+        private void partialReduce() throws IOException {
+            InternalAggregations partialAggs = null;
+            if (hasAggs) {
+                ReduceContext reduceContext = new ReduceContext(bigArrays, scriptService, clusterService.state(), false);
+                partialAggs = InternalAggregations.reduce(aggsToReduce(), reduceContext);
+            }
+            if (hasTopDocs) {
+                trimTopDocs();
+            }
+            if (hasAggs) {
+                reducedAggs = partialAggs;
+                // the shard level aggregations are part of the partial result now, release them
+                for (QuerySearchResult result : results) {
+                    if (result != null) {
+                        result.aggregations(null);
+                    }
+                }
+            }
+            numReducePhases++;
+        }
+
+        private List<InternalAggregations> aggsToReduce() {
+            final List<InternalAggregations> aggregationsList = new ArrayList<>(numBuffered + 1);
+            if (reducedAggs != null) {
+                aggregationsList.add(reducedAggs);
+            }
+            for (QuerySearchResult result : results) {
+                if (result != null && result.aggregations() != null) {
+                    aggregationsList.add((InternalAggregations) result.aggregations());
+                }
+            }
+            return aggregationsList;
+        }
+
+        /**
+         * Merges the top docs of all consumed shards and trims the top docs of each shard to its hits in the merged top docs.
+         * Hits that are not part of the merged top docs can never be part of the final top docs.
+         */
+        private void trimTopDocs() throws IOException {
+            QuerySearchResult firstResult = null;
+            for (QuerySearchResult result : results) {
+                if (result != null) {
+                    firstResult = result;
+                    break;
+                }
+            }
+            final int topN = firstResult.from() + firstResult.size();
+            final TopDocs mergedTopDocs;
+            if (firstResult.topDocs() instanceof TopFieldDocs) {
+                final SortField[] fields = ((TopFieldDocs) firstResult.topDocs()).fields;
+                // TopDocs#merge can't deal with null shard TopDocs
+                final TopFieldDocs emptyTopDocs = new TopFieldDocs(0, new FieldDoc[0], fields, Float.NaN);
+                final TopFieldDocs[] shardTopDocs = new TopFieldDocs[results.length];
+                for (int i = 0; i < results.length; i++) {
+                    shardTopDocs[i] = results[i] == null ? emptyTopDocs : (TopFieldDocs) results[i].topDocs();
+                }
+                mergedTopDocs = TopDocs.merge(new Sort(fields), topN, shardTopDocs);
+            } else {
+                final TopDocs[] shardTopDocs = new TopDocs[results.length];
+                for (int i = 0; i < results.length; i++) {
+                    shardTopDocs[i] = results[i] == null ? Lucene.EMPTY_TOP_DOCS : results[i].topDocs();
+                }
+                mergedTopDocs = TopDocs.merge(topN, shardTopDocs);
+            }
+            final int[] hitsPerShard = new int[results.length];
+            for (ScoreDoc scoreDoc : mergedTopDocs.scoreDocs) {
+                hitsPerShard[scoreDoc.shardIndex]++;
+            }
+            for (int i = 0; i < results.length; i++) {
+                final QuerySearchResult result = results[i];
+                if (result == null) {
+                    continue;
+                }
+                final TopDocs topDocs = result.topDocs();
+                // keep at least one hit so that contexts of shards that had hits but are not fetched from are still released
+                final int numHits = Math.max(hitsPerShard[i], Math.min(1, topDocs.scoreDocs.length));
+                if (numHits < topDocs.scoreDocs.length) {
+                    final TopDocs trimmed;
+                    if (topDocs instanceof TopFieldDocs) {
+                        trimmed = new TopFieldDocs(topDocs.totalHits, Arrays.copyOf(topDocs.scoreDocs, numHits),
+                            ((TopFieldDocs) topDocs).fields, topDocs.getMaxScore());
+                    } else {
+                        trimmed = new TopDocs(topDocs.totalHits, Arrays.copyOf(topDocs.scoreDocs, numHits), topDocs.getMaxScore());
+                    }
+                    result.topDocs(trimmed, result.sortValueFormats());
+                }
+            }
+        }
+
+        /**
+         * Returns the partially reduced aggregations together with the aggregations of the shard results that were not
+         * reduced yet.
+         */
+        synchronized List<InternalAggregations> consumeAggs() {
+            return aggsToReduce();
+        }
+
+        /**
+         * Returns <code>true</code> iff the request has aggregations.
+         */
+        boolean hasAggs() {
+            return hasAggs;
+        }
+
+        /**
+         * Returns the number of partial reduce phases that have been executed so far.
+         */
+        public synchronized int getNumReducePhases() {
+            return numReducePhases;
+        }
     }
 
 }
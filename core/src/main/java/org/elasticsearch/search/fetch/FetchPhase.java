@@ -19,8 +19,12 @@
 
 package org.elasticsearch.search.fetch;
 
+import org.apache.lucene.codecs.StoredFieldsReader;
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
@@ -29,6 +33,7 @@ import org.apache.lucene.util.BitSet;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.lucene.index.ElasticsearchLeafReader;
 import org.elasticsearch.common.lucene.search.Queries;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.text.Text;
@@ -55,6 +60,7 @@ import org.elasticsearch.search.lookup.SourceLookup;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -70,6 +76,16 @@ import static org.elasticsearch.common.xcontent.XContentFactory.contentBuilder;
  */
 public class FetchPhase implements SearchPhase {
 
+    /**
+     * The minimum number of hits of a segment for which the stored fields are read sequentially.
+     */
+    static final int SEQUENTIAL_DOCS_THRESHOLD = 10;
+
+    /**
+     * The maximum average distance between the doc ids of the hits of a segment for which the stored fields are read sequentially.
+     */
+    static final int MAX_SEQUENTIAL_DOCS_GAP = 4;
+
     private final FetchSubPhase[] fetchSubPhases;
 
     public FetchPhase(Set<FetchSubPhase> fetchSubPhases) {
@@ -137,27 +153,48 @@ public class FetchPhase implements SearchPhase {
                         fieldNamePatterns == null ? Collections.emptyList() : fieldNamePatterns, loadSource);
         }
 
+        // load the hits in doc id order so that the stored fields of each segment are read front to back, the hits are put
+        // back into the requested order once they are loaded
+        DocIdToIndex[] docs = new DocIdToIndex[context.docIdsToLoadSize()];
+        for (int index = 0; index < context.docIdsToLoadSize(); index++) {
+            docs[index] = new DocIdToIndex(context.docIdsToLoad()[context.docIdsToLoadFrom() + index], index);
+        }
+        Arrays.sort(docs);
+
+        List<LeafReaderContext> leaves = context.searcher().getIndexReader().leaves();
         InternalSearchHit[] hits = new InternalSearchHit[context.docIdsToLoadSize()];
         FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
-        for (int index = 0; index < context.docIdsToLoadSize(); index++) {
-            int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
-            int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
-            LeafReaderContext subReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
+        int currentReaderIndex = -1;
+        LeafReaderContext subReaderContext = null;
+        StoredFieldsLoader storedFieldsLoader = null;
+        for (int index = 0; index < docs.length; index++) {
+            int docId = docs[index].docId;
+            int readerIndex = ReaderUtil.subIndex(docId, leaves);
+            if (currentReaderIndex != readerIndex) {
+                currentReaderIndex = readerIndex;
+                subReaderContext = leaves.get(readerIndex);
+                try {
+                    storedFieldsLoader = storedFieldsLoader(subReaderContext, docs, index);
+                } catch (IOException e) {
+                    throw ExceptionsHelper.convertToElastic(e);
+                }
+            }
             int subDocId = docId - subReaderContext.docBase;
 
             final InternalSearchHit searchHit;
             try {
                 int rootDocId = findRootDocumentIfNested(context, subReaderContext, subDocId);
                 if (rootDocId != -1) {
-                    searchHit = createNestedSearchHit(context, docId, subDocId, rootDocId, fieldNames, fieldNamePatterns, subReaderContext);
+                    searchHit = createNestedSearchHit(context, storedFieldsLoader, docId, subDocId, rootDocId, fieldNames,
+                        fieldNamePatterns, subReaderContext);
                 } else {
-                    searchHit = createSearchHit(context, fieldsVisitor, docId, subDocId, subReaderContext);
+                    searchHit = createSearchHit(context, storedFieldsLoader, fieldsVisitor, docId, subDocId, subReaderContext);
                 }
             } catch (IOException e) {
                 throw ExceptionsHelper.convertToElastic(e);
             }
 
-            hits[index] = searchHit;
+            hits[docs[index].index] = searchHit;
             hitContext.reset(searchHit, subReaderContext, subDocId, context.searcher());
             for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
                 fetchSubPhase.hitExecute(context, hitContext);
@@ -181,8 +218,9 @@ public class FetchPhase implements SearchPhase {
         return -1;
     }
 
-    private InternalSearchHit createSearchHit(SearchContext context, FieldsVisitor fieldsVisitor, int docId, int subDocId, LeafReaderContext subReaderContext) {
-        loadStoredFields(context, subReaderContext, fieldsVisitor, subDocId);
+    private InternalSearchHit createSearchHit(SearchContext context, StoredFieldsLoader storedFieldsLoader, FieldsVisitor fieldsVisitor,
+                                              int docId, int subDocId, LeafReaderContext subReaderContext) {
+        loadStoredFields(context, storedFieldsLoader, fieldsVisitor, subDocId);
         fieldsVisitor.postProcess(context.mapperService());
 
         Map<String, SearchHitField> searchFields = null;
@@ -210,15 +248,15 @@ public class FetchPhase implements SearchPhase {
         return searchHit;
     }
 
-    private InternalSearchHit createNestedSearchHit(SearchContext context, int nestedTopDocId, int nestedSubDocId, int rootSubDocId, Set<String> fieldNames, List<String> fieldNamePatterns, LeafReaderContext subReaderContext) throws IOException {
+    private InternalSearchHit createNestedSearchHit(SearchContext context, StoredFieldsLoader storedFieldsLoader, int nestedTopDocId, int nestedSubDocId, int rootSubDocId, Set<String> fieldNames, List<String> fieldNamePatterns, LeafReaderContext subReaderContext) throws IOException {
         // Also if highlighting is requested on nested documents we need to fetch the _source from the root document,
         // otherwise highlighting will attempt to fetch the _source from the nested doc, which will fail,
         // because the entire _source is only stored with the root document.
         final FieldsVisitor rootFieldsVisitor = new FieldsVisitor(context.sourceRequested() || context.highlight() != null);
-        loadStoredFields(context, subReaderContext, rootFieldsVisitor, rootSubDocId);
+        loadStoredFields(context, storedFieldsLoader, rootFieldsVisitor, rootSubDocId);
         rootFieldsVisitor.postProcess(context.mapperService());
 
-        Map<String, SearchHitField> searchFields = getSearchFields(context, nestedSubDocId, fieldNames, fieldNamePatterns, subReaderContext);
+        Map<String, SearchHitField> searchFields = getSearchFields(context, storedFieldsLoader, nestedSubDocId, fieldNames, fieldNamePatterns);
         DocumentMapper documentMapper = context.mapperService().documentMapper(rootFieldsVisitor.uid().type());
         SourceLookup sourceLookup = context.lookup().source();
         sourceLookup.setSegmentAndDocument(subReaderContext, nestedSubDocId);
@@ -271,13 +309,13 @@ public class FetchPhase implements SearchPhase {
         return new InternalSearchHit(nestedTopDocId, rootFieldsVisitor.uid().id(), documentMapper.typeText(), nestedIdentity, searchFields);
     }
 
-    private Map<String, SearchHitField> getSearchFields(SearchContext context, int nestedSubDocId, Set<String> fieldNames, List<String> fieldNamePatterns, LeafReaderContext subReaderContext) {
+    private Map<String, SearchHitField> getSearchFields(SearchContext context, StoredFieldsLoader storedFieldsLoader, int nestedSubDocId, Set<String> fieldNames, List<String> fieldNamePatterns) {
         Map<String, SearchHitField> searchFields = null;
         if (context.hasFieldNames() && !context.fieldNames().isEmpty()) {
             FieldsVisitor nestedFieldsVisitor = new CustomFieldsVisitor(fieldNames == null ? Collections.emptySet() : fieldNames,
                     fieldNamePatterns == null ? Collections.emptyList() : fieldNamePatterns, false);
             if (nestedFieldsVisitor != null) {
-                loadStoredFields(context, subReaderContext, nestedFieldsVisitor, nestedSubDocId);
+                loadStoredFields(context, storedFieldsLoader, nestedFieldsVisitor, nestedSubDocId);
                 nestedFieldsVisitor.postProcess(context.mapperService());
                 if (!nestedFieldsVisitor.fields().isEmpty()) {
                     searchFields = new HashMap<>(nestedFieldsVisitor.fields().size());
@@ -340,12 +378,73 @@ public class FetchPhase implements SearchPhase {
         return nestedIdentity;
     }
 
-    private void loadStoredFields(SearchContext searchContext, LeafReaderContext readerContext, FieldsVisitor fieldVisitor, int docId) {
+    private void loadStoredFields(SearchContext searchContext, StoredFieldsLoader storedFieldsLoader, FieldsVisitor fieldVisitor, int docId) {
         fieldVisitor.reset();
         try {
-            readerContext.reader().document(docId, fieldVisitor);
+            storedFieldsLoader.visitDocument(docId, fieldVisitor);
         } catch (IOException e) {
             throw new FetchPhaseExecutionException(searchContext, "Failed to fetch doc id [" + docId + "]", e);
         }
     }
+
+    /**
+     * Returns the loader for the stored fields of the hits of the given segment, which start at <code>from</code> in the sorted
+     * <code>docs</code>. If enough hits of the segment are adjacent the stored fields are read through the merge instance of the
+     * segment's stored fields reader, which decompresses each block once and keeps it for the following documents, rather than
+     * decompressing the block again for every document.
+     */
+    static StoredFieldsLoader storedFieldsLoader(LeafReaderContext readerContext, DocIdToIndex[] docs, int from) throws IOException {
+        final LeafReader reader = readerContext.reader();
+        final int maxDoc = readerContext.docBase + reader.maxDoc();
+        int to = from + 1;
+        while (to < docs.length && docs[to].docId < maxDoc) {
+            to++;
+        }
+        if (hasSequentialDocs(docs, from, to)) {
+            LeafReader unwrapped = reader;
+            // the elasticsearch wrapper only adds the shard id, any other wrapper may filter stored fields so we can't bypass it
+            while (unwrapped instanceof ElasticsearchLeafReader) {
+                unwrapped = ((ElasticsearchLeafReader) unwrapped).getDelegate();
+            }
+            if (unwrapped instanceof CodecReader) {
+                StoredFieldsReader fieldsReader = ((CodecReader) unwrapped).getFieldsReader();
+                if (fieldsReader != null) {
+                    return fieldsReader.getMergeInstance()::visitDocument;
+                }
+            }
+        }
+        return reader::document;
+    }
+
+    /**
+     * Whether the hits between <code>from</code> (inclusive) and <code>to</code> (exclusive) are numerous enough and close enough
+     * to each other to be read sequentially.
+     */
+    static boolean hasSequentialDocs(DocIdToIndex[] docs, int from, int to) {
+        final int count = to - from;
+        return count >= SEQUENTIAL_DOCS_THRESHOLD && docs[to - 1].docId - docs[from].docId < count * MAX_SEQUENTIAL_DOCS_GAP;
+    }
+
+    /**
+     * Reads the stored fields of a document of a single segment.
+     */
+    @FunctionalInterface
+    interface StoredFieldsLoader {
+        void visitDocument(int docId, StoredFieldVisitor visitor) throws IOException;
+    }
+
+    static final class DocIdToIndex implements Comparable<DocIdToIndex> {
+        final int docId;
+        final int index;
+
+        DocIdToIndex(int docId, int index) {
+            this.docId = docId;
+            this.index = index;
+        }
+
+        @Override
+        public int compareTo(DocIdToIndex o) {
+            return Integer.compare(docId, o.docId);
+        }
+    }
 }
@@ -20,9 +20,11 @@
 package org.elasticsearch.search.internal;
 
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -30,7 +32,9 @@ import org.apache.lucene.search.QueryCache;
 import org.apache.lucene.search.QueryCachingPolicy;
 import org.apache.lucene.search.TermStatistics;
 import org.apache.lucene.search.Weight;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.util.concurrent.ParallelTasks;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.search.dfs.AggregatedDfs;
 import org.elasticsearch.search.profile.query.ProfileWeight;
@@ -39,6 +43,9 @@ import org.elasticsearch.search.profile.query.QueryProfiler;
 import org.elasticsearch.search.profile.query.QueryTimingType;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Context-aware extension of {@link IndexSearcher}.
@@ -57,6 +64,10 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
     // TODO revisit moving the profiler to inheritance or wrapping model in the future
     private QueryProfiler profiler;
 
+    private Executor sliceExecutor;
+
+    private int maxSlices = 1;
+
     public ContextIndexSearcher(Engine.Searcher searcher,
             QueryCache queryCache, QueryCachingPolicy queryCachingPolicy) {
         super(searcher.reader());
@@ -79,6 +90,90 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
         this.aggregatedDfs = aggregatedDfs;
     }
 
+    /**
+     * Allows the query phase to search the leaves of this searcher in up to <code>maxSlices</code> slices concurrently,
+     * forking slices to the given executor.
+     */
+    public void setSliceExecutor(Executor sliceExecutor, int maxSlices) {
+        if (maxSlices < 1) {
+            throw new IllegalArgumentException("maxSlices must be >= 1, got " + maxSlices);
+        }
+        this.sliceExecutor = sliceExecutor;
+        this.maxSlices = maxSlices;
+    }
+
+    /**
+     * Returns the executor that slices of the leaves of this searcher may be searched on, or <code>null</code> if the
+     * leaves must be searched sequentially.
+     */
+    @Nullable
+    public Executor getSliceExecutor() {
+        return sliceExecutor;
+    }
+
+    /**
+     * Returns the maximum number of slices that the leaves of this searcher may be searched in concurrently.
+     */
+    public int getMaxSlices() {
+        return maxSlices;
+    }
+
+    /**
+     * Partitions the given leaves into at most <code>maxSlices</code> slices of consecutive leaves that hold roughly
+     * the same number of documents. Slices are made of consecutive leaves so that merging the hits of the slices breaks
+     * ties in the same way as a sequential search would.
+     */
+    public static List<List<LeafReaderContext>> slices(List<LeafReaderContext> leaves, int maxSlices) {
+        final int numSlices = Math.min(maxSlices, leaves.size());
+        long remainingDocs = 0;
+        for (LeafReaderContext leaf : leaves) {
+            remainingDocs += leaf.reader().maxDoc();
+        }
+        final List<List<LeafReaderContext>> slices = new ArrayList<>(numSlices);
+        int from = 0;
+        for (int slice = 0; slice < numSlices; slice++) {
+            final int remainingSlices = numSlices - slice;
+            final long targetDocs = (remainingDocs + remainingSlices - 1) / remainingSlices;
+            int to = from;
+            long sliceDocs = 0;
+            // take at least one leaf, and leave at least one leaf for each of the remaining slices
+            do {
+                sliceDocs += leaves.get(to).reader().maxDoc();
+                to++;
+            } while (to < leaves.size() - (remainingSlices - 1) && sliceDocs < targetDocs);
+            if (slice == numSlices - 1) {
+                to = leaves.size();
+            }
+            slices.add(leaves.subList(from, to));
+            remainingDocs -= sliceDocs;
+            from = to;
+        }
+        return slices;
+    }
+
+    /**
+     * Searches each of the given slices with the collector at the same position. Slices are forked to the given executor,
+     * but the calling thread searches slices as well and takes over all slices that the executor didn't start yet or rejected, so
+     * that a busy executor doesn't slow down the search. Once a slice fails, slices that didn't start yet are skipped and
+     * the failure is rethrown after all running slices completed.
+     *
+     * @param sliceTimes receives the time in nanoseconds that it took to search each slice, or <code>0</code> for slices that
+     *                   were skipped
+     */
+    public void search(Weight weight, List<List<LeafReaderContext>> slices, Collector[] collectors, @Nullable Executor executor,
+                       long[] sliceTimes) throws IOException {
+        final int numSlices = slices.size();
+        assert numSlices == collectors.length && numSlices == sliceTimes.length;
+        ParallelTasks.run(numSlices, executor, i -> {
+            final long start = System.nanoTime();
+            try {
+                search(slices.get(i), weight, collectors[i]);
+            } finally {
+                sliceTimes[i] = Math.max(1, System.nanoTime() - start);
+            }
+        });
+    }
+
     @Override
     public Query rewrite(Query original) throws IOException {
         if (profiler != null) {
@@ -169,6 +169,17 @@ public class InternalSearchHits implements SearchHits {
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        toXContentBeforeHits(builder, params);
+        for (SearchHit hit : hits) {
+            hit.toXContent(builder, params);
+        }
+        return toXContentAfterHits(builder, params);
+    }
+
+    /**
+     * Renders the hits object up to the start of the array of hits, so that callers can render the hits one by one.
+     */
+    public XContentBuilder toXContentBeforeHits(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(Fields.HITS);
         builder.field(Fields.TOTAL, totalHits);
         if (Float.isNaN(maxScore)) {
@@ -178,9 +189,13 @@ public class InternalSearchHits implements SearchHits {
         }
         builder.field(Fields.HITS);
         builder.startArray();
-        for (SearchHit hit : hits) {
-            hit.toXContent(builder, params);
-        }
+        return builder;
+    }
+
+    /**
+     * Closes what {@link #toXContentBeforeHits(XContentBuilder, Params)} opened.
+     */
+    public XContentBuilder toXContentAfterHits(XContentBuilder builder, Params params) throws IOException {
         builder.endArray();
         builder.endObject();
         return builder;
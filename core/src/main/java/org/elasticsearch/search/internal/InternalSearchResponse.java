@@ -59,17 +59,33 @@ public class InternalSearchResponse implements Streamable, ToXContent {
 
     private Boolean terminatedEarly = null;
 
+    private int numReducePhases = 1;
+
     private InternalSearchResponse() {
     }
 
     public InternalSearchResponse(InternalSearchHits hits, InternalAggregations aggregations, Suggest suggest,
                                   SearchProfileShardResults profileResults, boolean timedOut, Boolean terminatedEarly) {
+        this(hits, aggregations, suggest, profileResults, timedOut, terminatedEarly, 1);
+    }
+
+    public InternalSearchResponse(InternalSearchHits hits, InternalAggregations aggregations, Suggest suggest,
+                                  SearchProfileShardResults profileResults, boolean timedOut, Boolean terminatedEarly,
+                                  int numReducePhases) {
         this.hits = hits;
         this.aggregations = aggregations;
         this.suggest = suggest;
         this.profileResults = profileResults;
         this.timedOut = timedOut;
         this.terminatedEarly = terminatedEarly;
+        this.numReducePhases = numReducePhases;
+    }
+
+    /**
+     * Returns a copy of this response with the given hits.
+     */
+    public InternalSearchResponse withHits(InternalSearchHits hits) {
+        return new InternalSearchResponse(hits, aggregations, suggest, profileResults, timedOut, terminatedEarly, numReducePhases);
     }
 
     public boolean timedOut() {
@@ -80,6 +96,13 @@ public class InternalSearchResponse implements Streamable, ToXContent {
         return this.terminatedEarly;
     }
 
+    /**
+     * Returns the number of reduce phases applied to obtain this search response, including the final reduce phase
+     */
+    public int getNumReducePhases() {
+        return numReducePhases;
+    }
+
     public SearchHits hits() {
         return hits;
     }
@@ -107,7 +130,25 @@ public class InternalSearchResponse implements Streamable, ToXContent {
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
-        hits.toXContent(builder, params);
+        toXContentBeforeHits(builder, params);
+        for (InternalSearchHit hit : hits.internalHits()) {
+            hit.toXContent(builder, params);
+        }
+        return toXContentAfterHits(builder, params);
+    }
+
+    /**
+     * Renders this response up to the start of the array of hits, so that callers can render the hits one by one.
+     */
+    public XContentBuilder toXContentBeforeHits(XContentBuilder builder, Params params) throws IOException {
+        return hits.toXContentBeforeHits(builder, params);
+    }
+
+    /**
+     * Renders the rest of this response once the hits were rendered.
+     */
+    public XContentBuilder toXContentAfterHits(XContentBuilder builder, Params params) throws IOException {
+        hits.toXContentAfterHits(builder, params);
         if (aggregations != null) {
             aggregations.toXContent(builder, params);
         }
@@ -138,6 +179,9 @@ public class InternalSearchResponse implements Streamable, ToXContent {
         timedOut = in.readBoolean();
 
         terminatedEarly = in.readOptionalBoolean();
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            numReducePhases = in.readVInt();
+        }
 
         if (in.getVersion().onOrAfter(Version.V_2_2_0) && in.readBoolean()) {
             profileResults = new SearchProfileShardResults(in);
@@ -164,6 +208,9 @@ public class InternalSearchResponse implements Streamable, ToXContent {
         out.writeBoolean(timedOut);
 
         out.writeOptionalBoolean(terminatedEarly);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeVInt(numReducePhases);
+        }
 
         if (out.getVersion().onOrAfter(Version.V_2_2_0)) {
             if (profileResults == null) {
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.profile;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
@@ -32,10 +33,17 @@ import java.util.List;
 
 public class ProfileShardResult implements Writeable {
 
+    /** The hits were fetched along with the query phase. */
+    public static final String FETCH_MODE_QUERY_AND_FETCH = "query_and_fetch";
+    /** The hits were fetched in a separate round trip after the query phase. */
+    public static final String FETCH_MODE_QUERY_THEN_FETCH = "query_then_fetch";
+
     private final List<QueryProfileShardResult> queryProfileResults;
 
     private final AggregationProfileShardResult aggProfileShardResult;
 
+    private String fetchMode;
+
     public ProfileShardResult(List<QueryProfileShardResult> queryProfileResults, AggregationProfileShardResult aggProfileShardResult) {
         this.aggProfileShardResult = aggProfileShardResult;
         this.queryProfileResults = Collections.unmodifiableList(queryProfileResults);
@@ -50,6 +58,9 @@ public class ProfileShardResult implements Writeable {
         }
         this.queryProfileResults = Collections.unmodifiableList(queryProfileResults);
         this.aggProfileShardResult = new AggregationProfileShardResult(in);
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            this.fetchMode = in.readOptionalString();
+        }
     }
 
     @Override
@@ -59,6 +70,9 @@ public class ProfileShardResult implements Writeable {
             queryShardResult.writeTo(out);
         }
         aggProfileShardResult.writeTo(out);
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeOptionalString(fetchMode);
+        }
     }
 
     public List<QueryProfileShardResult> getQueryProfileResults() {
@@ -68,4 +82,16 @@ public class ProfileShardResult implements Writeable {
     public AggregationProfileShardResult getAggregationProfileResults() {
         return aggProfileShardResult;
     }
+
+    /**
+     * Returns how the hits of this shard were fetched, either {@link #FETCH_MODE_QUERY_AND_FETCH} or
+     * {@link #FETCH_MODE_QUERY_THEN_FETCH}, or <code>null</code> if unknown.
+     */
+    public String getFetchMode() {
+        return fetchMode;
+    }
+
+    public void setFetchMode(String fetchMode) {
+        this.fetchMode = fetchMode;
+    }
 }
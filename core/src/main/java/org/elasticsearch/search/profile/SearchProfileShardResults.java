@@ -80,6 +80,9 @@ public final class SearchProfileShardResults implements Writeable, ToXContent{
         for (Map.Entry<String, ProfileShardResult> entry : shardResults.entrySet()) {
             builder.startObject();
             builder.field("id", entry.getKey());
+            if (entry.getValue().getFetchMode() != null) {
+                builder.field("fetch_mode", entry.getValue().getFetchMode());
+            }
             builder.startArray("searches");
             for (QueryProfileShardResult result : entry.getValue().getQueryProfileResults()) {
                 builder.startObject();
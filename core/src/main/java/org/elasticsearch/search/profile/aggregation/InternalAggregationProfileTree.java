@@ -19,10 +19,14 @@
 
 package org.elasticsearch.search.profile.aggregation;
 
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactory.MultiBucketAggregatorWrapper;
+import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
 import org.elasticsearch.search.profile.AbstractInternalProfileTree;
 
+import java.util.List;
+
 public class InternalAggregationProfileTree extends AbstractInternalProfileTree<AggregationProfileBreakdown, Aggregator> {
 
     @Override
@@ -40,6 +44,12 @@ public class InternalAggregationProfileTree extends AbstractInternalProfileTree<
 
     @Override
     protected String getDescriptionFromElement(Aggregator element) {
+        if (element instanceof BucketsAggregator) {
+            List<String> precomputedSegments = ((BucketsAggregator) element).getPrecomputedSegments();
+            if (precomputedSegments.isEmpty() == false) {
+                return element.name() + " [precomputed segments: " + Strings.collectionToDelimitedString(precomputedSegments, ", ") + "]";
+            }
+        }
         return element.name();
     }
 
@@ -83,7 +83,11 @@ public class ProfilingAggregator extends Aggregator {
 
     @Override
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx) throws IOException {
-        return new ProfilingLeafBucketCollector(delegate.getLeafCollector(ctx), profileBreakdown);
+        // aggregators may compute the buckets of a whole segment here rather than collecting its documents
+        profileBreakdown.startTime(AggregationTimingType.COLLECT);
+        final LeafBucketCollector leafCollector = delegate.getLeafCollector(ctx);
+        profileBreakdown.stopAndRecordTime();
+        return new ProfilingLeafBucketCollector(leafCollector, profileBreakdown);
     }
 
     @Override
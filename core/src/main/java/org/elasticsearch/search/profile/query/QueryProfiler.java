@@ -42,18 +42,34 @@ public final class QueryProfiler extends AbstractProfiler<QueryProfileBreakdown,
      */
     private InternalProfileCollector collector;
 
+    /**
+     * The timings of the collectors of a search that searched slices of the segments concurrently
+     */
+    private CollectorResult collectorResult;
+
     public QueryProfiler() {
         super(new InternalQueryProfileTree());
     }
 
     /** Set the collector that is associated with this profiler. */
     public void setCollector(InternalProfileCollector collector) {
-        if (this.collector != null) {
+        if (this.collector != null || this.collectorResult != null) {
             throw new IllegalStateException("The collector can only be set once.");
         }
         this.collector = Objects.requireNonNull(collector);
     }
 
+    /**
+     * Set the timings of the collectors of a search whose segments were searched in concurrent slices, each with
+     * its own collectors.
+     */
+    public void setCollectorResult(CollectorResult collectorResult) {
+        if (this.collector != null || this.collectorResult != null) {
+            throw new IllegalStateException("The collector can only be set once.");
+        }
+        this.collectorResult = Objects.requireNonNull(collectorResult);
+    }
+
     /**
      * Begin timing the rewrite phase of a request.  All rewrites are accumulated together into a
      * single metric
@@ -83,6 +99,9 @@ public final class QueryProfiler extends AbstractProfiler<QueryProfileBreakdown,
      * Return the current root Collector for this search
      */
     public CollectorResult getCollector() {
+        if (collectorResult != null) {
+            return collectorResult;
+        }
         return collector.getCollectorTree();
     }
 
@@ -38,18 +38,26 @@ import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopDocsCollector;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.grouping.CollapsingTopDocsCollector;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.MinimumScoreCollector;
 import org.elasticsearch.common.lucene.search.FilteredCollector;
+import org.elasticsearch.common.lucene.search.IndexSortEarlyTerminatingCollector;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSortConfig;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.aggregations.AggregationPhase;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.profile.ProfileShardResult;
@@ -58,14 +66,21 @@ import org.elasticsearch.search.profile.query.CollectorResult;
 import org.elasticsearch.search.profile.query.InternalProfileCollector;
 import org.elasticsearch.search.rescore.RescorePhase;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
+import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortAndFormats;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortMode;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.search.suggest.SuggestPhase;
 
+import java.io.IOException;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  *
@@ -129,6 +144,72 @@ public class QueryPhase implements SearchPhase {
         }
     }
 
+    /**
+     * Returns the index sort if the requested sort is a prefix of it so that collection can be terminated early
+     * on segments that are sorted by the index sort, otherwise <code>null</code>. Early termination makes the
+     * total hits a lower bound, so the request has to opt out of tracking the total hits.
+     */
+    static Sort getEarlyTerminationSort(SearchContext searchContext) {
+        final IndexShard indexShard = searchContext.indexShard();
+        final Sort indexSort = indexShard == null ? null : indexShard.getIndexSort();
+        final SearchSourceBuilder source = searchContext.request() == null ? null : searchContext.request().source();
+        if (indexSort == null || source == null || source.trackTotalHits()
+                || source.sorts() == null || source.sorts().isEmpty()) {
+            return null;
+        }
+        final IndexSortConfig indexSortConfig = indexShard.indexSettings().getIndexSortConfig();
+        final List<SortBuilder<?>> sorts = source.sorts();
+        if (sorts.size() > indexSortConfig.getNumFields()) {
+            return null;
+        }
+        for (int i = 0; i < sorts.size(); i++) {
+            if (sorts.get(i) instanceof FieldSortBuilder == false) {
+                return null;
+            }
+            final FieldSortBuilder sort = (FieldSortBuilder) sorts.get(i);
+            final SortOrder order = indexSortConfig.getOrder(i);
+            final SortMode defaultMode = order == SortOrder.DESC ? SortMode.MAX : SortMode.MIN;
+            // the index is sorted with the defaults of a field sort
+            if (sort.getFieldName().equals(indexSortConfig.getField(i)) == false
+                    || sort.order() != order
+                    || (sort.missing() != null && "_last".equals(sort.missing()) == false)
+                    || (sort.sortMode() != null && sort.sortMode() != defaultMode)
+                    || sort.getNestedPath() != null
+                    || sort.getNestedFilter() != null) {
+                return null;
+            }
+        }
+        return indexSort;
+    }
+
+    /**
+     * Returns the slices that the segments of the searcher are searched in concurrently, or <code>null</code> if they are
+     * searched sequentially. Concurrent searches need to be enabled on the searcher, and they are not supported with
+     * aggregations and <code>terminate_after</code>, which need to see all the hits of the shard, nor with field collapsing.
+     * Searches also fall back to a sequential search when the executor of the slices has tasks waiting in its queue: all its
+     * threads are busy then, and slicing would only add overhead to the searches that are running on the node.
+     */
+    static List<List<LeafReaderContext>> getConcurrentSlices(SearchContext searchContext, IndexSearcher searcher) {
+        if (searcher instanceof ContextIndexSearcher == false) {
+            return null;
+        }
+        final ContextIndexSearcher contextSearcher = (ContextIndexSearcher) searcher;
+        final int maxSlices = contextSearcher.getMaxSlices();
+        final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        if (maxSlices <= 1 || leaves.size() <= 1
+                || searchContext.queryCollectors().isEmpty() == false
+                || searchContext.collapse() != null
+                || searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER
+                || hasQueuedTasks(contextSearcher.getSliceExecutor())) {
+            return null;
+        }
+        return ContextIndexSearcher.slices(leaves, maxSlices);
+    }
+
+    private static boolean hasQueuedTasks(Executor executor) {
+        return executor instanceof ThreadPoolExecutor && ((ThreadPoolExecutor) executor).getQueue().isEmpty() == false;
+    }
+
     /**
      * In a package-private method so that it can be tested without having to
      * wire everything (mapperService, etc.)
@@ -150,30 +231,17 @@ public class QueryPhase implements SearchPhase {
             final int totalNumDocs = searcher.getIndexReader().numDocs();
             int numDocs = Math.min(searchContext.from() + searchContext.size(), totalNumDocs);
 
-            Collector collector;
-            Callable<TopDocs> topDocsCallable;
+            // Perhaps have a dedicated scroll phase?
+            final ScrollContext scrollContext = searchContext.scrollContext();
+            ScoreDoc after = null;
+            Sort indexSort = null;
+            Callable<TopDocs> topDocsCallable = null;
             DocValueFormat[] sortValueFormats = new DocValueFormat[0];
 
             assert query == searcher.rewrite(query); // already rewritten
 
-            if (searchContext.size() == 0) { // no matter what the value of from is
-                final TotalHitCountCollector totalHitCountCollector = new TotalHitCountCollector();
-                collector = totalHitCountCollector;
-                if (searchContext.getProfilers() != null) {
-                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_COUNT, Collections.emptyList());
-                }
-                topDocsCallable = new Callable<TopDocs>() {
-                    @Override
-                    public TopDocs call() throws Exception {
-                        return new TopDocs(totalHitCountCollector.getTotalHits(), Lucene.EMPTY_SCORE_DOCS, 0);
-                    }
-                };
-            } else {
-                // Perhaps have a dedicated scroll phase?
-                final ScrollContext scrollContext = searchContext.scrollContext();
+            if (searchContext.size() > 0) { // no matter what the value of from is
                 assert (scrollContext != null) == (searchContext.request().scroll() != null);
-                final TopDocsCollector<?> topDocsCollector;
-                ScoreDoc after = null;
                 if (searchContext.request().scroll() != null) {
                     numDocs = Math.min(searchContext.size(), totalNumDocs);
                     after = scrollContext.lastEmittedDoc;
@@ -206,26 +274,89 @@ public class QueryPhase implements SearchPhase {
                 }
                 assert numDocs > 0;
                 if (searchContext.sort() != null) {
-                    SortAndFormats sf = searchContext.sort();
-                    topDocsCollector = TopFieldCollector.create(sf.sort, numDocs,
-                            (FieldDoc) after, true, searchContext.trackScores(), searchContext.trackScores());
-                    sortValueFormats = sf.formats;
+                    sortValueFormats = searchContext.sort().formats;
                 } else {
                     rescore = !searchContext.rescore().isEmpty();
                     for (RescoreSearchContext rescoreContext : searchContext.rescore()) {
                         numDocs = Math.max(rescoreContext.window(), numDocs);
                     }
-                    topDocsCollector = TopScoreDocCollector.create(numDocs, after);
                 }
-                collector = topDocsCollector;
-                if (doProfile) {
-                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_TOP_HITS, Collections.emptyList());
+                // search_after and scrolls skip the hits of previous pages, which would count towards the hits that we collect
+                // per segment, so they can't terminate early, and neither can collapsing since the top hits of a segment might
+                // all belong to the same group
+                indexSort = scrollContext == null && after == null && searchContext.collapse() == null ?
+                    getEarlyTerminationSort(searchContext) : null;
+            }
+
+            // this will only get applied to the actual search collector and not
+            // to any scoped collectors, also, it will only be applied to the main collector
+            // since that is where the filter should only work
+            final Weight filterWeight = searchContext.parsedPostFilter() == null ? null
+                    : searcher.createNormalizedWeight(searchContext.parsedPostFilter().query(), false);
+
+            final TopDocsCollectors topDocsCollectors = new TopDocsCollectors(searchContext, numDocs, after, indexSort, filterWeight);
+            Collector collector = topDocsCollectors.collector;
+
+            if (collector.getClass() == TotalHitCountCollector.class) {
+                // Optimize counts in simple cases to return in constant time
+                // instead of using a collector
+                while (true) {
+                    // remove wrappers that don't matter for counts
+                    // this is necessary so that we don't only optimize match_all
+                    // queries but also match_all queries that are nested in
+                    // a constant_score query
+                    if (query instanceof ConstantScoreQuery) {
+                        query = ((ConstantScoreQuery) query).getQuery();
+                    } else {
+                        break;
+                    }
+                }
+
+                if (query.getClass() == MatchAllDocsQuery.class) {
+                    collector = null;
+                    topDocsCallable = new Callable<TopDocs>() {
+                        @Override
+                        public TopDocs call() throws Exception {
+                            int count = searcher.getIndexReader().numDocs();
+                            return new TopDocs(count, Lucene.EMPTY_SCORE_DOCS, 0);
+                        }
+                    };
+                } else if (query.getClass() == TermQuery.class && searcher.getIndexReader().hasDeletions() == false) {
+                    final Term term = ((TermQuery) query).getTerm();
+                    collector = null;
+                    topDocsCallable = new Callable<TopDocs>() {
+                        @Override
+                        public TopDocs call() throws Exception {
+                            int count = 0;
+                            for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+                                count += context.reader().docFreq(term);
+                            }
+                            return new TopDocs(count, Lucene.EMPTY_SCORE_DOCS, 0);
+                        }
+                    };
+                }
+            }
+
+            // collector might be null if no collection is actually needed
+            final List<List<LeafReaderContext>> slices = collector == null ? null : getConcurrentSlices(searchContext, searcher);
+            final TopDocsCollectors[] sliceCollectors;
+            if (slices == null) {
+                sliceCollectors = new TopDocsCollectors[] { topDocsCollectors };
+            } else {
+                // every slice is collected by its own collectors, the top docs of the slices are merged once they are done
+                sliceCollectors = new TopDocsCollectors[slices.size()];
+                sliceCollectors[0] = topDocsCollectors;
+                for (int i = 1; i < sliceCollectors.length; i++) {
+                    sliceCollectors[i] = new TopDocsCollectors(searchContext, numDocs, after, indexSort, filterWeight);
                 }
+            }
+            if (collector != null) {
+                final int topN = numDocs;
                 topDocsCallable = new Callable<TopDocs>() {
                     @Override
                     public TopDocs call() throws Exception {
-                        TopDocs topDocs = topDocsCollector.topDocs();
-                        if (scrollContext != null) {
+                        TopDocs topDocs = slices == null ? topDocsCollectors.topDocs() : mergeTopDocs(searchContext, topN, sliceCollectors);
+                        if (scrollContext != null && searchContext.size() > 0) {
                             if (scrollContext.totalHits == -1) {
                                 // first round
                                 scrollContext.totalHits = topDocs.totalHits;
@@ -254,8 +385,192 @@ public class QueryPhase implements SearchPhase {
                 };
             }
 
+            final boolean timeoutSet = searchContext.timeoutInMillis() != SearchService.NO_TIMEOUT.millis();
+            if (timeoutSet && collector != null) {
+                // TODO: change to use our own counter that uses the scheduler in ThreadPool
+                // throws TimeLimitingCollector.TimeExceededException when timeout has reached
+                for (TopDocsCollectors sliceCollector : sliceCollectors) {
+                    sliceCollector.wrapTimeLimitingCollector(searchContext);
+                }
+                collector = topDocsCollectors.collector;
+            }
+
             final boolean terminateAfterSet = searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER;
-            if (terminateAfterSet) {
+            try {
+                if (collector != null) {
+                    if (slices != null) {
+                        searchSlices(searchContext, (ContextIndexSearcher) searcher, query, slices, sliceCollectors);
+                    } else {
+                        if (doProfile) {
+                            searchContext.getProfilers().getCurrentQueryProfiler().setCollector((InternalProfileCollector) collector);
+                        }
+                        searcher.search(query, collector);
+                    }
+                }
+            } catch (TimeLimitingCollector.TimeExceededException e) {
+                assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
+                queryResult.searchTimedOut(true);
+            } catch (Lucene.EarlyTerminationException e) {
+                assert terminateAfterSet : "EarlyTerminationException thrown even though terminateAfter wasn't set";
+                queryResult.terminatedEarly(true);
+            } finally {
+                searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
+            }
+            for (TopDocsCollectors sliceCollector : sliceCollectors) {
+                if (sliceCollector.indexSortCollector != null && queryResult.terminatedEarly() != Boolean.TRUE) {
+                    queryResult.terminatedEarly(sliceCollector.indexSortCollector.terminatedEarly());
+                }
+            }
+            if (terminateAfterSet && queryResult.terminatedEarly() == null) {
+                queryResult.terminatedEarly(false);
+            }
+
+            queryResult.topDocs(topDocsCallable.call(), sortValueFormats);
+
+            if (searchContext.getProfilers() != null) {
+                ProfileShardResult shardResults = SearchProfileShardResults
+                        .buildShardResults(searchContext.getProfilers());
+                searchContext.queryResult().profileResults(shardResults);
+            }
+
+            return rescore;
+
+        } catch (Throwable e) {
+            throw new QueryPhaseExecutionException(searchContext, "Failed to execute main query", e);
+        }
+    }
+
+    /**
+     * Searches the given slices concurrently, each with the collectors at the same position.
+     */
+    private static void searchSlices(SearchContext searchContext, ContextIndexSearcher searcher, Query query,
+                                     List<List<LeafReaderContext>> slices, TopDocsCollectors[] sliceCollectors) throws IOException {
+        final Collector[] collectors = new Collector[sliceCollectors.length];
+        for (int i = 0; i < collectors.length; i++) {
+            collectors[i] = sliceCollectors[i].collector;
+        }
+        final Weight weight = searcher.createNormalizedWeight(query, collectors[0].needsScores());
+        final long[] sliceTimes = new long[collectors.length];
+        if (searchContext.getProfilers() == null) {
+            searcher.search(weight, slices, collectors, searcher.getSliceExecutor(), sliceTimes);
+            return;
+        }
+        // the query timings of the profiler can't be recorded concurrently, so a profiled search searches its slices
+        // one after the other on the calling thread
+        final long start = System.nanoTime();
+        try {
+            searcher.search(weight, slices, collectors, null, sliceTimes);
+        } finally {
+            final List<CollectorResult> sliceResults = new ArrayList<>(collectors.length);
+            for (int i = 0; i < collectors.length; i++) {
+                sliceResults.add(new CollectorResult("Slice [" + i + "] (" + slices.get(i).size() + " segments)",
+                        CollectorResult.REASON_SEARCH_SLICE, sliceTimes[i],
+                        Collections.singletonList(((InternalProfileCollector) collectors[i]).getCollectorTree())));
+            }
+            final CollectorResult result = new CollectorResult("ConcurrentSlices", CollectorResult.REASON_SEARCH_CONCURRENT,
+                    Math.max(1, System.nanoTime() - start), sliceResults);
+            searchContext.getProfilers().getCurrentQueryProfiler().setCollectorResult(result);
+        }
+    }
+
+    /**
+     * Merges the top docs of the slices of a concurrent search. Ties are broken by slice, which is the order of the documents
+     * since slices are made of consecutive segments.
+     */
+    private static TopDocs mergeTopDocs(SearchContext searchContext, int numDocs, TopDocsCollectors[] sliceCollectors) throws IOException {
+        final TopDocs[] sliceTopDocs = new TopDocs[sliceCollectors.length];
+        float maxScore = Float.NaN;
+        for (int i = 0; i < sliceCollectors.length; i++) {
+            sliceTopDocs[i] = sliceCollectors[i].topDocs();
+            final float sliceMaxScore = sliceTopDocs[i].getMaxScore();
+            if (Float.isNaN(sliceMaxScore) == false) {
+                maxScore = Float.isNaN(maxScore) ? sliceMaxScore : Math.max(maxScore, sliceMaxScore);
+            }
+        }
+        if (searchContext.size() == 0) {
+            int totalHits = 0;
+            for (TopDocs sliceTopDoc : sliceTopDocs) {
+                totalHits += sliceTopDoc.totalHits;
+            }
+            return new TopDocs(totalHits, Lucene.EMPTY_SCORE_DOCS, 0);
+        }
+        final TopDocs topDocs;
+        if (searchContext.sort() != null) {
+            final TopFieldDocs[] sliceTopFieldDocs = new TopFieldDocs[sliceTopDocs.length];
+            System.arraycopy(sliceTopDocs, 0, sliceTopFieldDocs, 0, sliceTopDocs.length);
+            topDocs = TopDocs.merge(searchContext.sort().sort, numDocs, sliceTopFieldDocs);
+        } else {
+            topDocs = TopDocs.merge(numDocs, sliceTopDocs);
+        }
+        // merging sets the shard index of the hits to the index of their slice
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            scoreDoc.shardIndex = -1;
+        }
+        topDocs.setMaxScore(maxScore);
+        return topDocs;
+    }
+
+    /**
+     * The chain of collectors that collects the top docs of a search, or of one slice of the segments of a concurrent search.
+     */
+    private static final class TopDocsCollectors {
+
+        /** The root of the chain */
+        Collector collector;
+        final IndexSortEarlyTerminatingCollector indexSortCollector;
+        private final TotalHitCountCollector totalHitCountCollector;
+        private final TopDocsCollector<?> topDocsCollector;
+        private final CollapsingTopDocsCollector<?> collapsingCollector;
+
+        TopDocsCollectors(SearchContext searchContext, int numDocs, @Nullable ScoreDoc after, @Nullable Sort indexSort,
+                          @Nullable Weight filterWeight) throws IOException {
+            final boolean doProfile = searchContext.getProfilers() != null;
+            Collector collector;
+            if (searchContext.size() == 0) { // no matter what the value of from is
+                totalHitCountCollector = new TotalHitCountCollector();
+                topDocsCollector = null;
+                collapsingCollector = null;
+                indexSortCollector = null;
+                collector = totalHitCountCollector;
+                if (doProfile) {
+                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_COUNT, Collections.emptyList());
+                }
+            } else {
+                totalHitCountCollector = null;
+                if (searchContext.collapse() != null) {
+                    // only keeps the top hit of every group
+                    final Sort sort = searchContext.sort() == null ? Sort.RELEVANCE : searchContext.sort().sort;
+                    final boolean trackMaxScore = searchContext.sort() == null || searchContext.trackScores();
+                    topDocsCollector = null;
+                    collapsingCollector = searchContext.collapse().createTopDocs(sort, numDocs, trackMaxScore);
+                    collector = collapsingCollector;
+                } else {
+                    if (searchContext.sort() != null) {
+                        topDocsCollector = TopFieldCollector.create(searchContext.sort().sort, numDocs,
+                                (FieldDoc) after, true, searchContext.trackScores(), searchContext.trackScores());
+                    } else {
+                        topDocsCollector = TopScoreDocCollector.create(numDocs, after);
+                    }
+                    collapsingCollector = null;
+                    collector = topDocsCollector;
+                }
+                if (doProfile) {
+                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_TOP_HITS, Collections.emptyList());
+                }
+                if (indexSort != null) {
+                    final Collector child = collector;
+                    // stops collecting a segment that is sorted by the index sort once it collected the top hits
+                    collector = indexSortCollector = new IndexSortEarlyTerminatingCollector(collector, indexSort, numDocs);
+                    if (doProfile) {
+                        collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_INDEX_SORT,
+                                Collections.singletonList((InternalProfileCollector) child));
+                    }
+                } else {
+                    indexSortCollector = null;
+                }
+            }
+
+            if (searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
                 final Collector child = collector;
                 // throws Lucene.EarlyTerminationException when given count is reached
                 collector = Lucene.wrapCountBasedEarlyTerminatingCollector(collector, searchContext.terminateAfter());
@@ -265,12 +580,8 @@ public class QueryPhase implements SearchPhase {
                 }
             }
 
-            if (searchContext.parsedPostFilter() != null) {
+            if (filterWeight != null) {
                 final Collector child = collector;
-                // this will only get applied to the actual search collector and not
-                // to any scoped collectors, also, it will only be applied to the main collector
-                // since that is where the filter should only work
-                final Weight filterWeight = searcher.createNormalizedWeight(searchContext.parsedPostFilter().query(), false);
                 collector = new FilteredCollector(collector, filterWeight);
                 if (doProfile) {
                     collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_POST_FILTER,
@@ -308,91 +619,26 @@ public class QueryPhase implements SearchPhase {
                             Collections.singletonList((InternalProfileCollector) child));
                 }
             }
+            this.collector = collector;
+        }
 
-            if (collector.getClass() == TotalHitCountCollector.class) {
-                // Optimize counts in simple cases to return in constant time
-                // instead of using a collector
-                while (true) {
-                    // remove wrappers that don't matter for counts
-                    // this is necessary so that we don't only optimize match_all
-                    // queries but also match_all queries that are nested in
-                    // a constant_score query
-                    if (query instanceof ConstantScoreQuery) {
-                        query = ((ConstantScoreQuery) query).getQuery();
-                    } else {
-                        break;
-                    }
-                }
-
-                if (query.getClass() == MatchAllDocsQuery.class) {
-                    collector = null;
-                    topDocsCallable = new Callable<TopDocs>() {
-                        @Override
-                        public TopDocs call() throws Exception {
-                            int count = searcher.getIndexReader().numDocs();
-                            return new TopDocs(count, Lucene.EMPTY_SCORE_DOCS, 0);
-                        }
-                    };
-                } else if (query.getClass() == TermQuery.class && searcher.getIndexReader().hasDeletions() == false) {
-                    final Term term = ((TermQuery) query).getTerm();
-                    collector = null;
-                    topDocsCallable = new Callable<TopDocs>() {
-                        @Override
-                        public TopDocs call() throws Exception {
-                            int count = 0;
-                            for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
-                                count += context.reader().docFreq(term);
-                            }
-                            return new TopDocs(count, Lucene.EMPTY_SCORE_DOCS, 0);
-                        }
-                    };
-                }
-            }
-
-            final boolean timeoutSet = searchContext.timeoutInMillis() != SearchService.NO_TIMEOUT.millis();
-            if (timeoutSet && collector != null) { // collector might be null if no collection is actually needed
-                final Collector child = collector;
-                // TODO: change to use our own counter that uses the scheduler in ThreadPool
-                // throws TimeLimitingCollector.TimeExceededException when timeout has reached
-                collector = Lucene.wrapTimeLimitingCollector(collector, searchContext.timeEstimateCounter(), searchContext.timeoutInMillis());
-                if (doProfile) {
-                    collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_TIMEOUT,
-                            Collections.singletonList((InternalProfileCollector) child));
-                }
+        void wrapTimeLimitingCollector(SearchContext searchContext) {
+            final Collector child = collector;
+            collector = Lucene.wrapTimeLimitingCollector(collector, searchContext.timeEstimateCounter(), searchContext.timeoutInMillis());
+            if (searchContext.getProfilers() != null) {
+                collector = new InternalProfileCollector(collector, CollectorResult.REASON_SEARCH_TIMEOUT,
+                        Collections.singletonList((InternalProfileCollector) child));
             }
+        }
 
-            try {
-                if (collector != null) {
-                    if (doProfile) {
-                        searchContext.getProfilers().getCurrentQueryProfiler().setCollector((InternalProfileCollector) collector);
-                    }
-                    searcher.search(query, collector);
-                }
-            } catch (TimeLimitingCollector.TimeExceededException e) {
-                assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
-                queryResult.searchTimedOut(true);
-            } catch (Lucene.EarlyTerminationException e) {
-                assert terminateAfterSet : "EarlyTerminationException thrown even though terminateAfter wasn't set";
-                queryResult.terminatedEarly(true);
-            } finally {
-                searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
+        TopDocs topDocs() {
+            if (collapsingCollector != null) {
+                return collapsingCollector.getTopDocs();
             }
-            if (terminateAfterSet && queryResult.terminatedEarly() == null) {
-                queryResult.terminatedEarly(false);
-            }
-
-            queryResult.topDocs(topDocsCallable.call(), sortValueFormats);
-
-            if (searchContext.getProfilers() != null) {
-                ProfileShardResult shardResults = SearchProfileShardResults
-                        .buildShardResults(searchContext.getProfilers());
-                searchContext.queryResult().profileResults(shardResults);
+            if (topDocsCollector == null) {
+                return new TopDocs(totalHitCountCollector.getTotalHits(), Lucene.EMPTY_SCORE_DOCS, 0);
             }
-
-            return rescore;
-
-        } catch (Throwable e) {
-            throw new QueryPhaseExecutionException(searchContext, "Failed to execute main query", e);
+            return topDocsCollector.topDocs();
         }
     }
 }
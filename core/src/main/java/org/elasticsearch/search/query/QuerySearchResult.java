@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.query;
 
+import org.apache.lucene.search.CollapseTopFieldDocs;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.TopDocs;
 import org.elasticsearch.Version;
@@ -60,6 +61,9 @@ public class QuerySearchResult extends QuerySearchResultProvider {
     private boolean searchTimedOut;
     private Boolean terminatedEarly = null;
     private ProfileShardResult profileShardResults;
+    private int nodeQueueSize = -1;
+    private long serviceTimeEWMA = -1;
+    private long readerVersion = -1;
 
     public QuerySearchResult() {
 
@@ -117,7 +121,9 @@ public class QuerySearchResult extends QuerySearchResultProvider {
 
     public void topDocs(TopDocs topDocs, DocValueFormat[] sortValueFormats) {
         this.topDocs = topDocs;
-        if (topDocs.scoreDocs.length > 0 && topDocs.scoreDocs[0] instanceof FieldDoc) {
+        // hits that are collapsed by relevance are sorted by their score, which has no sort value format
+        final boolean collapsedByScore = topDocs instanceof CollapseTopFieldDocs && sortValueFormats.length == 0;
+        if (topDocs.scoreDocs.length > 0 && topDocs.scoreDocs[0] instanceof FieldDoc && collapsedByScore == false) {
             int numFields = ((FieldDoc) topDocs.scoreDocs[0]).fields.length;
             if (numFields != sortValueFormats.length) {
                 throw new IllegalArgumentException("The number of sort fields does not match: "
@@ -189,6 +195,44 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         return this;
     }
 
+    /**
+     * The size of the search thread pool queue on the node that executed this request, or {@code -1} if unknown.
+     */
+    public int nodeQueueSize() {
+        return nodeQueueSize;
+    }
+
+    public QuerySearchResult nodeQueueSize(int nodeQueueSize) {
+        this.nodeQueueSize = nodeQueueSize;
+        return this;
+    }
+
+    /**
+     * The moving average of the time, in nanoseconds, it took the node that executed this request to serve
+     * a query phase, or {@code -1} if unknown.
+     */
+    public long serviceTimeEWMA() {
+        return serviceTimeEWMA;
+    }
+
+    public QuerySearchResult serviceTimeEWMA(long serviceTimeEWMA) {
+        this.serviceTimeEWMA = serviceTimeEWMA;
+        return this;
+    }
+
+    /**
+     * The version of the reader this request was executed on, or {@code -1} if unknown or if the result depends on the current
+     * time and must not be cached.
+     */
+    public long readerVersion() {
+        return readerVersion;
+    }
+
+    public QuerySearchResult readerVersion(long readerVersion) {
+        this.readerVersion = readerVersion;
+        return this;
+    }
+
     public static QuerySearchResult readQuerySearchResult(StreamInput in) throws IOException {
         QuerySearchResult result = new QuerySearchResult();
         result.readFrom(in);
@@ -239,6 +283,11 @@ public class QuerySearchResult extends QuerySearchResultProvider {
         if (in.getVersion().onOrAfter(Version.V_2_2_0) && in.readBoolean()) {
             profileShardResults = new ProfileShardResult(in);
         }
+        if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            nodeQueueSize = in.readInt();
+            serviceTimeEWMA = in.readZLong();
+            readerVersion = in.readZLong();
+        }
     }
 
     @Override
@@ -294,5 +343,10 @@ public class QuerySearchResult extends QuerySearchResultProvider {
                 profileShardResults.writeTo(out);
             }
         }
+        if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+            out.writeInt(nodeQueueSize);
+            out.writeZLong(serviceTimeEWMA);
+            out.writeZLong(readerVersion);
+        }
     }
 }
@@ -0,0 +1,223 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.threadpool;
+
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.SizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.node.Node;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A builder for executors that automatically adjust the queue length as needed, depending on
+ * Little's Law. See https://en.wikipedia.org/wiki/Little's_law for more information. The queue
+ * of these executors can optionally be split per tenant, see {@link #tenantHeader(Settings)}.
+ */
+public final class AutoQueueAdjustingExecutorBuilder extends ExecutorBuilder<AutoQueueAdjustingExecutorBuilder.AutoExecutorSettings> {
+
+    private final Setting<Integer> sizeSetting;
+    private final Setting<Integer> queueSizeSetting;
+    private final Setting<Integer> minQueueSizeSetting;
+    private final Setting<Integer> maxQueueSizeSetting;
+    private final Setting<TimeValue> targetedResponseTimeSetting;
+    private final Setting<Integer> frameSizeSetting;
+    private final Setting<String> fairQueuingHeaderSetting;
+    private final Setting<Integer> fairQueuingTenantQueueSizeSetting;
+    private final Setting<Settings> fairQueuingWeightsSetting;
+
+    /**
+     * Construct an auto queue adjusting executor builder; the settings will have the
+     * key prefix "thread_pool." followed by the executor name.
+     *
+     * @param settings         the node-level settings
+     * @param name             the name of the executor
+     * @param size             the fixed number of threads
+     * @param initialQueueSize the initial size of the backing queue, the queue is not resized unless the minimum
+     *                         or the maximum queue size is configured to differ from it; a configured size of
+     *                         <code>-1</code> makes the queue unbounded and disables the adjustment
+     * @param frameSize        the number of completed tasks after which the queue size is adjusted
+     */
+    AutoQueueAdjustingExecutorBuilder(final Settings settings, final String name, final int size,
+                                      final int initialQueueSize, final int frameSize) {
+        super(name);
+        final String prefix = "thread_pool." + name;
+        final String sizeKey = settingsKey(prefix, "size");
+        this.sizeSetting =
+            new Setting<>(
+                sizeKey,
+                s -> Integer.toString(size),
+                s -> Setting.parseInt(s, 1, sizeKey),
+                Setting.Property.NodeScope);
+        this.queueSizeSetting =
+            Setting.intSetting(settingsKey(prefix, "queue_size"), initialQueueSize, -1, Setting.Property.NodeScope);
+        // the bounds default to the queue size, which may be -1 for an unbounded queue
+        this.minQueueSizeSetting =
+            Setting.intSetting(settingsKey(prefix, "min_queue_size"), queueSizeSetting, -1, Setting.Property.NodeScope);
+        this.maxQueueSizeSetting =
+            Setting.intSetting(settingsKey(prefix, "max_queue_size"), queueSizeSetting, -1, Setting.Property.NodeScope);
+        this.frameSizeSetting =
+            Setting.intSetting(settingsKey(prefix, "auto_queue_frame_size"), frameSize, 1, Setting.Property.NodeScope);
+        this.targetedResponseTimeSetting =
+            Setting.timeSetting(settingsKey(prefix, "target_response_time"), TimeValue.timeValueSeconds(1),
+                TimeValue.timeValueMillis(10), Setting.Property.NodeScope);
+        this.fairQueuingHeaderSetting =
+            Setting.simpleString(settingsKey(prefix, "fair_queuing.header"), Setting.Property.NodeScope);
+        this.fairQueuingTenantQueueSizeSetting =
+            Setting.intSetting(settingsKey(prefix, "fair_queuing.tenant_queue_size"), -1, -1, Setting.Property.NodeScope);
+        this.fairQueuingWeightsSetting =
+            Setting.groupSetting(settingsKey(prefix, "fair_queuing.weights."), Setting.Property.NodeScope);
+    }
+
+    @Override
+    public List<Setting<?>> getRegisteredSettings() {
+        return Arrays.asList(sizeSetting, queueSizeSetting, minQueueSizeSetting, maxQueueSizeSetting, frameSizeSetting,
+            targetedResponseTimeSetting, fairQueuingHeaderSetting, fairQueuingTenantQueueSizeSetting, fairQueuingWeightsSetting);
+    }
+
+    /**
+     * Returns the request header that identifies the tenant of a task if this executor queues tasks per tenant,
+     * otherwise <code>null</code>.
+     */
+    public String tenantHeader(final Settings settings) {
+        final String tenantHeader = fairQueuingHeaderSetting.get(settings);
+        return Strings.hasLength(tenantHeader) ? tenantHeader : null;
+    }
+
+    @Override
+    AutoExecutorSettings getSettings(Settings settings) {
+        final String nodeName = Node.NODE_NAME_SETTING.get(settings);
+        final int size = sizeSetting.get(settings);
+        final int initialQueueSize = queueSizeSetting.get(settings);
+        final int minQueueSize;
+        final int maxQueueSize;
+        if (initialQueueSize < 0) {
+            // an unbounded queue, as fixed executors have with a queue size of -1, is never adjusted
+            minQueueSize = -1;
+            maxQueueSize = -1;
+        } else {
+            minQueueSize = minQueueSizeSetting.get(settings);
+            maxQueueSize = maxQueueSizeSetting.get(settings);
+            if (minQueueSize < 0 || maxQueueSize < 0) {
+                throw new IllegalArgumentException("[" + minQueueSizeSetting.getKey() + "] and [" + maxQueueSizeSetting.getKey() +
+                    "] must not be negative if [" + queueSizeSetting.getKey() + "] is bounded but were [" + minQueueSize + "] and [" +
+                    maxQueueSize + "]");
+            }
+        }
+        if (minQueueSize > maxQueueSize) {
+            throw new IllegalArgumentException("[" + minQueueSizeSetting.getKey() + "] must not be greater than [" +
+                maxQueueSizeSetting.getKey() + "] but was [" + minQueueSize + "] and [" + maxQueueSize + "]");
+        }
+        final int frameSize = frameSizeSetting.get(settings);
+        final TimeValue targetedResponseTime = targetedResponseTimeSetting.get(settings);
+        final String tenantHeader = tenantHeader(settings);
+        final int tenantQueueSize = fairQueuingTenantQueueSizeSetting.get(settings);
+        final Map<String, Integer> tenantWeights = new HashMap<>();
+        for (Map.Entry<String, String> weight : fairQueuingWeightsSetting.get(settings).getAsMap().entrySet()) {
+            final String key = fairQueuingWeightsSetting.getKey() + weight.getKey();
+            tenantWeights.put(weight.getKey(), Setting.parseInt(weight.getValue(), 1, key));
+        }
+        return new AutoExecutorSettings(nodeName, size, initialQueueSize, minQueueSize, maxQueueSize, frameSize,
+            targetedResponseTime, tenantHeader, tenantQueueSize, tenantWeights);
+    }
+
+    @Override
+    ThreadPool.ExecutorHolder build(final AutoExecutorSettings settings, final ThreadContext threadContext) {
+        int size = settings.size;
+        final ThreadFactory threadFactory = EsExecutors.daemonThreadFactory(EsExecutors.threadName(settings.nodeName, name()));
+        final boolean unbounded = settings.initialQueueSize < 0;
+        if (unbounded && settings.tenantHeader == null) {
+            // nothing to adjust, behave like a fixed executor with an unbounded queue
+            final Executor executor = EsExecutors.newFixed(name(), size, -1, threadFactory, threadContext);
+            final ThreadPool.Info info =
+                new ThreadPool.Info(name(), ThreadPool.ThreadPoolType.FIXED_AUTO_QUEUE_SIZE, size, size, null, null);
+            return new ThreadPool.ExecutorHolder(executor, info);
+        }
+        // the initial capacity is only a starting point, keep it within the bounds the queue is adjusted to
+        int initialQueueSize = unbounded ? Integer.MAX_VALUE
+            : Math.max(settings.minQueueSize, Math.min(settings.maxQueueSize, settings.initialQueueSize));
+        int minQueueSize = unbounded ? Integer.MAX_VALUE : settings.minQueueSize;
+        int maxQueueSize = unbounded ? Integer.MAX_VALUE : settings.maxQueueSize;
+        final Executor executor;
+        if (settings.tenantHeader != null) {
+            executor = EsExecutors.newAutoQueueFixedFairQueuing(name(), size, initialQueueSize, minQueueSize,
+                maxQueueSize, settings.frameSize, settings.targetedResponseTime, settings.tenantQueueSize,
+                settings.tenantHeader, settings.tenantWeights, threadFactory, threadContext);
+        } else {
+            executor = EsExecutors.newAutoQueueFixed(name(), size, initialQueueSize, minQueueSize,
+                maxQueueSize, settings.frameSize, settings.targetedResponseTime, threadFactory, threadContext);
+        }
+        final ThreadPool.Info info =
+            new ThreadPool.Info(name(), ThreadPool.ThreadPoolType.FIXED_AUTO_QUEUE_SIZE,
+                size, size, null, unbounded ? null : new SizeValue(initialQueueSize));
+        return new ThreadPool.ExecutorHolder(executor, info);
+    }
+
+    @Override
+    String formatInfo(ThreadPool.Info info) {
+        return String.format(
+            Locale.ROOT,
+            "name [%s], size [%d], queue size [%s]",
+            info.getName(),
+            info.getMax(),
+            info.getQueueSize() == null ? "unbounded" : info.getQueueSize());
+    }
+
+    static final class AutoExecutorSettings extends ExecutorBuilder.ExecutorSettings {
+
+        private final int size;
+        private final int initialQueueSize;
+        private final int minQueueSize;
+        private final int maxQueueSize;
+        private final int frameSize;
+        private final TimeValue targetedResponseTime;
+        private final String tenantHeader;
+        private final int tenantQueueSize;
+        private final Map<String, Integer> tenantWeights;
+
+        AutoExecutorSettings(final String nodeName, final int size, final int initialQueueSize,
+                             final int minQueueSize, final int maxQueueSize, final int frameSize,
+                             final TimeValue targetedResponseTime, final String tenantHeader,
+                             final int tenantQueueSize, final Map<String, Integer> tenantWeights) {
+            super(nodeName);
+            this.size = size;
+            this.initialQueueSize = initialQueueSize;
+            this.minQueueSize = minQueueSize;
+            this.maxQueueSize = maxQueueSize;
+            this.frameSize = frameSize;
+            this.targetedResponseTime = targetedResponseTime;
+            this.tenantHeader = tenantHeader;
+            this.tenantQueueSize = tenantQueueSize;
+            this.tenantWeights = tenantWeights;
+        }
+
+    }
+
+}
@@ -19,17 +19,22 @@
 
 package org.elasticsearch.threadpool;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  */
@@ -44,12 +49,19 @@ public class ThreadPoolStats implements Streamable, ToXContent, Iterable<ThreadP
         private long rejected;
         private int largest;
         private long completed;
+        private int queueCapacity = -1;
+        private Map<String, TenantStats> tenants = Collections.emptyMap();
 
         Stats() {
 
         }
 
         public Stats(String name, int threads, int queue, int active, long rejected, int largest, long completed) {
+            this(name, threads, queue, active, rejected, largest, completed, -1, Collections.emptyMap());
+        }
+
+        public Stats(String name, int threads, int queue, int active, long rejected, int largest, long completed,
+                     int queueCapacity, Map<String, TenantStats> tenants) {
             this.name = name;
             this.threads = threads;
             this.queue = queue;
@@ -57,6 +69,8 @@ public class ThreadPoolStats implements Streamable, ToXContent, Iterable<ThreadP
             this.rejected = rejected;
             this.largest = largest;
             this.completed = completed;
+            this.queueCapacity = queueCapacity;
+            this.tenants = tenants;
         }
 
         public String getName() {
@@ -87,6 +101,20 @@ public class ThreadPoolStats implements Streamable, ToXContent, Iterable<ThreadP
             return this.completed;
         }
 
+        /**
+         * Returns the current capacity of the queue if the thread pool adjusts it automatically, -1 otherwise.
+         */
+        public int getQueueCapacity() {
+            return this.queueCapacity;
+        }
+
+        /**
+         * Returns the queue statistics per tenant, empty unless the thread pool queues tasks per tenant.
+         */
+        public Map<String, TenantStats> getTenants() {
+            return this.tenants;
+        }
+
         @Override
         public void readFrom(StreamInput in) throws IOException {
             name = in.readString();
@@ -96,6 +124,18 @@ public class ThreadPoolStats implements Streamable, ToXContent, Iterable<ThreadP
             rejected = in.readLong();
             largest = in.readInt();
             completed = in.readLong();
+            if (in.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+                queueCapacity = in.readInt();
+                int size = in.readVInt();
+                if (size == 0) {
+                    tenants = Collections.emptyMap();
+                } else {
+                    tenants = new HashMap<>(size);
+                    for (int i = 0; i < size; i++) {
+                        tenants.put(in.readString(), new TenantStats(in));
+                    }
+                }
+            }
         }
 
         @Override
@@ -107,6 +147,14 @@ public class ThreadPoolStats implements Streamable, ToXContent, Iterable<ThreadP
             out.writeLong(rejected);
             out.writeInt(largest);
             out.writeLong(completed);
+            if (out.getVersion().onOrAfter(Version.V_5_0_0_alpha5)) {
+                out.writeInt(queueCapacity);
+                out.writeVInt(tenants.size());
+                for (Map.Entry<String, TenantStats> entry : tenants.entrySet()) {
+                    out.writeString(entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+            }
         }
 
         @Override
@@ -130,6 +178,18 @@ public class ThreadPoolStats implements Streamable, ToXContent, Iterable<ThreadP
             if (completed != -1) {
                 builder.field(Fields.COMPLETED, completed);
             }
+            if (queueCapacity != -1) {
+                builder.field(Fields.QUEUE_CAPACITY, queueCapacity);
+            }
+            if (tenants.isEmpty() == false) {
+                builder.startObject(Fields.TENANTS);
+                for (Map.Entry<String, TenantStats> entry : new TreeMap<>(tenants).entrySet()) {
+                    builder.startObject(entry.getKey());
+                    entry.getValue().toXContent(builder, params);
+                    builder.endObject();
+                }
+                builder.endObject();
+            }
             builder.endObject();
             return builder;
         }
@@ -152,6 +212,55 @@ public class ThreadPoolStats implements Streamable, ToXContent, Iterable<ThreadP
         }
     }
 
+    /**
+     * Queue statistics of a single tenant of a thread pool that queues tasks per tenant.
+     */
+    public static class TenantStats implements Writeable, ToXContent {
+
+        private final int queue;
+        private final long rejected;
+
+        public TenantStats(int queue, long rejected) {
+            this.queue = queue;
+            this.rejected = rejected;
+        }
+
+        /**
+         * Read from a stream.
+         */
+        public TenantStats(StreamInput in) throws IOException {
+            queue = in.readVInt();
+            rejected = in.readVLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(queue);
+            out.writeVLong(rejected);
+        }
+
+        /**
+         * The number of tasks of the tenant that are waiting in the queue.
+         */
+        public int getQueue() {
+            return queue;
+        }
+
+        /**
+         * The number of tasks of the tenant that were rejected because the queue or the tenant's share of it was full.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field(Fields.QUEUE, queue);
+            builder.field(Fields.REJECTED, rejected);
+            return builder;
+        }
+    }
+
     private List<Stats> stats;
 
     ThreadPoolStats() {
@@ -201,6 +310,8 @@ public class ThreadPoolStats implements Streamable, ToXContent, Iterable<ThreadP
         static final String REJECTED = "rejected";
         static final String LARGEST = "largest";
         static final String COMPLETED = "completed";
+        static final String QUEUE_CAPACITY = "queue_capacity";
+        static final String TENANTS = "tenants";
     }
 
     @Override
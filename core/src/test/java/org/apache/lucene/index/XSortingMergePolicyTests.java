@@ -0,0 +1,89 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.lucene.index;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.test.ESTestCase;
+
+public class XSortingMergePolicyTests extends ESTestCase {
+
+    public void testMergeSegmentsWithPoints() throws Exception {
+        final Sort sort = new Sort(new SortedNumericSortField("timestamp", SortField.Type.LONG, true));
+        try (Directory dir = newDirectory()) {
+            final IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+            iwc.setMergePolicy(new XSortingMergePolicy(new TieredMergePolicy(), sort));
+            try (IndexWriter writer = new IndexWriter(dir, iwc)) {
+                final int numDocs = randomIntBetween(50, 200);
+                for (int i = 0; i < numDocs; i++) {
+                    final Document doc = new Document();
+                    doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+                    doc.add(new LongPoint("timestamp", i));
+                    doc.add(new SortedNumericDocValuesField("timestamp", i));
+                    writer.addDocument(doc);
+                    if (randomInt(10) == 0) {
+                        writer.commit();
+                    }
+                }
+                writer.commit();
+                final int numDeletes = randomIntBetween(0, 10);
+                for (int i = 0; i < numDeletes; i++) {
+                    writer.deleteDocuments(new Term("id", Integer.toString(i)));
+                }
+                writer.forceMerge(1);
+
+                try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                    assertEquals(1, reader.leaves().size());
+                    final LeafReader leaf = reader.leaves().get(0).reader();
+                    assertTrue(XSortingMergePolicy.isSorted(leaf, sort));
+                    assertTrue(XSortingMergePolicy.isSorted(new FilterLeafReader(leaf) {}, sort));
+                    assertEquals(numDocs - numDeletes, leaf.numDocs());
+
+                    // documents are sorted by descending timestamp
+                    final SortedNumericDocValues values = leaf.getSortedNumericDocValues("timestamp");
+                    for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+                        values.setDocument(doc);
+                        assertEquals(1, values.count());
+                        assertEquals(numDocs - 1 - doc, values.valueAt(0));
+                    }
+
+                    // points were moved along with the documents
+                    assertEquals(numDocs - numDeletes, leaf.getPointValues().size("timestamp"));
+                    assertEquals(numDeletes, LongPoint.decodeDimension(leaf.getPointValues().getMinPackedValue("timestamp"), 0));
+                    assertEquals(numDocs - 1, LongPoint.decodeDimension(leaf.getPointValues().getMaxPackedValue("timestamp"), 0));
+                    final IndexSearcher searcher = new IndexSearcher(reader);
+                    for (int i = numDeletes; i < numDocs; i++) {
+                        final int expectedDoc = numDocs - 1 - i;
+                        assertEquals(expectedDoc, searcher.search(LongPoint.newExactQuery("timestamp", i), 1).scoreDocs[0].doc);
+                    }
+                }
+            }
+        }
+    }
+}
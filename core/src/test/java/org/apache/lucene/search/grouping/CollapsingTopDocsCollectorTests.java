@@ -0,0 +1,261 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.lucene.search.grouping;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.search.CollapseTopFieldDocs;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+public class CollapsingTopDocsCollectorTests extends ESTestCase {
+
+    private static final String COLLAPSE_FIELD = "collapse";
+    private static final String SORT_FIELD = "sort";
+
+    /** A document of the test indices, <code>group</code> is <code>null</code> if the document has no collapse value. */
+    private static class Doc {
+        final Object group;
+        final long sortValue;
+
+        Doc(Object group, long sortValue) {
+            this.group = group;
+            this.sortValue = sortValue;
+        }
+    }
+
+    private interface GroupValueFactory {
+        Object randomGroup(int numGroups);
+
+        void addValue(Document document, Object group);
+
+        CollapsingTopDocsCollector<?> createCollector(Sort sort, int topN) throws IOException;
+    }
+
+    private static final GroupValueFactory KEYWORD = new GroupValueFactory() {
+        @Override
+        public Object randomGroup(int numGroups) {
+            return new BytesRef("group_" + randomInt(numGroups));
+        }
+
+        @Override
+        public void addValue(Document document, Object group) {
+            document.add(new SortedDocValuesField(COLLAPSE_FIELD, (BytesRef) group));
+        }
+
+        @Override
+        public CollapsingTopDocsCollector<?> createCollector(Sort sort, int topN) throws IOException {
+            return CollapsingTopDocsCollector.createKeyword(COLLAPSE_FIELD, sort, topN, false);
+        }
+    };
+
+    private static final GroupValueFactory NUMERIC = new GroupValueFactory() {
+        @Override
+        public Object randomGroup(int numGroups) {
+            return (long) randomIntBetween(-numGroups, numGroups);
+        }
+
+        @Override
+        public void addValue(Document document, Object group) {
+            document.add(new SortedNumericDocValuesField(COLLAPSE_FIELD, (Long) group));
+        }
+
+        @Override
+        public CollapsingTopDocsCollector<?> createCollector(Sort sort, int topN) throws IOException {
+            return CollapsingTopDocsCollector.createNumeric(COLLAPSE_FIELD, sort, topN, false);
+        }
+    };
+
+    public void testCollapseKeyword() throws Exception {
+        assertCollapse(KEYWORD);
+    }
+
+    public void testCollapseNumeric() throws Exception {
+        assertCollapse(NUMERIC);
+    }
+
+    public void testMergeKeyword() throws Exception {
+        assertMerge(KEYWORD);
+    }
+
+    public void testMergeNumeric() throws Exception {
+        assertMerge(NUMERIC);
+    }
+
+    public void testMultiValuedKeyword() throws Exception {
+        Document document = new Document();
+        document.add(new SortedSetDocValuesField(COLLAPSE_FIELD, new BytesRef("a")));
+        document.add(new SortedSetDocValuesField(COLLAPSE_FIELD, new BytesRef("b")));
+        assertMultiValuedFailure(document, CollapsingTopDocsCollector.createKeyword(COLLAPSE_FIELD, Sort.INDEXORDER, 10, false));
+    }
+
+    public void testMultiValuedNumeric() throws Exception {
+        Document document = new Document();
+        document.add(new SortedNumericDocValuesField(COLLAPSE_FIELD, 1));
+        document.add(new SortedNumericDocValuesField(COLLAPSE_FIELD, 2));
+        assertMultiValuedFailure(document, CollapsingTopDocsCollector.createNumeric(COLLAPSE_FIELD, Sort.INDEXORDER, 10, false));
+    }
+
+    private void assertMultiValuedFailure(Document document, CollapsingTopDocsCollector<?> collector) throws IOException {
+        try (Directory dir = newDirectory()) {
+            try (RandomIndexWriter w = new RandomIndexWriter(random(), dir)) {
+                w.addDocument(document);
+                try (IndexReader reader = w.getReader()) {
+                    IndexSearcher searcher = new IndexSearcher(reader);
+                    IllegalStateException e = expectThrows(IllegalStateException.class,
+                        () -> searcher.search(new MatchAllDocsQuery(), collector));
+                    assertThat(e.getMessage(), containsString("the collapse field must be single valued"));
+                }
+            }
+        }
+    }
+
+    private static List<Doc> randomDocs(GroupValueFactory factory) {
+        final int numDocs = randomIntBetween(1, 500);
+        final int numGroups = randomIntBetween(1, numDocs);
+        final List<Doc> docs = new ArrayList<>(numDocs);
+        for (int i = 0; i < numDocs; i++) {
+            // sort values are unique so that the top hit of every group is unambiguous
+            docs.add(new Doc(rarely() ? null : factory.randomGroup(numGroups), i));
+        }
+        Collections.shuffle(docs, random());
+        return docs;
+    }
+
+    private static Sort randomSort() {
+        return new Sort(new SortField(SORT_FIELD, SortField.Type.LONG, randomBoolean()));
+    }
+
+    /**
+     * Returns the best document of each group sorted by <code>sort</code>, computed without any collector.
+     */
+    private static List<Doc> expectedTopGroups(List<Doc> docs, Sort sort, int topN) {
+        Comparator<Doc> comparator = Comparator.comparingLong(d -> d.sortValue);
+        if (sort.getSort()[0].getReverse()) {
+            comparator = comparator.reversed();
+        }
+        final Map<Object, Doc> bestPerGroup = new HashMap<>();
+        for (Doc doc : docs) {
+            Doc best = bestPerGroup.get(doc.group);
+            if (best == null || comparator.compare(doc, best) < 0) {
+                bestPerGroup.put(doc.group, doc);
+            }
+        }
+        List<Doc> expected = new ArrayList<>(bestPerGroup.values());
+        expected.sort(comparator);
+        return expected.subList(0, Math.min(topN, expected.size()));
+    }
+
+    private static void index(RandomIndexWriter w, GroupValueFactory factory, List<Doc> docs) throws IOException {
+        for (Doc doc : docs) {
+            Document document = new Document();
+            if (doc.group != null) {
+                factory.addValue(document, doc.group);
+            }
+            document.add(new NumericDocValuesField(SORT_FIELD, doc.sortValue));
+            w.addDocument(document);
+            if (rarely()) {
+                w.commit();
+            }
+        }
+    }
+
+    private static void assertTopGroups(List<Doc> expected, CollapseTopFieldDocs topDocs, int totalHits) {
+        assertThat(topDocs.field, equalTo(COLLAPSE_FIELD));
+        assertThat(topDocs.totalHits, equalTo(totalHits));
+        assertThat(topDocs.scoreDocs.length, equalTo(expected.size()));
+        assertThat(topDocs.collapseValues.length, equalTo(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).group, topDocs.collapseValues[i]);
+            assertEquals(expected.get(i).sortValue, ((FieldDoc) topDocs.scoreDocs[i]).fields[0]);
+        }
+    }
+
+    private void assertCollapse(GroupValueFactory factory) throws IOException {
+        final List<Doc> docs = randomDocs(factory);
+        try (Directory dir = newDirectory()) {
+            try (RandomIndexWriter w = new RandomIndexWriter(random(), dir)) {
+                index(w, factory, docs);
+                try (IndexReader reader = w.getReader()) {
+                    final IndexSearcher searcher = new IndexSearcher(reader);
+                    final Sort sort = randomSort();
+                    final int topN = randomIntBetween(1, docs.size() + 1);
+                    final CollapsingTopDocsCollector<?> collector = factory.createCollector(sort, topN);
+                    searcher.search(new MatchAllDocsQuery(), collector);
+                    assertTopGroups(expectedTopGroups(docs, sort, topN), collector.getTopDocs(), docs.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the documents in shards that are collapsed separately and checks that merging the shard results returns the
+     * same groups as collapsing all documents at once.
+     */
+    private void assertMerge(GroupValueFactory factory) throws IOException {
+        final List<Doc> docs = randomDocs(factory);
+        final int numShards = randomIntBetween(1, 5);
+        final Sort sort = randomSort();
+        final int from = randomIntBetween(0, 10);
+        final int size = randomIntBetween(1, 50);
+        final CollapseTopFieldDocs[] shardHits = new CollapseTopFieldDocs[numShards];
+        for (int shard = 0; shard < numShards; shard++) {
+            final List<Doc> shardDocs = new ArrayList<>();
+            for (int i = shard; i < docs.size(); i += numShards) {
+                shardDocs.add(docs.get(i));
+            }
+            try (Directory dir = newDirectory()) {
+                try (RandomIndexWriter w = new RandomIndexWriter(random(), dir)) {
+                    index(w, factory, shardDocs);
+                    try (IndexReader reader = w.getReader()) {
+                        final CollapsingTopDocsCollector<?> collector = factory.createCollector(sort, from + size);
+                        new IndexSearcher(reader).search(new MatchAllDocsQuery(), collector);
+                        shardHits[shard] = collector.getTopDocs();
+                    }
+                }
+            }
+        }
+        final CollapseTopFieldDocs merged = CollapseTopFieldDocs.merge(sort, from, size, shardHits);
+        final List<Doc> expected = expectedTopGroups(docs, sort, from + size);
+        assertTopGroups(expected.subList(Math.min(from, expected.size()), expected.size()), merged, docs.size());
+    }
+}
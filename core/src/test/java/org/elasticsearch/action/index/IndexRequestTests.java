@@ -19,6 +19,8 @@
 package org.elasticsearch.action.index;
 
 import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.test.ESTestCase;
@@ -30,6 +32,7 @@ import java.util.Set;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 
@@ -131,4 +134,26 @@ public class IndexRequestTests extends ESTestCase {
         assertThat(validate, notNullValue());
         assertThat(validate.getMessage(), containsString("ttl must not be negative"));
     }
+
+    public void testAutoGeneratedIdTimestampAndRetry() throws Exception {
+        IndexRequest request = new IndexRequest("index", "type").source("{}");
+        assertEquals(IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP, request.getAutoGeneratedTimestamp());
+        request.process(null, true, "index");
+        assertThat(request.id(), notNullValue());
+        assertThat(request.getAutoGeneratedTimestamp(), greaterThanOrEqualTo(0L));
+        assertFalse(request.isRetry());
+        request.onRetry();
+        assertTrue(request.isRetry());
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        IndexRequest copy = new IndexRequest();
+        copy.readFrom(StreamInput.wrap(out.bytes()));
+        assertEquals(request.getAutoGeneratedTimestamp(), copy.getAutoGeneratedTimestamp());
+        assertTrue(copy.isRetry());
+
+        IndexRequest withId = new IndexRequest("index", "type", "1").source("{}");
+        withId.process(null, true, "index");
+        assertEquals(IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP, withId.getAutoGeneratedTimestamp());
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.cluster.routing.TestShardRouting;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+
+public class SearchResponseCacheTests extends ESTestCase {
+
+    public void testCanCache() {
+        SearchRequest request = new SearchRequest().searchType(SearchType.QUERY_THEN_FETCH);
+        assertFalse(SearchResponseCache.canCache(request));
+        assertFalse(SearchResponseCache.canCache(request.responseCache(false)));
+        assertTrue(SearchResponseCache.canCache(request.responseCache(true)));
+        assertFalse(SearchResponseCache.canCache(request.searchType(SearchType.DFS_QUERY_THEN_FETCH)));
+        request.searchType(SearchType.QUERY_THEN_FETCH);
+        assertFalse(SearchResponseCache.canCache(request.source(new SearchSourceBuilder().profile(true))));
+        request.source(new SearchSourceBuilder());
+        assertFalse(SearchResponseCache.canCache(request.scroll("1m")));
+    }
+
+    public void testBuildKey() throws IOException {
+        ClusterState clusterState = clusterState(1);
+        ShardRouting[] shards = shards();
+        SearchRequest request = new SearchRequest("test").source(new SearchSourceBuilder().query(QueryBuilders.termQuery("foo", "bar")));
+        SearchResponseCache.Key key = SearchResponseCache.buildKey(request, clusterState, shards, new long[] {1, 2});
+        assertEquals(key, SearchResponseCache.buildKey(request, clusterState, shards, new long[] {1, 2}));
+        assertNotEquals(key, SearchResponseCache.buildKey(request, clusterState, shards, new long[] {1, 3}));
+        assertNotEquals(key, SearchResponseCache.buildKey(request, clusterState(2), shards, new long[] {1, 2}));
+        assertNotEquals(key, SearchResponseCache.buildKey(request, clusterState, new ShardRouting[] {shards[1], shards[0]},
+            new long[] {1, 2}));
+        SearchRequest other = new SearchRequest("test").source(new SearchSourceBuilder().query(QueryBuilders.termQuery("foo", "baz")));
+        assertNotEquals(key, SearchResponseCache.buildKey(other, clusterState, shards, new long[] {1, 2}));
+
+        // shards that couldn't report their reader version or that are unknown can't be cached
+        assertNull(SearchResponseCache.buildKey(request, clusterState, shards, new long[] {1, -1}));
+        assertNull(SearchResponseCache.buildKey(request, clusterState, new ShardRouting[] {shards[0], null}, new long[] {1, 2}));
+    }
+
+    public void testPutAndGet() throws IOException {
+        SearchResponseCache cache = new SearchResponseCache(Settings.EMPTY, new NamedWriteableRegistry());
+        ClusterState clusterState = clusterState(1);
+        ShardRouting[] shards = shards();
+        SearchRequest request = new SearchRequest("test");
+        SearchResponseCache.Key key = SearchResponseCache.buildKey(request, clusterState, shards, new long[] {1, 2});
+        assertNull(cache.get(key));
+
+        InternalSearchHits hits = new InternalSearchHits(new InternalSearchHit[0], 42, 1.5f);
+        cache.put(key, new InternalSearchResponse(hits, null, null, null, false, null, 3), 1);
+        SearchResponseCache.CachedResponse cached = cache.get(key);
+        assertEquals(1, cached.skippedShards);
+        assertEquals(42, cached.response.hits().totalHits());
+        assertEquals(1.5f, cached.response.hits().maxScore(), 0f);
+        assertEquals(3, cached.response.getNumReducePhases());
+        assertNull(cache.get(SearchResponseCache.buildKey(request, clusterState, shards, new long[] {1, 3})));
+
+        SearchResponseCacheStats stats = cache.stats();
+        assertEquals(1, stats.getCount());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertTrue(stats.getMemorySizeInBytes() > 0);
+
+        cache.clear();
+        assertNull(cache.get(key));
+        assertEquals(0, cache.stats().getCount());
+    }
+
+    public void testEviction() throws IOException {
+        SearchResponseCache cache = new SearchResponseCache(
+            Settings.builder().put(SearchResponseCache.SEARCH_RESPONSE_CACHE_SIZE.getKey(), "1b").build(), new NamedWriteableRegistry());
+        SearchResponseCache.Key key = SearchResponseCache.buildKey(new SearchRequest("test"), clusterState(1), shards(),
+            new long[] {1, 2});
+        cache.put(key, InternalSearchResponse.empty(), 0);
+        assertNull(cache.get(key));
+        assertEquals(0, cache.stats().getCount());
+        assertEquals(1, cache.stats().getEvictions());
+    }
+
+    private static ClusterState clusterState(long indexMetaDataVersion) {
+        IndexMetaData indexMetaData = IndexMetaData.builder("test").settings(settings(Version.CURRENT))
+            .numberOfShards(2).numberOfReplicas(0).version(indexMetaDataVersion).build();
+        return ClusterState.builder(ClusterName.CLUSTER_NAME_SETTING.getDefault(Settings.EMPTY))
+            .metaData(MetaData.builder().put(indexMetaData, false)).build();
+    }
+
+    private static ShardRouting[] shards() {
+        return new ShardRouting[] {
+            TestShardRouting.newShardRouting("test", 0, "node1", true, ShardRoutingState.STARTED),
+            TestShardRouting.newShardRouting("test", 1, "node2", true, ShardRoutingState.STARTED)
+        };
+    }
+}
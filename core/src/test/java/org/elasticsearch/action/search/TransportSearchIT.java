@@ -19,13 +19,32 @@
 
 package org.elasticsearch.action.search;
 
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.profile.ProfileShardResult;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.test.ESIntegTestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
 
 public class TransportSearchIT extends ESIntegTestCase {
 
@@ -70,4 +89,245 @@ public class TransportSearchIT extends ESIntegTestCase {
         }
     }
 
+    public void testBatchedReduce() throws Exception {
+        final int numShards = randomIntBetween(3, 8);
+        assertAcked(prepareCreate("test")
+                .setSettings(IndexMetaData.SETTING_NUMBER_OF_SHARDS, numShards, IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .addMapping("type", "term", "type=keyword", "number", "type=long"));
+        ensureGreen("test");
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        final int numDocs = randomIntBetween(50, 200);
+        for (int i = 0; i < numDocs; i++) {
+            docs.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource("term", "term" + randomInt(20), "number", randomIntBetween(0, 100)));
+        }
+        indexRandom(true, docs);
+
+        final int batchedReduceSize = randomIntBetween(2, numShards - 1);
+        SearchRequestBuilder batched = client().prepareSearch("test").setBatchedReduceSize(batchedReduceSize);
+        SearchRequestBuilder single = client().prepareSearch("test");
+        final int gte = randomIntBetween(0, 50);
+        final int from = randomIntBetween(0, 5);
+        final int size = randomIntBetween(1, 10);
+        for (SearchRequestBuilder builder : Arrays.asList(batched, single)) {
+            builder.setQuery(QueryBuilders.rangeQuery("number").gte(gte))
+                    .addSort("number", SortOrder.DESC).addSort("_uid", SortOrder.ASC)
+                    .setFrom(from).setSize(size)
+                    .addAggregation(AggregationBuilders.terms("terms").field("term").size(5).shardSize(100))
+                    .addAggregation(AggregationBuilders.histogram("histo").field("number").interval(10).minDocCount(0))
+                    .addAggregation(AggregationBuilders.max("max").field("number"));
+        }
+        SearchResponse batchedResponse = batched.get();
+        SearchResponse singleResponse = single.get();
+        assertEquals(numShards / batchedReduceSize + 1, batchedResponse.getNumReducePhases());
+        assertEquals(1, singleResponse.getNumReducePhases());
+
+        assertEquals(singleResponse.getHits().getTotalHits(), batchedResponse.getHits().getTotalHits());
+        assertEquals(singleResponse.getHits().getHits().length, batchedResponse.getHits().getHits().length);
+        for (int i = 0; i < singleResponse.getHits().getHits().length; i++) {
+            assertEquals(singleResponse.getHits().getAt(i).getId(), batchedResponse.getHits().getAt(i).getId());
+        }
+
+        Terms singleTerms = singleResponse.getAggregations().get("terms");
+        Terms batchedTerms = batchedResponse.getAggregations().get("terms");
+        assertEquals(singleTerms.getBuckets().size(), batchedTerms.getBuckets().size());
+        for (int i = 0; i < singleTerms.getBuckets().size(); i++) {
+            assertEquals(singleTerms.getBuckets().get(i).getKey(), batchedTerms.getBuckets().get(i).getKey());
+            assertEquals(singleTerms.getBuckets().get(i).getDocCount(), batchedTerms.getBuckets().get(i).getDocCount());
+        }
+        Histogram singleHisto = singleResponse.getAggregations().get("histo");
+        Histogram batchedHisto = batchedResponse.getAggregations().get("histo");
+        assertEquals(singleHisto.getBuckets().size(), batchedHisto.getBuckets().size());
+        for (int i = 0; i < singleHisto.getBuckets().size(); i++) {
+            assertEquals(singleHisto.getBuckets().get(i).getKey(), batchedHisto.getBuckets().get(i).getKey());
+            assertEquals(singleHisto.getBuckets().get(i).getDocCount(), batchedHisto.getBuckets().get(i).getDocCount());
+        }
+        Max singleMax = singleResponse.getAggregations().get("max");
+        Max batchedMax = batchedResponse.getAggregations().get("max");
+        assertEquals(singleMax.getValue(), batchedMax.getValue(), 0d);
+    }
+
+    public void testSingleRoundTrip() throws Exception {
+        try {
+            final int numShards = randomIntBetween(2, 5);
+            assertAcked(prepareCreate("test")
+                    .setSettings(IndexMetaData.SETTING_NUMBER_OF_SHARDS, numShards)
+                    .addMapping("type", "number", "type=long"));
+            ensureYellow("test");
+            List<IndexRequestBuilder> docs = new ArrayList<>();
+            final int numDocs = randomIntBetween(1, 50);
+            for (int i = 0; i < numDocs; i++) {
+                docs.add(client().prepareIndex("test", "type", Integer.toString(i))
+                        .setSource("number", randomIntBetween(0, 100)));
+            }
+            indexRandom(true, docs);
+
+            final int from = randomIntBetween(0, 5);
+            final int size = randomIntBetween(1, 10);
+            SearchRequestBuilder builder = client().prepareSearch("test").setSearchType(SearchType.QUERY_THEN_FETCH)
+                    .addSort("number", SortOrder.DESC).addSort("_uid", SortOrder.ASC)
+                    .setFrom(from).setSize(size).setProfile(true);
+            SearchResponse expected = builder.get();
+            for (ProfileShardResult result : expected.getProfileResults().values()) {
+                assertEquals(ProfileShardResult.FETCH_MODE_QUERY_THEN_FETCH, result.getFetchMode());
+            }
+
+            final boolean exceedBudget = randomBoolean();
+            Map<String, Object> settings = new HashMap<>();
+            settings.put(TransportSearchAction.SINGLE_ROUND_TRIP_MAX_SIZE_SETTING.getKey(), from + size);
+            if (exceedBudget) {
+                settings.put(SearchService.SINGLE_ROUND_TRIP_MAX_BYTES_SETTING.getKey(), "0b");
+            }
+            assertAcked(client().admin().cluster().prepareUpdateSettings().setTransientSettings(settings));
+
+            SearchResponse response = builder.get();
+            assertEquals(expected.getHits().getTotalHits(), response.getHits().getTotalHits());
+            assertEquals(expected.getHits().getHits().length, response.getHits().getHits().length);
+            for (int i = 0; i < expected.getHits().getHits().length; i++) {
+                assertEquals(expected.getHits().getAt(i).getId(), response.getHits().getAt(i).getId());
+                assertEquals(expected.getHits().getAt(i).getSourceAsString(), response.getHits().getAt(i).getSourceAsString());
+            }
+            int fetchedWithQuery = 0;
+            for (ProfileShardResult result : response.getProfileResults().values()) {
+                if (ProfileShardResult.FETCH_MODE_QUERY_AND_FETCH.equals(result.getFetchMode())) {
+                    fetchedWithQuery++;
+                } else {
+                    assertEquals(ProfileShardResult.FETCH_MODE_QUERY_THEN_FETCH, result.getFetchMode());
+                }
+            }
+            if (exceedBudget) {
+                // only shards without hits fit into an empty budget
+                assertThat(fetchedWithQuery, lessThan(numShards));
+            } else {
+                assertEquals(numShards, fetchedWithQuery);
+            }
+
+            // larger requests still need a separate fetch round trip
+            response = builder.setSize(size + 1).get();
+            for (ProfileShardResult result : response.getProfileResults().values()) {
+                assertEquals(ProfileShardResult.FETCH_MODE_QUERY_THEN_FETCH, result.getFetchMode());
+            }
+        } finally {
+            Map<String, Object> settings = new HashMap<>();
+            settings.put(TransportSearchAction.SINGLE_ROUND_TRIP_MAX_SIZE_SETTING.getKey(), null);
+            settings.put(SearchService.SINGLE_ROUND_TRIP_MAX_BYTES_SETTING.getKey(), null);
+            assertAcked(client().admin().cluster().prepareUpdateSettings().setTransientSettings(settings));
+        }
+    }
+
+    public void testSingleRoundTripWithBatchedReduce() throws Exception {
+        try {
+            final int numShards = randomIntBetween(3, 8);
+            assertAcked(prepareCreate("test")
+                    .setSettings(IndexMetaData.SETTING_NUMBER_OF_SHARDS, numShards, IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                    .addMapping("type", "number", "type=long"));
+            ensureGreen("test");
+            List<IndexRequestBuilder> docs = new ArrayList<>();
+            final int numDocs = randomIntBetween(50, 200);
+            for (int i = 0; i < numDocs; i++) {
+                docs.add(client().prepareIndex("test", "type", Integer.toString(i))
+                        .setSource("number", randomIntBetween(0, 100)));
+            }
+            indexRandom(true, docs);
+
+            final int from = randomIntBetween(0, 5);
+            final int size = randomIntBetween(1, 10);
+            SearchRequestBuilder builder = client().prepareSearch("test").setSearchType(SearchType.QUERY_THEN_FETCH)
+                    .addSort("number", SortOrder.DESC).addSort("_uid", SortOrder.ASC)
+                    .setFrom(from).setSize(size);
+            SearchResponse expected = builder.get();
+
+            assertAcked(client().admin().cluster().prepareUpdateSettings().setTransientSettings(Collections.singletonMap(
+                    TransportSearchAction.SINGLE_ROUND_TRIP_MAX_SIZE_SETTING.getKey(), from + size)));
+            // the partial reduces trim the top docs of the shards that fetched their top hits already
+            SearchResponse response = builder.setBatchedReduceSize(randomIntBetween(2, numShards - 1)).get();
+            assertThat(response.getNumReducePhases(), greaterThan(1));
+            assertEquals(expected.getHits().getTotalHits(), response.getHits().getTotalHits());
+            assertEquals(expected.getHits().getHits().length, response.getHits().getHits().length);
+            for (int i = 0; i < expected.getHits().getHits().length; i++) {
+                assertEquals(expected.getHits().getAt(i).getId(), response.getHits().getAt(i).getId());
+                assertEquals(expected.getHits().getAt(i).getSourceAsString(), response.getHits().getAt(i).getSourceAsString());
+            }
+        } finally {
+            assertAcked(client().admin().cluster().prepareUpdateSettings().setTransientSettings(Collections.singletonMap(
+                    TransportSearchAction.SINGLE_ROUND_TRIP_MAX_SIZE_SETTING.getKey(), null)));
+        }
+    }
+
+    public void testResponseCache() throws Exception {
+        final int numShards = randomIntBetween(2, 5);
+        assertAcked(prepareCreate("test")
+                .setSettings(IndexMetaData.SETTING_NUMBER_OF_SHARDS, numShards, IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .addMapping("type", "term", "type=keyword", "date", "type=date"));
+        ensureGreen("test");
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        final int numDocs = randomIntBetween(1, 50);
+        for (int i = 0; i < numDocs; i++) {
+            docs.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource("term", "term" + randomInt(5), "date", "2016-01-0" + randomIntBetween(1, 9)));
+        }
+        indexRandom(true, docs);
+        // make sure that no merge changes the readers of the shards behind our back
+        client().admin().indices().prepareForceMerge("test").setMaxNumSegments(1).get();
+        refresh("test");
+
+        // the response is cached on the coordinating node
+        final String node = randomFrom(internalCluster().getNodeNames());
+        SearchRequestBuilder builder = client(node).prepareSearch("test").setSearchType(SearchType.QUERY_THEN_FETCH)
+                .setSize(0).setResponseCache(true)
+                .addAggregation(AggregationBuilders.terms("terms").field("term"));
+        SearchResponse response = builder.get();
+        assertEquals(numDocs, response.getHits().getTotalHits());
+        assertResponseCacheStats(node, 1, 0, 1);
+
+        SearchResponse cached = builder.get();
+        assertEquals(numShards, cached.getTotalShards());
+        assertEquals(numShards, cached.getSuccessfulShards());
+        assertEquals(numDocs, cached.getHits().getTotalHits());
+        Terms terms = response.getAggregations().get("terms");
+        Terms cachedTerms = cached.getAggregations().get("terms");
+        assertEquals(terms.getBuckets().size(), cachedTerms.getBuckets().size());
+        for (int i = 0; i < terms.getBuckets().size(); i++) {
+            assertEquals(terms.getBuckets().get(i).getKey(), cachedTerms.getBuckets().get(i).getKey());
+            assertEquals(terms.getBuckets().get(i).getDocCount(), cachedTerms.getBuckets().get(i).getDocCount());
+        }
+        assertResponseCacheStats(node, 1, 1, 1);
+
+        // searches that didn't opt in or that depend on the current time are not cached
+        client(node).prepareSearch("test").setSearchType(SearchType.QUERY_THEN_FETCH).setSize(0).get();
+        // the shard request cache doesn't tell whether the cached shard result depends on the current time
+        SearchRequestBuilder now = client(node).prepareSearch("test").setSearchType(SearchType.QUERY_THEN_FETCH)
+                .setSize(0).setResponseCache(true).setRequestCache(false)
+                .addAggregation(AggregationBuilders.dateRange("range").field("date").addUnboundedTo("now"));
+        now.get();
+        now.get();
+        assertResponseCacheStats(node, 1, 1, 3);
+
+        // a refresh changes the reader of a shard
+        client().prepareIndex("test", "type", Integer.toString(numDocs)).setSource("term", "term")
+                .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE).get();
+        response = builder.get();
+        assertEquals(numDocs + 1, response.getHits().getTotalHits());
+        assertResponseCacheStats(node, 2, 1, 4);
+    }
+
+    private void assertResponseCacheStats(String node, long count, long hits, long misses) {
+        NodesStatsResponse response = client().admin().cluster().prepareNodesStats(node).clear().setSearchResponseCache(true).get();
+        SearchResponseCacheStats stats = response.getNodes().get(0).getSearchResponseCacheStats();
+        assertEquals(count, stats.getCount());
+        assertEquals(hits, stats.getHitCount());
+        assertEquals(misses, stats.getMissCount());
+    }
+
+    public void testCanFetchWithQuery() {
+        assertTrue(TransportSearchAction.canFetchWithQuery(new SearchRequest(), SearchService.DEFAULT_SIZE));
+        assertFalse(TransportSearchAction.canFetchWithQuery(new SearchRequest(), SearchService.DEFAULT_SIZE - 1));
+        SearchRequest request = new SearchRequest().source(new SearchSourceBuilder().from(3).size(2));
+        assertTrue(TransportSearchAction.canFetchWithQuery(request, 5));
+        assertFalse(TransportSearchAction.canFetchWithQuery(request, 4));
+        assertFalse(TransportSearchAction.canFetchWithQuery(request.scroll("1m"), 5));
+        request = new SearchRequest().source(new SearchSourceBuilder().size(0));
+        assertFalse(TransportSearchAction.canFetchWithQuery(request, 5));
+        assertFalse(TransportSearchAction.canFetchWithQuery(request, 0));
+    }
 }
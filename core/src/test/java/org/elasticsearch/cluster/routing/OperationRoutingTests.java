@@ -21,13 +21,16 @@ package org.elasticsearch.cluster.routing;
 import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.support.replication.ClusterStateCreationUtils;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.routing.allocation.decider.AwarenessAllocationDecider;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.node.ResponseCollectorService;
 import org.elasticsearch.test.ClusterServiceUtils;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.threadpool.TestThreadPool;
@@ -35,6 +38,7 @@ import org.elasticsearch.threadpool.TestThreadPool;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -291,4 +295,52 @@ public class OperationRoutingTests extends ESTestCase{
         }
     }
 
+    public void testAdaptiveReplicaSelection() throws Exception {
+        final TestThreadPool threadPool = new TestThreadPool("testAdaptiveReplicaSelection");
+        final ClusterService clusterService = ClusterServiceUtils.createClusterService(threadPool);
+        try {
+            final String indexName = "test";
+            ClusterState state = ClusterStateCreationUtils.stateWithAssignedPrimariesAndOneReplica(indexName, 1);
+            ClusterServiceUtils.setState(clusterService, state);
+            final IndexShardRoutingTable shardTable = state.routingTable().index(indexName).shard(0);
+            final String primaryNode = shardTable.primaryShard().currentNodeId();
+            final String replicaNode = shardTable.replicaShards().get(0).currentNodeId();
+            final ResponseCollectorService collector = new ResponseCollectorService(Settings.EMPTY, clusterService);
+            final OperationRouting opRouting = new OperationRouting(
+                Settings.builder().put(OperationRouting.USE_ADAPTIVE_REPLICA_SELECTION_SETTING.getKey(), true).build(),
+                new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
+
+            // the primary node is much slower and has a longer queue than the replica node
+            collector.addNodeStatistics(primaryNode, 10, TimeValue.timeValueMillis(50).nanos(), TimeValue.timeValueMillis(40).nanos());
+            collector.addNodeStatistics(replicaNode, 1, TimeValue.timeValueMillis(5).nanos(), TimeValue.timeValueMillis(4).nanos());
+            Map<String, Long> searchCounts = new HashMap<>();
+            GroupShardsIterator groupIterator = opRouting.searchShards(state, new String[]{indexName}, null, null, collector, searchCounts);
+            assertThat(groupIterator.size(), equalTo(1));
+            ShardIterator iterator = groupIterator.iterator().next();
+            assertThat(iterator.nextOrNull().currentNodeId(), equalTo(replicaNode));
+            assertThat(iterator.nextOrNull().currentNodeId(), equalTo(primaryNode));
+            assertThat(searchCounts.get(replicaNode), equalTo(1L));
+            assertFalse(searchCounts.containsKey(primaryNode));
+
+            // the primary node was moved towards the replica node, overloading the replica node must make the primary the winner
+            for (int i = 0; i < 10; i++) {
+                collector.addNodeStatistics(replicaNode, 50, TimeValue.timeValueMillis(100).nanos(), TimeValue.timeValueMillis(80).nanos());
+            }
+            searchCounts = new HashMap<>();
+            groupIterator = opRouting.searchShards(state, new String[]{indexName}, null, null, collector, searchCounts);
+            iterator = groupIterator.iterator().next();
+            assertThat(iterator.nextOrNull().currentNodeId(), equalTo(primaryNode));
+            assertThat(searchCounts.get(primaryNode), equalTo(1L));
+
+            // adaptive replica selection can be disabled, in which case no searches are accounted for
+            opRouting.setUseAdaptiveReplicaSelection(false);
+            searchCounts = new HashMap<>();
+            groupIterator = opRouting.searchShards(state, new String[]{indexName}, null, null, collector, searchCounts);
+            assertThat(groupIterator.iterator().next().size(), equalTo(2));
+            assertTrue(searchCounts.isEmpty());
+        } finally {
+            IOUtils.close(clusterService);
+            terminate(threadPool);
+        }
+    }
 }
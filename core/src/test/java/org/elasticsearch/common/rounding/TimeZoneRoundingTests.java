@@ -35,8 +35,10 @@ import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
 
 /**
  */
@@ -217,6 +219,78 @@ public class TimeZoneRoundingTests extends ESTestCase {
         }
     }
 
+    /**
+     * the rounding prepared for a range of dates must round like the original rounding, inside and outside of the range
+     */
+    public void testPreparedRoundingRandom() {
+        for (int i = 0; i < 100; ++i) {
+            DateTimeZone tz = randomDateTimeZone();
+            final TimeZoneRounding rounding;
+            final long unitMillis;
+            if (randomBoolean()) {
+                DateTimeUnit timeUnit = randomTimeUnit();
+                rounding = new TimeZoneRounding.TimeUnitRounding(timeUnit, tz);
+                unitMillis = timeUnit.field(tz).getDurationField().getUnitMillis();
+            } else {
+                TimeUnit unit = randomFrom(new TimeUnit[] {TimeUnit.MINUTES, TimeUnit.HOURS, TimeUnit.DAYS});
+                unitMillis = unit.toMillis(randomIntBetween(1, 365));
+                rounding = new TimeZoneRounding.TimeIntervalRounding(unitMillis, tz);
+            }
+            long min = Math.abs(randomLong() % (2 * (long) 10e11)); // 1970-01-01T00:00:00Z - 2033-05-18T05:33:20.000+02:00
+            long max = min + Math.abs(randomLong() % (long) 10e11);
+            Rounding.Prepared prepared = rounding.prepare(min, max);
+            for (int j = 0; j < 100; j++) {
+                long date;
+                switch (randomInt(2)) {
+                    case 0:
+                        date = min + Math.abs(randomLong() % (max - min + 1));
+                        break;
+                    case 1:
+                        date = nastyDate(min + Math.abs(randomLong() % (max - min + 1)), tz, unitMillis);
+                        break;
+                    default:
+                        // outside of the range
+                        long delta = Math.abs(randomLong() % unitMillis) + 1;
+                        date = randomBoolean() ? min - delta : max + delta;
+                        break;
+                }
+                assertThat("prepared rounding of [" + rounding + "] for [" + new DateTime(min, tz) + ", " + new DateTime(max, tz)
+                        + "] at " + new DateTime(date, tz), prepared.roundKey(date), isDate(rounding.roundKey(date), tz));
+                assertThat(prepared.round(date), isDate(rounding.round(date), tz));
+            }
+        }
+    }
+
+    public void testPrepareFixedAndUTCTimeZones() {
+        TimeZoneRounding utc = new TimeZoneRounding.TimeUnitRounding(DateTimeUnit.DAY_OF_MONTH, DateTimeZone.UTC);
+        assertThat(utc.prepare(0, Long.MAX_VALUE), not(instanceOf(TimeZoneRounding.TransitionTableRounding.class)));
+
+        DateTimeZone tz = DateTimeZone.forOffsetHoursMinutes(randomIntBetween(-12, 12), randomIntBetween(0, 59));
+        TimeZoneRounding fixed = new TimeZoneRounding.TimeUnitRounding(DateTimeUnit.HOUR_OF_DAY, tz);
+        Rounding.Prepared prepared = fixed.prepare(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertThat(prepared, instanceOf(TimeZoneRounding.TransitionTableRounding.class));
+        for (int i = 0; i < 1000; i++) {
+            long date = randomLong() % (2 * (long) 10e11);
+            assertThat(prepared.round(date), isDate(fixed.round(date), tz));
+        }
+
+        // daylight saving time zones need a bounded range
+        TimeZoneRounding cet = new TimeZoneRounding.TimeUnitRounding(DateTimeUnit.HOUR_OF_DAY, DateTimeZone.forID("CET"));
+        assertThat(cet.prepare(Long.MIN_VALUE, Long.MAX_VALUE), not(instanceOf(TimeZoneRounding.TransitionTableRounding.class)));
+    }
+
+    public void testPreparedOffsetRounding() {
+        DateTimeZone tz = DateTimeZone.forID("Europe/Paris");
+        Rounding rounding = TimeZoneRounding.builder(DateTimeUnit.DAY_OF_MONTH).timeZone(tz).offset(randomIntBetween(0, 1000)).build();
+        Rounding.Prepared prepared = rounding.prepare(time("2015-01-01T00:00:00"), time("2016-01-01T00:00:00"));
+        for (String date : new String[] { "2014-12-31T23:59:59", "2015-03-29T01:30:00", "2015-10-25T02:30:00", "2016-01-01T00:00:01" }) {
+            long millis = time(date);
+            assertEquals(rounding.roundKey(millis), prepared.roundKey(millis));
+            assertThat(prepared.round(millis), isDate(rounding.round(millis), tz));
+            assertEquals(rounding.nextRoundingValue(rounding.round(millis)), prepared.nextRoundingValue(prepared.round(millis)));
+        }
+    }
+
     /**
      * To be even more nasty, go to a transition in the selected time zone.
      * In one third of the cases stay there, otherwise go half a unit back or forth
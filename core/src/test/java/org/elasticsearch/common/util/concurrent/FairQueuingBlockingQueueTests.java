@@ -0,0 +1,168 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util.concurrent;
+
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FairQueuingBlockingQueueTests extends ESTestCase {
+
+    private final AtomicReference<String> tenant = new AtomicReference<>();
+
+    private boolean offer(FairQueuingBlockingQueue<String> queue, String tenant, String element) {
+        this.tenant.set(tenant);
+        return queue.offer(element);
+    }
+
+    public void testRoundRobin() {
+        FairQueuingBlockingQueue<String> queue = new FairQueuingBlockingQueue<>(tenant::get, -1, -1, Collections.emptyMap());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(offer(queue, "a", "a" + i));
+        }
+        assertTrue(offer(queue, "b", "b0"));
+        assertTrue(offer(queue, "b", "b1"));
+        assertTrue(offer(queue, null, "d0"));
+        assertThat(queue.size(), equalTo(7));
+
+        List<String> polled = new ArrayList<>();
+        String element;
+        while ((element = queue.poll()) != null) {
+            polled.add(element);
+        }
+        assertThat(polled, contains("a0", "b0", "d0", "a1", "b1", "a2", "a3"));
+        assertThat(queue.size(), equalTo(0));
+    }
+
+    public void testWeights() throws InterruptedException {
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("a", 3);
+        FairQueuingBlockingQueue<String> queue = new FairQueuingBlockingQueue<>(tenant::get, -1, -1, weights);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(offer(queue, "a", "a" + i));
+            assertTrue(offer(queue, "b", "b" + i));
+        }
+        List<String> polled = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            assertThat(queue.peek(), equalTo(queue.peek()));
+            String peeked = queue.peek();
+            String taken = queue.take();
+            assertThat(taken, equalTo(peeked));
+            polled.add(taken);
+        }
+        assertThat(polled, contains("a0", "a1", "a2", "b0", "a3", "a4", "b1", "b2", "b3", "b4"));
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS), nullValue());
+    }
+
+    public void testNewTenantIsServedBeforeQueuedElementsOfOtherTenants() {
+        FairQueuingBlockingQueue<String> queue = new FairQueuingBlockingQueue<>(tenant::get, -1, -1, Collections.emptyMap());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(offer(queue, "heavy", "heavy" + i));
+        }
+        assertThat(queue.poll(), equalTo("heavy0"));
+        assertTrue(offer(queue, "light", "light0"));
+        assertThat(queue.poll(), equalTo("light0"));
+        assertThat(queue.poll(), equalTo("heavy1"));
+    }
+
+    public void testCapacity() {
+        int capacity = randomIntBetween(2, 10);
+        int tenantCapacity = randomIntBetween(1, capacity - 1);
+        FairQueuingBlockingQueue<String> queue = new FairQueuingBlockingQueue<>(tenant::get, capacity, tenantCapacity,
+            Collections.singletonMap("a", 1));
+        for (int i = 0; i < tenantCapacity; i++) {
+            assertTrue(offer(queue, "a", "a" + i));
+        }
+        assertFalse(offer(queue, "a", "rejected"));
+        assertFalse(offer(queue, "a", "rejected"));
+        for (int i = tenantCapacity; i < capacity; i++) {
+            assertTrue(offer(queue, "b" + i, "b" + i));
+        }
+        assertThat(queue.remainingCapacity(), equalTo(0));
+        assertFalse(offer(queue, "c", "rejected"));
+        assertThat(queue.tenantRejections().get("a"), equalTo(2L));
+        assertThat(queue.tenantRejections().get(FairQueuingBlockingQueue.OTHER_TENANTS), equalTo(1L));
+        assertThat(queue.tenantRejections().containsKey("c"), equalTo(false));
+        assertThat(queue.tenantQueueSizes().get("a"), equalTo(tenantCapacity));
+        assertThat(queue.tenantQueueSizes().containsKey("c"), equalTo(false));
+
+        tenant.set("a");
+        queue.forcePut("forced");
+        assertThat(queue.size(), equalTo(capacity + 1));
+        assertThat(queue.tenantQueueSizes().get("a"), equalTo(tenantCapacity + 1));
+    }
+
+    public void testRemoveAndDrain() {
+        FairQueuingBlockingQueue<String> queue = new FairQueuingBlockingQueue<>(tenant::get, -1, -1, Collections.emptyMap());
+        assertTrue(offer(queue, "a", "a0"));
+        assertTrue(offer(queue, "a", "a1"));
+        assertTrue(offer(queue, "b", "b0"));
+        assertTrue(offer(queue, "c", "c0"));
+        assertThat(queue.poll(), equalTo("a0"));
+        // removes the element of the tenant whose turn would be next
+        assertTrue(queue.remove("b0"));
+        assertFalse(queue.remove("b0"));
+        assertThat(queue.size(), equalTo(2));
+        assertThat(queue, containsInAnyOrder("a1", "c0"));
+
+        List<String> drained = new ArrayList<>();
+        assertThat(queue.drainTo(drained), equalTo(2));
+        assertThat(drained, contains("c0", "a1"));
+        assertThat(queue.size(), equalTo(0));
+        assertThat(queue.peek(), nullValue());
+    }
+
+    public void testOnlyConfiguredTenantsAreTracked() {
+        FairQueuingBlockingQueue<String> queue = new FairQueuingBlockingQueue<>(tenant::get, 1, -1, Collections.singletonMap("a", 2));
+        assertThat(queue.tenantQueueSizes().keySet(), containsInAnyOrder("a", FairQueuingBlockingQueue.DEFAULT_TENANT));
+        final int numTenants = randomIntBetween(10, 100);
+        for (int i = 0; i < numTenants; i++) {
+            assertTrue(offer(queue, "tenant" + i, "e" + i));
+            assertThat(queue.tenantQueueSizes().get("tenant" + i), equalTo(1));
+            assertFalse(offer(queue, "rejected" + i, "rejected"));
+            if (randomBoolean()) {
+                assertThat(queue.poll(), equalTo("e" + i));
+            } else {
+                assertTrue(queue.remove("e" + i));
+            }
+        }
+        assertThat(queue.tenantQueueSizes().keySet(), containsInAnyOrder("a", FairQueuingBlockingQueue.DEFAULT_TENANT));
+        assertThat(queue.tenantRejections().keySet(),
+            containsInAnyOrder("a", FairQueuingBlockingQueue.DEFAULT_TENANT, FairQueuingBlockingQueue.OTHER_TENANTS));
+        assertThat(queue.tenantRejections().get(FairQueuingBlockingQueue.OTHER_TENANTS), equalTo((long) numTenants));
+    }
+
+    public void testInvalidWeight() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> new FairQueuingBlockingQueue<>(tenant::get, -1, -1, Collections.singletonMap("a", 0)));
+        assertThat(e.getMessage(), equalTo("weight of tenant [a] must be >= 1 but was [0]"));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util.concurrent;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class ParallelTasksTests extends ESTestCase {
+
+    public void testRunsEachTaskOnce() throws Exception {
+        final int numTasks = randomIntBetween(1, 100);
+        final AtomicIntegerArray runs = new AtomicIntegerArray(numTasks);
+        final EsThreadPoolExecutor executor = EsExecutors.newFixed(getTestName(), randomIntBetween(1, 4), -1,
+            EsExecutors.daemonThreadFactory("test"), new ThreadContext(Settings.EMPTY));
+        try {
+            ParallelTasks.run(numTasks, randomBoolean() ? executor : null, runs::incrementAndGet);
+            for (int i = 0; i < numTasks; i++) {
+                assertEquals(1, runs.get(i));
+            }
+        } finally {
+            terminate(executor);
+        }
+    }
+
+    public void testRunsRejectedTasksOnCallingThread() throws Exception {
+        final int numTasks = randomIntBetween(2, 20);
+        final AtomicIntegerArray runs = new AtomicIntegerArray(numTasks);
+        final Thread caller = Thread.currentThread();
+        final Executor rejecting = command -> {
+            throw new EsRejectedExecutionException("rejected");
+        };
+        ParallelTasks.run(numTasks, rejecting, i -> {
+            assertSame(caller, Thread.currentThread());
+            runs.incrementAndGet(i);
+        });
+        for (int i = 0; i < numTasks; i++) {
+            assertEquals(1, runs.get(i));
+        }
+    }
+
+    public void testRethrowsFailure() throws Exception {
+        final int numTasks = randomIntBetween(1, 20);
+        final int failing = randomIntBetween(0, numTasks - 1);
+        final EsThreadPoolExecutor executor = EsExecutors.newFixed(getTestName(), randomIntBetween(1, 4), -1,
+            EsExecutors.daemonThreadFactory("test"), new ThreadContext(Settings.EMPTY));
+        try {
+            IOException e = expectThrows(IOException.class, () -> ParallelTasks.run(numTasks, executor, i -> {
+                if (i == failing) {
+                    throw new IOException("task [" + i + "] failed");
+                }
+            }));
+            assertEquals("task [" + failing + "] failed", e.getMessage());
+        } finally {
+            terminate(executor);
+        }
+    }
+}
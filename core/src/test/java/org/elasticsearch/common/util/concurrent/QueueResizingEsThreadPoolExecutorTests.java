@@ -0,0 +1,161 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.util.concurrent;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class QueueResizingEsThreadPoolExecutorTests extends ESTestCase {
+
+    public void testLittlesLaw() {
+        // 100 tasks per second with a targeted response time of 2 seconds
+        double lambda = QueueResizingEsThreadPoolExecutor.calculateLambda(100, TimeValue.timeValueSeconds(1).nanos());
+        assertThat(QueueResizingEsThreadPoolExecutor.calculateL(lambda, TimeValue.timeValueSeconds(2).nanos()), equalTo(200));
+        lambda = QueueResizingEsThreadPoolExecutor.calculateLambda(1, TimeValue.timeValueMillis(500).nanos());
+        assertThat(QueueResizingEsThreadPoolExecutor.calculateL(lambda, TimeValue.timeValueMillis(100).nanos()), equalTo(0));
+    }
+
+    public void testAdjustedCapacity() {
+        assertThat(ResizableBlockingQueue.adjustedCapacity(100, 100, 10, 0, 1000), equalTo(100));
+        assertThat(ResizableBlockingQueue.adjustedCapacity(100, 500, 10, 0, 1000), equalTo(110));
+        assertThat(ResizableBlockingQueue.adjustedCapacity(100, 105, 10, 0, 1000), equalTo(105));
+        assertThat(ResizableBlockingQueue.adjustedCapacity(100, 0, 10, 0, 1000), equalTo(90));
+        assertThat(ResizableBlockingQueue.adjustedCapacity(100, 95, 10, 0, 1000), equalTo(95));
+        assertThat(ResizableBlockingQueue.adjustedCapacity(100, 500, 10, 0, 105), equalTo(105));
+        assertThat(ResizableBlockingQueue.adjustedCapacity(100, 0, 10, 95, 1000), equalTo(95));
+        assertThat(ResizableBlockingQueue.adjustedCapacity(100, Integer.MAX_VALUE, Integer.MAX_VALUE, 0, Integer.MAX_VALUE),
+            equalTo(Integer.MAX_VALUE));
+    }
+
+    public void testResizableSizeBlockingQueue() {
+        ResizableSizeBlockingQueue<Integer> queue =
+            new ResizableSizeBlockingQueue<>(ConcurrentCollections.<Integer>newBlockingQueue(), 2);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertThat(queue.adjustCapacity(10, 1, 0, 10), equalTo(3));
+        assertThat(queue.remainingCapacity(), equalTo(1));
+        assertTrue(queue.offer(3));
+        assertThat(queue.adjustCapacity(0, 2, 1, 10), equalTo(1));
+        // queued elements are kept when the queue shrinks
+        assertThat(queue.size(), equalTo(3));
+        assertFalse(queue.offer(4));
+        assertThat(queue.poll(), equalTo(1));
+        assertThat(queue.poll(), equalTo(2));
+        assertThat(queue.poll(), equalTo(3));
+        assertTrue(queue.offer(4));
+    }
+
+    public void testAutoQueueSizingUp() throws Exception {
+        // fast tasks and a long targeted response time let the queue grow up to the max
+        QueueResizingEsThreadPoolExecutor executor = newExecutor(10, 0, 100, 5, TimeValue.timeValueSeconds(60));
+        try {
+            executeTasks(executor, 5 * 20, 0);
+            assertBusy(() -> assertThat(executor.getCurrentCapacity(), equalTo(100)));
+            assertThat(executor.getTaskExecutionEWMA(), greaterThan(0.0));
+        } finally {
+            terminate(executor);
+        }
+    }
+
+    public void testAutoQueueSizingDown() throws Exception {
+        // slow tasks and a short targeted response time shrink the queue down to the min
+        QueueResizingEsThreadPoolExecutor executor = newExecutor(50, 10, 100, 2, TimeValue.timeValueMillis(10));
+        try {
+            executeTasks(executor, 2 * 10, 20);
+            assertBusy(() -> assertThat(executor.getCurrentCapacity(), equalTo(10)));
+        } finally {
+            terminate(executor);
+        }
+    }
+
+    public void testRejectionsAreHandledByAbstractRunnables() throws Exception {
+        QueueResizingEsThreadPoolExecutor executor = newExecutor(0, 0, 0, 1, TimeValue.timeValueSeconds(1));
+        CountDownLatch block = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    block.await();
+                } catch (InterruptedException e) {
+                    fail(e.toString());
+                }
+            });
+            AtomicBoolean rejected = new AtomicBoolean();
+            executor.execute(new AbstractRunnable() {
+                @Override
+                public void onFailure(Throwable t) {
+                    fail(t.toString());
+                }
+
+                @Override
+                public void onRejection(Throwable t) {
+                    rejected.set(true);
+                }
+
+                @Override
+                protected void doRun() throws Exception {
+                    fail("should have been rejected");
+                }
+            });
+            assertTrue(rejected.get());
+            assertThat(executor.toString(), containsString("queue capacity = 0, min queue capacity = 0"));
+        } finally {
+            block.countDown();
+            terminate(executor);
+        }
+    }
+
+    private QueueResizingEsThreadPoolExecutor newExecutor(int initialQueueSize, int minQueueSize, int maxQueueSize, int frameSize,
+                                                          TimeValue targetedResponseTime) {
+        ThreadContext context = new ThreadContext(Settings.EMPTY);
+        return (QueueResizingEsThreadPoolExecutor) EsExecutors.newAutoQueueFixed(getTestName(), 1, initialQueueSize, minQueueSize,
+            maxQueueSize, frameSize, targetedResponseTime, EsExecutors.daemonThreadFactory("queuetest"), context);
+    }
+
+    private void executeTasks(QueueResizingEsThreadPoolExecutor executor, int tasks, long sleepMillis) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            // only one task is in flight at a time so that none of them gets rejected while the queue is small
+            CountDownLatch taskDone = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    if (sleepMillis > 0) {
+                        Thread.sleep(sleepMillis);
+                    }
+                } catch (InterruptedException e) {
+                    fail(e.toString());
+                }
+                done.countDown();
+                taskDone.countDown();
+            });
+            taskDone.await();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+}
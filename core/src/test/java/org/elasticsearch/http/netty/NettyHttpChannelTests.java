@@ -19,14 +19,23 @@
 
 package org.elasticsearch.http.netty;
 
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.network.NetworkService;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.util.MockBigArrays;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.http.HttpTransportSettings;
 import org.elasticsearch.http.netty.cors.CorsHandler;
 import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.rest.ChunkedRestResponse;
+import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestResponse;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.test.ESTestCase;
@@ -39,7 +48,10 @@ import org.jboss.netty.channel.ChannelConfig;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultChannelFuture;
 import org.jboss.netty.handler.codec.http.DefaultHttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpChunk;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
@@ -48,6 +60,7 @@ import org.jboss.netty.handler.codec.http.HttpVersion;
 import org.junit.After;
 import org.junit.Before;
 
+import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.List;
@@ -57,9 +70,13 @@ import static org.elasticsearch.http.HttpTransportSettings.SETTING_CORS_ALLOW_ME
 import static org.elasticsearch.http.HttpTransportSettings.SETTING_CORS_ALLOW_ORIGIN;
 import static org.elasticsearch.http.HttpTransportSettings.SETTING_CORS_ENABLED;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class NettyHttpChannelTests extends ESTestCase {
 
@@ -198,6 +215,105 @@ public class NettyHttpChannelTests extends ESTestCase {
         assertThat(response.headers().get(HttpHeaders.Names.CONTENT_TYPE), equalTo(resp.contentType()));
     }
 
+    public void testChunkedResponse() throws IOException {
+        httpServerTransport = new NettyHttpServerTransport(Settings.EMPTY, networkService, bigArrays, threadPool);
+        WriteCapturingChannel writeCapturingChannel = new WriteCapturingChannel();
+        NettyHttpRequest request = new NettyHttpRequest(new TestHttpRequest(), writeCapturingChannel);
+        NettyHttpChannel channel = new NettyHttpChannel(httpServerTransport, request, null, randomBoolean());
+        MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(1, ByteSizeUnit.MB), 1.0, logger);
+
+        final int numValues = randomIntBetween(100, 500);
+        final String value = randomAsciiOfLength(1000);
+        TestChunkedResponse response = new TestChunkedResponse(channel, numValues, value);
+        response.inFlightRequestsBreaker(breaker);
+        channel.sendResponse(response);
+
+        List<Object> writtenObjects = writeCapturingChannel.getWrittenObjects();
+        assertThat(writtenObjects.get(0), instanceOf(HttpResponse.class));
+        HttpResponse httpResponse = (HttpResponse) writtenObjects.get(0);
+        assertTrue(HttpHeaders.isTransferEncodingChunked(httpResponse));
+        assertThat(httpResponse.headers().get(HttpHeaders.Names.CONTENT_TYPE), equalTo(XContentType.JSON.mediaType()));
+        assertThat(httpResponse.headers().get(HttpHeaders.Names.CONTENT_LENGTH), nullValue());
+        // the content doesn't fit into a single chunk
+        assertThat(writtenObjects.size(), greaterThan(3));
+        assertThat(writtenObjects.get(writtenObjects.size() - 1), sameInstance(HttpChunk.LAST_CHUNK));
+
+        assertChunkedContent(writtenObjects, numValues, value);
+        // all chunks were written, nothing is accounted for anymore
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    public void testChunkedResponseWaitsForChunksToBeWritten() throws IOException {
+        httpServerTransport = new NettyHttpServerTransport(Settings.EMPTY, networkService, bigArrays, threadPool);
+        WriteCapturingChannel writeCapturingChannel = new WriteCapturingChannel();
+        // the channel is not writable and writes only complete when the test says so
+        writeCapturingChannel.completeWrites = false;
+        NettyHttpRequest request = new NettyHttpRequest(new TestHttpRequest(), writeCapturingChannel);
+        NettyHttpChannel channel = new NettyHttpChannel(httpServerTransport, request, null, randomBoolean());
+        MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(1, ByteSizeUnit.MB), 1.0, logger);
+
+        final int numValues = randomIntBetween(300, 500);
+        final String value = randomAsciiOfLength(1000);
+        TestChunkedResponse response = new TestChunkedResponse(channel, numValues, value);
+        response.inFlightRequestsBreaker(breaker);
+        channel.sendResponse(response);
+
+        // the headers and the first chunk, the next chunk is only serialized once the first one was written
+        List<Object> writtenObjects = writeCapturingChannel.getWrittenObjects();
+        assertThat(writtenObjects.size(), is(2));
+        assertThat(response.writtenValues, lessThan(numValues));
+        while (writtenObjects.get(writtenObjects.size() - 1) != HttpChunk.LAST_CHUNK) {
+            assertThat(breaker.getUsed(), lessThan(2L * NettyHttpChannel.RESPONSE_CHUNK_SIZE));
+            final int numWritten = writtenObjects.size();
+            writeCapturingChannel.completePendingWrites();
+            assertThat(writtenObjects.size(), greaterThan(numWritten));
+            assertThat(writtenObjects.size(), lessThan(numWritten + 3));
+        }
+        writeCapturingChannel.completePendingWrites();
+
+        assertChunkedContent(writtenObjects, numValues, value);
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    public void testChunkedResponseTripsBreaker() throws IOException {
+        httpServerTransport = new NettyHttpServerTransport(Settings.EMPTY, networkService, bigArrays, threadPool);
+        WriteCapturingChannel writeCapturingChannel = new WriteCapturingChannel();
+        NettyHttpRequest request = new NettyHttpRequest(new TestHttpRequest(), writeCapturingChannel);
+        NettyHttpChannel channel = new NettyHttpChannel(httpServerTransport, request, null, randomBoolean());
+        MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(1, ByteSizeUnit.KB), 1.0, logger);
+
+        TestChunkedResponse response = new TestChunkedResponse(channel, 100, randomAsciiOfLength(1000));
+        response.inFlightRequestsBreaker(breaker);
+        channel.sendResponse(response);
+
+        // the breaker tripped on the first chunk, before the headers were sent, so an error response is returned instead
+        List<Object> writtenObjects = writeCapturingChannel.getWrittenObjects();
+        assertThat(writtenObjects.size(), is(1));
+        HttpResponse httpResponse = (HttpResponse) writtenObjects.get(0);
+        assertThat(httpResponse.getStatus().getCode(), equalTo(RestStatus.SERVICE_UNAVAILABLE.getStatus()));
+        assertFalse(HttpHeaders.isTransferEncodingChunked(httpResponse));
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    private static void assertChunkedContent(List<Object> writtenObjects, int numValues, String value) throws IOException {
+        BytesStreamOutput content = new BytesStreamOutput();
+        for (Object written : writtenObjects.subList(1, writtenObjects.size() - 1)) {
+            HttpChunk chunk = (HttpChunk) written;
+            assertFalse(chunk.isLast());
+            assertThat(chunk.getContent().readableBytes(), lessThan(2 * NettyHttpChannel.RESPONSE_CHUNK_SIZE));
+            content.write(chunk.getContent().array(), chunk.getContent().arrayOffset(), chunk.getContent().readableBytes());
+        }
+        XContentBuilder expected = XContentFactory.jsonBuilder();
+        expected.startObject();
+        expected.startArray("values");
+        for (int i = 0; i < numValues; i++) {
+            expected.value(value);
+        }
+        expected.endArray();
+        expected.endObject();
+        assertThat(content.bytes().toUtf8(), equalTo(expected.string()));
+    }
+
     private HttpResponse execRequestWithCors(final Settings settings, final String originValue, final String host) {
         // construct request and send it over the transport layer
         httpServerTransport = new NettyHttpServerTransport(settings, networkService, bigArrays, threadPool);
@@ -219,6 +335,8 @@ public class NettyHttpChannelTests extends ESTestCase {
     private static class WriteCapturingChannel implements Channel {
 
         private List<Object> writtenObjects = new ArrayList<>();
+        private List<ChannelFuture> pendingWrites = new ArrayList<>();
+        private boolean completeWrites = true;
 
         @Override
         public Integer getId() {
@@ -273,13 +391,18 @@ public class NettyHttpChannelTests extends ESTestCase {
         @Override
         public ChannelFuture write(Object message) {
             writtenObjects.add(message);
-            return null;
+            if (completeWrites) {
+                return Channels.succeededFuture(this);
+            }
+            ChannelFuture future = new DefaultChannelFuture(this, false);
+            pendingWrites.add(future);
+            return future;
         }
 
         @Override
         public ChannelFuture write(Object message, SocketAddress remoteAddress) {
             writtenObjects.add(message);
-            return null;
+            return Channels.succeededFuture(this);
         }
 
         @Override
@@ -365,6 +488,15 @@ public class NettyHttpChannelTests extends ESTestCase {
         public List<Object> getWrittenObjects() {
             return writtenObjects;
         }
+
+        public void completePendingWrites() {
+            // completing a write may trigger new writes
+            List<ChannelFuture> futures = pendingWrites;
+            pendingWrites = new ArrayList<>();
+            for (ChannelFuture future : futures) {
+                future.setSuccess();
+            }
+        }
     }
 
     private static class TestHttpRequest implements HttpRequest {
@@ -446,4 +578,36 @@ public class NettyHttpChannelTests extends ESTestCase {
             return RestStatus.OK;
         }
     }
+
+    private static class TestChunkedResponse extends ChunkedRestResponse {
+
+        private final int numValues;
+        private final String value;
+        // -1 until the start of the content was written
+        private int writtenValues = -1;
+
+        TestChunkedResponse(RestChannel channel, int numValues, String value) {
+            super(channel, RestStatus.OK);
+            this.numValues = numValues;
+            this.value = value;
+        }
+
+        @Override
+        protected boolean writeNextContent(XContentBuilder builder) throws IOException {
+            if (writtenValues < 0) {
+                builder.startObject();
+                builder.startArray("values");
+                writtenValues = 0;
+                return true;
+            }
+            if (writtenValues < numValues) {
+                builder.value(value);
+                writtenValues++;
+                return true;
+            }
+            builder.endArray();
+            builder.endObject();
+            return false;
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertOrderedSearchHits;
+import static org.hamcrest.Matchers.containsString;
+
+public class IndexSortIT extends ESIntegTestCase {
+
+    public void testEarlyTermination() throws Exception {
+        assertAcked(prepareCreate("test")
+            .setSettings(Settings.builder()
+                .put(indexSettings())
+                .put("index.number_of_shards", 1)
+                .put("index.sort.field", "timestamp")
+                .put("index.sort.order", "desc"))
+            .addMapping("type", "timestamp", "type=long"));
+        final int numDocs = randomIntBetween(20, 50);
+        for (int i = 0; i < numDocs; i++) {
+            client().prepareIndex("test", "type", Integer.toString(i)).setSource("timestamp", i).get();
+            // make sure that there are at least two segments to merge
+            if (i == numDocs / 2 || randomInt(5) == 0) {
+                refresh();
+            }
+        }
+        client().admin().indices().prepareForceMerge("test").setMaxNumSegments(1).get();
+        refresh();
+
+        // the total hits are exact unless the request opts out
+        SearchResponse response = client().prepareSearch("test")
+            .addSort("timestamp", SortOrder.DESC)
+            .setSize(3)
+            .get();
+        assertNoFailures(response);
+        assertNull(response.isTerminatedEarly());
+        assertEquals(numDocs, response.getHits().getTotalHits());
+        assertOrderedSearchHits(response, Integer.toString(numDocs - 1), Integer.toString(numDocs - 2), Integer.toString(numDocs - 3));
+
+        response = client().prepareSearch("test")
+            .addSort("timestamp", SortOrder.DESC)
+            .setSize(3)
+            .setTrackTotalHits(false)
+            .get();
+        assertNoFailures(response);
+        assertTrue(response.isTerminatedEarly());
+        assertOrderedSearchHits(response, Integer.toString(numDocs - 1), Integer.toString(numDocs - 2), Integer.toString(numDocs - 3));
+
+        // the sort isn't a prefix of the index sort
+        response = client().prepareSearch("test")
+            .addSort("timestamp", SortOrder.ASC)
+            .setSize(3)
+            .setTrackTotalHits(false)
+            .get();
+        assertNoFailures(response);
+        assertNull(response.isTerminatedEarly());
+        assertEquals(numDocs, response.getHits().getTotalHits());
+        assertOrderedSearchHits(response, "0", "1", "2");
+    }
+
+    public void testInvalidIndexSort() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> prepareCreate("test")
+                .setSettings(Settings.builder().put(indexSettings()).put("index.sort.field", "timestamp"))
+                .get());
+        assertThat(e.getMessage(), containsString("unknown index sort field: [timestamp]"));
+
+        // the mappings are parsed before the index sort is built
+        MapperParsingException mpe = expectThrows(MapperParsingException.class,
+            () -> prepareCreate("test")
+                .setSettings(Settings.builder().put(indexSettings()).put("index.sort.field", "message"))
+                .addMapping("type", "message", "type=text")
+                .get());
+        assertThat(mpe.getMessage(), containsString("docvalues not found for index sort field: [message]"));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index;
+
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.SortedSetSortField;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.core.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.core.NumberFieldMapper;
+import org.elasticsearch.index.mapper.core.TextFieldMapper;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.elasticsearch.index.IndexSettingsTests.newIndexMeta;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+
+public class IndexSortSettingsTests extends ESTestCase {
+
+    private static IndexSortConfig indexSortConfig(Settings settings) {
+        return new IndexSettings(newIndexMeta("test", settings), Settings.EMPTY).getIndexSortConfig();
+    }
+
+    public void testNoIndexSort() {
+        IndexSortConfig config = indexSortConfig(Settings.EMPTY);
+        assertFalse(config.hasIndexSort());
+        assertNull(config.buildIndexSort(field -> null));
+    }
+
+    public void testSimpleIndexSort() {
+        IndexSortConfig config = indexSortConfig(Settings.builder()
+            .putArray("index.sort.field", "field1", "field2")
+            .putArray("index.sort.order", "desc", "asc")
+            .build());
+        assertTrue(config.hasIndexSort());
+        assertEquals(2, config.getNumFields());
+        assertEquals("field1", config.getField(0));
+        assertEquals(SortOrder.DESC, config.getOrder(0));
+        assertEquals("field2", config.getField(1));
+        assertEquals(SortOrder.ASC, config.getOrder(1));
+    }
+
+    public void testDefaultOrder() {
+        IndexSortConfig config = indexSortConfig(Settings.builder().putArray("index.sort.field", "field1", "field2").build());
+        assertEquals(SortOrder.ASC, config.getOrder(0));
+        assertEquals(SortOrder.ASC, config.getOrder(1));
+    }
+
+    public void testInvalidSettings() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> indexSortConfig(Settings.builder()
+            .putArray("index.sort.field", "field1", "field2")
+            .put("index.sort.order", "asc")
+            .build()));
+        assertThat(e.getMessage(), containsString("must have the same number of values"));
+
+        e = expectThrows(IllegalArgumentException.class, () -> indexSortConfig(Settings.builder()
+            .put("index.sort.field", "field1")
+            .put("index.sort.order", "up")
+            .build()));
+        assertThat(e.getMessage(), containsString("illegal index sort order [up]"));
+    }
+
+    public void testBuildIndexSort() {
+        IndexSortConfig config = indexSortConfig(Settings.builder()
+            .putArray("index.sort.field", "timestamp", "host")
+            .putArray("index.sort.order", "desc", "asc")
+            .build());
+        Map<String, MappedFieldType> fieldTypes = new HashMap<>();
+        MappedFieldType timestamp = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+        timestamp.setName("timestamp");
+        timestamp.setHasDocValues(true);
+        fieldTypes.put("timestamp", timestamp);
+
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> config.buildIndexSort(fieldTypes::get));
+        assertEquals("unknown index sort field: [host]", e.getMessage());
+
+        MappedFieldType host = new TextFieldMapper.TextFieldType();
+        host.setName("host");
+        fieldTypes.put("host", host);
+        e = expectThrows(IllegalArgumentException.class, () -> config.buildIndexSort(fieldTypes::get));
+        assertEquals("docvalues not found for index sort field: [host]", e.getMessage());
+        host.setHasDocValues(true);
+        e = expectThrows(IllegalArgumentException.class, () -> config.buildIndexSort(fieldTypes::get));
+        assertThat(e.getMessage(), containsString("invalid index sort field: [host] of type [text]"));
+
+        host = new KeywordFieldMapper.KeywordFieldType();
+        host.setName("host");
+        host.setHasDocValues(true);
+        fieldTypes.put("host", host);
+        Sort sort = config.buildIndexSort(fieldTypes::get);
+        SortField[] sortFields = sort.getSort();
+        assertEquals(2, sortFields.length);
+        assertThat(sortFields[0], instanceOf(SortedNumericSortField.class));
+        assertEquals("timestamp", sortFields[0].getField());
+        assertTrue(sortFields[0].getReverse());
+        assertThat(sortFields[1], instanceOf(SortedSetSortField.class));
+        assertEquals("host", sortFields[1].getField());
+        assertFalse(sortFields[1].getReverse());
+
+        // fields that aren't part of the index sort are not validated
+        MappedFieldType other = new TextFieldMapper.TextFieldType();
+        other.setName("other");
+        config.validateField(other);
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.elasticsearch.index;
 
+import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.TieredMergePolicy;
 import org.elasticsearch.Version;
@@ -34,7 +35,9 @@ import java.io.IOException;
 
 import static org.elasticsearch.common.settings.Settings.Builder.EMPTY_SETTINGS;
 import static org.elasticsearch.index.IndexSettingsTests.newIndexMeta;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 
 public class MergePolicySettingsTests extends ESTestCase {
     protected final ShardId shardId = new ShardId("index", "_na_", 1);
@@ -119,6 +122,32 @@ public class MergePolicySettingsTests extends ESTestCase {
         assertEquals(((TieredMergePolicy) indexSettings.getMergePolicy()).getSegmentsPerTier(), MergePolicyConfig.DEFAULT_SEGMENTS_PER_TIER, 0);
     }
 
+    public void testTimeBasedMergePolicy() throws IOException {
+        assertThat(indexSettings(Settings.EMPTY).getMergePolicy(), instanceOf(TieredMergePolicy.class));
+        Settings settings = Settings.builder().put(MergePolicyConfig.INDEX_MERGE_POLICY_TYPE_SETTING.getKey(), "time_based").build();
+        IndexSettings indexSettings = indexSettings(settings);
+        LogByteSizeMergePolicy mergePolicy = (LogByteSizeMergePolicy) indexSettings.getMergePolicy();
+        assertEquals(MergePolicyConfig.DEFAULT_MAX_MERGE_AT_ONCE, mergePolicy.getMergeFactor());
+        assertEquals(MergePolicyConfig.DEFAULT_FLOOR_SEGMENT.mbFrac(), mergePolicy.getMinMergeMB(), 0.0001);
+        assertEquals(MergePolicyConfig.DEFAULT_MAX_MERGED_SEGMENT.mbFrac(), mergePolicy.getMaxMergeMB(), 0.0001);
+        assertEquals(0.1, mergePolicy.getNoCFSRatio(), 0.0);
+
+        indexSettings.updateIndexMetaData(newIndexMeta("index", Settings.builder().put(settings)
+            .put(MergePolicyConfig.INDEX_MERGE_POLICY_MAX_MERGE_AT_ONCE_SETTING.getKey(), 5)
+            .put(MergePolicyConfig.INDEX_MERGE_POLICY_FLOOR_SEGMENT_SETTING.getKey(), "1mb")
+            .put(MergePolicyConfig.INDEX_MERGE_POLICY_MAX_MERGED_SEGMENT_SETTING.getKey(), "1gb")
+            .put(MergePolicyConfig.INDEX_COMPOUND_FORMAT_SETTING.getKey(), false).build()));
+        assertSame(mergePolicy, indexSettings.getMergePolicy());
+        assertEquals(5, mergePolicy.getMergeFactor());
+        assertEquals(1, mergePolicy.getMinMergeMB(), 0.0001);
+        assertEquals(1024, mergePolicy.getMaxMergeMB(), 0.0001);
+        assertEquals(0.0, mergePolicy.getNoCFSRatio(), 0.0);
+
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () ->
+            indexSettings(Settings.builder().put(MergePolicyConfig.INDEX_MERGE_POLICY_TYPE_SETTING.getKey(), "log").build()));
+        assertThat(e.getMessage(), containsString("unknown merge policy type [log]"));
+    }
+
     public Settings build(String value) {
         return Settings.builder().put(MergePolicyConfig.INDEX_COMPOUND_FORMAT_SETTING.getKey(), value).build();
     }
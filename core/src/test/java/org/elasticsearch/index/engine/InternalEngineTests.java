@@ -83,6 +83,7 @@ import org.elasticsearch.index.mapper.ParsedDocument;
 import org.elasticsearch.index.mapper.internal.SourceFieldMapper;
 import org.elasticsearch.index.mapper.internal.UidFieldMapper;
 import org.elasticsearch.index.mapper.object.RootObjectMapper;
+import org.elasticsearch.index.merge.MergeStats;
 import org.elasticsearch.index.shard.DocsStats;
 import org.elasticsearch.index.shard.IndexSearcherWrapper;
 import org.elasticsearch.index.shard.ShardId;
@@ -132,6 +133,8 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
@@ -171,6 +174,7 @@ public class InternalEngineTests extends ESTestCase {
         defaultSettings = IndexSettingsModule.newIndexSettings("test", Settings.builder()
                 .put(IndexSettings.INDEX_GC_DELETES_SETTING, "1h") // make sure this doesn't kick in on us
                 .put(EngineConfig.INDEX_CODEC_SETTING.getKey(), codecName)
+                .put(EngineConfig.INDEX_VERSION_MAP_TYPE_SETTING.getKey(), randomFrom("heap", "paged"))
                 .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
                 .put(IndexSettings.MAX_REFRESH_LISTENERS_PER_SHARD,
                         between(10, 10 * IndexSettings.MAX_REFRESH_LISTENERS_PER_SHARD.get(Settings.EMPTY)))
@@ -537,6 +541,34 @@ public class InternalEngineTests extends ESTestCase {
         }
     }
 
+    public void testMergeStatsWriteAmplification() throws Exception {
+        try (Store store = createStore();
+            Engine engine = createEngine(defaultSettings, store, createTempDir(), new LogByteSizeMergePolicy())) {
+            assertEquals(0, engine.getMergeStats().getTotalFlushedSizeInBytes());
+            final int numSegments = randomIntBetween(2, 5);
+            for (int i = 0; i < numSegments; i++) {
+                ParsedDocument doc = testParsedDocument(Integer.toString(i), Integer.toString(i), "test", null, -1, -1,
+                    testDocumentWithTextField(), B_1, null);
+                engine.index(new Engine.Index(newUid(Integer.toString(i)), doc));
+                engine.refresh("test");
+            }
+            long flushedSize = 0;
+            for (Segment segment : engine.segments(false)) {
+                flushedSize += segment.getSizeInBytes();
+            }
+            MergeStats stats = engine.getMergeStats();
+            assertEquals(flushedSize, stats.getTotalFlushedSizeInBytes());
+            assertEquals(0, stats.getWriteAmplification(), 0.0d);
+
+            engine.forceMerge(true, 1, false, false, false);
+            stats = engine.getMergeStats();
+            // merged segments don't count as flushed
+            assertEquals(flushedSize, stats.getTotalFlushedSizeInBytes());
+            assertThat(stats.getTotalSizeInBytes(), greaterThan(0L));
+            assertEquals((double) stats.getTotalSizeInBytes() / flushedSize, stats.getWriteAmplification(), 0.0001d);
+        }
+    }
+
     public void testCommitStats() {
         Document document = testDocumentWithTextField();
         document.add(new Field(SourceFieldMapper.NAME, B_1.toBytes(), SourceFieldMapper.Defaults.FIELD_TYPE));
@@ -2218,4 +2250,184 @@ public class InternalEngineTests extends ESTestCase {
         assertEquals(0, docStats.getDeleted());
         assertEquals(numDocs, docStats.getCount());
     }
+
+    public void testExecuteBatch() throws IOException {
+        ParsedDocument doc1 = testParsedDocument("1", "1", "test", null, -1, -1, testDocumentWithTextField(), B_1, null);
+        ParsedDocument doc2 = testParsedDocument("2", "2", "test", null, -1, -1, testDocumentWithTextField(), B_2, null);
+        ParsedDocument doc3 = testParsedDocument("3", "3", "test", null, -1, -1, testDocumentWithTextField(), B_3, null);
+        assertTrue(engine.index(new Engine.Index(newUid("2"), doc2)));
+
+        List<Engine.Operation> operations = new ArrayList<>();
+        operations.add(new Engine.Index(newUid("3"), doc3));
+        operations.add(new Engine.Index(newUid("1"), doc1));
+        operations.add(new Engine.Index(newUid("2"), doc2));
+        // must see the version of the index operation on the same uid earlier in the batch
+        operations.add(new Engine.Delete("test", "1", newUid("1")));
+        operations.add(new Engine.Index(newUid("3"), doc3, 5));
+        Throwable[] failures = engine.executeBatch(operations);
+        assertEquals(operations.size(), failures.length);
+        for (int i = 0; i < 4; i++) {
+            assertNull(failures[i]);
+        }
+        assertThat(failures[4], instanceOf(VersionConflictEngineException.class));
+
+        Engine.Index index3 = (Engine.Index) operations.get(0);
+        assertTrue(index3.isCreated());
+        assertEquals(1, index3.version());
+        Engine.Index index1 = (Engine.Index) operations.get(1);
+        assertTrue(index1.isCreated());
+        assertEquals(1, index1.version());
+        Engine.Index index2 = (Engine.Index) operations.get(2);
+        assertFalse(index2.isCreated());
+        assertEquals(2, index2.version());
+        Engine.Delete delete1 = (Engine.Delete) operations.get(3);
+        assertTrue(delete1.found());
+        assertEquals(2, delete1.version());
+
+        // all translog entries were written with a single append
+        assertThat(engine.getTranslog().read(index1.getTranslogLocation()), equalTo(new Translog.Index(index1)));
+        assertThat(engine.getTranslog().read(index2.getTranslogLocation()), equalTo(new Translog.Index(index2)));
+        assertThat(engine.getTranslog().read(index3.getTranslogLocation()), equalTo(new Translog.Index(index3)));
+        assertThat(engine.getTranslog().read(delete1.getTranslogLocation()), equalTo(new Translog.Delete(delete1)));
+        assertThat(index1.getTranslogLocation(), lessThan(delete1.getTranslogLocation()));
+        assertEquals(5, engine.getTranslog().totalOperations());
+
+        Engine.GetResult getResult = engine.get(new Engine.Get(true, newUid("3")));
+        assertTrue(getResult.exists());
+        assertThat(getResult.source().source.toBytesArray(), equalTo(B_3.toBytesArray()));
+        getResult.release();
+        getResult = engine.get(new Engine.Get(true, newUid("1")));
+        assertFalse(getResult.exists());
+        getResult.release();
+
+        engine.refresh("test");
+        try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+            assertEquals(2, searcher.reader().numDocs());
+        }
+    }
+
+    public void testRetryWithAutogeneratedIdWorksAndNoDuplicateDocs() throws IOException {
+        final ParsedDocument doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocument(), new BytesArray("{}"), null);
+        boolean isRetry = false;
+        long autoGeneratedIdTimestamp = 0;
+
+        Engine.Index index = new Engine.Index(newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+            autoGeneratedIdTimestamp, isRetry);
+        assertTrue(engine.index(index));
+        assertTrue(index.isAppendOnly());
+        assertThat(index.version(), equalTo(1L));
+
+        index = new Engine.Index(newUid("1"), doc, index.version(), index.versionType().versionTypeForReplicationAndRecovery(), REPLICA,
+            System.nanoTime(), autoGeneratedIdTimestamp, isRetry);
+        assertTrue(replicaEngine.index(index));
+        assertTrue(index.isAppendOnly());
+        assertThat(index.version(), equalTo(1L));
+
+        isRetry = true;
+        index = new Engine.Index(newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+            autoGeneratedIdTimestamp, isRetry);
+        assertFalse(engine.index(index));
+        assertFalse(index.isAppendOnly());
+        assertThat(index.version(), equalTo(2L));
+        engine.refresh("test");
+        try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+            TopDocs topDocs = searcher.searcher().search(new MatchAllDocsQuery(), 10);
+            assertEquals(1, topDocs.totalHits);
+        }
+
+        index = new Engine.Index(newUid("1"), doc, index.version(), index.versionType().versionTypeForReplicationAndRecovery(), REPLICA,
+            System.nanoTime(), autoGeneratedIdTimestamp, isRetry);
+        assertFalse(replicaEngine.index(index));
+        assertFalse(index.isAppendOnly());
+        replicaEngine.refresh("test");
+        try (Engine.Searcher searcher = replicaEngine.acquireSearcher("test")) {
+            TopDocs topDocs = searcher.searcher().search(new MatchAllDocsQuery(), 10);
+            assertEquals(1, topDocs.totalHits);
+        }
+    }
+
+    public void testRetryWithAutogeneratedIdsAndWrongOrderWorksAndNoDuplicateDocs() throws IOException {
+        final ParsedDocument doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocument(), new BytesArray("{}"), null);
+        long autoGeneratedIdTimestamp = randomIntBetween(0, 1000);
+
+        Engine.Index retry = new Engine.Index(newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+            autoGeneratedIdTimestamp, true);
+        assertTrue(engine.index(retry));
+        assertFalse(retry.isAppendOnly());
+        assertThat(retry.version(), equalTo(1L));
+
+        // the original request arrives after its retry and must not add the document a second time
+        Engine.Index original = new Engine.Index(newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+            autoGeneratedIdTimestamp, false);
+        assertFalse(engine.index(original));
+        assertFalse(original.isAppendOnly());
+        assertThat(original.version(), equalTo(2L));
+
+        // so does any other request that was started before the retry
+        final ParsedDocument doc2 = testParsedDocument("2", "2", "test", null, -1, -1, testDocument(), new BytesArray("{}"), null);
+        Engine.Index older = new Engine.Index(newUid("2"), doc2, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+            randomIntBetween(0, (int) autoGeneratedIdTimestamp), false);
+        assertTrue(engine.index(older));
+        assertFalse(older.isAppendOnly());
+
+        final ParsedDocument doc3 = testParsedDocument("3", "3", "test", null, -1, -1, testDocument(), new BytesArray("{}"), null);
+        Engine.Index newer = new Engine.Index(newUid("3"), doc3, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+            autoGeneratedIdTimestamp + 1, false);
+        assertTrue(engine.index(newer));
+        assertTrue(newer.isAppendOnly());
+
+        engine.refresh("test");
+        try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+            TopDocs topDocs = searcher.searcher().search(new MatchAllDocsQuery(), 10);
+            assertEquals(3, topDocs.totalHits);
+        }
+    }
+
+    public void testAppendOnlyDocumentIsVisibleToRealtimeGetAndDelete() throws IOException {
+        Document document = testDocument();
+        document.add(new Field(SourceFieldMapper.NAME, B_1.toBytes(), SourceFieldMapper.Defaults.FIELD_TYPE));
+        final ParsedDocument doc = testParsedDocument("1", "1", "test", null, -1, -1, document, B_1, null);
+        Engine.Index index = new Engine.Index(newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+            0, false);
+        engine.index(index);
+        assertTrue(index.isAppendOnly());
+
+        // the document has no version map entry, so the get has to refresh to find it
+        try (Engine.GetResult getResult = engine.get(new Engine.Get(true, newUid("1")))) {
+            assertTrue(getResult.exists());
+            assertThat(getResult.docIdAndVersion(), notNullValue());
+        }
+
+        final ParsedDocument doc2 = testParsedDocument("2", "2", "test", null, -1, -1, testDocument(), new BytesArray("{}"), null);
+        Engine.Index index2 = new Engine.Index(newUid("2"), doc2, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+            1, false);
+        engine.index(index2);
+        assertTrue(index2.isAppendOnly());
+        Engine.Delete delete = new Engine.Delete("test", "2", newUid("2"));
+        engine.delete(delete);
+        assertTrue(delete.found());
+        assertThat(delete.version(), equalTo(2L));
+
+        engine.refresh("test");
+        try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+            TopDocs topDocs = searcher.searcher().search(new MatchAllDocsQuery(), 10);
+            assertEquals(1, topDocs.totalHits);
+        }
+    }
+
+    public void testAppendOnlyOptimizationCanBeDisabled() throws IOException {
+        IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test", Settings.builder()
+            .put(defaultSettings.getSettings())
+            .put(EngineConfig.INDEX_OPTIMIZE_AUTO_GENERATED_IDS.getKey(), false)
+            .build());
+        try (Store store = createStore();
+             Engine engine = createEngine(indexSettings, store, createTempDir(), newMergePolicy())) {
+            final ParsedDocument doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocument(), new BytesArray("{}"), null);
+            Engine.Index index = new Engine.Index(newUid("1"), doc, Versions.MATCH_ANY, VersionType.INTERNAL, PRIMARY, System.nanoTime(),
+                0, false);
+            assertTrue(engine.index(index));
+            assertFalse(index.isAppendOnly());
+            assertThat(index.version(), equalTo(1L));
+        }
+    }
 }
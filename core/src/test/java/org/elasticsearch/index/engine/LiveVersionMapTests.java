@@ -0,0 +1,155 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.MockBigArrays;
+import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LiveVersionMapTests extends ESTestCase {
+
+    private LiveVersionMap newVersionMap() {
+        if (randomBoolean()) {
+            return new LiveVersionMap();
+        }
+        return new LiveVersionMap(new MockBigArrays(Settings.EMPTY, new NoneCircuitBreakerService()));
+    }
+
+    public void testPagedVersionTable() {
+        try (PagedVersionTable table = new PagedVersionTable(new MockBigArrays(Settings.EMPTY, new NoneCircuitBreakerService()))) {
+            Map<BytesRef, VersionValue> expected = new HashMap<>();
+            final int numOps = randomIntBetween(1, 10000);
+            for (int i = 0; i < numOps; i++) {
+                BytesRef uid = new BytesRef(Integer.toString(randomInt(numOps / 2)));
+                final Translog.Location location = randomBoolean() ? null :
+                    new Translog.Location(randomIntBetween(1, 10), randomIntBetween(0, Integer.MAX_VALUE), randomIntBetween(1, 1024));
+                final VersionValue version;
+                if (randomBoolean()) {
+                    version = new DeleteVersionValue(randomIntBetween(1, 100), randomIntBetween(0, Integer.MAX_VALUE), location);
+                } else {
+                    version = new VersionValue(randomIntBetween(1, 100), location);
+                }
+                assertSameVersion(expected.put(uid, version), table.put(uid, version));
+            }
+            for (Map.Entry<BytesRef, VersionValue> entry : expected.entrySet()) {
+                assertSameVersion(entry.getValue(), table.get(entry.getKey()));
+            }
+            assertNull(table.get(new BytesRef("missing")));
+        }
+    }
+
+    public void testRefreshClearsCurrentAndOld() throws IOException {
+        LiveVersionMap map = newVersionMap();
+        try {
+            BytesRef uid = new BytesRef("1");
+            map.putUnderLock(uid, new VersionValue(1, null));
+            assertEquals(1, map.getUnderLock(uid).version());
+            map.beforeRefresh();
+            // still visible while the refresh is running
+            assertEquals(1, map.getUnderLock(uid).version());
+            map.putUnderLock(new BytesRef("2"), new VersionValue(3, null));
+            map.afterRefresh(true);
+            assertNull(map.getUnderLock(uid));
+            assertEquals(3, map.getUnderLock(new BytesRef("2")).version());
+            map.beforeRefresh();
+            map.afterRefresh(true);
+            assertNull(map.getUnderLock(new BytesRef("2")));
+        } finally {
+            map.clear();
+        }
+    }
+
+    public void testTombstonesSurviveRefresh() throws IOException {
+        LiveVersionMap map = newVersionMap();
+        try {
+            BytesRef uid = new BytesRef("1");
+            map.putUnderLock(uid, new DeleteVersionValue(2, 17, null));
+            map.beforeRefresh();
+            map.afterRefresh(true);
+            VersionValue tombstone = map.getUnderLock(uid);
+            assertTrue(tombstone.delete());
+            assertEquals(2, tombstone.version());
+            assertEquals(17, tombstone.time());
+            map.removeTombstoneUnderLock(uid);
+            assertNull(map.getUnderLock(uid));
+        } finally {
+            map.clear();
+        }
+    }
+
+    public void testUnsafeUntilRefreshed() throws IOException {
+        LiveVersionMap map = newVersionMap();
+        try {
+            assertFalse(map.isUnsafe());
+            assertFalse(map.isSafeAccessRequired());
+            map.maybePutUnderLock(new BytesRef("1"), new VersionValue(1, null));
+            assertTrue(map.isUnsafe());
+            assertNull(map.getUnderLock(new BytesRef("1")));
+            map.beforeRefresh();
+            // added after the refresh started so it might not be visible
+            map.maybePutUnderLock(new BytesRef("2"), new VersionValue(1, null));
+            map.afterRefresh(true);
+            assertTrue(map.isUnsafe());
+            map.beforeRefresh();
+            map.afterRefresh(true);
+            assertFalse(map.isUnsafe());
+
+            map.enforceSafeAccess();
+            assertTrue(map.isSafeAccessRequired());
+            map.maybePutUnderLock(new BytesRef("3"), new VersionValue(1, null));
+            assertFalse(map.isUnsafe());
+            assertEquals(1, map.getUnderLock(new BytesRef("3")).version());
+            // safe access survives one more refresh and is dropped afterwards unless it is enforced again
+            map.beforeRefresh();
+            map.afterRefresh(true);
+            assertTrue(map.isSafeAccessRequired());
+            map.beforeRefresh();
+            map.afterRefresh(true);
+            assertFalse(map.isSafeAccessRequired());
+        } finally {
+            map.clear();
+        }
+    }
+
+    private static void assertSameVersion(VersionValue expected, VersionValue actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        assertEquals(expected.version(), actual.version());
+        assertEquals(expected.delete(), actual.delete());
+        if (expected.delete()) {
+            assertEquals(expected.time(), actual.time());
+        }
+        if (expected.translogLocation() == null) {
+            assertNull(actual.translogLocation());
+        } else {
+            assertEquals(expected.translogLocation(), actual.translogLocation());
+        }
+    }
+}
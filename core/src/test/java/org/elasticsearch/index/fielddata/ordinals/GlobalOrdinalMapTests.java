@@ -0,0 +1,184 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.RandomAccessOrds;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class GlobalOrdinalMapTests extends ESTestCase {
+
+    public void testIncrementalBuild() throws Exception {
+        doTestIncrementalBuild(null);
+    }
+
+    public void testIncrementalBuildWithExecutor() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, 4),
+            EsExecutors.daemonThreadFactory("global_ordinals"));
+        try {
+            doTestIncrementalBuild(executor);
+        } finally {
+            terminate(executor);
+        }
+    }
+
+    public void testNoIncrementalBuildWhenMostTermsAreNew() throws Exception {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, newNoMergeIndexWriterConfig())) {
+            addBatch(writer, 0, 10, 10);
+            addBatch(writer, 1, 10, 10);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                final GlobalOrdinalMap previous = build(reader, null, null);
+                assertFalse(previous.isIncremental());
+                addBatch(writer, 2, 100, 1000);
+                try (DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer)) {
+                    final GlobalOrdinalMap map = build(newReader, previous, null);
+                    assertFalse(map.isIncremental());
+                    assertSameMapping(newReader, build(newReader, null, null), map);
+                }
+            }
+        }
+    }
+
+    public void testIncrementalBuildIsUsed() throws Exception {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, newNoMergeIndexWriterConfig())) {
+            addBatch(writer, 0, 200, 500);
+            addBatch(writer, 1, 200, 500);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                final GlobalOrdinalMap previous = build(reader, null, null);
+                addBatch(writer, 2, 10, 1000);
+                try (DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer)) {
+                    final GlobalOrdinalMap map = build(newReader, previous, null);
+                    assertTrue(map.isIncremental());
+                    assertSameMapping(newReader, build(newReader, null, null), map);
+                }
+            }
+        }
+    }
+
+    private void doTestIncrementalBuild(ExecutorService executor) throws Exception {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, newNoMergeIndexWriterConfig())) {
+            final int numBatches = randomIntBetween(2, 6);
+            for (int batch = 0; batch < numBatches; batch++) {
+                addBatch(writer, batch, randomIntBetween(100, 300), 500);
+            }
+            DirectoryReader reader = DirectoryReader.open(writer);
+            try {
+                GlobalOrdinalMap previous = build(reader, null, executor);
+                assertSameMapping(reader, build(reader, null, null), previous);
+                int nextBatch = numBatches;
+                final int numRefreshes = randomIntBetween(1, 5);
+                for (int i = 0; i < numRefreshes; i++) {
+                    // add a few small segments that share some terms with the existing segments and drop an old one
+                    final int numNewBatches = randomIntBetween(1, 2);
+                    for (int j = 0; j < numNewBatches; j++) {
+                        addBatch(writer, nextBatch++, randomIntBetween(1, 20), 1000);
+                    }
+                    if (randomBoolean()) {
+                        writer.deleteDocuments(new Term("batch", Integer.toString(randomInt(nextBatch - 1))));
+                    }
+                    final DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer);
+                    assertNotNull(newReader);
+                    reader.close();
+                    reader = newReader;
+
+                    final GlobalOrdinalMap map = build(reader, previous, executor);
+                    assertSameMapping(reader, build(reader, null, null), map);
+                    previous = map;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private IndexWriterConfig newNoMergeIndexWriterConfig() {
+        final IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+        // every batch of documents becomes its own segment
+        iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+        return iwc;
+    }
+
+    private void addBatch(IndexWriter writer, int batch, int numDocs, int maxTerm) throws IOException {
+        for (int i = 0; i < numDocs; i++) {
+            final Document doc = new Document();
+            doc.add(new StringField("batch", Integer.toString(batch), Field.Store.NO));
+            final int numValues = randomIntBetween(0, 3);
+            for (int j = 0; j < numValues; j++) {
+                doc.add(new SortedSetDocValuesField("field", new BytesRef(String.format(Locale.ROOT, "%05d", randomInt(maxTerm)))));
+            }
+            writer.addDocument(doc);
+        }
+        writer.commit();
+    }
+
+    private static GlobalOrdinalMap build(DirectoryReader reader, GlobalOrdinalMap previous, ExecutorService executor)
+            throws IOException {
+        final Object[] segmentKeys = new Object[reader.leaves().size()];
+        final RandomAccessOrds[] subs = new RandomAccessOrds[reader.leaves().size()];
+        for (LeafReaderContext context : reader.leaves()) {
+            segmentKeys[context.ord] = context.reader().getCoreCacheKey();
+            subs[context.ord] = (RandomAccessOrds) DocValues.getSortedSet(context.reader(), "field");
+        }
+        return GlobalOrdinalMap.build(segmentKeys, subs, previous, executor);
+    }
+
+    private static void assertSameMapping(DirectoryReader reader, GlobalOrdinalMap expected, GlobalOrdinalMap actual)
+            throws IOException {
+        assertEquals(expected.getValueCount(), actual.getValueCount());
+        final RandomAccessOrds[] subs = new RandomAccessOrds[reader.leaves().size()];
+        for (LeafReaderContext context : reader.leaves()) {
+            subs[context.ord] = (RandomAccessOrds) DocValues.getSortedSet(context.reader(), "field");
+            final LongValues expectedGlobalOrds = expected.getGlobalOrds(context.ord);
+            final LongValues actualGlobalOrds = actual.getGlobalOrds(context.ord);
+            for (long segmentOrd = 0; segmentOrd < subs[context.ord].getValueCount(); segmentOrd++) {
+                assertEquals(expectedGlobalOrds.get(segmentOrd), actualGlobalOrds.get(segmentOrd));
+            }
+        }
+        for (long globalOrd = 0; globalOrd < expected.getValueCount(); globalOrd++) {
+            final BytesRef expectedTerm = BytesRef.deepCopyOf(subs[expected.getFirstSegmentNumber(globalOrd)]
+                .lookupOrd(expected.getFirstSegmentOrd(globalOrd)));
+            final BytesRef actualTerm = subs[actual.getFirstSegmentNumber(globalOrd)].lookupOrd(actual.getFirstSegmentOrd(globalOrd));
+            assertEquals(expectedTerm, actualTerm);
+        }
+    }
+}
@@ -435,4 +435,24 @@ public class BoolQueryBuilderTests extends AbstractQueryTestCase<BoolQueryBuilde
         assertEquals(rewrittenAgain, expected);
         assertEquals(QueryBuilder.rewriteQuery(boolQueryBuilder, createShardContext()), expected);
     }
+
+    public void testRewriteWithMatchNone() throws IOException {
+        BoolQueryBuilder boolQueryBuilder = new BoolQueryBuilder();
+        boolQueryBuilder.must(new TermQueryBuilder("foo", "bar"));
+        if (randomBoolean()) {
+            boolQueryBuilder.must(new WrapperQueryBuilder(new MatchNoneQueryBuilder().toString()));
+        } else {
+            boolQueryBuilder.filter(new WrapperQueryBuilder(new MatchNoneQueryBuilder().toString()));
+        }
+        QueryBuilder rewritten = boolQueryBuilder.rewrite(createShardContext());
+        assertEquals(new MatchNoneQueryBuilder(), rewritten);
+
+        // should and must_not clauses that match no documents don't make the whole query match no documents
+        boolQueryBuilder = new BoolQueryBuilder();
+        boolQueryBuilder.must(new TermQueryBuilder("foo", "bar"));
+        boolQueryBuilder.should(new MatchNoneQueryBuilder());
+        boolQueryBuilder.mustNot(new MatchNoneQueryBuilder());
+        rewritten = boolQueryBuilder.rewrite(createShardContext());
+        assertSame(boolQueryBuilder, rewritten);
+    }
 }
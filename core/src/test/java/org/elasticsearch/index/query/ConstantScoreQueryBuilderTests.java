@@ -151,4 +151,11 @@ public class ConstantScoreQueryBuilderTests extends AbstractQueryTestCase<Consta
         assertThat(ex.getMessage(), startsWith("query malformed, empty clause found at"));
     }
 
+
+    public void testRewriteToMatchNone() throws IOException {
+        ConstantScoreQueryBuilder constantScoreQueryBuilder = new ConstantScoreQueryBuilder(
+            new WrapperQueryBuilder(new MatchNoneQueryBuilder().toString()));
+        QueryBuilder rewritten = constantScoreQueryBuilder.rewrite(createShardContext());
+        assertEquals(new MatchNoneQueryBuilder(), rewritten);
+    }
 }
@@ -40,7 +40,10 @@ import org.elasticsearch.action.admin.indices.stats.CommonStats;
 import org.elasticsearch.action.admin.indices.stats.CommonStatsFlags;
 import org.elasticsearch.action.admin.indices.stats.IndexStats;
 import org.elasticsearch.action.admin.indices.stats.ShardStats;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.index.TransportIndexAction;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.IndicesOptions;
@@ -90,6 +93,7 @@ import org.elasticsearch.index.mapper.ParseContext;
 import org.elasticsearch.index.mapper.ParsedDocument;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.index.refresh.RefreshStats;
 import org.elasticsearch.index.snapshots.IndexShardRepository;
 import org.elasticsearch.index.snapshots.IndexShardSnapshotStatus;
 import org.elasticsearch.index.store.Store;
@@ -97,6 +101,7 @@ import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.indices.recovery.RecoveryState;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.snapshots.Snapshot;
 import org.elasticsearch.snapshots.SnapshotId;
 import org.elasticsearch.test.DummyShardLock;
@@ -105,6 +110,7 @@ import org.elasticsearch.test.FieldMaskingReader;
 import org.elasticsearch.test.IndexSettingsModule;
 import org.elasticsearch.test.InternalSettingsPlugin;
 import org.elasticsearch.test.VersionUtils;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -121,6 +127,7 @@ import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -639,6 +646,122 @@ public class IndexShardTests extends ESSingleNodeTestCase {
         assertPathHasBeenCleared(endDir.toAbsolutePath());
     }
 
+    public void testScheduledRefreshSkippedWhileSearchIdle() throws Exception {
+        createIndex("test", Settings.builder().put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)
+            .put(IndexSettings.INDEX_SEARCH_IDLE_AFTER.getKey(), "0ms").build());
+        ensureGreen();
+        IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        IndexService test = indicesService.indexService(resolveIndex("test"));
+        IndexShard shard = test.getShardOrNull(0);
+        assertTrue(shard.isSearchIdle());
+        assertFalse(shard.scheduledRefresh());
+        assertEquals(0, shard.refreshStats().getSkippedScheduled());
+
+        client().prepareIndex("test", "test", "1").setSource("{\"foo\" : \"bar\"}").get();
+        assertFalse(shard.scheduledRefresh());
+        RefreshStats refreshStats = shard.refreshStats();
+        assertEquals(1, refreshStats.getSkippedScheduled());
+        assertEquals(1, refreshStats.getSearchIdleShards());
+        try (Engine.Searcher searcher = shard.acquireSearcher("test")) {
+            assertEquals(0, searcher.reader().numDocs());
+        }
+
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicBoolean refreshed = new AtomicBoolean();
+        shard.awaitShardSearchActive(r -> {
+            refreshed.set(r);
+            latch.countDown();
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(refreshed.get());
+        try (Engine.Searcher searcher = shard.acquireSearcher("test")) {
+            assertEquals(1, searcher.reader().numDocs());
+        }
+
+        // nothing is pending anymore so searches run right away
+        shard.awaitShardSearchActive(r -> refreshed.set(r));
+        assertFalse(refreshed.get());
+
+        client().admin().indices().prepareUpdateSettings("test")
+            .setSettings(Settings.builder().put(IndexSettings.INDEX_SEARCH_IDLE_AFTER.getKey(), -1)).get();
+        assertFalse(shard.isSearchIdle());
+        client().prepareIndex("test", "test", "2").setSource("{\"foo\" : \"bar\"}").get();
+        assertTrue(shard.scheduledRefresh());
+        assertEquals(1, shard.refreshStats().getSkippedScheduled());
+        assertEquals(0, shard.refreshStats().getSearchIdleShards());
+    }
+
+    public void testExplicitRefreshClearsPendingRefresh() throws Exception {
+        createIndex("test", Settings.builder().put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)
+            .put(IndexSettings.INDEX_SEARCH_IDLE_AFTER.getKey(), "0ms").build());
+        ensureGreen();
+        IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        IndexService test = indicesService.indexService(resolveIndex("test"));
+        IndexShard shard = test.getShardOrNull(0);
+        client().prepareIndex("test", "test", "1").setSource("{\"foo\" : \"bar\"}").get();
+        assertFalse(shard.scheduledRefresh());
+        assertTrue(shard.hasPendingRefresh());
+
+        if (randomBoolean()) {
+            shard.refresh("test");
+        } else {
+            shard.flush(new FlushRequest().force(true).waitIfOngoing(true));
+        }
+        assertFalse(shard.hasPendingRefresh());
+        AtomicBoolean refreshed = new AtomicBoolean(true);
+        shard.awaitShardSearchActive(r -> refreshed.set(r));
+        assertFalse(refreshed.get());
+    }
+
+    public void testGetDoesNotResetSearchIdleTimer() throws Exception {
+        createIndex("test", Settings.builder().put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1).build());
+        ensureGreen();
+        IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        IndexService test = indicesService.indexService(resolveIndex("test"));
+        IndexShard shard = test.getShardOrNull(0);
+        ThreadPool threadPool = getInstanceFromNode(ThreadPool.class);
+        client().prepareIndex("test", "test", "1").setSource("{\"foo\" : \"bar\"}").get();
+        final long lastSearcherAccess = shard.getLastSearcherAccess();
+        assertBusy(() -> assertThat(threadPool.estimatedTimeInMillis(), greaterThan(lastSearcherAccess)));
+
+        assertTrue(client().prepareGet("test", "test", "1").setRealtime(true).get().isExists());
+        assertFalse(client().prepareGet("test", "test", "1").setRealtime(false).get().isExists());
+        assertEquals(lastSearcherAccess, shard.getLastSearcherAccess());
+
+        client().prepareSearch("test").get();
+        assertThat(shard.getLastSearcherAccess(), greaterThan(lastSearcherAccess));
+    }
+
+    public void testBulkBatchStats() throws IOException {
+        createIndex("test");
+        ensureGreen();
+        IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        IndexService test = indicesService.indexService(resolveIndex("test"));
+        IndexShard shard = test.getShardOrNull(0);
+        BulkResponse response = client().prepareBulk()
+            .add(client().prepareIndex("test", "test", "1").setSource("{\"foo\" : \"bar\"}"))
+            .add(client().prepareIndex("test", "test", "2").setSource("{\"foo\" : \"baz\"}"))
+            .add(client().prepareDelete("test", "test", "1"))
+            .add(client().prepareIndex("test", "test", "2").setSource("{\"foo\" : \"bar\"}").setVersion(5))
+            .get();
+        assertFalse(response.getItems()[0].isFailed());
+        assertTrue(((IndexResponse) response.getItems()[0].getResponse()).isCreated());
+        assertFalse(response.getItems()[1].isFailed());
+        assertFalse(response.getItems()[2].isFailed());
+        assertTrue(((DeleteResponse) response.getItems()[2].getResponse()).isFound());
+        assertEquals(2, response.getItems()[2].getVersion());
+        assertTrue(response.getItems()[3].isFailed());
+        assertEquals(RestStatus.CONFLICT, response.getItems()[3].getFailure().getStatus());
+
+        IndexingStats.Stats stats = shard.indexingStats().getTotal();
+        assertEquals(1, stats.getBulkBatchCount());
+        assertEquals(4, stats.getBulkBatchOperationsCount());
+        assertEquals(1, Arrays.stream(stats.getBulkBatchLatency()).sum());
+        assertEquals(2, stats.getIndexCount());
+        assertEquals(1, stats.getIndexFailedCount());
+        assertEquals(1, stats.getDeleteCount());
+    }
+
     public void testShardStats() throws IOException {
         createIndex("test");
         ensureGreen();
@@ -34,15 +34,18 @@ import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.FileSystemUtils;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog.Location;
@@ -57,6 +60,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
@@ -85,6 +89,8 @@ import java.util.concurrent.atomic.AtomicReference;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 /**
  *
@@ -294,6 +300,97 @@ public class TranslogTests extends ESTestCase {
         assertThat(snapshot.totalOperations(), equalTo(0));
     }
 
+    public void testAddBatch() throws IOException {
+        ArrayList<Translog.Operation> ops = new ArrayList<>();
+        addToTranslogAndList(translog, ops, new Translog.Index("test", "0", new byte[]{0}));
+        final int numOps = randomIntBetween(1, 50);
+        List<Translog.Operation> batch = new ArrayList<>();
+        for (int i = 1; i <= numOps; i++) {
+            if (randomBoolean()) {
+                batch.add(new Translog.Index("test", Integer.toString(i), new byte[]{(byte) i}));
+            } else {
+                batch.add(new Translog.Delete(newUid(Integer.toString(i))));
+            }
+        }
+        Translog.Location[] locations = translog.add(batch);
+        ops.addAll(batch);
+        assertEquals(numOps, locations.length);
+        for (int i = 0; i < numOps; i++) {
+            assertEquals(batch.get(i), translog.read(locations[i]));
+            if (i > 0) {
+                assertThat(locations[i - 1], lessThan(locations[i]));
+            }
+        }
+        assertEquals(0, translog.add(Collections.emptyList()).length);
+        Translog.Snapshot snapshot = translog.newSnapshot();
+        assertThat(snapshot, SnapshotMatchers.equalsTo(ops));
+        assertThat(snapshot.totalOperations(), equalTo(ops.size()));
+        assertEquals(ops.size(), translog.totalOperations());
+    }
+
+    public void testCompressSource() throws IOException {
+        Settings settings = Settings.builder()
+            .put(IndexMetaData.SETTING_VERSION_CREATED, org.elasticsearch.Version.CURRENT)
+            .put(IndexSettings.INDEX_TRANSLOG_COMPRESS_SETTING.getKey(), true)
+            .build();
+        TranslogConfig config = new TranslogConfig(shardId, createTempDir(), IndexSettingsModule.newIndexSettings(shardId.getIndex(), settings),
+            BigArrays.NON_RECYCLING_INSTANCE);
+        StringBuilder source = new StringBuilder("{\"field\":\"");
+        for (int i = 0; i < 256; i++) {
+            source.append("value");
+        }
+        source.append("\"}");
+        final byte[] sourceBytes = source.toString().getBytes(StandardCharsets.UTF_8);
+        final BytesStreamOutput compressedSource = new BytesStreamOutput();
+        try (StreamOutput out = CompressorFactory.defaultCompressor().streamOutput(compressedSource)) {
+            out.writeBytes(sourceBytes);
+        }
+        final byte[] compressedSourceBytes = compressedSource.bytes().toBytes();
+        ArrayList<Translog.Operation> ops = new ArrayList<>();
+        try (Translog compressed = new Translog(config, null)) {
+            final int numOps = randomIntBetween(1, 20);
+            for (int i = 0; i < numOps; i++) {
+                // small sources are left alone and sources that were already compressed must be read back as they are
+                final byte[] bytes = randomFrom(sourceBytes, compressedSourceBytes, new byte[]{(byte) i});
+                Translog.Index op = new Translog.Index("test", Integer.toString(i), bytes);
+                Translog.Location location = compressed.add(op);
+                ops.add(op);
+                assertEquals(op, compressed.read(location));
+                assertThat(location.size, lessThan(Math.max(bytes.length, 256)));
+            }
+            Translog.Snapshot snapshot = compressed.newSnapshot();
+            assertThat(snapshot, SnapshotMatchers.equalsTo(ops));
+        }
+    }
+
+    public void testNextRaw() throws IOException {
+        ArrayList<Translog.Operation> ops = new ArrayList<>();
+        final int numOps = randomIntBetween(1, 50);
+        boolean committing = false;
+        for (int i = 0; i < numOps; i++) {
+            if (randomBoolean()) {
+                addToTranslogAndList(translog, ops, new Translog.Index("test", Integer.toString(i), new byte[]{(byte) i}));
+            } else {
+                addToTranslogAndList(translog, ops, new Translog.Delete(newUid(Integer.toString(i))));
+            }
+            if (committing == false && rarely()) {
+                // the snapshot spans the generation that is being committed and the new one
+                translog.prepareCommit();
+                committing = true;
+            }
+        }
+        BytesStreamOutput out = new BytesStreamOutput();
+        Translog.Snapshot snapshot = translog.newSnapshot();
+        BytesReference raw;
+        int count = 0;
+        while ((raw = snapshot.nextRaw()) != null) {
+            raw.writeTo(out);
+            count++;
+        }
+        assertEquals(numOps, count);
+        assertEquals(ops, Translog.readOperations(StreamInput.wrap(out.bytes()), count));
+    }
+
     protected TranslogStats stats() throws IOException {
         // force flushing and updating of stats
         translog.sync();
@@ -343,7 +440,7 @@ public class TranslogTests extends ESTestCase {
         assertThat(stats.estimatedNumberOfOperations(), equalTo(0L));
         assertThat(stats.getTranslogSizeInBytes(), equalTo(firstOperationPosition));
         assertEquals(6, total.estimatedNumberOfOperations());
-        assertEquals(431, total.getTranslogSizeInBytes());
+        assertEquals(458, total.getTranslogSizeInBytes());
 
         BytesStreamOutput out = new BytesStreamOutput();
         total.writeTo(out);
@@ -351,10 +448,16 @@ public class TranslogTests extends ESTestCase {
         copy.readFrom(StreamInput.wrap(out.bytes()));
 
         assertEquals(6, copy.estimatedNumberOfOperations());
-        assertEquals(431, copy.getTranslogSizeInBytes());
+        assertEquals(458, copy.getTranslogSizeInBytes());
+        assertEquals(total.getSyncRequests(), copy.getSyncRequests());
+        assertEquals(total.getFsyncs(), copy.getFsyncs());
+        assertEquals(total.getFsyncTime(), copy.getFsyncTime());
         assertEquals("\"translog\"{\n" +
             "  \"operations\" : 6,\n" +
-            "  \"size_in_bytes\" : 431\n" +
+            "  \"size_in_bytes\" : 458,\n" +
+            "  \"sync_requests\" : " + copy.getSyncRequests() + ",\n" +
+            "  \"fsyncs\" : " + copy.getFsyncs() + ",\n" +
+            "  \"fsync_time_in_millis\" : " + copy.getFsyncTime().millis() + "\n" +
             "}", copy.toString().trim());
 
         try {
@@ -807,6 +910,77 @@ public class TranslogTests extends ESTestCase {
         }
     }
 
+    public void testSyncStats() throws IOException {
+        TranslogStats stats = translog.stats();
+        assertEquals(0, stats.getSyncRequests());
+        assertEquals(0, stats.getFsyncs());
+        int translogOperations = randomIntBetween(1, 50);
+        for (int op = 0; op < translogOperations; op++) {
+            final Translog.Location location = translog.add(new Translog.Index("test", "" + op, Integer.toString(op).getBytes(Charset.forName("UTF-8"))));
+            assertTrue(translog.ensureSynced(location));
+            assertFalse(translog.ensureSynced(location));
+        }
+        stats = translog.stats();
+        // without concurrent writers every request needs its own fsync
+        assertEquals(translogOperations, stats.getSyncRequests());
+        assertEquals(translogOperations, stats.getFsyncs());
+        assertEquals(1.0d, stats.getAverageSyncBatchSize(), 0.0d);
+    }
+
+    public void testConcurrentSyncsAreCoalesced() throws Throwable {
+        translog.close();
+        Settings settings = Settings.builder()
+            .put(IndexMetaData.SETTING_VERSION_CREATED, org.elasticsearch.Version.CURRENT)
+            .put(IndexSettings.INDEX_TRANSLOG_GROUP_COMMIT_DELAY_SETTING.getKey(), "10ms")
+            .build();
+        TranslogConfig config = new TranslogConfig(shardId, translogDir, IndexSettingsModule.newIndexSettings(shardId.getIndex(), settings),
+            BigArrays.NON_RECYCLING_INSTANCE);
+        translog = new Translog(config, null);
+        final int numThreads = 8;
+        final int opsPerThread = randomIntBetween(10, 50);
+        final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        final AtomicInteger idGenerator = new AtomicInteger();
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new AbstractRunnable() {
+                @Override
+                public void doRun() throws BrokenBarrierException, InterruptedException, IOException {
+                    barrier.await();
+                    for (int op = 0; op < opsPerThread; op++) {
+                        final int id = idGenerator.incrementAndGet();
+                        Translog.Location location = translog.add(new Translog.Index("test", "" + id, Integer.toString(id).getBytes(Charset.forName("UTF-8"))));
+                        // all threads append their operation before any of them syncs, so the first sync covers all of them
+                        barrier.await();
+                        translog.ensureSynced(location);
+                        assertFalse("location must be synced once ensureSynced returns", translog.ensureSynced(location));
+                        barrier.await();
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    errors.add(t);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (errors.isEmpty() == false) {
+            throw errors.get(0);
+        }
+        TranslogStats stats = translog.stats();
+        assertThat(stats.getSyncRequests(), lessThanOrEqualTo((long) numThreads * opsPerThread));
+        assertThat(stats.getFsyncs(), greaterThan(0L));
+        // a single fsync per round syncs the operations of all threads
+        assertEquals(opsPerThread, stats.getFsyncs());
+        assertThat(stats.getFsyncs(), lessThan((long) numThreads * opsPerThread));
+        assertThat(stats.getFsyncs(), lessThanOrEqualTo(stats.getSyncRequests()));
+        assertFalse(translog.syncNeeded());
+    }
+
     public void testLocationComparison() throws IOException {
         List<Translog.Location> locations = new ArrayList<>();
         int translogOperations = randomIntBetween(10, 100);
@@ -1129,7 +1303,7 @@ public class TranslogTests extends ESTestCase {
         try (Translog translog = new Translog(config, translogGeneration)) {
             fail("corrupted");
         } catch (IllegalStateException ex) {
-            assertEquals(ex.getMessage(), "Checkpoint file translog-2.ckp already exists but has corrupted content expected: Checkpoint{offset=2683, numOps=55, translogFileGeneration= 2} but got: Checkpoint{offset=0, numOps=0, translogFileGeneration= 0}");
+            assertEquals(ex.getMessage(), "Checkpoint file translog-2.ckp already exists but has corrupted content expected: Checkpoint{offset=3178, numOps=55, translogFileGeneration= 2} but got: Checkpoint{offset=0, numOps=0, translogFileGeneration= 0}");
         }
         Checkpoint.write(config.getTranslogPath().resolve(Translog.getCommitCheckpointFileName(read.generation)), read, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
         try (Translog translog = new Translog(config, translogGeneration)) {
@@ -0,0 +1,151 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.node;
+
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.elasticsearch.test.ClusterServiceUtils;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+
+import java.util.Map;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class ResponseCollectorServiceTests extends ESTestCase {
+
+    private ClusterService clusterService;
+    private ResponseCollectorService collector;
+    private ThreadPool threadpool;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        threadpool = new TestThreadPool("response_collector_tests");
+        clusterService = ClusterServiceUtils.createClusterService(threadpool);
+        collector = new ResponseCollectorService(Settings.EMPTY, clusterService);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        IOUtils.close(clusterService);
+        terminate(threadpool);
+    }
+
+    public void testNodeStats() throws Exception {
+        collector.addNodeStatistics("node1", 1, 100, 10);
+        Map<String, ResponseCollectorService.ComputedNodeStats> nodeStats = collector.getAllNodeStatistics();
+        assertTrue(nodeStats.containsKey("node1"));
+        assertThat(nodeStats.get("node1").queueSize, equalTo(1));
+        assertThat(nodeStats.get("node1").responseTime, equalTo(100.0));
+        assertThat(nodeStats.get("node1").serviceTime, equalTo(10.0));
+
+        collector.addNodeStatistics("node1", 11, 200, 20);
+        ResponseCollectorService.ComputedNodeStats stats = collector.getNodeStatistics("node1").get();
+        // queue size and response time are moving averages, the service time is already averaged by the remote node
+        assertThat(stats.queueSize, equalTo(4));
+        assertThat(stats.responseTime, equalTo(130.0));
+        assertThat(stats.serviceTime, equalTo(20.0));
+        assertFalse(collector.getNodeStatistics("node2").isPresent());
+    }
+
+    public void testOutgoingSearches() {
+        collector.onSearchRequestSent("node1");
+        collector.onSearchRequestSent("node1");
+        collector.onSearchRequestSent("node2");
+        assertThat(collector.getOutgoingSearchRequests().get("node1"), equalTo(2L));
+        assertThat(collector.getOutgoingSearchRequests().get("node2"), equalTo(1L));
+
+        collector.onSearchRequestDone("node1");
+        collector.onSearchRequestDone("node2");
+        assertThat(collector.getOutgoingSearchRequests().get("node1"), equalTo(1L));
+        assertFalse(collector.getOutgoingSearchRequests().containsKey("node2"));
+        // completing an untracked request must not lead to negative counts
+        collector.onSearchRequestDone("node3");
+        assertFalse(collector.getOutgoingSearchRequests().containsKey("node3"));
+    }
+
+    public void testRank() {
+        collector.addNodeStatistics("node1", 1, 5_000_000, 4_000_000);
+        collector.addNodeStatistics("node2", 10, 5_000_000, 4_000_000);
+        collector.addNodeStatistics("node3", 1, 50_000_000, 4_000_000);
+        final double rank1 = collector.getNodeStatistics("node1").get().rank(0);
+        final double rank2 = collector.getNodeStatistics("node2").get().rank(0);
+        final double rank3 = collector.getNodeStatistics("node3").get().rank(0);
+        // longer queues and slower responses are ranked worse
+        assertThat(rank1, lessThan(rank2));
+        assertThat(rank1, lessThan(rank3));
+        // so are outstanding requests
+        assertThat(collector.getNodeStatistics("node1").get().rank(5), greaterThan(rank1));
+    }
+
+    public void testComputedNodeStatsSerialization() throws Exception {
+        ResponseCollectorService.ComputedNodeStats stats = new ResponseCollectorService.ComputedNodeStats(randomAsciiOfLength(5),
+            randomIntBetween(1, 10), randomIntBetween(0, 1000), randomDouble(), randomDouble());
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            stats.writeTo(out);
+            ResponseCollectorService.ComputedNodeStats read =
+                new ResponseCollectorService.ComputedNodeStats(StreamInput.wrap(out.bytes().toBytes()));
+            assertThat(read.nodeId, equalTo(stats.nodeId));
+            assertThat(read.clientNum, equalTo(stats.clientNum));
+            assertThat(read.queueSize, equalTo(stats.queueSize));
+            assertThat(read.responseTime, equalTo(stats.responseTime));
+            assertThat(read.serviceTime, equalTo(stats.serviceTime));
+        }
+    }
+
+    public void testNodeRemoval() throws Exception {
+        collector.addNodeStatistics("node1", 1, 100, 10);
+        collector.addNodeStatistics("node2", 1, 100, 10);
+        collector.onSearchRequestSent("node2");
+
+        DiscoveryNode node1 = new DiscoveryNode("node1", "node1", DummyTransportAddress.INSTANCE, emptyMap(), emptySet(),
+            Version.CURRENT);
+        DiscoveryNode node2 = new DiscoveryNode("node2", "node2", DummyTransportAddress.INSTANCE, emptyMap(), emptySet(),
+            Version.CURRENT);
+        ClusterState previousState = ClusterState.builder(new ClusterName("cluster")).nodes(DiscoveryNodes.builder()
+            .put(node1).put(node2).localNodeId("node1").masterNodeId("node1")).build();
+        ClusterState newState = ClusterState.builder(previousState).nodes(DiscoveryNodes.builder(previousState.nodes())
+            .remove("node2")).build();
+        collector.clusterChanged(new ClusterChangedEvent("test", newState, previousState));
+
+        assertTrue(collector.getNodeStatistics("node1").isPresent());
+        assertFalse(collector.getNodeStatistics("node2").isPresent());
+        assertFalse(collector.getOutgoingSearchRequests().containsKey("node2"));
+    }
+}
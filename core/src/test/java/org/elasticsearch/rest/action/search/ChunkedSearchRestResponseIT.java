@@ -0,0 +1,100 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest.action.search;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.network.NetworkModule;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.test.ESIntegTestCase;
+import org.elasticsearch.test.rest.client.http.HttpResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class ChunkedSearchRestResponseIT extends ESIntegTestCase {
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return Settings.builder()
+            .put(super.nodeSettings(nodeOrdinal))
+            .put(NetworkModule.HTTP_ENABLED.getKey(), true)
+            .build();
+    }
+
+    public void testChunkedSearchMatchesRegularSearch() throws Exception {
+        createIndex("test");
+        final int numDocs = randomIntBetween(100, 300);
+        List<IndexRequestBuilder> docs = new ArrayList<>(numDocs);
+        for (int i = 0; i < numDocs; i++) {
+            docs.add(client().prepareIndex("test", "type", Integer.toString(i))
+                .setSource("field", randomAsciiOfLength(1000), "number", i));
+        }
+        indexRandom(true, docs);
+
+        Map<String, Object> regular = search(false);
+        Map<String, Object> chunked = search(true);
+        regular.remove("took");
+        chunked.remove("took");
+        assertThat(chunked, equalTo(regular));
+    }
+
+    public void testChunkedScroll() throws Exception {
+        createIndex("test");
+        final int numDocs = randomIntBetween(50, 100);
+        List<IndexRequestBuilder> docs = new ArrayList<>(numDocs);
+        for (int i = 0; i < numDocs; i++) {
+            docs.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource("field", randomAsciiOfLength(1000)));
+        }
+        indexRandom(true, docs);
+
+        HttpResponse response = httpClient().path("/test/_search").addParam("scroll", "1m").addParam("size", "10")
+            .addParam("chunked", "true").execute();
+        assertThat(response.getStatusCode(), equalTo(200));
+        String scrollId = (String) XContentHelper.convertToMap(new BytesArray(response.getBody()), false).v2().get("_scroll_id");
+        int seen = 10;
+        while (true) {
+            response = httpClient().path("/_search/scroll").addParam("scroll", "1m").addParam("scroll_id", scrollId)
+                .addParam("chunked", "true").execute();
+            assertThat(response.getStatusCode(), equalTo(200));
+            Map<String, Object> body = XContentHelper.convertToMap(new BytesArray(response.getBody()), false).v2();
+            @SuppressWarnings("unchecked")
+            List<Object> hits = (List<Object>) ((Map<String, Object>) body.get("hits")).get("hits");
+            if (hits.isEmpty()) {
+                break;
+            }
+            seen += hits.size();
+            scrollId = (String) body.get("_scroll_id");
+        }
+        assertThat(seen, equalTo(numDocs));
+    }
+
+    private Map<String, Object> search(boolean chunked) throws IOException {
+        HttpResponse response = httpClient().path("/test/_search").addParam("size", "1000").addParam("sort", "number")
+            .addParam("chunked", Boolean.toString(chunked)).execute();
+        assertThat(response.getStatusCode(), equalTo(200));
+        return XContentHelper.convertToMap(new BytesArray(response.getBody()), false).v2();
+    }
+}
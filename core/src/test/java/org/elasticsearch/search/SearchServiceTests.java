@@ -22,19 +22,35 @@ package org.elasticsearch.search;
 import org.apache.lucene.search.Query;
 import org.elasticsearch.action.search.SearchPhaseExecutionException;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryRewriteContext;
 import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.range.RangeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.ShardSearchLocalRequest;
+import org.elasticsearch.search.suggest.SuggestBuilder;
 import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.Collection;
@@ -42,6 +58,7 @@ import java.util.concurrent.ExecutionException;
 
 import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 
@@ -110,6 +127,103 @@ public class SearchServiceTests extends ESSingleNodeTestCase {
         assertEquals(activeRefs, indexShard.store().refCount());
     }
 
+    public void testCanMatch() throws IOException {
+        createIndex("index", Settings.EMPTY, "type", "date", "type=date");
+        for (int i = 1; i < 10; i++) {
+            client().prepareIndex("index", "type", Integer.toString(i)).setSource("date", "2016-01-0" + i).get();
+        }
+        client().admin().indices().prepareRefresh("index").get();
+
+        SearchService service = getInstanceFromNode(SearchService.class);
+        ShardId shardId = new ShardId(resolveIndex("index"), 0);
+        assertTrue(service.canMatch(newCanMatchRequest(shardId, new SearchSourceBuilder())));
+        assertTrue(service.canMatch(newCanMatchRequest(shardId, new SearchSourceBuilder().query(new MatchAllQueryBuilder()))));
+        assertTrue(service.canMatch(newCanMatchRequest(shardId,
+            new SearchSourceBuilder().query(new RangeQueryBuilder("date").from("2016-01-05").to("2016-01-20")))));
+        assertFalse(service.canMatch(newCanMatchRequest(shardId,
+            new SearchSourceBuilder().query(new RangeQueryBuilder("date").from("2017-01-01").to("2017-12-31")))));
+        assertFalse(service.canMatch(newCanMatchRequest(shardId, new SearchSourceBuilder().query(new BoolQueryBuilder()
+            .must(new MatchAllQueryBuilder()).filter(new RangeQueryBuilder("date").from("2017-01-01").to("2017-12-31"))))));
+        assertFalse(service.canMatch(newCanMatchRequest(shardId,
+            new SearchSourceBuilder().query(new ConstantScoreQueryBuilder(new RangeQueryBuilder("date").gt("2016-01-09"))))));
+        // the global aggregation needs all documents
+        assertTrue(service.canMatch(newCanMatchRequest(shardId, new SearchSourceBuilder()
+            .query(new RangeQueryBuilder("date").from("2017-01-01").to("2017-12-31"))
+            .aggregation(new GlobalAggregationBuilder("global")))));
+    }
+
+    public void testCanMatchAndReaderVersionDoNotMarkShardSearched() throws Exception {
+        createIndex("index", Settings.EMPTY, "type", "date", "type=date");
+        client().prepareIndex("index", "type", "1").setSource("date", "2016-01-01").setRefreshPolicy(IMMEDIATE).get();
+
+        SearchService service = getInstanceFromNode(SearchService.class);
+        ThreadPool threadPool = getInstanceFromNode(ThreadPool.class);
+        IndexShard shard = getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("index")).getShard(0);
+        final long lastSearcherAccess = shard.getLastSearcherAccess();
+        assertBusy(() -> assertThat(threadPool.estimatedTimeInMillis(), greaterThan(lastSearcherAccess)));
+
+        assertFalse(service.canMatch(newCanMatchRequest(shard.shardId(),
+            new SearchSourceBuilder().query(new RangeQueryBuilder("date").from("2017-01-01").to("2017-12-31")))));
+        assertNotEquals(-1, service.readerVersion(newCanMatchRequest(shard.shardId(), new SearchSourceBuilder())));
+        assertEquals(lastSearcherAccess, shard.getLastSearcherAccess());
+    }
+
+    public void testCanRewriteToMatchNone() {
+        assertFalse(SearchService.canRewriteToMatchNone(null));
+        assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder()));
+        assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new MatchAllQueryBuilder())));
+        assertTrue(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new TermQueryBuilder("foo", "bar"))));
+        assertTrue(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new TermQueryBuilder("foo", "bar"))
+            .aggregation(new TermsAggregationBuilder("terms", null).minDocCount(1))));
+        assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new TermQueryBuilder("foo", "bar"))
+            .aggregation(new TermsAggregationBuilder("terms", null).minDocCount(0))));
+        assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new TermQueryBuilder("foo", "bar"))
+            .aggregation(new GlobalAggregationBuilder("global"))));
+        assertTrue(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new TermQueryBuilder("foo", "bar"))
+            .aggregation(new TermsAggregationBuilder("terms", null).minDocCount(1)
+                .subAggregation(new TermsAggregationBuilder("sub", null).minDocCount(1)))));
+        // sub-aggregations need all documents too
+        assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new TermQueryBuilder("foo", "bar"))
+            .aggregation(new RangeAggregationBuilder("range").field("foo").addUnboundedTo(1)
+                .subAggregation(new TermsAggregationBuilder("sub", null).minDocCount(0)))));
+        assertFalse(SearchService.canRewriteToMatchNone(new SearchSourceBuilder().query(new TermQueryBuilder("foo", "bar"))
+            .suggest(new SuggestBuilder())));
+    }
+
+    public void testPreFilterSkipsShards() {
+        createIndex("index1", Settings.EMPTY, "type", "date", "type=date");
+        createIndex("index2", Settings.EMPTY, "type", "date", "type=date");
+        for (int i = 1; i < 10; i++) {
+            client().prepareIndex("index1", "type", Integer.toString(i)).setSource("date", "2016-01-0" + i).get();
+            client().prepareIndex("index2", "type", Integer.toString(i)).setSource("date", "2017-01-0" + i).get();
+        }
+        client().admin().indices().prepareRefresh("index1", "index2").get();
+
+        SearchResponse response = client().prepareSearch("index1", "index2").setPreFilterShardSize(1)
+            .setQuery(new RangeQueryBuilder("date").gte("2017-01-01")).get();
+        assertEquals(2, response.getTotalShards());
+        assertEquals(2, response.getSuccessfulShards());
+        assertEquals(1, response.getSkippedShards());
+        assertEquals(9, response.getHits().totalHits());
+
+        // one shard is always searched even if none of them can match
+        response = client().prepareSearch("index1", "index2").setPreFilterShardSize(1)
+            .setQuery(new RangeQueryBuilder("date").gte("2018-01-01")).get();
+        assertEquals(2, response.getSuccessfulShards());
+        assertEquals(1, response.getSkippedShards());
+        assertEquals(0, response.getHits().totalHits());
+
+        // no pre-filter roundtrip below the threshold
+        response = client().prepareSearch("index1", "index2").setQuery(new RangeQueryBuilder("date").gte("2017-01-01")).get();
+        assertEquals(2, response.getSuccessfulShards());
+        assertEquals(0, response.getSkippedShards());
+        assertEquals(9, response.getHits().totalHits());
+    }
+
+    private static ShardSearchLocalRequest newCanMatchRequest(ShardId shardId, SearchSourceBuilder source) {
+        return new ShardSearchLocalRequest(shardId, 1, SearchType.QUERY_THEN_FETCH, source, Strings.EMPTY_ARRAY, null);
+    }
+
     public static class FailOnRewriteQueryPlugin extends Plugin {
 
         public void onModule(SearchModule module) {
@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.action;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+import org.elasticsearch.node.ResponseCollectorService;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.internal.ShardSearchTransportRequest;
+import org.elasticsearch.search.query.QuerySearchResultProvider;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
+import org.elasticsearch.test.transport.CapturingTransport;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+import org.junit.After;
+import org.junit.Before;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+
+public class SearchTransportServiceTests extends ESTestCase {
+
+    private ThreadPool threadPool;
+    private CapturingTransport transport;
+    private SearchTransportService searchTransportService;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool(getTestName());
+        transport = new CapturingTransport();
+        TransportService transportService = new TransportService(Settings.EMPTY, transport, threadPool);
+        transportService.start();
+        transportService.acceptIncomingRequests();
+        searchTransportService = new SearchTransportService(Settings.EMPTY, transportService, mock(SearchService.class),
+            new ResponseCollectorService(Settings.EMPTY, mock(ClusterService.class)));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        transport.close();
+        terminate(threadPool);
+    }
+
+    public void testQueryWithTopHitsOnCurrentNode() {
+        DiscoveryNode node = newNode(VersionUtils.randomVersionBetween(random(), Version.V_5_0_0_alpha5, Version.CURRENT));
+        searchTransportService.sendExecuteQueryWithTopHits(node, new ShardSearchTransportRequest(),
+            new PlainActionFuture<QuerySearchResultProvider>());
+        CapturingTransport.CapturedRequest[] requests = transport.getCapturedRequestsAndClear();
+        assertEquals(1, requests.length);
+        assertEquals(SearchTransportService.QUERY_TOP_HITS_ACTION_NAME, requests[0].action);
+    }
+
+    public void testQueryWithTopHitsFallsBackToQueryOnOldNode() {
+        DiscoveryNode node = newNode(VersionUtils.getPreviousVersion(Version.V_5_0_0_alpha5));
+        searchTransportService.sendExecuteQueryWithTopHits(node, new ShardSearchTransportRequest(),
+            new PlainActionFuture<QuerySearchResultProvider>());
+        CapturingTransport.CapturedRequest[] requests = transport.getCapturedRequestsAndClear();
+        assertEquals(1, requests.length);
+        // the top hits are fetched in a separate round trip then
+        assertEquals(SearchTransportService.QUERY_ACTION_NAME, requests[0].action);
+    }
+
+    private static DiscoveryNode newNode(Version version) {
+        return new DiscoveryNode("node", "node", DummyTransportAddress.INSTANCE, Collections.emptyMap(), Collections.emptySet(), version);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.DateHistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.HistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.composite;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.max;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+@ESIntegTestCase.SuiteScopeTestCase
+public class CompositeIT extends ESIntegTestCase {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long INTERVAL = 10;
+
+    // expected doc count and max of the "value" field per composite key [keyword, histogram of value, day of date]
+    static final Map<List<Object>, long[]> expected = new TreeMap<>(Comparator.comparing((List<Object> key) -> (String) key.get(0))
+            .thenComparing(key -> (Long) key.get(1), Comparator.reverseOrder())
+            .thenComparing(key -> (Long) key.get(2)));
+
+    @Override
+    public void setupSuiteScopeCluster() throws Exception {
+        assertAcked(prepareCreate("idx").addMapping("type", "keyword", "type=keyword", "value", "type=long", "date", "type=date"));
+        createIndex("idx_unmapped");
+        List<IndexRequestBuilder> builders = new ArrayList<>();
+        int numDocs = randomIntBetween(50, 200);
+        for (int i = 0; i < numDocs; i++) {
+            TreeSet<String> keywords = new TreeSet<>();
+            int numKeywords = randomIntBetween(0, 3);
+            for (int j = 0; j < numKeywords; j++) {
+                keywords.add("term" + randomIntBetween(0, 20));
+            }
+            long value = randomIntBetween(0, 100);
+            long date = randomIntBetween(0, 10) * DAY + randomIntBetween(0, (int) DAY - 1);
+            builders.add(client().prepareIndex("idx", "type").setSource(jsonBuilder()
+                    .startObject()
+                    .array("keyword", keywords.toArray(new String[keywords.size()]))
+                    .field("value", value)
+                    .field("date", date)
+                    .endObject()));
+            for (String keyword : keywords) {
+                List<Object> key = Arrays.asList(keyword, value - value % INTERVAL, date - date % DAY);
+                long[] stats = expected.computeIfAbsent(key, k -> new long[] { 0, Long.MIN_VALUE });
+                stats[0]++;
+                stats[1] = Math.max(stats[1], value);
+            }
+        }
+        indexRandom(true, builders);
+        ensureSearchable();
+    }
+
+    private static List<CompositeValuesSourceBuilder<?>> sources() {
+        return Arrays.asList(
+                new TermsValuesSourceBuilder("keyword").field("keyword"),
+                new HistogramValuesSourceBuilder("histo").field("value").interval(INTERVAL).order(SortOrder.DESC),
+                new DateHistogramValuesSourceBuilder("date").field("date").dateHistogramInterval(DateHistogramInterval.DAY));
+    }
+
+    public void testPagination() throws Exception {
+        final int size = randomIntBetween(1, 20);
+        final List<List<Object>> expectedKeys = new ArrayList<>(expected.keySet());
+        final List<List<Object>> keys = new ArrayList<>();
+        Map<String, Object> after = null;
+        while (true) {
+            CompositeAggregationBuilder builder = composite("composite", sources()).size(size)
+                    .subAggregation(max("max").field("value"));
+            if (after != null) {
+                builder.aggregateAfter(after);
+            }
+            SearchResponse response = client().prepareSearch("idx", "idx_unmapped").addAggregation(builder).get();
+            assertSearchResponse(response);
+            CompositeAggregation composite = response.getAggregations().get("composite");
+            assertThat(composite, notNullValue());
+            if (composite.getBuckets().isEmpty()) {
+                assertThat(composite.afterKey(), nullValue());
+                break;
+            }
+            assertThat(composite.getBuckets().size(), equalTo(Math.min(size, expectedKeys.size() - keys.size())));
+            for (CompositeAggregation.Bucket bucket : composite.getBuckets()) {
+                Map<String, Object> bucketKey = bucket.getKey();
+                List<Object> key = Arrays.asList(bucketKey.get("keyword"), bucketKey.get("histo"), bucketKey.get("date"));
+                long[] stats = expected.get(key);
+                assertThat("unexpected key " + key, stats, notNullValue());
+                assertThat(bucket.getDocCount(), equalTo(stats[0]));
+                Max max = bucket.getAggregations().get("max");
+                assertThat(max.getValue(), equalTo((double) stats[1]));
+                keys.add(key);
+            }
+            after = composite.afterKey();
+            assertThat(after, equalTo(composite.getBuckets().get(composite.getBuckets().size() - 1).getKey()));
+        }
+        assertThat(keys, equalTo(expectedKeys));
+    }
+
+    public void testUnmapped() throws Exception {
+        SearchResponse response = client().prepareSearch("idx_unmapped")
+                .addAggregation(composite("composite", sources()))
+                .get();
+        assertSearchResponse(response);
+        CompositeAggregation composite = response.getAggregations().get("composite");
+        assertThat(composite, notNullValue());
+        assertThat(composite.getBuckets().size(), equalTo(0));
+        assertThat(composite.afterKey(), nullValue());
+    }
+
+    public void testNonTopLevel() throws Exception {
+        try {
+            client().prepareSearch("idx")
+                    .addAggregation(terms("terms").field("keyword")
+                            .subAggregation(composite("composite", sources())))
+                    .get();
+            fail("expected to fail executing a composite aggregation that is not a top level aggregation");
+        } catch (ElasticsearchException e) {
+            assertThat(e.getMessage(), is("all shards failed"));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.elasticsearch.script.Script;
+import org.elasticsearch.search.aggregations.BaseAggregationTestCase;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.DateHistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.HistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.sort.SortOrder;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CompositeTests extends BaseAggregationTestCase<CompositeAggregationBuilder> {
+
+    @Override
+    protected CompositeAggregationBuilder createTestAggregatorBuilder() {
+        int numSources = randomIntBetween(1, 5);
+        List<CompositeValuesSourceBuilder<?>> sources = new ArrayList<>();
+        for (int i = 0; i < numSources; i++) {
+            int type = randomIntBetween(0, 2);
+            switch (type) {
+                case 0:
+                    sources.add(randomTermsSourceBuilder("source" + i));
+                    break;
+                case 1:
+                    sources.add(randomHistogramSourceBuilder("source" + i));
+                    break;
+                case 2:
+                    sources.add(randomDateHistogramSourceBuilder("source" + i));
+                    break;
+                default:
+                    throw new AssertionError("wrong branch");
+            }
+        }
+        CompositeAggregationBuilder factory = new CompositeAggregationBuilder(randomAsciiOfLengthBetween(3, 10), sources);
+        if (randomBoolean()) {
+            factory.size(randomIntBetween(1, 1000));
+        }
+        if (randomBoolean()) {
+            Map<String, Object> afterKey = new HashMap<>();
+            for (CompositeValuesSourceBuilder<?> source : sources) {
+                afterKey.put(source.name(), randomAsciiOfLengthBetween(1, 20));
+            }
+            factory.aggregateAfter(afterKey);
+        }
+        return factory;
+    }
+
+    private static <AB extends CompositeValuesSourceBuilder<AB>> AB randomCommonOptions(AB builder) {
+        if (randomBoolean()) {
+            builder.field(randomAsciiOfLengthBetween(1, 20));
+        } else {
+            builder.script(new Script(randomAsciiOfLengthBetween(10, 20)));
+        }
+        if (randomBoolean()) {
+            builder.order(randomFrom(SortOrder.values()));
+        }
+        if (randomBoolean()) {
+            builder.format(randomAsciiOfLengthBetween(1, 10));
+        }
+        return builder;
+    }
+
+    private TermsValuesSourceBuilder randomTermsSourceBuilder(String name) {
+        return randomCommonOptions(new TermsValuesSourceBuilder(name));
+    }
+
+    private HistogramValuesSourceBuilder randomHistogramSourceBuilder(String name) {
+        return randomCommonOptions(new HistogramValuesSourceBuilder(name).interval(randomIntBetween(1, 100000)));
+    }
+
+    private DateHistogramValuesSourceBuilder randomDateHistogramSourceBuilder(String name) {
+        DateHistogramValuesSourceBuilder builder = new DateHistogramValuesSourceBuilder(name);
+        if (randomBoolean()) {
+            builder.interval(randomIntBetween(1, 100000));
+        } else {
+            builder.dateHistogramInterval(randomFrom(DateHistogramInterval.DAY, DateHistogramInterval.MONTH,
+                    DateHistogramInterval.days(randomIntBetween(1, 10))));
+        }
+        if (randomBoolean()) {
+            builder.timeZone(randomFrom(DateTimeZone.UTC, DateTimeZone.forID("Europe/Paris"), DateTimeZone.forOffsetHours(3)));
+        }
+        return randomCommonOptions(builder);
+    }
+}
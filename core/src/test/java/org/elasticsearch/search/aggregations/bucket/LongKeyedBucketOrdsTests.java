@@ -0,0 +1,115 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.carrotsearch.hppc.LongLongMap;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.LongHash;
+import org.elasticsearch.common.util.MockBigArrays;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.test.ESTestCase;
+
+public class LongKeyedBucketOrdsTests extends ESTestCase {
+
+    private BigArrays bigArrays() {
+        return new MockBigArrays(Settings.EMPTY, new NoneCircuitBreakerService());
+    }
+
+    public void testDuelWithLongHash() {
+        final long minKey = randomIntBetween(-1000, 1000);
+        final long step = randomIntBetween(1, 100);
+        final long maxKey = minKey + step * randomIntBetween(0, (int) LongKeyedBucketOrds.MAX_DENSE_KEYS - 1);
+        final boolean outOfRange = randomBoolean();
+        final int iters = randomIntBetween(1, 10000);
+        try (LongKeyedBucketOrds ords = LongKeyedBucketOrds.dense(minKey, maxKey, step, bigArrays());
+             LongHash hash = new LongHash(1, bigArrays())) {
+            assertTrue(ords.isDense());
+            for (int i = 0; i < iters; ++i) {
+                final long key;
+                if (outOfRange && rarely()) {
+                    key = randomFrom(minKey - step, maxKey + step, minKey + step / 2 + 1, randomLong());
+                } else {
+                    key = minKey + step * randomIntBetween(0, (int) ((maxKey - minKey) / step));
+                }
+                assertEquals(hash.add(key), ords.add(key));
+                assertEquals(hash.size(), ords.size());
+            }
+            for (long ord = 0; ord < hash.size(); ord++) {
+                assertEquals(hash.get(ord), ords.get(ord));
+            }
+        }
+    }
+
+    public void testSwitchToHashKeepsOrdinals() {
+        try (LongKeyedBucketOrds ords = LongKeyedBucketOrds.dense(0, 100, 10, bigArrays())) {
+            assertTrue(ords.isDense());
+            assertEquals(0, ords.add(30));
+            assertEquals(1, ords.add(0));
+            assertEquals(-1, ords.add(30));
+            assertEquals(2, ords.add(100));
+            assertTrue(ords.isDense());
+
+            // not a multiple of the step
+            assertEquals(3, ords.add(35));
+            assertFalse(ords.isDense());
+            assertEquals(-2, ords.add(0));
+            assertEquals(-4, ords.add(35));
+            assertEquals(4, ords.add(110));
+            assertEquals(5, ords.size());
+            final long[] expected = new long[] {30, 0, 100, 35, 110};
+            for (int ord = 0; ord < expected.length; ord++) {
+                assertEquals(expected[ord], ords.get(ord));
+            }
+        }
+    }
+
+    public void testLargeRangeIsHashed() {
+        final BigArrays bigArrays = bigArrays();
+        try (LongKeyedBucketOrds ords = LongKeyedBucketOrds.dense(0, LongKeyedBucketOrds.MAX_DENSE_KEYS, 1, bigArrays)) {
+            assertFalse(ords.isDense());
+        }
+        try (LongKeyedBucketOrds ords = LongKeyedBucketOrds.dense(0, LongKeyedBucketOrds.MAX_DENSE_KEYS - 1, 1, bigArrays)) {
+            assertTrue(ords.isDense());
+        }
+        try (LongKeyedBucketOrds ords = LongKeyedBucketOrds.dense(Long.MIN_VALUE, Long.MAX_VALUE, 1, bigArrays)) {
+            assertFalse(ords.isDense());
+        }
+        try (LongKeyedBucketOrds ords = LongKeyedBucketOrds.dense(5, 4, 1, bigArrays)) {
+            assertFalse(ords.isDense());
+        }
+        try (LongKeyedBucketOrds ords = LongKeyedBucketOrds.hash(bigArrays)) {
+            assertFalse(ords.isDense());
+            final LongLongMap expected = new LongLongHashMap();
+            for (int i = 0; i < 100; i++) {
+                final long key = randomLong();
+                final long ord = ords.add(key);
+                if (expected.containsKey(key)) {
+                    assertEquals(-1 - expected.get(key), ord);
+                } else {
+                    assertEquals(expected.size(), ord);
+                    expected.put(key, ord);
+                }
+            }
+        }
+        expectThrows(IllegalArgumentException.class, () -> LongKeyedBucketOrds.dense(0, 10, 0, bigArrays));
+    }
+}
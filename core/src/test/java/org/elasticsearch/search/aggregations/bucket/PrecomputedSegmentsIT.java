@@ -0,0 +1,155 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.filter.Filter;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.profile.ProfileResult;
+import org.elasticsearch.search.profile.ProfileShardResult;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.dateHistogram;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.filter;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.histogram;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Checks that the buckets that are computed from the statistics of the index for segments whose documents all match the query are
+ * the same as the buckets that are computed by collecting the documents.
+ */
+@ESIntegTestCase.SuiteScopeTestCase
+public class PrecomputedSegmentsIT extends ESIntegTestCase {
+
+    private static final long START = 1466380800000L; // 2016-06-20T00:00:00Z
+
+    @Override
+    public void setupSuiteScopeCluster() throws Exception {
+        assertAcked(prepareCreate("idx")
+                .setSettings(Settings.builder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .addMapping("type", "value", "type=integer", "date", "type=date", "tag", "type=keyword", "tags", "type=keyword"));
+        List<IndexRequestBuilder> builders = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            builders.add(client().prepareIndex("idx", "type").setSource(jsonBuilder()
+                    .startObject()
+                    .field("value", randomIntBetween(0, 99))
+                    .field("date", START + randomIntBetween(0, 4 * 24 * 60 * 60 * 1000 - 1))
+                    .field("tag", "tag" + randomIntBetween(0, 19))
+                    .array("tags", "tag" + randomIntBetween(0, 9), "tag" + randomIntBetween(0, 9))
+                    .endObject()));
+        }
+        indexRandom(true, false, builders);
+        // a single segment without deleted documents
+        client().admin().indices().prepareForceMerge("idx").setMaxNumSegments(1).get();
+        refresh();
+        ensureSearchable();
+    }
+
+    public void testHistogram() throws Exception {
+        assertPrecomputed(matchAllQuery(), histogram("histo").field("value").interval(randomFrom(25L, 50L, 100L)));
+    }
+
+    public void testHistogramWithOffset() throws Exception {
+        assertPrecomputed(matchAllQuery(), histogram("histo").field("value").interval(50).offset(randomIntBetween(1, 49)));
+    }
+
+    public void testDateHistogram() throws Exception {
+        assertPrecomputed(matchAllQuery(), dateHistogram("histo").field("date").dateHistogramInterval(DateHistogramInterval.DAY));
+    }
+
+    public void testRangeQueryContainingTheSegment() throws Exception {
+        assertPrecomputed(rangeQuery("value").gte(0).lte(99), histogram("histo").field("value").interval(50));
+        assertPrecomputed(rangeQuery("date").gte(START),
+                dateHistogram("histo").field("date").dateHistogramInterval(DateHistogramInterval.DAY));
+    }
+
+    public void testTerms() throws Exception {
+        assertPrecomputed(matchAllQuery(), terms("terms").field("tag").size(20));
+        assertPrecomputed(matchAllQuery(), terms("terms").field(randomFrom("tag", "tags")).size(randomIntBetween(1, 20)));
+    }
+
+    public void testMultiValuedTerms() throws Exception {
+        assertPrecomputed(matchAllQuery(), terms("terms").field("tags").size(10));
+    }
+
+    public void testPartialRangeQueryIsCollected() throws Exception {
+        SearchResponse response = client().prepareSearch("idx").setProfile(true).setSize(0)
+                .setQuery(rangeQuery("value").gte(10))
+                .addAggregation(histogram("histo").field("value").interval(50)).get();
+        assertSearchResponse(response);
+        assertThat(aggregationDescription(response), equalTo("histo"));
+        long docCount = 0;
+        for (Histogram.Bucket bucket : ((Histogram) response.getAggregations().get("histo")).getBuckets()) {
+            docCount += bucket.getDocCount();
+        }
+        assertThat(docCount, equalTo(response.getHits().getTotalHits()));
+    }
+
+    /**
+     * Runs the aggregation at the top level, where it is precomputed, and under a filter aggregation, where the documents are
+     * collected, and checks that they return the same buckets.
+     */
+    private void assertPrecomputed(QueryBuilder query, AggregationBuilder aggregation) {
+        SearchResponse response = client().prepareSearch("idx").setProfile(true).setSize(0)
+                .setQuery(query)
+                .addAggregation(aggregation)
+                .addAggregation(filter("collected", matchAllQuery()).subAggregation(aggregation)).get();
+        assertSearchResponse(response);
+        assertThat(aggregationDescription(response), containsString("precomputed segments: "));
+        MultiBucketsAggregation precomputed = response.getAggregations().get(aggregation.getName());
+        MultiBucketsAggregation collected = ((Filter) response.getAggregations().get("collected")).getAggregations()
+                .get(aggregation.getName());
+        assertThat(precomputed.getBuckets().size(), equalTo(collected.getBuckets().size()));
+        assertThat(precomputed.getBuckets().size(), not(equalTo(0)));
+        for (int i = 0; i < precomputed.getBuckets().size(); i++) {
+            MultiBucketsAggregation.Bucket expected = collected.getBuckets().get(i);
+            MultiBucketsAggregation.Bucket actual = precomputed.getBuckets().get(i);
+            assertThat(actual.getKey(), equalTo(expected.getKey()));
+            assertThat(actual.getDocCount(), equalTo(expected.getDocCount()));
+        }
+        if (precomputed instanceof Terms) {
+            assertThat(((Terms) precomputed).getSumOfOtherDocCounts(), equalTo(((Terms) collected).getSumOfOtherDocCounts()));
+        }
+    }
+
+    private static String aggregationDescription(SearchResponse response) {
+        assertThat(response.getProfileResults().size(), equalTo(1));
+        ProfileShardResult shardResult = response.getProfileResults().values().iterator().next();
+        ProfileResult result = shardResult.getAggregationProfileResults().getProfileResults().get(0);
+        return result.getLuceneDescription();
+    }
+}
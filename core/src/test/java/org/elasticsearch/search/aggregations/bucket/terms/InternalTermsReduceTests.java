@@ -0,0 +1,150 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.terms;
+
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.support.BucketPriorityQueue;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class InternalTermsReduceTests extends ESTestCase {
+
+    public void testReduceMergesBucketsOfTheSameTerm() {
+        final Terms.Order order = randomFrom(Terms.Order.count(false), Terms.Order.term(true), Terms.Order.term(false));
+        final int numShards = randomIntBetween(1, 20);
+        final int numTerms = randomIntBetween(1, 500);
+        final int requiredSize = randomIntBetween(1, numTerms + 1);
+        final Map<Long, Long> expectedCounts = new HashMap<>();
+        final List<InternalAggregation> shardResults = new ArrayList<>();
+        for (int i = 0; i < numShards; i++) {
+            final List<InternalTerms.Bucket> buckets = new ArrayList<>();
+            for (int term = 0; term < numTerms; term++) {
+                if (randomBoolean()) {
+                    final long docCount = randomIntBetween(1, 100);
+                    buckets.add(new LongTerms.Bucket(term, docCount, InternalAggregations.EMPTY, false, 0, DocValueFormat.RAW));
+                    expectedCounts.merge((long) term, docCount, Long::sum);
+                }
+            }
+            Collections.shuffle(buckets, random());
+            // shards return their buckets in the requested order
+            final BucketPriorityQueue queue = new BucketPriorityQueue(Math.max(1, buckets.size()), order.comparator(null));
+            buckets.forEach(queue::add);
+            final InternalTerms.Bucket[] sorted = new InternalTerms.Bucket[buckets.size()];
+            for (int j = sorted.length - 1; j >= 0; j--) {
+                sorted[j] = (InternalTerms.Bucket) queue.pop();
+            }
+            shardResults.add(newLongTerms(order, requiredSize, Arrays.asList(sorted)));
+        }
+        final BigArrays bigArrays = new BigArrays(Settings.EMPTY, new NoneCircuitBreakerService());
+        final InternalTerms<?, ?> reduced = (InternalTerms<?, ?>) shardResults.get(0).reduce(shardResults,
+            new ReduceContext(bigArrays, null, null));
+
+        assertEquals(Math.min(requiredSize, expectedCounts.size()), reduced.getBuckets().size());
+        long otherDocCount = expectedCounts.values().stream().mapToLong(Long::longValue).sum();
+        Terms.Bucket previous = null;
+        for (Terms.Bucket bucket : reduced.getBuckets()) {
+            assertEquals(expectedCounts.get(bucket.getKey()).longValue(), bucket.getDocCount());
+            if (previous != null) {
+                assertTrue(order.comparator(null).compare(previous, bucket) <= 0);
+            }
+            otherDocCount -= bucket.getDocCount();
+            previous = bucket;
+        }
+        assertEquals(otherDocCount, reduced.getSumOfOtherDocCounts());
+    }
+
+    public void testReduceIsAccountedOnTheRequestBreaker() {
+        final List<InternalAggregation> shardResults = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final List<InternalTerms.Bucket> buckets = new ArrayList<>();
+            for (int term = 0; term < 1000; term++) {
+                buckets.add(new LongTerms.Bucket(term, 1, InternalAggregations.EMPTY, false, 0, DocValueFormat.RAW));
+            }
+            shardResults.add(newLongTerms(Terms.Order.term(true), 1000, buckets));
+        }
+        final HierarchyCircuitBreakerService breakerService = new HierarchyCircuitBreakerService(
+            Settings.builder()
+                .put(HierarchyCircuitBreakerService.REQUEST_CIRCUIT_BREAKER_LIMIT_SETTING.getKey(), 1024, ByteSizeUnit.BYTES)
+                .build(),
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
+        final ReduceContext reduceContext = new ReduceContext(new BigArrays(null, breakerService, false), null, null);
+        expectThrows(CircuitBreakingException.class, () -> shardResults.get(0).reduce(shardResults, reduceContext));
+        assertEquals(0, breakerService.getBreaker(CircuitBreaker.REQUEST).getUsed());
+    }
+
+    public void testPartialReduceKeepsAllBucketsSortedByTerm() {
+        final Terms.Order order = randomFrom(Terms.Order.count(false), Terms.Order.term(true), Terms.Order.term(false));
+        final int numTerms = randomIntBetween(1, 200);
+        final List<InternalAggregation> shardResults = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final List<InternalTerms.Bucket> buckets = new ArrayList<>();
+            for (int term = i; term < numTerms; term += 2) {
+                buckets.add(new LongTerms.Bucket(term, 1, InternalAggregations.EMPTY, false, 0, DocValueFormat.RAW));
+            }
+            shardResults.add(newLongTerms(order, 1, buckets));
+        }
+        final BigArrays bigArrays = new BigArrays(Settings.EMPTY, new NoneCircuitBreakerService());
+        final InternalTerms<?, ?> reduced = (InternalTerms<?, ?>) shardResults.get(0).reduce(shardResults,
+            new ReduceContext(bigArrays, null, null, false));
+        assertEquals(numTerms, reduced.getBuckets().size());
+        for (int term = 0; term < numTerms; term++) {
+            assertEquals((long) term, reduced.getBuckets().get(term).getKey());
+        }
+    }
+
+    public void testBucketsAreAccountedOnTheRequestBreaker() {
+        final List<InternalTerms.Bucket> buckets = new ArrayList<>();
+        for (int term = 0; term < 100; term++) {
+            buckets.add(new LongTerms.Bucket(term, 1, InternalAggregations.EMPTY, false, 0, DocValueFormat.RAW));
+        }
+        final List<InternalAggregation> shardResults = Collections.singletonList(newLongTerms(Terms.Order.term(true), 100, buckets));
+        // enough for the references to the buckets, but not for the buckets themselves
+        final HierarchyCircuitBreakerService breakerService = new HierarchyCircuitBreakerService(
+            Settings.builder()
+                .put(HierarchyCircuitBreakerService.REQUEST_CIRCUIT_BREAKER_LIMIT_SETTING.getKey(), 4, ByteSizeUnit.KB)
+                .build(),
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
+        final ReduceContext reduceContext = new ReduceContext(new BigArrays(null, breakerService, false), null, null);
+        expectThrows(CircuitBreakingException.class, () -> shardResults.get(0).reduce(shardResults, reduceContext));
+        assertEquals(0, breakerService.getBreaker(CircuitBreaker.REQUEST).getUsed());
+    }
+
+    private static LongTerms newLongTerms(Terms.Order order, int requiredSize, List<InternalTerms.Bucket> buckets) {
+        return new LongTerms("terms", order, DocValueFormat.RAW, requiredSize, Integer.MAX_VALUE, 1, buckets, false, 0, 0,
+            Collections.emptyList(), Collections.emptyMap());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.collapse;
+
+import org.elasticsearch.common.ParseFieldMatcher;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.InnerHitBuilderTests;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.indices.query.IndicesQueriesRegistry;
+import org.elasticsearch.search.SearchModule;
+import org.elasticsearch.test.ESTestCase;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class CollapseBuilderTests extends ESTestCase {
+    private static NamedWriteableRegistry namedWriteableRegistry;
+    private static IndicesQueriesRegistry indicesQueriesRegistry;
+
+    @BeforeClass
+    public static void init() {
+        namedWriteableRegistry = new NamedWriteableRegistry();
+        indicesQueriesRegistry = new SearchModule(Settings.EMPTY, namedWriteableRegistry).getQueryParserRegistry();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        namedWriteableRegistry = null;
+        indicesQueriesRegistry = null;
+    }
+
+    public static CollapseBuilder randomCollapseBuilder() {
+        CollapseBuilder builder = new CollapseBuilder(randomAsciiOfLengthBetween(1, 10));
+        if (randomBoolean()) {
+            builder.setMaxConcurrentGroupRequests(randomIntBetween(1, 48));
+        }
+        if (randomBoolean()) {
+            builder.setInnerHit(InnerHitBuilderTests.randomInnerHits(false, false));
+        }
+        return builder;
+    }
+
+    private static CollapseBuilder serializedCopy(CollapseBuilder original) throws IOException {
+        try (BytesStreamOutput output = new BytesStreamOutput()) {
+            original.writeTo(output);
+            try (StreamInput in =
+                     new NamedWriteableAwareStreamInput(StreamInput.wrap(output.bytes()), namedWriteableRegistry)) {
+                return new CollapseBuilder(in);
+            }
+        }
+    }
+
+    public void testSerialization() throws Exception {
+        CollapseBuilder original = randomCollapseBuilder();
+        CollapseBuilder deserialized = serializedCopy(original);
+        assertEquals(deserialized, original);
+        assertEquals(deserialized.hashCode(), original.hashCode());
+        assertNotSame(deserialized, original);
+    }
+
+    public void testFromXContent() throws Exception {
+        CollapseBuilder collapseBuilder = randomCollapseBuilder();
+        XContentBuilder builder = XContentFactory.contentBuilder(randomFrom(XContentType.values()));
+        if (randomBoolean()) {
+            builder.prettyPrint();
+        }
+        collapseBuilder.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        XContentParser parser = XContentHelper.createParser(shuffleXContent(builder).bytes());
+        QueryParseContext context = new QueryParseContext(indicesQueriesRegistry, parser, ParseFieldMatcher.STRICT);
+        CollapseBuilder secondCollapseBuilder = CollapseBuilder.fromXContent(context);
+        assertNotSame(collapseBuilder, secondCollapseBuilder);
+        assertEquals(collapseBuilder, secondCollapseBuilder);
+        assertThat(collapseBuilder.hashCode(), equalTo(secondCollapseBuilder.hashCode()));
+    }
+
+    public void testInvalidArguments() throws Exception {
+        Exception e = expectThrows(NullPointerException.class, () -> new CollapseBuilder((String) null));
+        assertEquals("field must be non-null", e.getMessage());
+
+        e = expectThrows(IllegalArgumentException.class, () -> new CollapseBuilder("field").setMaxConcurrentGroupRequests(0));
+        assertEquals("maxConcurrentGroupRequests must be positive", e.getMessage());
+    }
+}
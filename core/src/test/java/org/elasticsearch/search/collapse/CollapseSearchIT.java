@@ -0,0 +1,222 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.collapse;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.search.SearchContextException;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.rescore.RescoreBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class CollapseSearchIT extends ESIntegTestCase {
+
+    private static final String INDEX = "test";
+    private static final String TYPE = "type";
+
+    /**
+     * Indexes <code>numDocs</code> documents with a unique <code>rank</code> and returns the ranks of the documents of every group.
+     */
+    private Map<Object, List<Long>> indexDocs(int numDocs, int numGroups, boolean numericGroups) throws Exception {
+        assertAcked(prepareCreate(INDEX)
+            .setSettings("index.number_of_shards", randomIntBetween(1, 5), "index.number_of_replicas", 0)
+            .addMapping(TYPE, "group", "type=" + (numericGroups ? "long" : "keyword"), "rank", "type=long", "text", "type=text"));
+        final Map<Object, List<Long>> groups = new HashMap<>();
+        final List<IndexRequestBuilder> requests = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            final int group = randomInt(numGroups - 1);
+            final Object groupValue = numericGroups ? (Object) (long) group : "group_" + group;
+            groups.computeIfAbsent(groupValue, k -> new ArrayList<>()).add((long) i);
+            requests.add(client().prepareIndex(INDEX, TYPE, Integer.toString(i))
+                .setSource("group", groupValue, "rank", i, "text", "value " + i));
+        }
+        indexRandom(true, requests);
+        return groups;
+    }
+
+    /**
+     * Returns the collapse values sorted by the best rank of their group.
+     */
+    private static List<Object> sortedGroups(Map<Object, List<Long>> groups, SortOrder order) {
+        final Map<Object, Long> best = new HashMap<>();
+        for (Map.Entry<Object, List<Long>> entry : groups.entrySet()) {
+            final long rank = order == SortOrder.ASC ? entry.getValue().stream().mapToLong(Long::longValue).min().getAsLong() :
+                entry.getValue().stream().mapToLong(Long::longValue).max().getAsLong();
+            best.put(entry.getKey(), rank);
+        }
+        final List<Object> sorted = new ArrayList<>(best.keySet());
+        Comparator<Object> comparator = Comparator.comparingLong(best::get);
+        sorted.sort(order == SortOrder.ASC ? comparator : comparator.reversed());
+        return sorted;
+    }
+
+    private static Object normalize(Object value) {
+        return value instanceof Number ? (Object) ((Number) value).longValue() : value;
+    }
+
+    public void testCollapseKeyword() throws Exception {
+        assertCollapse(false);
+    }
+
+    public void testCollapseNumeric() throws Exception {
+        assertCollapse(true);
+    }
+
+    private void assertCollapse(boolean numericGroups) throws Exception {
+        final int numDocs = randomIntBetween(1, 100);
+        final Map<Object, List<Long>> groups = indexDocs(numDocs, randomIntBetween(1, 20), numericGroups);
+        final SortOrder order = randomFrom(SortOrder.values());
+        final List<Object> expected = sortedGroups(groups, order);
+        final int from = randomIntBetween(0, 5);
+        final int size = randomIntBetween(1, 10);
+        final SearchResponse response = client().prepareSearch(INDEX)
+            .setSearchType(randomFrom(SearchType.QUERY_THEN_FETCH, SearchType.DFS_QUERY_THEN_FETCH))
+            .setQuery(matchAllQuery())
+            .addSort("rank", order)
+            .setFrom(from)
+            .setSize(size)
+            .setCollapse(new CollapseBuilder("group"))
+            .get();
+        assertNoFailures(response);
+        assertHitCount(response, numDocs);
+        final SearchHit[] hits = response.getHits().getHits();
+        assertThat(hits.length, equalTo(Math.max(0, Math.min(size, expected.size() - from))));
+        for (int i = 0; i < hits.length; i++) {
+            final Object group = expected.get(from + i);
+            assertThat(normalize(hits[i].field("group").getValue()), equalTo(group));
+            final List<Long> ranks = groups.get(group);
+            final long bestRank = order == SortOrder.ASC ? ranks.stream().mapToLong(Long::longValue).min().getAsLong() :
+                ranks.stream().mapToLong(Long::longValue).max().getAsLong();
+            assertThat(hits[i].getId(), equalTo(Long.toString(bestRank)));
+        }
+    }
+
+    public void testCollapseByRelevance() throws Exception {
+        final int numDocs = randomIntBetween(1, 100);
+        final Map<Object, List<Long>> groups = indexDocs(numDocs, randomIntBetween(1, 20), randomBoolean());
+        final SearchResponse response = client().prepareSearch(INDEX)
+            .setSearchType(SearchType.QUERY_THEN_FETCH)
+            .setQuery(matchAllQuery())
+            .setSize(100)
+            .setCollapse(new CollapseBuilder("group"))
+            .get();
+        assertNoFailures(response);
+        assertHitCount(response, numDocs);
+        final Set<Object> seen = new HashSet<>();
+        for (SearchHit hit : response.getHits().getHits()) {
+            assertTrue("duplicate group " + hit.field("group").getValue(), seen.add(normalize(hit.field("group").getValue())));
+        }
+        assertThat(seen, equalTo(groups.keySet()));
+    }
+
+    public void testExpandInnerHits() throws Exception {
+        final int numDocs = randomIntBetween(1, 100);
+        final Map<Object, List<Long>> groups = indexDocs(numDocs, randomIntBetween(1, 20), randomBoolean());
+        final int innerSize = randomIntBetween(1, 5);
+        final InnerHitBuilder innerHit = new InnerHitBuilder()
+            .setName("by_rank")
+            .setSize(innerSize)
+            .addSort(SortBuilders.fieldSort("rank").order(SortOrder.ASC));
+        final long minRank = randomIntBetween(0, numDocs - 1);
+        final SearchResponse response = client().prepareSearch(INDEX)
+            .setSearchType(SearchType.QUERY_THEN_FETCH)
+            .setQuery(rangeQuery("rank").gte(minRank))
+            .addSort("rank", SortOrder.DESC)
+            .setSize(100)
+            .setCollapse(new CollapseBuilder("group").setInnerHit(innerHit).setMaxConcurrentGroupRequests(randomIntBetween(1, 4)))
+            .get();
+        assertNoFailures(response);
+        assertHitCount(response, numDocs - minRank);
+        for (SearchHit hit : response.getHits().getHits()) {
+            final Object group = normalize(hit.field("group").getValue());
+            final List<Long> expected = new ArrayList<>();
+            for (long rank : groups.get(group)) {
+                if (rank >= minRank) {
+                    expected.add(rank);
+                }
+            }
+            expected.sort(Long::compare);
+            final SearchHits innerHits = hit.getInnerHits().get("by_rank");
+            assertThat(innerHits.getTotalHits(), equalTo((long) expected.size()));
+            assertThat(innerHits.getHits().length, lessThanOrEqualTo(innerSize));
+            assertThat(innerHits.getHits().length, equalTo(Math.min(innerSize, expected.size())));
+            for (int i = 0; i < innerHits.getHits().length; i++) {
+                assertThat(innerHits.getAt(i).getId(), equalTo(Long.toString(expected.get(i))));
+            }
+        }
+    }
+
+    public void testInvalidCollapse() throws Exception {
+        indexDocs(randomIntBetween(1, 10), 2, false);
+
+        SearchPhaseExecutionException e = expectThrows(SearchPhaseExecutionException.class, () -> client().prepareSearch(INDEX)
+            .setSearchType(SearchType.QUERY_THEN_FETCH)
+            .setCollapse(new CollapseBuilder("text"))
+            .get());
+        assertThat(e.getCause().getCause(), instanceOf(SearchContextException.class));
+        assertThat(e.getCause().getCause().getMessage(), containsString("only keywords and numbers are accepted"));
+
+        e = expectThrows(SearchPhaseExecutionException.class, () -> client().prepareSearch(INDEX)
+            .setSearchType(SearchType.QUERY_THEN_FETCH)
+            .setCollapse(new CollapseBuilder("group"))
+            .addRescorer(RescoreBuilder.queryRescorer(matchAllQuery()))
+            .get());
+        assertThat(e.getCause().getCause().getMessage(), equalTo("cannot use `collapse` in conjunction with `rescore`"));
+
+        ActionRequestValidationException validation = expectThrows(ActionRequestValidationException.class,
+            () -> client().prepareSearch(INDEX)
+                .setSearchType(SearchType.QUERY_THEN_FETCH)
+                .setCollapse(new CollapseBuilder("group"))
+                .setScroll("1m")
+                .get());
+        assertThat(validation.getMessage(), containsString("cannot use `collapse` in a scroll context"));
+
+        validation = expectThrows(ActionRequestValidationException.class, () -> client().prepareSearch(INDEX)
+            .setSearchType(SearchType.QUERY_AND_FETCH)
+            .setCollapse(new CollapseBuilder("group"))
+            .get());
+        assertThat(validation.getMessage(), containsString("cannot use `collapse` with search type [QUERY_AND_FETCH]"));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.controller;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.concurrent.AtomicArray;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.metrics.max.InternalMax;
+import org.elasticsearch.search.aggregations.metrics.max.MaxAggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.FetchSearchResult;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.elasticsearch.search.query.QuerySearchResultProvider;
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Before;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Mockito.mock;
+
+public class SearchPhaseControllerTests extends ESTestCase {
+
+    private SearchPhaseController searchPhaseController;
+
+    @Before
+    public void setup() {
+        searchPhaseController = new SearchPhaseController(Settings.EMPTY, BigArrays.NON_RECYCLING_INSTANCE, null,
+            mock(ClusterService.class));
+    }
+
+    public void testNoConsumerForSmallRequests() {
+        SearchRequest request = new SearchRequest();
+        request.setBatchedReduceSize(4);
+        assertNull(searchPhaseController.newQueryPhaseResultConsumer(request, 4));
+        assertNotNull(searchPhaseController.newQueryPhaseResultConsumer(request, 5));
+
+        request.source(new SearchSourceBuilder().size(0));
+        assertNull(searchPhaseController.newQueryPhaseResultConsumer(request, 5));
+
+        request = new SearchRequest().scroll("1m");
+        request.setBatchedReduceSize(2);
+        assertNull(searchPhaseController.newQueryPhaseResultConsumer(request, 5));
+
+        expectThrows(IllegalArgumentException.class, () -> new SearchRequest().setBatchedReduceSize(1));
+    }
+
+    public void testConsumer() throws Exception {
+        final int numShards = randomIntBetween(3, 30);
+        final int bufferSize = randomIntBetween(2, numShards - 1);
+        final int from = randomIntBetween(0, 5);
+        final int size = randomIntBetween(1, 10);
+        SearchRequest request = new SearchRequest();
+        request.source(new SearchSourceBuilder().from(from).size(size)
+            .aggregation(new MaxAggregationBuilder("max").field("foo")));
+        request.setBatchedReduceSize(bufferSize);
+        SearchPhaseController.QueryPhaseResultConsumer consumer = searchPhaseController.newQueryPhaseResultConsumer(request, numShards);
+        assertNotNull(consumer);
+
+        AtomicArray<QuerySearchResultProvider> results = new AtomicArray<>(numShards);
+        AtomicArray<QuerySearchResultProvider> expectedResults = new AtomicArray<>(numShards);
+        double max = Double.NEGATIVE_INFINITY;
+        for (int shardIndex = 0; shardIndex < numShards; shardIndex++) {
+            final int numHits = randomIntBetween(0, from + size);
+            final ScoreDoc[] scoreDocs = new ScoreDoc[numHits];
+            final ScoreDoc[] expectedScoreDocs = new ScoreDoc[numHits];
+            float score = 100f;
+            for (int i = 0; i < numHits; i++) {
+                score -= randomIntBetween(0, 10);
+                scoreDocs[i] = new ScoreDoc(i, score);
+                expectedScoreDocs[i] = new ScoreDoc(i, score);
+            }
+            final float maxScore = numHits == 0 ? Float.NaN : scoreDocs[0].score;
+            final double shardMax = randomDouble();
+            max = Math.max(max, shardMax);
+            results.set(shardIndex, newResult(shardIndex, from, size, new TopDocs(numHits * 2, scoreDocs, maxScore), shardMax));
+            expectedResults.set(shardIndex,
+                newResult(shardIndex, from, size, new TopDocs(numHits * 2, expectedScoreDocs, maxScore), shardMax));
+        }
+        for (int shardIndex : shuffledShardIndices(numShards)) {
+            consumer.consume(shardIndex, results.get(shardIndex).queryResult());
+        }
+        assertEquals(numShards / bufferSize, consumer.getNumReducePhases());
+        // only the results that arrived after the last partial reduce keep all their hits
+        int numHits = 0;
+        for (int i = 0; i < numShards; i++) {
+            numHits += results.get(i).queryResult().topDocs().scoreDocs.length;
+        }
+        assertThat(numHits, lessThanOrEqualTo(from + size + numShards + (numShards % bufferSize) * (from + size)));
+
+        ScoreDoc[] sortedDocs = searchPhaseController.sortDocs(false, results);
+        ScoreDoc[] expectedSortedDocs = searchPhaseController.sortDocs(false, expectedResults);
+        assertEquals(expectedSortedDocs.length, sortedDocs.length);
+        for (int i = 0; i < sortedDocs.length; i++) {
+            assertEquals(expectedSortedDocs[i].shardIndex, sortedDocs[i].shardIndex);
+            assertEquals(expectedSortedDocs[i].doc, sortedDocs[i].doc);
+            assertEquals(expectedSortedDocs[i].score, sortedDocs[i].score, 0f);
+        }
+
+        InternalSearchResponse response = searchPhaseController.merge(sortedDocs, results, new AtomicArray<FetchSearchResult>(0),
+            consumer);
+        assertEquals(numShards / bufferSize + 1, response.getNumReducePhases());
+        InternalSearchResponse expectedResponse = searchPhaseController.merge(expectedSortedDocs, expectedResults,
+            new AtomicArray<FetchSearchResult>(0));
+        assertEquals(1, expectedResponse.getNumReducePhases());
+        assertEquals(expectedResponse.hits().totalHits(), response.hits().totalHits());
+        assertEquals(expectedResponse.hits().maxScore(), response.hits().maxScore(), 0f);
+        InternalMax internalMax = response.aggregations().get("max");
+        assertEquals(max, internalMax.getValue(), 0d);
+    }
+
+    private static QuerySearchResult newResult(int shardIndex, int from, int size, TopDocs topDocs, double max) {
+        QuerySearchResult result = new QuerySearchResult(shardIndex, new SearchShardTarget("node", new Index("test", "uuid"), shardIndex));
+        result.from(from);
+        result.size(size);
+        result.topDocs(topDocs, null);
+        InternalMax internalMax = new InternalMax("max", max, DocValueFormat.RAW, Collections.emptyList(), Collections.emptyMap());
+        result.aggregations(new InternalAggregations(Collections.<InternalAggregation>singletonList(internalMax)));
+        return result;
+    }
+
+    private static int[] shuffledShardIndices(int numShards) {
+        final int[] shardIndices = new int[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shardIndices[i] = i;
+        }
+        for (int i = numShards - 1; i > 0; i--) {
+            final int j = randomInt(i);
+            final int tmp = shardIndices[i];
+            shardIndices[i] = shardIndices[j];
+            shardIndices[j] = tmp;
+        }
+        return shardIndices;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.fetch;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Arrays;
+
+public class FetchPhaseTests extends ESTestCase {
+
+    public void testHasSequentialDocs() {
+        FetchPhase.DocIdToIndex[] docs = new FetchPhase.DocIdToIndex[FetchPhase.SEQUENTIAL_DOCS_THRESHOLD];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = new FetchPhase.DocIdToIndex(100 + i, i);
+        }
+        assertTrue(FetchPhase.hasSequentialDocs(docs, 0, docs.length));
+        assertFalse(FetchPhase.hasSequentialDocs(docs, 1, docs.length));
+
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = new FetchPhase.DocIdToIndex(100 + i * (FetchPhase.MAX_SEQUENTIAL_DOCS_GAP + 1), i);
+        }
+        assertFalse(FetchPhase.hasSequentialDocs(docs, 0, docs.length));
+    }
+
+    public void testStoredFieldsLoader() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig(null));
+        int numDocs = scaledRandomIntBetween(100, 1000);
+        for (int i = 0; i < numDocs; i++) {
+            Document doc = new Document();
+            doc.add(new StoredField("id", Integer.toString(i)));
+            doc.add(new StoredField("body", randomUnicodeOfLengthBetween(0, 100)));
+            iw.addDocument(doc);
+            if (rarely()) {
+                iw.commit();
+            }
+        }
+        DirectoryReader reader = ElasticsearchDirectoryReader.wrap(DirectoryReader.open(iw), new ShardId("fake", "_na_", 1));
+
+        // either a dense run of doc ids or random ones, in doc id order as the fetch phase loads them
+        FetchPhase.DocIdToIndex[] docs;
+        if (randomBoolean()) {
+            int from = randomIntBetween(0, numDocs - 1);
+            docs = new FetchPhase.DocIdToIndex[randomIntBetween(1, numDocs - from)];
+            for (int i = 0; i < docs.length; i++) {
+                docs[i] = new FetchPhase.DocIdToIndex(from + i, i);
+            }
+        } else {
+            docs = new FetchPhase.DocIdToIndex[randomIntBetween(1, numDocs)];
+            for (int i = 0; i < docs.length; i++) {
+                docs[i] = new FetchPhase.DocIdToIndex(randomIntBetween(0, numDocs - 1), i);
+            }
+            Arrays.sort(docs);
+        }
+
+        int currentReaderIndex = -1;
+        LeafReaderContext context = null;
+        FetchPhase.StoredFieldsLoader loader = null;
+        for (int i = 0; i < docs.length; i++) {
+            int docId = docs[i].docId;
+            int readerIndex = ReaderUtil.subIndex(docId, reader.leaves());
+            if (readerIndex != currentReaderIndex) {
+                currentReaderIndex = readerIndex;
+                context = reader.leaves().get(readerIndex);
+                loader = FetchPhase.storedFieldsLoader(context, docs, i);
+            }
+            DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor();
+            loader.visitDocument(docId - context.docBase, visitor);
+            Document expected = reader.document(docId);
+            assertEquals(Integer.toString(docId), visitor.getDocument().get("id"));
+            assertEquals(expected.get("body"), visitor.getDocument().get("body"));
+        }
+        IOUtils.close(reader, iw, dir);
+    }
+}
@@ -21,6 +21,7 @@ package org.elasticsearch.search.query;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -33,21 +34,47 @@ import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.Directory;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.query.ParsedQuery;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.ShardSearchLocalRequest;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.search.profile.Profilers;
+import org.elasticsearch.search.profile.query.CollectorResult;
+import org.elasticsearch.search.rescore.RescoreSearchContext;
+import org.elasticsearch.search.sort.SortAndFormats;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.TestSearchContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.hamcrest.Matchers.greaterThan;
+
 public class QueryPhaseTests extends ESTestCase {
 
     private void countTestCase(Query query, IndexReader reader, boolean shouldCollect) throws Exception {
@@ -165,4 +192,213 @@ public class QueryPhaseTests extends ESTestCase {
         assertTrue(collected.get());
     }
 
+    public void testSlices() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numSegments = randomIntBetween(1, 10);
+        for (int i = 0; i < numSegments; i++) {
+            final int numDocs = randomIntBetween(1, 50);
+            for (int j = 0; j < numDocs; j++) {
+                w.addDocument(new Document());
+            }
+            w.commit();
+        }
+        final IndexReader reader = w.getReader();
+        final List<LeafReaderContext> leaves = reader.leaves();
+        final int maxSlices = randomIntBetween(1, 12);
+        final List<List<LeafReaderContext>> slices = ContextIndexSearcher.slices(leaves, maxSlices);
+        assertEquals(Math.min(maxSlices, leaves.size()), slices.size());
+        final List<LeafReaderContext> sliceLeaves = new ArrayList<>();
+        for (List<LeafReaderContext> slice : slices) {
+            assertFalse(slice.isEmpty());
+            sliceLeaves.addAll(slice);
+        }
+        // slices are made of consecutive leaves
+        assertEquals(leaves, sliceLeaves);
+        reader.close();
+        w.close();
+        dir.close();
+    }
+
+    public void testConcurrentSearch() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numDocs = scaledRandomIntBetween(100, 500);
+        for (int i = 0; i < numDocs; ++i) {
+            Document doc = new Document();
+            doc.add(new StringField("foo", randomFrom("bar", "baz"), Store.NO));
+            if (randomBoolean()) {
+                doc.add(new StringField("foo", "bar", Store.NO));
+            }
+            doc.add(new NumericDocValuesField("rank", randomIntBetween(0, 20)));
+            w.addDocument(doc);
+            if (rarely()) {
+                w.commit();
+            }
+        }
+        final IndexReader reader = w.getReader();
+        final ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, 4),
+                EsExecutors.daemonThreadFactory("search_worker"));
+        try {
+            final Query query = new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term("foo", "bar")), Occur.SHOULD)
+                    .add(new TermQuery(new Term("foo", "baz")), Occur.SHOULD)
+                    .build();
+            final Sort sort = new Sort(new SortField("rank", SortField.Type.LONG, randomBoolean()));
+            final int size = randomIntBetween(1, 50);
+            for (boolean sorted : new boolean[] { false, true }) {
+                final TestSearchContext sequentialContext = newSearchContext(query, size, sorted ? sort : null, null);
+                final ContextIndexSearcher sequentialSearcher = newContextIndexSearcher(reader);
+                QueryPhase.execute(sequentialContext, sequentialSearcher);
+
+                final TestSearchContext concurrentContext = newSearchContext(query, size, sorted ? sort : null, null);
+                final ContextIndexSearcher concurrentSearcher = newContextIndexSearcher(reader);
+                concurrentSearcher.setSliceExecutor(randomBoolean() ? executor : null, randomIntBetween(2, 5));
+                QueryPhase.execute(concurrentContext, concurrentSearcher);
+
+                final TopDocs expected = sequentialContext.queryResult().topDocs();
+                final TopDocs actual = concurrentContext.queryResult().topDocs();
+                assertEquals(expected.totalHits, actual.totalHits);
+                assertEquals(expected.getMaxScore(), actual.getMaxScore(), 0f);
+                assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+                for (int i = 0; i < expected.scoreDocs.length; i++) {
+                    assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+                    assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+                    assertEquals(expected.scoreDocs[i].shardIndex, actual.scoreDocs[i].shardIndex);
+                    if (sorted) {
+                        assertArrayEquals(((FieldDoc) expected.scoreDocs[i]).fields, ((FieldDoc) actual.scoreDocs[i]).fields);
+                    }
+                }
+            }
+
+            // counts are summed up over the slices
+            final TestSearchContext countContext = newSearchContext(query, 0, null, null);
+            final ContextIndexSearcher countSearcher = newContextIndexSearcher(reader);
+            countSearcher.setSliceExecutor(executor, randomIntBetween(2, 5));
+            QueryPhase.execute(countContext, countSearcher);
+            assertEquals(new IndexSearcher(reader).count(query), countContext.queryResult().topDocs().totalHits);
+        } finally {
+            terminate(executor);
+            reader.close();
+            w.close();
+            dir.close();
+        }
+    }
+
+    public void testBusySliceExecutorDisablesConcurrentSearch() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numSegments = randomIntBetween(2, 5);
+        for (int i = 0; i < numSegments; i++) {
+            w.addDocument(new Document());
+            w.commit();
+        }
+        final IndexReader reader = w.getReader();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                EsExecutors.daemonThreadFactory("search_worker"));
+        final CountDownLatch blockWorker = new CountDownLatch(1);
+        try {
+            final TestSearchContext context = newSearchContext(new MatchAllDocsQuery(), 10, null, null);
+            final ContextIndexSearcher searcher = newContextIndexSearcher(reader);
+            searcher.setSliceExecutor(executor, numSegments);
+            assertNotNull(QueryPhase.getConcurrentSlices(context, searcher));
+
+            // the only worker is busy, the next task has to wait in the queue
+            executor.execute(() -> {
+                try {
+                    blockWorker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            executor.execute(() -> {});
+            assertFalse(executor.getQueue().isEmpty());
+            assertNull(QueryPhase.getConcurrentSlices(context, searcher));
+
+            // the search still returns all hits
+            QueryPhase.execute(context, searcher);
+            assertEquals(numSegments, context.queryResult().topDocs().totalHits);
+        } finally {
+            blockWorker.countDown();
+            terminate(executor);
+            reader.close();
+            w.close();
+            dir.close();
+        }
+    }
+
+    public void testProfileConcurrentSearch() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numSegments = randomIntBetween(2, 5);
+        for (int i = 0; i < numSegments; i++) {
+            for (int j = 0; j < 10; j++) {
+                Document doc = new Document();
+                doc.add(new StringField("foo", "bar", Store.NO));
+                w.addDocument(doc);
+            }
+            w.commit();
+        }
+        final IndexReader reader = w.getReader();
+        final ContextIndexSearcher searcher = newContextIndexSearcher(reader);
+        searcher.setSliceExecutor(null, numSegments);
+        final Profilers profilers = new Profilers(searcher);
+        final TestSearchContext context = newSearchContext(new TermQuery(new Term("foo", "bar")), 10, null, profilers);
+        QueryPhase.execute(context, searcher);
+        assertEquals(numSegments * 10, context.queryResult().topDocs().totalHits);
+
+        final CollectorResult collectorResult = profilers.getCurrentQueryProfiler().getCollector();
+        assertEquals(CollectorResult.REASON_SEARCH_CONCURRENT, collectorResult.getReason());
+        assertEquals(numSegments, collectorResult.getProfiledChildren().size());
+        for (CollectorResult sliceResult : collectorResult.getProfiledChildren()) {
+            assertEquals(CollectorResult.REASON_SEARCH_SLICE, sliceResult.getReason());
+            assertThat(sliceResult.getTime(), greaterThan(0L));
+            assertEquals(1, sliceResult.getProfiledChildren().size());
+            assertEquals(CollectorResult.REASON_SEARCH_TOP_HITS, sliceResult.getProfiledChildren().get(0).getReason());
+        }
+        reader.close();
+        w.close();
+        dir.close();
+    }
+
+    private static TestSearchContext newSearchContext(Query query, int size, Sort sort, Profilers profilers) {
+        final TestSearchContext context = new TestSearchContext(null) {
+            @Override
+            public ShardSearchRequest request() {
+                return new ShardSearchLocalRequest(Strings.EMPTY_ARRAY, 0L);
+            }
+
+            @Override
+            public SortAndFormats sort() {
+                return sort == null ? null : new SortAndFormats(sort, new DocValueFormat[] { DocValueFormat.RAW });
+            }
+
+            @Override
+            public List<RescoreSearchContext> rescore() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public long timeoutInMillis() {
+                return SearchService.NO_TIMEOUT.millis();
+            }
+
+            @Override
+            public Profilers getProfilers() {
+                return profilers;
+            }
+        };
+        context.parsedQuery(new ParsedQuery(query));
+        context.setSize(size);
+        return context;
+    }
+
+    private static ContextIndexSearcher newContextIndexSearcher(IndexReader reader) {
+        final Engine.Searcher engineSearcher = new Engine.Searcher("test", new IndexSearcher(reader));
+        return new ContextIndexSearcher(engineSearcher, null, IndexSearcher.getDefaultQueryCachingPolicy());
+    }
 }
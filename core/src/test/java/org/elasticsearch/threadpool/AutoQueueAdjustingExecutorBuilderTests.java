@@ -0,0 +1,233 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.threadpool;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+public class AutoQueueAdjustingExecutorBuilderTests extends ESThreadPoolTestCase {
+
+    public void testQueueSizeDefaultsToStaticQueue() throws InterruptedException {
+        final int queueSize = randomIntBetween(1, 2000);
+        final Settings nodeSettings =
+            Settings.builder()
+                .put("node.name", "testQueueSizeDefaultsToStaticQueue")
+                .put("thread_pool.search.queue_size", queueSize)
+                .build();
+        ThreadPool threadPool = null;
+        try {
+            threadPool = new ThreadPool(nodeSettings);
+            final ThreadPool.Info info = info(threadPool, ThreadPool.Names.SEARCH);
+            assertThat(info.getThreadPoolType(), equalTo(ThreadPool.ThreadPoolType.FIXED_AUTO_QUEUE_SIZE));
+            assertThat(info.getQueueSize().singles(), equalTo((long) queueSize));
+            assertThat(stats(threadPool, ThreadPool.Names.SEARCH).getQueueCapacity(), equalTo(queueSize));
+        } finally {
+            terminateThreadPoolIfNeeded(threadPool);
+        }
+    }
+
+    public void testUnboundedQueueSize() throws InterruptedException {
+        final Settings nodeSettings =
+            Settings.builder()
+                .put("node.name", "testUnboundedQueueSize")
+                .put("thread_pool.search.queue_size", -1)
+                .build();
+        ThreadPool threadPool = null;
+        try {
+            threadPool = new ThreadPool(nodeSettings);
+            final ThreadPool.Info info = info(threadPool, ThreadPool.Names.SEARCH);
+            assertThat(info.getThreadPoolType(), equalTo(ThreadPool.ThreadPoolType.FIXED_AUTO_QUEUE_SIZE));
+            assertNull(info.getQueueSize());
+            assertThat(stats(threadPool, ThreadPool.Names.SEARCH).getQueueCapacity(), equalTo(-1));
+        } finally {
+            terminateThreadPoolIfNeeded(threadPool);
+        }
+    }
+
+    public void testInitialQueueSizeIsBounded() throws InterruptedException {
+        final Settings nodeSettings =
+            Settings.builder()
+                .put("node.name", "testInitialQueueSizeIsBounded")
+                .put("thread_pool.search.queue_size", 1000)
+                .put("thread_pool.search.min_queue_size", 10)
+                .put("thread_pool.search.max_queue_size", 100)
+                .build();
+        ThreadPool threadPool = null;
+        try {
+            threadPool = new ThreadPool(nodeSettings);
+            assertThat(stats(threadPool, ThreadPool.Names.SEARCH).getQueueCapacity(), equalTo(100));
+        } finally {
+            terminateThreadPoolIfNeeded(threadPool);
+        }
+    }
+
+    public void testMinQueueSizeGreaterThanMax() {
+        final Settings nodeSettings =
+            Settings.builder()
+                .put("node.name", "testMinQueueSizeGreaterThanMax")
+                .put("thread_pool.search.min_queue_size", 100)
+                .put("thread_pool.search.max_queue_size", 10)
+                .build();
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> {
+            ThreadPool threadPool = null;
+            try {
+                threadPool = new ThreadPool(nodeSettings);
+            } finally {
+                terminateThreadPoolIfNeeded(threadPool);
+            }
+        });
+        assertThat(e.getMessage(), containsString(
+            "[thread_pool.search.min_queue_size] must not be greater than [thread_pool.search.max_queue_size]"));
+    }
+
+    public void testQueueIsResized() throws Exception {
+        final int frameSize = randomIntBetween(1, 10);
+        final Settings nodeSettings =
+            Settings.builder()
+                .put("node.name", "testQueueIsResized")
+                .put("thread_pool.search.queue_size", 1000)
+                .put("thread_pool.search.min_queue_size", 10)
+                .put("thread_pool.search.max_queue_size", 2000)
+                .put("thread_pool.search.auto_queue_frame_size", frameSize)
+                .put("thread_pool.search.target_response_time", "10ms")
+                .build();
+        ThreadPool threadPool = null;
+        try {
+            threadPool = new ThreadPool(nodeSettings);
+            final Executor executor = threadPool.executor(ThreadPool.Names.SEARCH);
+            // slow tasks with a short targeted response time shrink the queue
+            final CountDownLatch done = new CountDownLatch(frameSize);
+            for (int i = 0; i < frameSize; i++) {
+                executor.execute(() -> {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        fail(e.toString());
+                    }
+                    done.countDown();
+                });
+            }
+            done.await();
+            final ThreadPool pool = threadPool;
+            // the queue moves by a tenth of the range between the min and max queue size per frame
+            assertBusy(() -> assertThat(stats(pool, ThreadPool.Names.SEARCH).getQueueCapacity(), equalTo(1000 - 199)));
+        } finally {
+            terminateThreadPoolIfNeeded(threadPool);
+        }
+    }
+
+    public void testFairQueuing() throws InterruptedException {
+        final int tenantQueueSize = randomIntBetween(1, 8);
+        final Settings nodeSettings =
+            Settings.builder()
+                .put("node.name", "testFairQueuing")
+                .put("thread_pool.search.size", 1)
+                .put("thread_pool.search.queue_size", 100)
+                .put("thread_pool.search.fair_queuing.header", "X-Tenant")
+                .put("thread_pool.search.fair_queuing.tenant_queue_size", tenantQueueSize)
+                .put("thread_pool.search.fair_queuing.weights.heavy", 2)
+                .build();
+        ThreadPool threadPool = null;
+        try {
+            threadPool = new ThreadPool(nodeSettings);
+            final ThreadContext threadContext = threadPool.getThreadContext();
+            final Executor executor = threadPool.executor(ThreadPool.Names.SEARCH);
+
+            // block the only thread so that all further tasks are queued
+            final CountDownLatch latch = new CountDownLatch(1);
+            final CountDownLatch block = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    latch.countDown();
+                    block.await();
+                } catch (InterruptedException e) {
+                    fail(e.toString());
+                }
+            });
+            latch.await();
+
+            final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+            final CountDownLatch done = new CountDownLatch(2 * tenantQueueSize);
+            int heavyRejections = 0;
+            try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+                threadContext.putHeader("X-Tenant", "heavy");
+                for (int i = 0; i < tenantQueueSize + 3; i++) {
+                    final String task = "heavy" + i;
+                    try {
+                        executor.execute(() -> {
+                            executed.add(task);
+                            done.countDown();
+                        });
+                    } catch (EsRejectedExecutionException e) {
+                        heavyRejections++;
+                    }
+                }
+            }
+            assertThat(heavyRejections, equalTo(3));
+            try (ThreadContext.StoredContext ignored = threadContext.stashContext()) {
+                threadContext.putHeader("X-Tenant", "light");
+                for (int i = 0; i < tenantQueueSize; i++) {
+                    final String task = "light" + i;
+                    executor.execute(() -> {
+                        executed.add(task);
+                        done.countDown();
+                    });
+                }
+            }
+
+            ThreadPoolStats.Stats stats = stats(threadPool, ThreadPool.Names.SEARCH);
+            assertThat(stats.getQueue(), equalTo(2 * tenantQueueSize));
+            assertThat(stats.getRejected(), equalTo(3L));
+            assertThat(stats.getTenants().get("heavy").getQueue(), equalTo(tenantQueueSize));
+            assertThat(stats.getTenants().get("heavy").getRejected(), equalTo(3L));
+            assertThat(stats.getTenants().get("light").getQueue(), equalTo(tenantQueueSize));
+            assertThat(stats.getTenants().get("light").getRejected(), equalTo(0L));
+
+            block.countDown();
+            done.await();
+
+            // the heavy tenant takes two tasks per turn until one of the tenants runs out of tasks
+            final List<String> expected = new ArrayList<>();
+            int heavy = 0;
+            int light = 0;
+            while (heavy < tenantQueueSize || light < tenantQueueSize) {
+                for (int i = 0; i < 2 && heavy < tenantQueueSize; i++) {
+                    expected.add("heavy" + heavy++);
+                }
+                if (light < tenantQueueSize) {
+                    expected.add("light" + light++);
+                }
+            }
+            assertThat(executed, equalTo(expected));
+        } finally {
+            terminateThreadPoolIfNeeded(threadPool);
+        }
+    }
+}
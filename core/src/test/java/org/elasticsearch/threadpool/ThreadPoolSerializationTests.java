@@ -131,4 +131,17 @@ public class ThreadPoolSerializationTests extends ESTestCase {
 
         assertThat(newInfo.getThreadPoolType(), is(threadPoolType));
     }
+
+    public void testThatAutoQueueSizeTypeIsSerializedAsFixedToOlderNodes() throws IOException {
+        ThreadPool.Info info = new ThreadPool.Info("foo", ThreadPool.ThreadPoolType.FIXED_AUTO_QUEUE_SIZE);
+        output.setVersion(Version.V_5_0_0_alpha4);
+        info.writeTo(output);
+
+        StreamInput input = StreamInput.wrap(output.bytes());
+        input.setVersion(Version.V_5_0_0_alpha4);
+        ThreadPool.Info newInfo = new ThreadPool.Info();
+        newInfo.readFrom(input);
+
+        assertThat(newInfo.getThreadPoolType(), is(ThreadPool.ThreadPoolType.FIXED));
+    }
 }
@@ -22,6 +22,7 @@ package org.elasticsearch.threadpool;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.test.ESTestCase;
@@ -29,7 +30,9 @@ import org.elasticsearch.test.ESTestCase;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
@@ -107,4 +110,40 @@ public class ThreadPoolStatsTests extends ESTestCase {
             }
         }
     }
+
+    public void testTenantAndQueueCapacityStatsSerialization() throws IOException {
+        Map<String, ThreadPoolStats.TenantStats> tenants = new HashMap<>();
+        tenants.put("b", new ThreadPoolStats.TenantStats(3, 7L));
+        tenants.put("a", new ThreadPoolStats.TenantStats(0, 1L));
+        List<ThreadPoolStats.Stats> stats = new ArrayList<>();
+        stats.add(new ThreadPoolStats.Stats(ThreadPool.Names.SEARCH, 1, 3, 1, 8, 1, 10L, 500, tenants));
+        stats.add(new ThreadPoolStats.Stats(ThreadPool.Names.GET, 1, 0, 0, 0, 1, 10L));
+
+        ThreadPoolStats deserialized;
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            new ThreadPoolStats(stats).writeTo(out);
+            deserialized = ThreadPoolStats.readThreadPoolStats(out.bytes().streamInput());
+        }
+        Map<String, ThreadPoolStats.Stats> byName = new HashMap<>();
+        for (ThreadPoolStats.Stats stat : deserialized) {
+            byName.put(stat.getName(), stat);
+        }
+        assertTrue(byName.get(ThreadPool.Names.GET).getTenants().isEmpty());
+        Map<String, ThreadPoolStats.TenantStats> deserializedTenants = byName.get(ThreadPool.Names.SEARCH).getTenants();
+        assertThat(deserializedTenants.size(), equalTo(2));
+        assertThat(deserializedTenants.get("b").getQueue(), equalTo(3));
+        assertThat(deserializedTenants.get("b").getRejected(), equalTo(7L));
+        assertThat(byName.get(ThreadPool.Names.SEARCH).getQueueCapacity(), equalTo(500));
+        assertThat(byName.get(ThreadPool.Names.GET).getQueueCapacity(), equalTo(-1));
+
+        try (XContentBuilder builder = XContentFactory.jsonBuilder()) {
+            builder.startObject();
+            deserialized.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            builder.endObject();
+            assertThat(builder.string(), equalTo("{\"thread_pool\":{"
+                + "\"get\":{\"threads\":1,\"queue\":0,\"active\":0,\"rejected\":0,\"largest\":1,\"completed\":10},"
+                + "\"search\":{\"threads\":1,\"queue\":3,\"active\":1,\"rejected\":8,\"largest\":1,\"completed\":10,"
+                + "\"queue_capacity\":500,\"tenants\":{\"a\":{\"queue\":0,\"rejected\":1},\"b\":{\"queue\":3,\"rejected\":7}}}}}"));
+        }
+    }
 }